@@ -0,0 +1,49 @@
+#!/usr/bin/env python3
+"""Compares two JMH JSON result files, e.g. from two commits:
+
+    ./compare-results.py results/3c9c278.json results/a0cc643.json
+
+Prints each benchmark's score in both, and the change. Lower is better for
+the average-time benchmarks here; changes within the combined error are
+marked with a '~'.
+"""
+import json
+import sys
+
+
+def load(path):
+    with open(path) as f:
+        runs = json.load(f)
+    results = {}
+    for run in runs:
+        name = run["benchmark"].rsplit(".", 2)
+        name = name[-2] + "." + name[-1]
+        params = ",".join(k + "=" + v for k, v in sorted(run.get("params", {}).items()))
+        metric = run["primaryMetric"]
+        results[(name, params)] = (metric["score"], metric["scoreError"], metric["scoreUnit"])
+    return results
+
+
+def main(old_path, new_path):
+    old = load(old_path)
+    new = load(new_path)
+    width = max((len(n) + len(p) + 3 for n, p in set(old) | set(new)), default=20)
+    print("%-*s %18s %18s %9s" % (width, "benchmark", "before", "after", "change"))
+    for key in sorted(set(old) | set(new)):
+        label = key[0] + (" [" + key[1] + "]" if key[1] else "")
+        if key not in old or key not in new:
+            score = (new if key in new else old)[key]
+            side = "after" if key in new else "before"
+            print("%-*s %s only: %.3f %s" % (width, label, side, score[0], score[2]))
+            continue
+        before, before_error, unit = old[key]
+        after, after_error, _ = new[key]
+        change = (after - before) / before * 100 if before else float("nan")
+        noise = "~" if abs(after - before) <= before_error + after_error else " "
+        print("%-*s %11.3f %-6s %11.3f %-6s %+8.1f%%%s" % (width, label, before, unit, after, unit, change, noise))
+
+
+if __name__ == "__main__":
+    if len(sys.argv) != 3:
+        sys.exit(__doc__)
+    main(sys.argv[1], sys.argv[2])
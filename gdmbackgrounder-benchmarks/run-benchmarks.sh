@@ -0,0 +1,17 @@
+#!/bin/sh
+# Builds the app and the benchmarks, then runs them with the stub dconf,
+# gsettings and pkexec first on the PATH so no real backgrounds change.
+# Results go to results/<commit>.json, to compare with compare-results.py.
+# Arguments go to JMH, e.g.
+#   ./run-benchmarks.sh StylesheetBenchmark -p stylesheet=system,128k
+set -e
+here=$(cd "$(dirname "$0")" && pwd)
+root=$(dirname "$here")
+mvn -B -q -f "$root/gdmbackgrounder/pom.xml" install
+mvn -B -q -f "$here/pom.xml" package
+commit=$(git -C "$root" rev-parse --short HEAD)
+if [ -n "$(git -C "$root" status --porcelain -- gdmbackgrounder)" ]; then
+	commit="$commit-dirty"
+fi
+mkdir -p "$here/results"
+PATH="$here/stubs:$PATH" java -jar "$here/target/benchmarks.jar" -rf json -rff "$here/results/$commit.json" "$@"
@@ -0,0 +1,99 @@
+package ca.footeware.backgrounder.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.footeware.backgrounder.images.ColorAnalyzer;
+import ca.footeware.backgrounder.images.ImageDecoder;
+
+/**
+ * Working out an image's background color, with and without decoding it. To
+ * see what the fork-join split buys, compare a run with
+ * <code>-jvmArgsAppend -Djava.util.concurrent.ForkJoinPool.common.parallelism=1</code>.
+ *
+ * @author Footeware.ca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Djava.awt.headless=true" })
+@State(Scope.Benchmark)
+public class ColorBenchmark {
+
+	private BufferedImage decoded;
+	private Path directory;
+	private Path image;
+
+	/**
+	 * Image size.
+	 */
+	@Param({ "1920x1080", "3840x2160", "7680x4320" })
+	public String resolution;
+
+	/**
+	 * Decodes a reduced copy of the image and analyzes it, as the painters do.
+	 *
+	 * @return {@link ColorAnalyzer.Colors}
+	 * @throws IOException when shit goes south
+	 */
+	@Benchmark
+	public ColorAnalyzer.Colors analyze() throws IOException {
+		return ColorAnalyzer.analyze(image);
+	}
+
+	/**
+	 * Analyzes the image at full size, already decoded.
+	 *
+	 * @return {@link ColorAnalyzer.Colors}
+	 */
+	@Benchmark
+	public ColorAnalyzer.Colors analyzeDecoded() {
+		return ColorAnalyzer.analyze(decoded);
+	}
+
+	/**
+	 * Writes the image out and decodes it.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		String[] size = resolution.split("x");
+		int width = Integer.parseInt(size[0]);
+		int height = Integer.parseInt(size[1]);
+		directory = Files.createTempDirectory("benchmark-colors");
+		image = Fixtures.image(directory, width, height, "jpg");
+		decoded = ImageDecoder.decodeAtLeast(image, width, height);
+	}
+
+	/**
+	 * Cleans up.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(image);
+		Files.deleteIfExists(directory);
+	}
+
+}
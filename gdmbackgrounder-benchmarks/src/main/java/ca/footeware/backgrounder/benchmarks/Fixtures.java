@@ -0,0 +1,225 @@
+package ca.footeware.backgrounder.benchmarks;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Makes the stylesheets and images the benchmarks work on.
+ *
+ * @author Footeware.ca
+ *
+ */
+final class Fixtures {
+
+	/**
+	 * Works out each pixel of a gradient with some noise when it's asked for, so
+	 * an image bigger than the heap can be written out a few rows at a time.
+	 */
+	private static final class Generated extends DataBuffer {
+		private final int height;
+		private final int width;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param width  int
+		 * @param height int
+		 */
+		private Generated(int width, int height) {
+			super(TYPE_INT, width * height);
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public int getElem(int bank, int i) {
+			int x = i % width;
+			int y = i / width;
+			int hash = (x * 73856093) ^ (y * 19349663);
+			if ((hash & 0xF) == 0) {
+				return (hash >>> 4) & 0xFFFFFF;
+			}
+			float t = (float) (x + y) / (width + height);
+			int r = (int) (0x20 + t * (0xf5 - 0x20));
+			int g = (int) (0x4a + t * (0x79 - 0x4a));
+			int b = (int) (0x87 - t * 0x87);
+			return (r << 16) | (g << 8) | b;
+		}
+
+		@Override
+		public void setElem(int bank, int i, int value) {
+			throw new UnsupportedOperationException("Generated pixels can't be changed.");
+		}
+	}
+
+	/**
+	 * The rule the login painter looks for.
+	 */
+	static final String SELECTOR = "#lockDialogGroup";
+	/**
+	 * Where the system's own login theme lives, overridden with
+	 * <code>-Dbenchmark.css</code>.
+	 */
+	private static final String SYSTEM_CSS = System.getProperty("benchmark.css",
+			"/usr/share/gnome-shell/theme/gdm3.css");
+
+	private Fixtures() {
+		// static only
+	}
+
+	/**
+	 * Makes sure the stub <code>dconf</code> and <code>pkexec</code> come first
+	 * on the PATH and points the privileged session at them.
+	 *
+	 * @param elevate boolean true to always go through <code>pkexec</code>
+	 */
+	static void useStubs(boolean elevate) {
+		String path = System.getenv("PATH");
+		String first = path == null ? "" : path.split(File.pathSeparator)[0];
+		if (!Files.isExecutable(Paths.get(first, "dconf")) || !Files.isExecutable(Paths.get(first, "pkexec"))) {
+			throw new IllegalStateException(
+					"Put the stubs folder first on the PATH, e.g. with run-benchmarks.sh, or this would change your real backgrounds.");
+		}
+		System.setProperty("backgrounder.pkexec", "pkexec");
+		System.setProperty("backgrounder.elevate", Boolean.toString(elevate));
+	}
+
+	/**
+	 * Writes an image shaped like a photo, as {@link #image(Path, int, int, String)}
+	 * does, without ever having all of it in memory: for images bigger than the
+	 * heap. TIFFs are written in deflated 512 pixel tiles.
+	 *
+	 * @param directory {@link Path} to write it in
+	 * @param width     int
+	 * @param height    int
+	 * @param format    {@link String} jpg, png or tif
+	 * @return {@link Path} of the image
+	 * @throws IOException when it can't be written
+	 */
+	static Path hugeImage(Path directory, int width, int height, String format) throws IOException {
+		DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+		WritableRaster raster = Raster.createWritableRaster(colorModel.createCompatibleSampleModel(width, height),
+				new Generated(width, height), null);
+		BufferedImage image = new BufferedImage(colorModel, raster, false, null);
+		String name = "jpg".equals(format) ? "jpeg" : "tif".equals(format) ? "tiff" : format;
+		ImageWriter writer = ImageIO.getImageWritersByFormatName(name).next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		if ("tiff".equals(name)) {
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionType("Deflate");
+			param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setTiling(512, 512, 0, 0);
+		}
+		Path path = directory.resolve(width + "x" + height + "." + format);
+		Files.deleteIfExists(path);
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(path.toFile())) {
+			writer.setOutput(out);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		return path;
+	}
+
+	/**
+	 * Writes an image shaped like a photo: smooth gradients with some noise, so
+	 * it compresses like one.
+	 *
+	 * @param directory {@link Path} to write it in
+	 * @param width     int
+	 * @param height    int
+	 * @param format    {@link String} jpg or png
+	 * @return {@link Path} of the image
+	 * @throws IOException when it can't be written
+	 */
+	static Path image(Path directory, int width, int height, String format) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setPaint(new GradientPaint(0, 0, new Color(0x20, 0x4a, 0x87), width, height,
+					new Color(0xf5, 0x79, 0x00)));
+			graphics.fillRect(0, 0, width, height);
+		} finally {
+			graphics.dispose();
+		}
+		Random random = new Random(width * 31L + height);
+		for (int i = 0; i < width * height / 16; i++) {
+			image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt(0x1000000));
+		}
+		File file = directory.resolve(width + "x" + height + "." + format).toFile();
+		ImageIO.write(image, "jpg".equals(format) ? "jpeg" : format, file);
+		return file.toPath();
+	}
+
+	/**
+	 * @param name {@link String} "system" for the system's own login theme, or a
+	 *             size like 128k or 2m for a made up one
+	 * @return byte[] of the stylesheet
+	 * @throws IOException when the system's theme can't be read
+	 */
+	static byte[] stylesheet(String name) throws IOException {
+		if ("system".equals(name)) {
+			Path path = Paths.get(SYSTEM_CSS);
+			if (!Files.isReadable(path)) {
+				throw new IllegalStateException(
+						"No login theme at " + path + ", point -Dbenchmark.css at one or leave out 'system'.");
+			}
+			return Files.readAllBytes(path);
+		}
+		int multiplier = name.endsWith("m") ? 1024 * 1024 : 1024;
+		return synthetic(Integer.parseInt(name.substring(0, name.length() - 1)) * multiplier);
+	}
+
+	/**
+	 * Makes up a stylesheet shaped like a gnome-shell theme, with the login
+	 * screen's rule half way through.
+	 *
+	 * @param bytes int roughly how big
+	 * @return byte[]
+	 */
+	static byte[] synthetic(int bytes) {
+		StringBuilder builder = new StringBuilder(bytes + 1024);
+		builder.append("/* made up for benchmarking */\n");
+		boolean placed = false;
+		for (int i = 0; builder.length() < bytes; i++) {
+			if (!placed && builder.length() >= bytes / 2) {
+				builder.append(SELECTOR).append(" {\n");
+				builder.append("  background: #2e3436 url(resource:///org/gnome/shell/theme/noise-texture.png);\n");
+				builder.append("  background-repeat: repeat; }\n\n");
+				placed = true;
+			}
+			builder.append(".popup-menu-item-").append(i).append(":hover, .panel-button-").append(i)
+					.append(" .system-status-icon {\n");
+			builder.append("  color: #eeeeec;\n");
+			builder.append("  background-color: rgba(46, 52, 54, 0.8);\n");
+			builder.append("  border: 1px solid #").append(String.format("%06x", i * 2654435761L & 0xFFFFFF))
+					.append(";\n");
+			builder.append("  border-radius: ").append(i % 12).append("px;\n");
+			builder.append("  padding: 4px 8px; }\n\n");
+		}
+		if (!placed) {
+			builder.append(SELECTOR).append(" {\n  background: #2e3436; }\n");
+		}
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+}
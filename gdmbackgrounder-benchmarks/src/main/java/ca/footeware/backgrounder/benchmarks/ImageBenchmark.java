@@ -0,0 +1,157 @@
+package ca.footeware.backgrounder.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.footeware.backgrounder.images.BackgroundRenderer;
+import ca.footeware.backgrounder.images.Effects;
+import ca.footeware.backgrounder.images.EffectsFilter;
+import ca.footeware.backgrounder.images.ImageDecoder;
+import ca.footeware.backgrounder.preview.ImageDataConverter;
+
+/**
+ * Getting images on screen: decoding for the preview and thumbnails, handing
+ * them to SWT, rendering backgrounds to a screen's size and blurring them.
+ *
+ * @author Footeware.ca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Djava.awt.headless=true" })
+@State(Scope.Benchmark)
+public class ImageBenchmark {
+
+	private static final Effects EFFECTS = new Effects(24, 30);
+
+	private Path directory;
+	private Path image;
+	private BufferedImage preview;
+	private BufferedImage rendered;
+
+	/**
+	 * Image format, jpg or png.
+	 */
+	@Param({ "jpg", "png" })
+	public String format;
+
+	/**
+	 * Image size.
+	 */
+	@Param({ "1920x1080", "3840x2160", "7680x4320" })
+	public String resolution;
+
+	/**
+	 * Decodes the whole image at full size, as the preview used to.
+	 *
+	 * @return {@link BufferedImage}
+	 * @throws IOException when shit goes south
+	 */
+	@Benchmark
+	public BufferedImage decodeFull() throws IOException {
+		return ImageIO.read(image.toFile());
+	}
+
+	/**
+	 * Decodes for an 800x600 preview.
+	 *
+	 * @return {@link BufferedImage}
+	 * @throws IOException when shit goes south
+	 */
+	@Benchmark
+	public BufferedImage decodePreview() throws IOException {
+		return ImageDecoder.decode(image, 800, 600);
+	}
+
+	/**
+	 * Decodes for a gallery thumbnail.
+	 *
+	 * @return {@link BufferedImage}
+	 * @throws IOException when shit goes south
+	 */
+	@Benchmark
+	public BufferedImage decodeThumbnail() throws IOException {
+		return ImageDecoder.decode(image, 128, 128);
+	}
+
+	/**
+	 * Blurs and darkens a 1920x1080 render, as for the lock and login screens.
+	 *
+	 * @return {@link BufferedImage}
+	 */
+	@Benchmark
+	public BufferedImage effects() {
+		return EffectsFilter.apply(rendered, EFFECTS);
+	}
+
+	/**
+	 * Renders a 1920x1080 background, cropped to fill.
+	 *
+	 * @return {@link BufferedImage}
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException never
+	 */
+	@Benchmark
+	public BufferedImage renderCover() throws IOException, InterruptedException {
+		return BackgroundRenderer.getDefault().render(image, 1920, 1080, BackgroundRenderer.Mode.COVER);
+	}
+
+	/**
+	 * Writes the image out and decodes a preview and a render of it.
+	 *
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException never
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		String[] size = resolution.split("x");
+		directory = Files.createTempDirectory("benchmark-images");
+		image = Fixtures.image(directory, Integer.parseInt(size[0]), Integer.parseInt(size[1]), format);
+		preview = ImageDecoder.decode(image, 800, 600);
+		rendered = BackgroundRenderer.getDefault().render(image, 1920, 1080, BackgroundRenderer.Mode.COVER);
+	}
+
+	/**
+	 * Cleans up.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(image);
+		Files.deleteIfExists(directory);
+	}
+
+	/**
+	 * Converts a decoded preview for SWT.
+	 *
+	 * @return {@link ImageData}
+	 */
+	@Benchmark
+	public ImageData toImageData() {
+		return ImageDataConverter.toImageData(preview);
+	}
+
+}
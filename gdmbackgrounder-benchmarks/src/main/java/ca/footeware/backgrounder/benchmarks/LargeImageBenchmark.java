@@ -0,0 +1,113 @@
+package ca.footeware.backgrounder.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.footeware.backgrounder.images.ImageDecoder;
+
+/**
+ * Scaling down images several times bigger than the heap, which only works if
+ * they're never in memory whole. A 16000x9000 image takes 576 MB decoded, the
+ * fork gets 64 MB, so an {@link OutOfMemoryError} fails the run.
+ *
+ * @author Footeware.ca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx64m", "-Djava.awt.headless=true" })
+@State(Scope.Benchmark)
+public class LargeImageBenchmark {
+
+	private Path directory;
+	private Path image;
+
+	/**
+	 * Image format, jpg, png or tif.
+	 */
+	@Param({ "jpg", "png", "tif" })
+	public String format;
+
+	/**
+	 * Image size.
+	 */
+	@Param({ "16000x9000" })
+	public String resolution;
+
+	/**
+	 * Decodes for the blur, which scales down to 3840 pixels, as big as the
+	 * heap allows.
+	 *
+	 * @return {@link BufferedImage}
+	 * @throws IOException when shit goes south
+	 */
+	@Benchmark
+	public BufferedImage decodeForEffects() throws IOException {
+		return ImageDecoder.decode(image, 3840, 3840);
+	}
+
+	/**
+	 * Decodes for an 800x600 preview.
+	 *
+	 * @return {@link BufferedImage}
+	 * @throws IOException when shit goes south
+	 */
+	@Benchmark
+	public BufferedImage decodePreview() throws IOException {
+		return ImageDecoder.decode(image, 800, 600);
+	}
+
+	/**
+	 * Decodes for rendering to 1920x1080, as the renderer does before cropping.
+	 *
+	 * @return {@link BufferedImage}
+	 * @throws IOException when shit goes south
+	 */
+	@Benchmark
+	public BufferedImage decodeForRender() throws IOException {
+		return ImageDecoder.decodeAtLeast(image, 1920, 1080);
+	}
+
+	/**
+	 * Writes the image out, a few rows at a time.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		String[] size = resolution.split("x");
+		directory = Files.createTempDirectory("benchmark-large");
+		image = Fixtures.hugeImage(directory, Integer.parseInt(size[0]), Integer.parseInt(size[1]), format);
+	}
+
+	/**
+	 * Cleans up.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(image);
+		Files.deleteIfExists(directory);
+	}
+
+}
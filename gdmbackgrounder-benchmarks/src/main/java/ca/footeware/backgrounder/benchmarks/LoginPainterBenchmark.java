@@ -0,0 +1,102 @@
+package ca.footeware.backgrounder.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.footeware.backgrounder.backup.BackupStore;
+import ca.footeware.backgrounder.css.StylesheetCache;
+import ca.footeware.backgrounder.painters.LoginBackgroundPainter;
+
+/**
+ * The login painter end to end, from construction to the rewritten theme,
+ * either writing it itself or through the stub <code>pkexec</code> in the
+ * stubs folder and the privileged helper. Refuses to run unless the stubs come
+ * first on the PATH.
+ *
+ * @author Footeware.ca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoginPainterBenchmark {
+
+	private boolean cover;
+	private Path css;
+	private Path directory;
+	private Path image;
+	private BackupStore store;
+
+	/**
+	 * Whether the login painter goes through <code>pkexec</code> and the
+	 * privileged helper, or writes the theme itself.
+	 */
+	@Param({ "false", "true" })
+	public boolean elevate;
+
+	/**
+	 * Sets the login screen, which rewrites the theme. Alternates the option, as
+	 * setting what's already there writes nothing.
+	 *
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException never
+	 */
+	@Benchmark
+	public void login() throws IOException, InterruptedException {
+		cover = !cover;
+		new LoginBackgroundPainter(css, image, cover ? "cover" : "contain", StylesheetCache.getDefault(), store,
+				null).paint();
+	}
+
+	/**
+	 * Checks the stubs are in place and writes out a theme and an image.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Fixtures.useStubs(elevate);
+		directory = Files.createTempDirectory("benchmark-painters");
+		css = directory.resolve("gdm3.css");
+		Files.write(css, Fixtures.stylesheet("128k"));
+		image = Fixtures.image(directory, 1920, 1080, "jpg");
+		// kept out of the real store
+		store = new BackupStore(directory.resolve("backups"), 50);
+	}
+
+	/**
+	 * Cleans up.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+
+}
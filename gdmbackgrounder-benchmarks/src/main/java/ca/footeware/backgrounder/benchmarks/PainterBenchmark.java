@@ -0,0 +1,105 @@
+package ca.footeware.backgrounder.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.footeware.backgrounder.painters.LockscreenBackgroundPainter;
+import ca.footeware.backgrounder.painters.WallpaperPainter;
+import ca.footeware.backgrounder.settings.DconfSettingsBackend;
+import ca.footeware.backgrounder.settings.SettingsBackend;
+
+/**
+ * The wallpaper and lock screen painters end to end, from construction to the
+ * settings write, against the stub <code>dconf</code> in the stubs folder.
+ * Refuses to run unless the stubs come first on the PATH, so a stray run can't
+ * change real backgrounds.
+ *
+ * @author Footeware.ca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PainterBenchmark {
+
+	private Path directory;
+	private Path image;
+
+	/**
+	 * Sets the desktop wallpaper and lock screen together.
+	 *
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException never
+	 */
+	@Benchmark
+	public void both() throws IOException, InterruptedException {
+		SettingsBackend backend = new DconfSettingsBackend();
+		new WallpaperPainter(image, "zoom", backend).stage();
+		new LockscreenBackgroundPainter(image, "zoom", backend).stage();
+		backend.apply();
+	}
+
+	/**
+	 * Sets the lock screen.
+	 *
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException never
+	 */
+	@Benchmark
+	public void lockscreen() throws IOException, InterruptedException {
+		new LockscreenBackgroundPainter(image, "zoom").paint();
+	}
+
+	/**
+	 * Checks the stubs are in place and writes out an image.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Fixtures.useStubs(false);
+		directory = Files.createTempDirectory("benchmark-painters");
+		image = Fixtures.image(directory, 1920, 1080, "jpg");
+	}
+
+	/**
+	 * Cleans up.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(image);
+		Files.deleteIfExists(directory);
+	}
+
+	/**
+	 * Sets the desktop wallpaper.
+	 *
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException never
+	 */
+	@Benchmark
+	public void wallpaper() throws IOException, InterruptedException {
+		new WallpaperPainter(image, "zoom").paint();
+	}
+
+}
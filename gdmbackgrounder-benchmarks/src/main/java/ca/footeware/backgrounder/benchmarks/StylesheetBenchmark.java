@@ -0,0 +1,171 @@
+package ca.footeware.backgrounder.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.css.CSSRule;
+
+import com.steadystate.css.dom.CSSStyleSheetImpl;
+
+import ca.footeware.backgrounder.css.CachedStylesheet;
+import ca.footeware.backgrounder.css.CssomStylesheetPatcher;
+import ca.footeware.backgrounder.css.RuleLocator;
+import ca.footeware.backgrounder.css.RuleSpan;
+import ca.footeware.backgrounder.css.SplicingStylesheetPatcher;
+import ca.footeware.backgrounder.css.StylesheetCache;
+import ca.footeware.backgrounder.io.FileIdentity;
+
+/**
+ * The login painter's stylesheet work: parsing the theme, finding the login
+ * screen's rule and writing it back out, both through the CSS object model and
+ * by splicing bytes.
+ *
+ * @author Footeware.ca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StylesheetBenchmark {
+
+	private byte[] bytes;
+	private final StylesheetCache cache = new StylesheetCache();
+	private final CssomStylesheetPatcher cssom = new CssomStylesheetPatcher();
+	private Map<String, String> declarations;
+	private Path file;
+	private FileIdentity identity;
+	private CSSStyleSheetImpl parsed;
+	private CSSRule rule;
+	private final SplicingStylesheetPatcher splicing = new SplicingStylesheetPatcher();
+
+	/**
+	 * Which stylesheet: the system's own login theme or a made up one of a given
+	 * size.
+	 */
+	@Param({ "system", "16k", "128k", "512k", "2m" })
+	public String stylesheet;
+
+	/**
+	 * Looks through a warm {@link StylesheetCache}, which only has to check the
+	 * file hasn't changed.
+	 *
+	 * @return {@link CachedStylesheet}
+	 * @throws IOException when shit goes south
+	 */
+	@Benchmark
+	public CachedStylesheet cacheHit() throws IOException {
+		return cache.get(file);
+	}
+
+	/**
+	 * Parses, finds and rewrites the rule through the CSS object model.
+	 *
+	 * @return byte[] of the patched stylesheet
+	 */
+	@Benchmark
+	public byte[] cssomPatch() {
+		return cssom.patch(new CachedStylesheet(identity, bytes), Fixtures.SELECTOR, declarations);
+	}
+
+	/**
+	 * Finds the rule in the parsed stylesheet.
+	 *
+	 * @return {@link CSSRule}
+	 */
+	@Benchmark
+	public CSSRule getRule() {
+		return cssom.getRule(parsed, Fixtures.SELECTOR);
+	}
+
+	/**
+	 * Finds the rule by scanning the bytes.
+	 *
+	 * @return {@link RuleSpan}
+	 */
+	@Benchmark
+	public RuleSpan locate() {
+		return RuleLocator.find(bytes, Fixtures.SELECTOR);
+	}
+
+	/**
+	 * Parses the stylesheet from disk into the CSS object model.
+	 *
+	 * @return {@link CSSStyleSheetImpl}
+	 */
+	@Benchmark
+	public CSSStyleSheetImpl parse() {
+		return cssom.getStylesheet(file);
+	}
+
+	/**
+	 * Writes the rule into the parsed stylesheet and serializes it all.
+	 *
+	 * @return byte[] of the patched stylesheet
+	 */
+	@Benchmark
+	public byte[] setCSSRule() {
+		return cssom.setCSSRule(rule, parsed, Fixtures.SELECTOR, declarations);
+	}
+
+	/**
+	 * Writes the stylesheet out and gets everything else ready.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		bytes = Fixtures.stylesheet(stylesheet);
+		file = Files.createTempFile("benchmark-", ".css");
+		Files.write(file, bytes);
+		identity = FileIdentity.of(file);
+		parsed = cssom.getStylesheet(file);
+		rule = cssom.getRule(parsed, Fixtures.SELECTOR);
+		declarations = new LinkedHashMap<>();
+		declarations.put("background", "url('file:///usr/share/backgrounds/benchmark.jpg')");
+		declarations.put("background-repeat", "no-repeat");
+		declarations.put("background-size", "cover");
+		declarations.put("background-position", "center");
+		cache.get(file);
+	}
+
+	/**
+	 * Finds and rewrites the rule by splicing bytes.
+	 *
+	 * @return byte[] of the patched stylesheet
+	 */
+	@Benchmark
+	public byte[] splicePatch() {
+		return splicing.patch(new CachedStylesheet(identity, bytes), Fixtures.SELECTOR, declarations);
+	}
+
+	/**
+	 * Cleans up.
+	 *
+	 * @throws IOException when shit goes south
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+}
@@ -1,34 +1,54 @@
 package ca.footeware.backgrounder;
 
+import java.awt.Dimension;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.custom.ScrolledComposite;
+import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
-import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.ProgressBar;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.Text;
 
+import ca.footeware.backgrounder.css.StylesheetCache;
 import ca.footeware.backgrounder.dialogs.ErrorDialog;
+import ca.footeware.backgrounder.execution.BackgroundExecutor;
+import ca.footeware.backgrounder.images.BackgroundRenderer;
+import ca.footeware.backgrounder.images.Effects;
+import ca.footeware.backgrounder.images.ImageInfo;
 import ca.footeware.backgrounder.listeners.BrowseButtonListener;
 import ca.footeware.backgrounder.listeners.ImageDisposingDisposeListener;
+import ca.footeware.backgrounder.painters.GSettingsPainter;
 import ca.footeware.backgrounder.painters.LockscreenBackgroundPainter;
 import ca.footeware.backgrounder.painters.LoginBackgroundPainter;
+import ca.footeware.backgrounder.painters.Painter;
 import ca.footeware.backgrounder.painters.WallpaperPainter;
+import ca.footeware.backgrounder.preview.ThumbnailGallery;
+import ca.footeware.backgrounder.preview.ZoomCanvas;
+import ca.footeware.backgrounder.rotation.Playlist;
+import ca.footeware.backgrounder.rotation.RotationScheduler;
+import ca.footeware.backgrounder.rotation.SlideshowWriter;
+import ca.footeware.backgrounder.settings.DconfMonitor;
+import ca.footeware.backgrounder.settings.DconfSettingsBackend;
+import ca.footeware.backgrounder.settings.SettingsBackend;
 
 /**
  * Provides a GUI to select an image file and set it as your desktop wallpaper,
@@ -40,16 +60,25 @@ import ca.footeware.backgrounder.painters.WallpaperPainter;
  */
 public class Application {
 
-	private Canvas canvas;
+	private Button blur;
+	private BackgroundExecutor executor;
 	private List<Image> imagesToDispose;
 	private Shell shell;
 	private Text text;
+	private static final String CSS_PATH = "/usr/share/gnome-shell/theme/gdm3.css";
 	private static final String IMAGE_ICON = "image-24.png";
+	private static final Effects BLUR_EFFECTS = new Effects(24, 30);
 	private Button desktopWallpaper;
+	private Label imageInfo;
 	private Button lockScreenBackground;
+	private Combo lockscreenCombo;
 	private Button loginScreenBackground;
-	private static final String[] PICTURE_OPTIONS = new String[] { "none", "wallpaper", "centered", "scaled",
-			"stretched", "zoom", "spanned" };
+	private Combo loginscreenCombo;
+	private Button preRender;
+	private ThumbnailGallery gallery;
+	private RotationScheduler rotation;
+	private Combo wallpaperCombo;
+	private static final String[] PICTURE_OPTIONS = GSettingsPainter.PICTURE_OPTIONS.toArray(new String[0]);
 
 	/**
 	 * Constructor.
@@ -59,13 +88,38 @@ public class Application {
 		final Display display = new Display();
 		shell = new Shell(display, SWT.SHELL_TRIM);
 		shell.setText("Backgrounder");
-		shell.setSize(400, 600);
+		shell.setSize(700, 740);
 		shell.setLayout(new GridLayout(2, false));
 
 		// List of images to dispose of later
 		imagesToDispose = new ArrayList<>();
 		shell.addDisposeListener(new ImageDisposingDisposeListener(imagesToDispose));
 
+		// painters run one at a time, in order, off the UI thread
+		executor = new BackgroundExecutor(display, "painter", 1);
+		shell.addDisposeListener(e -> executor.shutdown());
+		BackgroundExecutor previewExecutor = new BackgroundExecutor(display, "preview", 1);
+		shell.addDisposeListener(e -> previewExecutor.shutdown());
+
+		// follow what's set now, so setting it again is skipped without a process
+		// or a password prompt; not painting, so on their own thread with no
+		// progress shown, and each without the other if need be
+		BackgroundExecutor monitorExecutor = new BackgroundExecutor(display, "monitor", 1);
+		shell.addDisposeListener(e -> monitorExecutor.shutdown());
+		monitorExecutor.submit("Watching the login theme", () -> {
+			StylesheetCache.getDefault().watch(Paths.get(CSS_PATH));
+			return null;
+		}, ok -> {
+			// watching
+		}, e -> System.err.println("Not watching the login theme, every set will write it: " + e.getMessage()));
+		monitorExecutor.submit("Following dconf", () -> {
+			DconfMonitor.getDefault().start();
+			return null;
+		}, ok -> {
+			// following
+		}, e -> System.err.println(
+				"Not following the current backgrounds, every set will write them: " + e.getMessage()));
+
 		// window icon
 		shell.setImage(getImage("programmer.png"));
 
@@ -86,20 +140,48 @@ public class Application {
 		browseButton.setImage(getImage("search-folder-24.png"));
 		browseButton.setText("Browse");
 
-		// scroll
-		ScrolledComposite scrolledComposite = new ScrolledComposite(shell, SWT.H_SCROLL | SWT.V_SCROLL);
-		scrolledComposite.setLayout(new GridLayout(1, false));
-		scrolledComposite.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
+		// what the chosen image is, from its header
+		imageInfo = new Label(shell, SWT.NONE);
+		imageInfo.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+
+		// gallery beside the image
+		SashForm sash = new SashForm(shell, SWT.HORIZONTAL);
+		sash.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
+		gallery = new ThumbnailGallery(sash);
+
+		// image area, zoomed and panned
+		ZoomCanvas preview = new ZoomCanvas(sash, previewExecutor);
+		sash.setWeights(new int[] { 1, 2 });
+
+		// render to the screen's size before setting
+		preRender = new Button(shell, SWT.CHECK);
+		preRender.setText("Pre-render images to the screen's resolution");
+		preRender.setToolTipText(
+				"Saves a screen-sized copy of the image for the chosen option and sets that instead, so large images aren't rescaled on every login, unlock and resume.");
+		preRender.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
 
-		// image area
-		canvas = new Canvas(scrolledComposite, SWT.NONE);
-		canvas.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
-		scrolledComposite.setContent(canvas);
+		// frosted look for the lock and login screens
+		blur = new Button(shell, SWT.CHECK);
+		blur.setText("Blur and darken the lock and login screens");
+		blur.setToolTipText(
+				"Saves a blurred, darkened copy of the image and sets that instead, so the shell doesn't have to blur it on every unlock.");
+		blur.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
 
 		// buttons
 		createButtonPanel();
+		createProgressPanel();
 
-		browseButton.addSelectionListener(new BrowseButtonListener(shell, text, canvas));
+		BrowseButtonListener browseListener = new BrowseButtonListener(shell, text, preview, previewExecutor);
+		browseButton.addSelectionListener(browseListener);
+		browseListener.setProbeListener(this::suggestOptions);
+		gallery.setSelectionListener(path -> browseListener.load(path.toString()));
+		text.addModifyListener(e -> {
+			// show the chosen image's siblings
+			Path folder = Paths.get(text.getText().trim()).getParent();
+			if (folder != null && !folder.equals(gallery.getFolder())) {
+				gallery.setFolder(folder);
+			}
+		});
 
 		// event loop
 		shell.open();
@@ -127,6 +209,42 @@ public class Application {
 		createWallpaperControls();
 		createLockScreenControls();
 		createLoginScreenControls();
+		createRotationControls();
+	}
+
+	/**
+	 * Creates the progress bar and cancel button shown while painters run, and the
+	 * close button.
+	 */
+	private void createProgressPanel() {
+		ProgressBar progressBar = new ProgressBar(shell, SWT.HORIZONTAL | SWT.INDETERMINATE);
+		GridData progressData = new GridData(SWT.FILL, SWT.CENTER, true, false);
+		progressBar.setLayoutData(progressData);
+
+		Button cancelBtn = new Button(shell, SWT.PUSH);
+		cancelBtn.setText("Cancel");
+		GridData cancelData = new GridData(SWT.FILL, SWT.CENTER, false, false);
+		cancelBtn.setLayoutData(cancelData);
+		cancelBtn.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				executor.cancelAll();
+			}
+		});
+
+		executor.addProgressListener((pending, description) -> {
+			boolean busy = pending > 0;
+			progressBar.setToolTipText(description);
+			progressBar.setVisible(busy);
+			progressData.exclude = !busy;
+			cancelBtn.setVisible(busy);
+			cancelData.exclude = !busy;
+			shell.layout();
+		});
+		progressBar.setVisible(false);
+		progressData.exclude = true;
+		cancelBtn.setVisible(false);
+		cancelData.exclude = true;
 
 		Button closeBtn = new Button(shell, SWT.PUSH | SWT.WRAP);
 		closeBtn.setText("&Close");
@@ -148,7 +266,7 @@ public class Application {
 		group.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 2, 1));
 		group.setLayout(new GridLayout(2, false));
 
-		Combo loginscreenCombo = new Combo(group, SWT.SIMPLE | SWT.DROP_DOWN | SWT.READ_ONLY);
+		loginscreenCombo = new Combo(group, SWT.SIMPLE | SWT.DROP_DOWN | SWT.READ_ONLY);
 		loginscreenCombo.setItems(new String[] { "contain", "cover" });
 		loginscreenCombo.setText("cover");
 		loginscreenCombo.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false, false));
@@ -160,15 +278,135 @@ public class Application {
 		loginScreenBackground.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				Path cssPath = FileSystems.getDefault().getPath("/usr/share/gnome-shell/theme/gdm3.css");
+				Path cssPath = FileSystems.getDefault().getPath(CSS_PATH);
 				Path imagePath = FileSystems.getDefault().getPath(text.getText().trim());
-				LoginBackgroundPainter painter = new LoginBackgroundPainter(cssPath, imagePath, loginscreenCombo.getText());
-				painter.paint();
+				String option = loginscreenCombo.getText();
+				Rectangle screen = getRenderSize();
+				Effects effects = getEffects();
+				Painter painter = () -> new LoginBackgroundPainter(cssPath,
+						prepare(imagePath, option, screen, effects), option).paint();
+				executor.paint("Setting login screen background", painter, e1 -> new ErrorDialog(shell,
+						"An error occurred setting the login screen background. " + e1.getMessage()).open());
 			}
 		});
 		loginScreenBackground.setEnabled(false);
 	}
 
+	/**
+	 * Creates the controls to rotate through the gallery's folder, either by
+	 * running a {@link RotationScheduler} or by handing GNOME a slideshow.
+	 */
+	private void createRotationControls() {
+		Group group = new Group(shell, SWT.NONE);
+		group.setText("Rotation");
+		group.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 2, 1));
+		group.setLayout(new GridLayout(5, false));
+
+		Label every = new Label(group, SWT.NONE);
+		every.setText("Every");
+		Spinner minutes = new Spinner(group, SWT.BORDER);
+		minutes.setValues(30, 1, 1440, 0, 1, 60);
+		Label unit = new Label(group, SWT.NONE);
+		unit.setText("minutes");
+
+		Button shuffle = new Button(group, SWT.CHECK);
+		shuffle.setText("Shuffle");
+		Button lockScreen = new Button(group, SWT.CHECK);
+		lockScreen.setText("Lock screen too");
+		lockScreen.setSelection(true);
+
+		Button rotate = new Button(group, SWT.PUSH | SWT.WRAP);
+		rotate.setText("Rotate through folder");
+		rotate.setToolTipText("Switches the wallpaper to the next image in the gallery's folder while this runs.");
+		rotate.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+		rotate.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				if (rotation != null) {
+					stopRotation();
+					rotate.setText("Rotate through folder");
+					return;
+				}
+				Path folder = gallery.getFolder();
+				if (folder == null) {
+					new ErrorDialog(shell, "Choose a folder of images first.").open();
+					return;
+				}
+				try {
+					Rectangle screen = getRenderSize();
+					rotation = new RotationScheduler(Playlist.of(folder, shuffle.getSelection()),
+							wallpaperCombo.getText(), lockScreen.getSelection(),
+							screen == null ? null : new Dimension(screen.width, screen.height),
+							BackgroundRenderer.getDefault(), new DconfSettingsBackend());
+				} catch (IOException | IllegalStateException e1) {
+					new ErrorDialog(shell, "An error occurred reading the folder. " + e1.getMessage()).open();
+					return;
+				}
+				rotation.setRotationListener(path -> shell.getDisplay().asyncExec(() -> {
+					if (!text.isDisposed()) {
+						text.setText(path.toString());
+					}
+				}));
+				rotation.setErrorListener(e1 -> shell.getDisplay().asyncExec(() -> {
+					if (!shell.isDisposed()) {
+						new ErrorDialog(shell, "An error occurred rotating the wallpaper. " + e1.getMessage()).open();
+					}
+				}));
+				rotation.start(Duration.ofMinutes(minutes.getSelection()));
+				rotate.setText("Stop rotating");
+			}
+		});
+
+		Button slideshow = new Button(group, SWT.PUSH | SWT.WRAP);
+		slideshow.setText("Save as slideshow");
+		slideshow.setToolTipText("Hands GNOME a slideshow of the gallery's folder so it rotates without us running.");
+		slideshow.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 3, 1));
+		slideshow.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				Path folder = gallery.getFolder();
+				if (folder == null) {
+					new ErrorDialog(shell, "Choose a folder of images first.").open();
+					return;
+				}
+				if (rotation != null) {
+					stopRotation();
+					rotate.setText("Rotate through folder");
+				}
+				boolean shuffled = shuffle.getSelection();
+				boolean lock = lockScreen.getSelection();
+				String option = wallpaperCombo.getText();
+				Duration duration = Duration.ofMinutes(minutes.getSelection());
+				Rectangle screen = getRenderSize();
+				executor.paint("Saving slideshow", () -> {
+					List<Path> images = new ArrayList<>();
+					for (Path image : Playlist.of(folder, shuffled).getImages()) {
+						images.add(prepare(image, option, screen, Effects.NONE));
+					}
+					Path xml = SlideshowWriter.write(SlideshowWriter.getDefaultPath(), images, duration,
+							Duration.ofSeconds(5));
+					SettingsBackend backend = new DconfSettingsBackend();
+					new WallpaperPainter(xml, option, backend).stage();
+					if (lock) {
+						new LockscreenBackgroundPainter(xml, option, backend).stage();
+					}
+					backend.apply();
+				}, e1 -> new ErrorDialog(shell, "An error occurred saving the slideshow. " + e1.getMessage()).open());
+			}
+		});
+		shell.addDisposeListener(e -> stopRotation());
+	}
+
+	/**
+	 * Stops rotating the wallpaper, if it is.
+	 */
+	private void stopRotation() {
+		if (rotation != null) {
+			rotation.stop();
+			rotation = null;
+		}
+	}
+
 	/**
 	 */
 	private void createLockScreenControls() {
@@ -177,7 +415,7 @@ public class Application {
 		group.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 2, 1));
 		group.setLayout(new GridLayout(2, false));
 
-		Combo lockscreenCombo = new Combo(group, SWT.SIMPLE | SWT.DROP_DOWN | SWT.READ_ONLY);
+		lockscreenCombo = new Combo(group, SWT.SIMPLE | SWT.DROP_DOWN | SWT.READ_ONLY);
 		lockscreenCombo.setItems(PICTURE_OPTIONS);
 		lockscreenCombo.setText("zoom");
 		lockscreenCombo.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false, false));
@@ -190,14 +428,13 @@ public class Application {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
 				Path path = FileSystems.getDefault().getPath(text.getText().trim());
-				LockscreenBackgroundPainter painter = new LockscreenBackgroundPainter(path, lockscreenCombo.getText());
-				try {
-					painter.paint();
-				} catch (IOException | InterruptedException e1) {
-					new ErrorDialog(shell, "An error occurred setting the lockscreen background." + e1.getMessage())
-							.open();
-					Thread.currentThread().interrupt();
-				}
+				String option = lockscreenCombo.getText();
+				Rectangle screen = getRenderSize();
+				Effects effects = getEffects();
+				Painter painter = () -> new LockscreenBackgroundPainter(prepare(path, option, screen, effects), option)
+						.paint();
+				executor.paint("Setting lock screen background", painter, e1 -> new ErrorDialog(shell,
+						"An error occurred setting the lockscreen background." + e1.getMessage()).open());
 			}
 		});
 		lockScreenBackground.setEnabled(false);
@@ -211,7 +448,7 @@ public class Application {
 		group.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 2, 1));
 		group.setLayout(new GridLayout(2, false));
 
-		Combo wallpaperCombo = new Combo(group, SWT.SIMPLE | SWT.DROP_DOWN | SWT.READ_ONLY);
+		wallpaperCombo = new Combo(group, SWT.SIMPLE | SWT.DROP_DOWN | SWT.READ_ONLY);
 		wallpaperCombo.setItems(PICTURE_OPTIONS);
 		wallpaperCombo.setText("zoom");
 		wallpaperCombo.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false, false));
@@ -224,18 +461,66 @@ public class Application {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
 				Path path = FileSystems.getDefault().getPath(text.getText().trim());
-				WallpaperPainter painter = new WallpaperPainter(path, wallpaperCombo.getText());
-				try {
-					painter.paint();
-				} catch (IOException | InterruptedException e1) {
-					new ErrorDialog(shell, "An error occurred setting the wallpaper." + e1.getMessage()).open();
-					Thread.currentThread().interrupt();
-				}
+				String option = wallpaperCombo.getText();
+				Rectangle screen = getRenderSize();
+				Painter painter = () -> new WallpaperPainter(prepare(path, option, screen, Effects.NONE), option).paint();
+				executor.paint("Setting desktop wallpaper", painter,
+						e1 -> new ErrorDialog(shell, "An error occurred setting the wallpaper." + e1.getMessage()).open());
 			}
 		});
 		desktopWallpaper.setEnabled(false);
 	}
 
+	/**
+	 * @return {@link Effects} for the lock and login screens
+	 */
+	private Effects getEffects() {
+		return blur.getSelection() ? BLUR_EFFECTS : Effects.NONE;
+	}
+
+	/**
+	 * @return {@link Rectangle} of the primary monitor if images are to be
+	 *         pre-rendered, else null
+	 */
+	private Rectangle getRenderSize() {
+		return preRender.getSelection() ? shell.getDisplay().getPrimaryMonitor().getBounds() : null;
+	}
+
+	/**
+	 * Renders the provided image to the provided screen size for the provided
+	 * option, then applies the provided effects. Runs in the background.
+	 * 
+	 * @param path    {@link Path} of the chosen image
+	 * @param option  {@link String} picture option
+	 * @param screen  {@link Rectangle}, null to use the image as is
+	 * @param effects {@link Effects}
+	 * @return {@link Path} of the image to set
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException if cancelled
+	 */
+	private static Path prepare(Path path, String option, Rectangle screen, Effects effects)
+			throws IOException, InterruptedException {
+		BackgroundRenderer renderer = BackgroundRenderer.getDefault();
+		Path rendered = screen == null ? path : renderer.render(path, screen.width, screen.height, option);
+		return renderer.applyEffects(rendered, effects);
+	}
+
+	/**
+	 * Shows what the chosen image is and picks the options that suit it on the
+	 * primary monitor.
+	 * 
+	 * @param info {@link ImageInfo}
+	 */
+	private void suggestOptions(ImageInfo info) {
+		Rectangle screen = shell.getDisplay().getPrimaryMonitor().getBounds();
+		String option = info.suggestOption(screen.width, screen.height);
+		imageInfo.setText(info + ", " + option + " suggested for your " + screen.width + " x " + screen.height
+				+ " screen");
+		wallpaperCombo.setText(option);
+		lockscreenCombo.setText(option);
+		loginscreenCombo.setText(info.suggestLoginOption(screen.width, screen.height));
+	}
+
 	/**
 	 * Gets the image of the provided filename.
 	 * 
@@ -3,8 +3,14 @@
  */
 package ca.footeware.backgrounder;
 
+import java.util.Arrays;
+
+import ca.footeware.backgrounder.cli.HeadlessRunner;
+import ca.footeware.backgrounder.instrumentation.StageStats;
+
 /**
- * Entry point.
+ * Entry point. Opens the window, or with arguments sets the backgrounds they
+ * ask for without loading SWT at all.
  * 
  * @author Footeware.ca
  *
@@ -14,9 +20,20 @@ public class Main {
 	/**
 	 * Entry point.
 	 * 
-	 * @param args {@link String} array
+	 * @param args {@link String} array, see {@link HeadlessRunner}, plus
+	 *             <code>--stats</code> in any mode to print how long each stage
+	 *             took on exit
 	 */
 	public static void main(String[] args) {
+		if (Arrays.asList(args).contains("--stats")) {
+			StageStats.enable(System.err);
+			args = Arrays.stream(args).filter(arg -> !"--stats".equals(arg)).toArray(String[]::new);
+		}
+		if (args.length > 0) {
+			// keep AWT, used for images, away from the display too
+			System.setProperty("java.awt.headless", "true");
+			System.exit(new HeadlessRunner().run(args));
+		}
 		new Application();
 	}
 
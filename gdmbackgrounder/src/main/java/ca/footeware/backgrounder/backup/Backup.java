@@ -0,0 +1,80 @@
+package ca.footeware.backgrounder.backup;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * One version of a file in the {@link BackupStore}: what it held just before
+ * it was replaced.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class Backup {
+
+	/**
+	 * How many hex digits of the hash make up the ID shown to people.
+	 */
+	static final int ID_LENGTH = 12;
+
+	private final String hash;
+	private final long size;
+	private final Path source;
+	private final Instant time;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param source {@link Path} of the file backed up
+	 * @param time   {@link Instant} it was backed up
+	 * @param hash   {@link String} hex SHA-256 of its contents
+	 * @param size   long bytes, uncompressed
+	 */
+	Backup(Path source, Instant time, String hash, long size) {
+		this.source = source;
+		this.time = time;
+		this.hash = hash;
+		this.size = size;
+	}
+
+	/**
+	 * @return {@link String} hex SHA-256 of the contents
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return {@link String} short ID, the start of the hash
+	 */
+	public String getId() {
+		return hash.substring(0, ID_LENGTH);
+	}
+
+	/**
+	 * @return long bytes, uncompressed
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return {@link Path} of the file backed up
+	 */
+	public Path getSource() {
+		return source;
+	}
+
+	/**
+	 * @return {@link Instant} it was backed up, i.e. replaced
+	 */
+	public Instant getTime() {
+		return time;
+	}
+
+	@Override
+	public String toString() {
+		return getId() + "  " + time + "  " + size + " bytes";
+	}
+
+}
@@ -0,0 +1,303 @@
+package ca.footeware.backgrounder.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import ca.footeware.backgrounder.io.AtomicFiles;
+
+/**
+ * Keeps earlier versions of files, the login theme in particular, so any of
+ * them can be put back. Contents are stored once per SHA-256, gzipped, however
+ * many times they're backed up, and backing up what was backed up last time
+ * writes nothing. An index lists, per file, when each version was replaced.
+ * Only the newest versions of each file are kept.
+ * <p>
+ * Lives in <code>$XDG_DATA_HOME/backgrounder/backups</code>:
+ *
+ * <pre>
+ * index                 time, hash, size and file, one version per line
+ * lock                  held while the index is read and written
+ * objects/HASH.gz       contents
+ * </pre>
+ *
+ * @author Footeware.ca
+ *
+ */
+public class BackupStore {
+
+	private static final BackupStore DEFAULT = new BackupStore(getDefaultDirectory(), 50);
+	private final Path directory;
+	private final int maxVersions;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory   {@link Path} to keep backups in
+	 * @param maxVersions int versions to keep of each file, oldest go first
+	 */
+	public BackupStore(Path directory, int maxVersions) {
+		this.directory = directory;
+		this.maxVersions = maxVersions;
+	}
+
+	/**
+	 * @return {@link BackupStore} in the user's data folder
+	 */
+	public static BackupStore getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return {@link Path} of <code>$XDG_DATA_HOME/backgrounder/backups</code>
+	 */
+	public static Path getDefaultDirectory() {
+		String data = System.getenv("XDG_DATA_HOME");
+		Path base = data == null || data.isEmpty() ? Paths.get(System.getProperty("user.home"), ".local", "share")
+				: Paths.get(data);
+		return base.resolve("backgrounder").resolve("backups");
+	}
+
+	/**
+	 * @param content byte array
+	 * @return {@link String} hex SHA-256
+	 */
+	private static String hash(byte[] content) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param path {@link Path}
+	 * @return {@link Path} absolute and normalized, as the index holds it
+	 */
+	private static Path key(Path path) {
+		return path.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Finds the version with the provided ID, or any longer prefix of its hash.
+	 *
+	 * @param source {@link Path} of the file backed up
+	 * @param id     {@link String}
+	 * @return {@link Backup}, null if there's none
+	 * @throws IOException when the index can't be read
+	 */
+	public Backup find(Path source, String id) throws IOException {
+		List<Backup> matches = list(source).stream().filter(backup -> backup.getHash().startsWith(id))
+				.collect(Collectors.toList());
+		if (matches.stream().map(Backup::getHash).distinct().count() > 1) {
+			throw new IllegalStateException("More than one backup starts with " + id + ", use more of it.");
+		}
+		return matches.isEmpty() ? null : matches.get(0);
+	}
+
+	/**
+	 * Finds what the provided file held at the provided time. Each version is
+	 * backed up when it's replaced, so that's the first one backed up after that
+	 * time.
+	 *
+	 * @param source {@link Path} of the file backed up
+	 * @param time   {@link Instant}
+	 * @return {@link Backup}, null if the file hasn't changed since
+	 * @throws IOException when the index can't be read
+	 */
+	public Backup findAt(Path source, Instant time) throws IOException {
+		Backup found = null;
+		for (Backup backup : list(source)) {
+			if (!backup.getTime().isAfter(time)) {
+				break;
+			}
+			found = backup;
+		}
+		return found;
+	}
+
+	/**
+	 * @param source {@link Path} of the file backed up
+	 * @return {@link List} of its versions, newest first
+	 * @throws IOException when the index can't be read
+	 */
+	public synchronized List<Backup> list(Path source) throws IOException {
+		Path key = key(source);
+		List<Backup> backups = readIndex().stream().filter(backup -> backup.getSource().equals(key))
+				.collect(Collectors.toList());
+		backups.sort(Comparator.comparing(Backup::getTime).reversed());
+		return backups;
+	}
+
+	/**
+	 * Opens the lock file and waits for the lock, for other processes sharing the
+	 * store.
+	 *
+	 * @return {@link FileChannel} holding the lock until it's closed
+	 * @throws IOException when the lock file can't be opened
+	 */
+	private FileChannel lock() throws IOException {
+		Files.createDirectories(directory.resolve("objects"));
+		FileChannel channel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		try {
+			channel.lock();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		return channel;
+	}
+
+	/**
+	 * @param hash {@link String}
+	 * @return {@link Path} of the contents with the provided hash
+	 */
+	private Path object(String hash) {
+		return directory.resolve("objects").resolve(hash + ".gz");
+	}
+
+	/**
+	 * Drops the oldest versions of the provided file beyond the limit, then any
+	 * contents nothing refers to any more.
+	 *
+	 * @param index {@link List} of every {@link Backup}, pruned in place
+	 * @param key   {@link Path} of the file just backed up
+	 * @throws IOException when contents can't be deleted
+	 */
+	private void prune(List<Backup> index, Path key) throws IOException {
+		List<Backup> versions = index.stream().filter(backup -> backup.getSource().equals(key))
+				.sorted(Comparator.comparing(Backup::getTime).reversed()).collect(Collectors.toList());
+		if (versions.size() <= maxVersions) {
+			return;
+		}
+		index.removeAll(versions.subList(maxVersions, versions.size()));
+		Set<String> referenced = new HashSet<>();
+		for (Backup backup : index) {
+			referenced.add(backup.getHash() + ".gz");
+		}
+		try (Stream<Path> objects = Files.list(directory.resolve("objects"))) {
+			for (Path object : (Iterable<Path>) objects::iterator) {
+				if (!referenced.contains(object.getFileName().toString())) {
+					Files.deleteIfExists(object);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the contents of the provided version back, checking they're intact.
+	 *
+	 * @param backup {@link Backup}
+	 * @return byte array
+	 * @throws IOException when they can't be read or have been damaged
+	 */
+	public byte[] read(Backup backup) throws IOException {
+		byte[] content;
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(object(backup.getHash())))) {
+			content = in.readAllBytes();
+		}
+		if (!hash(content).equals(backup.getHash())) {
+			throw new IOException("Backup " + backup.getId() + " has been damaged.");
+		}
+		return content;
+	}
+
+	/**
+	 * @return {@link List} of every {@link Backup}, in the order they were made
+	 * @throws IOException when the index can't be read
+	 */
+	private List<Backup> readIndex() throws IOException {
+		List<Backup> index = new ArrayList<>();
+		Path path = directory.resolve("index");
+		if (!Files.exists(path)) {
+			return index;
+		}
+		for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+			String[] fields = line.split("\t", 4);
+			if (fields.length == 4) {
+				try {
+					index.add(new Backup(Paths.get(fields[3]), Instant.ofEpochMilli(Long.parseLong(fields[0])),
+							fields[1], Long.parseLong(fields[2])));
+				} catch (NumberFormatException e) {
+					// half a line from a crash, skip it
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Backs up the provided contents of the provided file, unless they're what was
+	 * backed up last time.
+	 *
+	 * @param source  {@link Path} of the file about to be replaced
+	 * @param content byte array it holds now
+	 * @return {@link Backup} of the contents, possibly an existing one
+	 * @throws IOException when the store can't be written
+	 */
+	public synchronized Backup save(Path source, byte[] content) throws IOException {
+		Path key = key(source);
+		String hash = hash(content);
+		FileChannel lock = lock();
+		try (lock) {
+			List<Backup> index = readIndex();
+			Backup latest = null;
+			for (Backup backup : index) {
+				if (backup.getSource().equals(key)
+						&& (latest == null || !backup.getTime().isBefore(latest.getTime()))) {
+					latest = backup;
+				}
+			}
+			if (latest != null && latest.getHash().equals(hash)) {
+				return latest;
+			}
+			Path object = object(hash);
+			if (!Files.exists(object)) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4);
+				try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+					out.write(content);
+				}
+				AtomicFiles.write(object, bytes.toByteArray());
+			}
+			Backup backup = new Backup(key, Instant.now(), hash, content.length);
+			index.add(backup);
+			prune(index, key);
+			writeIndex(index);
+			return backup;
+		}
+	}
+
+	/**
+	 * @param index {@link List} of every {@link Backup}
+	 * @throws IOException when the index can't be written
+	 */
+	private void writeIndex(List<Backup> index) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (Backup backup : index) {
+			builder.append(backup.getTime().toEpochMilli()).append('\t').append(backup.getHash()).append('\t')
+					.append(backup.getSize()).append('\t').append(backup.getSource()).append('\n');
+		}
+		AtomicFiles.write(directory.resolve("index"), builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+}
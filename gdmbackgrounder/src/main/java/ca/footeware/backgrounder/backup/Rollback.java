@@ -0,0 +1,61 @@
+package ca.footeware.backgrounder.backup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import ca.footeware.backgrounder.css.StylesheetCache;
+import ca.footeware.backgrounder.privileged.PrivilegedSession;
+
+/**
+ * Puts an earlier version of a file from the {@link BackupStore} back in place,
+ * under one elevation like the painters, keeping the file's owner and mode.
+ * What's there now is backed up first, so a rollback can be rolled back too.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class Rollback {
+
+	private final StylesheetCache cache;
+	private final BackupStore store;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param store {@link BackupStore}
+	 * @param cache {@link StylesheetCache} to keep up to date
+	 */
+	public Rollback(BackupStore store, StylesheetCache cache) {
+		this.store = store;
+		this.cache = cache;
+	}
+
+	/**
+	 * Restores the provided version.
+	 *
+	 * @param backup {@link Backup}
+	 * @throws IOException          when the backup can't be read or the file
+	 *                              written
+	 * @throws InterruptedException when cancelled while waiting on pkexec
+	 */
+	public void restore(Backup backup) throws IOException, InterruptedException {
+		Path path = backup.getSource();
+		byte[] content = store.read(backup);
+		store.save(path, Files.readAllBytes(path));
+		Map<String, Object> attributes = Files.readAttributes(path, "unix:uid,gid,mode");
+		PrivilegedSession session = new PrivilegedSession();
+		session.write(path, content);
+		session.owner(path, (Integer) attributes.get("uid"), (Integer) attributes.get("gid"));
+		session.mode(path, (Integer) attributes.get("mode"));
+		try {
+			session.commit();
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			cache.invalidate(path);
+			throw e;
+		}
+		cache.update(path, content);
+	}
+
+}
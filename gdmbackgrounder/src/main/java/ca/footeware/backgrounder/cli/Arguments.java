@@ -0,0 +1,386 @@
+package ca.footeware.backgrounder.cli;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import ca.footeware.backgrounder.images.Effects;
+import ca.footeware.backgrounder.painters.GSettingsPainter;
+import ca.footeware.backgrounder.painters.LoginBackgroundPainter;
+import ca.footeware.backgrounder.painters.LoginChoice;
+
+/**
+ * The command line options for running without the GUI.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class Arguments {
+
+	/**
+	 * Thrown for command lines that don't make sense.
+	 */
+	public static class UsageException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param message {@link String}
+		 */
+		public UsageException(String message) {
+			super(message);
+		}
+	}
+
+	private static final String DEFAULT_CSS_PATH = "/usr/share/gnome-shell/theme/gdm3.css";
+
+	/**
+	 * How to use the command line.
+	 */
+	public static final String USAGE = String.join(System.lineSeparator(), //
+			"Usage: backgrounder [options]", //
+			"With no options, opens the window.", //
+			"", //
+			"  --wallpaper IMAGE       set the desktop wallpaper", //
+			"  --lock IMAGE            set the lock screen background", //
+			"  --login IMAGE           set the login screen background (asks for a password)", //
+			"  --image IMAGE           set all three", //
+			"  --option OPTION         wallpaper and lock screen picture option:", //
+			"                          none, wallpaper, centered, scaled, stretched, zoom (default) or spanned", //
+			"  --login-option OPTION   login screen background size: contain or cover (default)", //
+			"  --css-path PATH         login theme stylesheet (default " + DEFAULT_CSS_PATH + "),", //
+			"                          or a .gresource bundle holding it", //
+			"  --pre-render WxH        render the images to this screen size first", //
+			"  --blur RADIUS           blur the lock and login screens, in pixels up to " + Effects.MAX_BLUR, //
+			"  --dim PERCENT           darken the lock and login screens by this much", //
+			"  --system-db NAME        set the wallpaper and lock screen as locked defaults for every user, in", //
+			"                          the dconf database /etc/dconf/db/NAME, e.g. local (asks for a password)", //
+			"  --profile NAME          the dconf profile --system-db points at the database (default user)", //
+			"  --root PATH             write --system-db's files under this folder instead of /", //
+			"  --daemon                stay running and take requests on a socket instead", //
+			"  --socket PATH           the daemon's socket (default $XDG_RUNTIME_DIR/backgrounder.sock)", //
+			"  --backups               list the login theme's backed up versions, newest first", //
+			"  --rollback ID|TIME      put back the login theme version with this ID, or as it was at this", //
+			"                          time, e.g. 2026-10-17T09:30 (asks for a password)", //
+			"  --watch                 stay running and put the login screen background back whenever the", //
+			"                          theme is replaced, e.g. by a gnome-shell upgrade (asks for a password)", //
+			"  --choice FILE           the remembered login screen background --watch and --rollback use, for", //
+			"                          running as root, e.g. from a systemd unit, where there's no password to", //
+			"                          ask for (default $XDG_CONFIG_HOME/backgrounder/login.properties)", //
+			"  --stats                 print how long each stage took on exit, works with no other options too", //
+			"  --help                  show this", //
+			"", //
+			"Exit status is 0 on success, 1 if setting a background failed and 2 for a bad command line or image.");
+
+	private boolean backups;
+	private int blur;
+	private Path choice;
+	private Path cssPath = Paths.get(DEFAULT_CSS_PATH);
+	private boolean daemon;
+	private int dim;
+	private boolean help;
+	private Path lock;
+	private Path login;
+	private String loginOption = "cover";
+	private String option = "zoom";
+	private String profile = "user";
+	private int renderHeight;
+	private int renderWidth;
+	private String rollback;
+	private Path root = Paths.get("/");
+	private Path socket;
+	private String systemDb;
+	private Path wallpaper;
+	private boolean watch;
+
+	/**
+	 * @param args {@link String} array, each option either followed by its
+	 *             value or joined to it with '='
+	 * @return {@link Arguments}
+	 * @throws UsageException when the command line doesn't make sense
+	 */
+	public static Arguments parse(String[] args) throws UsageException {
+		Arguments arguments = new Arguments();
+		for (int i = 0; i < args.length; i++) {
+			String name = args[i];
+			String value = null;
+			int equals = name.indexOf('=');
+			if (name.startsWith("--") && equals > 0) {
+				value = name.substring(equals + 1);
+				name = name.substring(0, equals);
+			}
+			if ("--help".equals(name) || "-h".equals(name)) {
+				arguments.help = true;
+				continue;
+			}
+			if ("--daemon".equals(name)) {
+				arguments.daemon = true;
+				continue;
+			}
+			if ("--backups".equals(name)) {
+				arguments.backups = true;
+				continue;
+			}
+			if ("--watch".equals(name)) {
+				arguments.watch = true;
+				continue;
+			}
+			if (value == null) {
+				if (i + 1 >= args.length) {
+					throw new UsageException(name + " needs a value.");
+				}
+				value = args[++i];
+			}
+			switch (name) {
+			case "--wallpaper":
+				arguments.wallpaper = Paths.get(value).toAbsolutePath();
+				break;
+			case "--lock":
+				arguments.lock = Paths.get(value).toAbsolutePath();
+				break;
+			case "--login":
+				arguments.login = Paths.get(value).toAbsolutePath();
+				break;
+			case "--image":
+				arguments.wallpaper = Paths.get(value).toAbsolutePath();
+				arguments.lock = arguments.wallpaper;
+				arguments.login = arguments.wallpaper;
+				break;
+			case "--option":
+				if (!GSettingsPainter.PICTURE_OPTIONS.contains(value)) {
+					throw new UsageException(
+							"--option must be one of " + String.join(", ", GSettingsPainter.PICTURE_OPTIONS) + ".");
+				}
+				arguments.option = value;
+				break;
+			case "--login-option":
+				arguments.loginOption = value;
+				break;
+			case "--css-path":
+				arguments.cssPath = Paths.get(value);
+				break;
+			case "--pre-render":
+				arguments.parseSize(value);
+				break;
+			case "--blur":
+				arguments.blur = parseNumber(name, value, Effects.MAX_BLUR);
+				break;
+			case "--dim":
+				arguments.dim = parseNumber(name, value, 100);
+				break;
+			case "--choice":
+				arguments.choice = Paths.get(value);
+				break;
+			case "--socket":
+				arguments.socket = Paths.get(value);
+				break;
+			case "--rollback":
+				arguments.rollback = value;
+				break;
+			case "--system-db":
+				if (!value.matches("[A-Za-z0-9_.-]+") || value.startsWith(".")) {
+					throw new UsageException("--system-db needs a database name like local.");
+				}
+				arguments.systemDb = value;
+				break;
+			case "--profile":
+				if (!value.matches("[A-Za-z0-9_.-]+") || value.startsWith(".")) {
+					throw new UsageException("--profile needs a dconf profile name like user.");
+				}
+				arguments.profile = value;
+				break;
+			case "--root":
+				arguments.root = Paths.get(value);
+				break;
+			default:
+				throw new UsageException("Unknown option " + name + ".");
+			}
+		}
+		if (!arguments.help && !arguments.daemon && !arguments.backups && !arguments.watch
+				&& arguments.rollback == null && arguments.wallpaper == null && arguments.lock == null
+				&& arguments.login == null) {
+			throw new UsageException("Nothing to set, use --wallpaper, --lock, --login or --image.");
+		}
+		if (!LoginBackgroundPainter.BACKGROUND_SIZES.contains(arguments.loginOption)) {
+			throw new UsageException("--login-option must be contain or cover.");
+		}
+		return arguments;
+	}
+
+	/**
+	 * @return {@link Path} of the remembered {@link LoginChoice}
+	 */
+	public Path getChoice() {
+		return choice == null ? LoginChoice.getDefaultFile() : choice;
+	}
+
+	/**
+	 * @return {@link Path} of the login theme stylesheet
+	 */
+	public Path getCssPath() {
+		return cssPath;
+	}
+
+	/**
+	 * @return {@link Effects} for the lock and login screens
+	 */
+	public Effects getEffects() {
+		return new Effects(blur, dim);
+	}
+
+	/**
+	 * @return {@link Path} of the lock screen image, null to leave it be
+	 */
+	public Path getLock() {
+		return lock;
+	}
+
+	/**
+	 * @return {@link Path} of the login screen image, null to leave it be
+	 */
+	public Path getLogin() {
+		return login;
+	}
+
+	/**
+	 * @return {@link String} CSS background-size for the login screen
+	 */
+	public String getLoginOption() {
+		return loginOption;
+	}
+
+	/**
+	 * @return {@link String} picture option for the wallpaper and lock screen
+	 */
+	public String getOption() {
+		return option;
+	}
+
+	/**
+	 * @return {@link String} name of the dconf profile to point at the system
+	 *         database
+	 */
+	public String getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return int screen height to render to, 0 to not
+	 */
+	public int getRenderHeight() {
+		return renderHeight;
+	}
+
+	/**
+	 * @return int screen width to render to, 0 to not
+	 */
+	public int getRenderWidth() {
+		return renderWidth;
+	}
+
+	/**
+	 * @return {@link String} ID or time of the login theme version to put back,
+	 *         null for none
+	 */
+	public String getRollback() {
+		return rollback;
+	}
+
+	/**
+	 * @return {@link Path} standing in for / when writing system files
+	 */
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return {@link Path} of the daemon's socket, null for the default
+	 */
+	public Path getSocket() {
+		return socket;
+	}
+
+	/**
+	 * @return {@link String} name of the system dconf database to set defaults
+	 *         in, null to set the current user's
+	 */
+	public String getSystemDb() {
+		return systemDb;
+	}
+
+	/**
+	 * @return {@link Path} of the desktop wallpaper image, null to leave it be
+	 */
+	public Path getWallpaper() {
+		return wallpaper;
+	}
+
+	/**
+	 * @return true if asked to list the login theme's backups
+	 */
+	public boolean isBackups() {
+		return backups;
+	}
+
+	/**
+	 * @return true if asked to run as a daemon
+	 */
+	public boolean isDaemon() {
+		return daemon;
+	}
+
+	/**
+	 * @return true if asked for help
+	 */
+	public boolean isHelp() {
+		return help;
+	}
+
+	/**
+	 * @return true if asked to watch the login theme
+	 */
+	public boolean isWatch() {
+		return watch;
+	}
+
+	/**
+	 * @param name  {@link String} of the option, for errors
+	 * @param value {@link String}
+	 * @param max   int largest allowed
+	 * @return int from 0 to max
+	 * @throws UsageException when it isn't
+	 */
+	private static int parseNumber(String name, String value, int max) throws UsageException {
+		int number = -1;
+		try {
+			number = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		if (number < 0 || number > max) {
+			throw new UsageException(name + " needs a number from 0 to " + max + ".");
+		}
+		return number;
+	}
+
+	/**
+	 * @param value {@link String} like 1920x1080
+	 * @throws UsageException when it isn't
+	 */
+	private void parseSize(String value) throws UsageException {
+		String[] parts = value.split("x");
+		try {
+			if (parts.length == 2) {
+				renderWidth = Integer.parseInt(parts[0]);
+				renderHeight = Integer.parseInt(parts[1]);
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		if (renderWidth <= 0 || renderHeight <= 0) {
+			throw new UsageException("--pre-render needs a size like 1920x1080.");
+		}
+	}
+
+}
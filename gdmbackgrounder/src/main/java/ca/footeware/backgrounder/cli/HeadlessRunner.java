@@ -0,0 +1,380 @@
+package ca.footeware.backgrounder.cli;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import ca.footeware.backgrounder.backup.Backup;
+import ca.footeware.backgrounder.backup.BackupStore;
+import ca.footeware.backgrounder.backup.Rollback;
+import ca.footeware.backgrounder.css.StylesheetCache;
+import ca.footeware.backgrounder.daemon.Coalescer;
+import ca.footeware.backgrounder.daemon.DaemonServer;
+import ca.footeware.backgrounder.images.BackgroundRenderer;
+import ca.footeware.backgrounder.images.Effects;
+import ca.footeware.backgrounder.images.ImageProbe;
+import ca.footeware.backgrounder.io.FileIdentity;
+import ca.footeware.backgrounder.painters.LockscreenBackgroundPainter;
+import ca.footeware.backgrounder.painters.LoginBackgroundPainter;
+import ca.footeware.backgrounder.painters.LoginChoice;
+import ca.footeware.backgrounder.painters.WallpaperPainter;
+import ca.footeware.backgrounder.settings.DconfMonitor;
+import ca.footeware.backgrounder.settings.DconfSettingsBackend;
+import ca.footeware.backgrounder.settings.SettingsBackend;
+import ca.footeware.backgrounder.settings.SystemDconfSettingsBackend;
+import ca.footeware.backgrounder.watch.FileWatcher;
+
+/**
+ * Sets backgrounds straight from the command line, for scripts, or runs as a
+ * {@link DaemonServer} for scripts that set them often. Calls the painters
+ * directly and never touches SWT, so nothing of GTK gets loaded.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class HeadlessRunner {
+
+	/**
+	 * Exit status when setting a background failed.
+	 */
+	public static final int EXIT_FAILURE = 1;
+	/**
+	 * Exit status when all went well.
+	 */
+	public static final int EXIT_OK = 0;
+	/**
+	 * Exit status for a bad command line.
+	 */
+	public static final int EXIT_USAGE = 2;
+	/**
+	 * How long daemon requests have to stop coming before they're applied.
+	 */
+	private static final long QUIET_MILLIS = 200;
+	/**
+	 * Longest a daemon request waits, however busy it gets.
+	 */
+	private static final long MAX_DELAY_MILLIS = 2000;
+	/**
+	 * How long the login theme has to be left alone before it's checked, long
+	 * enough for a package install to finish with it.
+	 */
+	private static final long WATCH_QUIET_MILLIS = 2000;
+	private final SettingsBackend backend;
+	private final PrintStream err;
+	private final PrintStream out;
+	private final BackgroundRenderer renderer;
+	private final BackupStore store;
+	private final long watchQuietMillis;
+
+	/**
+	 * Constructor writing through dconf and to the standard streams.
+	 */
+	public HeadlessRunner() {
+		this(new DconfSettingsBackend(), BackgroundRenderer.getDefault(), System.out, System.err);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param backend  {@link SettingsBackend} for the wallpaper and lock screen
+	 * @param renderer {@link BackgroundRenderer} for --pre-render
+	 * @param out      {@link PrintStream} for help
+	 * @param err      {@link PrintStream} for errors
+	 */
+	public HeadlessRunner(SettingsBackend backend, BackgroundRenderer renderer, PrintStream out, PrintStream err) {
+		this(backend, renderer, BackupStore.getDefault(), WATCH_QUIET_MILLIS, out, err);
+	}
+
+	/**
+	 * Constructor for tests, keeping backups elsewhere and watching faster.
+	 *
+	 * @param backend          {@link SettingsBackend} for the wallpaper and lock
+	 *                         screen
+	 * @param renderer         {@link BackgroundRenderer} for --pre-render
+	 * @param store            {@link BackupStore} for the login theme
+	 * @param watchQuietMillis long the login theme has to be left alone for
+	 *                         before --watch checks it
+	 * @param out              {@link PrintStream} for help
+	 * @param err              {@link PrintStream} for errors
+	 */
+	HeadlessRunner(SettingsBackend backend, BackgroundRenderer renderer, BackupStore store, long watchQuietMillis,
+			PrintStream out, PrintStream err) {
+		this.backend = backend;
+		this.renderer = renderer;
+		this.store = store;
+		this.watchQuietMillis = watchQuietMillis;
+		this.out = out;
+		this.err = err;
+	}
+
+	/**
+	 * Lists the login theme's backed up versions, newest first.
+	 *
+	 * @param arguments {@link Arguments}
+	 * @throws IOException when the backups can't be read
+	 */
+	private void listBackups(Arguments arguments) throws IOException {
+		List<Backup> backups = store.list(arguments.getCssPath());
+		if (backups.isEmpty()) {
+			out.println("No backups of " + arguments.getCssPath());
+		}
+		for (Backup backup : backups) {
+			out.println(backup);
+		}
+	}
+
+	/**
+	 * @param value {@link String} like 2026-10-17T09:30, in local time, or an
+	 *              instant like 2026-10-17T13:30:00Z
+	 * @return {@link Instant}, null if it isn't a time
+	 */
+	private static Instant parseTime(String value) {
+		try {
+			return Instant.parse(value);
+		} catch (DateTimeParseException e) {
+			// try local
+		}
+		try {
+			return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant();
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param arguments {@link Arguments}
+	 * @param image     {@link Path}
+	 * @param option    {@link String}
+	 * @param effects   {@link Effects} to apply after rendering
+	 * @return {@link Path} of the image rendered to the requested screen size
+	 *         with the effects applied, or the image itself if neither was
+	 *         requested
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException if interrupted
+	 */
+	private Path prepare(Arguments arguments, Path image, String option, Effects effects)
+			throws IOException, InterruptedException {
+		Path rendered = arguments.getRenderWidth() == 0 ? image
+				: renderer.render(image, arguments.getRenderWidth(), arguments.getRenderHeight(), option);
+		return renderer.applyEffects(rendered, effects);
+	}
+
+	/**
+	 * Parses the command line and sets what it asks for.
+	 *
+	 * @param args {@link String} array
+	 * @return int exit status
+	 */
+	public int run(String[] args) {
+		Arguments arguments;
+		try {
+			arguments = Arguments.parse(args);
+		} catch (Arguments.UsageException e) {
+			err.println(e.getMessage());
+			err.println(Arguments.USAGE);
+			return EXIT_USAGE;
+		}
+		if (arguments.isHelp()) {
+			out.println(Arguments.USAGE);
+			return EXIT_OK;
+		}
+		for (Path image : new Path[] { arguments.getWallpaper(), arguments.getLock(), arguments.getLogin() }) {
+			if (image != null && !Files.isRegularFile(image)) {
+				err.println("No such image: " + image);
+				return EXIT_USAGE;
+			}
+			if (image != null) {
+				try {
+					ImageProbe.probe(image);
+				} catch (IOException e) {
+					err.println("Not a usable image: " + e.getMessage());
+					return EXIT_USAGE;
+				}
+			}
+		}
+		try {
+			if (arguments.isBackups()) {
+				listBackups(arguments);
+			} else if (arguments.getRollback() != null) {
+				rollback(arguments);
+			} else if (arguments.isDaemon()) {
+				serve(arguments);
+			} else if (arguments.isWatch()) {
+				watch(arguments);
+			} else {
+				run(arguments);
+			}
+			return EXIT_OK;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			err.println("Interrupted.");
+			return EXIT_FAILURE;
+		} catch (IOException | RuntimeException e) {
+			err.println("An error occurred setting the background. " + e.getMessage());
+			return EXIT_FAILURE;
+		}
+	}
+
+	/**
+	 * Paints the remembered login screen background again, if the theme no longer
+	 * has it, and says so. Errors are reported rather than thrown, the next
+	 * change may go better.
+	 *
+	 * @param file {@link Path} the {@link LoginChoice} is remembered in
+	 */
+	private void reapply(Path file) {
+		try {
+			restore(file);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException | RuntimeException e) {
+			err.println("An error occurred putting the login screen background back. " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Paints the remembered login screen background again, if the theme no longer
+	 * has it, and says so.
+	 *
+	 * @param file {@link Path} the {@link LoginChoice} is remembered in
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException if interrupted
+	 */
+	private void restore(Path file) throws IOException, InterruptedException {
+		// read afresh, it may have been chosen again since
+		LoginChoice choice = LoginChoice.load(file);
+		if (choice == null) {
+			return;
+		}
+		Path cssPath = choice.getCssPath();
+		FileIdentity before = FileIdentity.of(cssPath);
+		// it's remembered already, and root mustn't take over the user's file
+		new LoginBackgroundPainter(cssPath, choice.getImagePath(), choice.getOption(), StylesheetCache.getDefault(),
+				store, null).paint();
+		if (!before.equals(FileIdentity.of(cssPath))) {
+			out.println("Put the login screen background back in " + cssPath);
+		}
+	}
+
+	/**
+	 * Puts back the login theme version asked for, by ID or by time.
+	 *
+	 * @param arguments {@link Arguments}
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException if interrupted
+	 */
+	private void rollback(Arguments arguments) throws IOException, InterruptedException {
+		Path cssPath = arguments.getCssPath();
+		String wanted = arguments.getRollback();
+		Backup backup = store.find(cssPath, wanted);
+		if (backup == null) {
+			Instant time = parseTime(wanted);
+			if (time == null) {
+				throw new IllegalStateException("No backup " + wanted + " of " + cssPath + ".");
+			}
+			backup = store.findAt(cssPath, time);
+			if (backup == null) {
+				out.println(cssPath + " hasn't changed since then.");
+				return;
+			}
+		}
+		new Rollback(store, StylesheetCache.getDefault()).restore(backup);
+		// what was chosen isn't wanted any more, don't let --watch put it back
+		Files.deleteIfExists(arguments.getChoice());
+		out.println("Put back " + backup.getId() + ", replaced " + backup.getTime());
+	}
+
+	/**
+	 * Runs as a daemon until asked to quit.
+	 *
+	 * @param arguments {@link Arguments}
+	 * @throws IOException when the socket can't be created
+	 */
+	private void serve(Arguments arguments) throws IOException {
+		Dimension screen = arguments.getRenderWidth() == 0 ? null
+				: new Dimension(arguments.getRenderWidth(), arguments.getRenderHeight());
+		Coalescer coalescer = new Coalescer(backend, arguments.getCssPath(), StylesheetCache.getDefault(), screen,
+				renderer, QUIET_MILLIS, MAX_DELAY_MILLIS);
+		// follow what's set now, so requests for it again are skipped
+		try {
+			StylesheetCache.getDefault().watch(arguments.getCssPath());
+			DconfMonitor.getDefault().start();
+		} catch (IOException e) {
+			err.println("Not following current backgrounds, every request will be written: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		Path socket = arguments.getSocket() == null ? DaemonServer.getDefaultSocketPath() : arguments.getSocket();
+		DaemonServer server = new DaemonServer(socket, coalescer);
+		out.println("Listening on " + socket);
+		server.run();
+	}
+
+	/**
+	 * Sets the wallpaper and lock screen together with one settings write, the
+	 * current user's or the system's defaults, then the login screen. Any blur
+	 * and dim only go on the lock and login screens.
+	 *
+	 * @param arguments {@link Arguments}
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException if interrupted
+	 */
+	private void run(Arguments arguments) throws IOException, InterruptedException {
+		String option = arguments.getOption();
+		SettingsBackend backend = arguments.getSystemDb() == null ? this.backend
+				: new SystemDconfSettingsBackend(arguments.getRoot(), arguments.getSystemDb(),
+						arguments.getProfile(), true);
+		if (arguments.getWallpaper() != null) {
+			new WallpaperPainter(prepare(arguments, arguments.getWallpaper(), option, Effects.NONE), option, backend)
+					.stage();
+		}
+		if (arguments.getLock() != null) {
+			new LockscreenBackgroundPainter(prepare(arguments, arguments.getLock(), option, arguments.getEffects()),
+					option, backend).stage();
+		}
+		backend.apply();
+		if (arguments.getLogin() != null) {
+			String loginOption = arguments.getLoginOption();
+			new LoginBackgroundPainter(arguments.getCssPath(),
+					prepare(arguments, arguments.getLogin(), loginOption, arguments.getEffects()), loginOption).paint();
+		}
+	}
+
+	/**
+	 * Watches the theme the login screen background was last written to, and the
+	 * file it links to if it's a link, putting the background back once each time
+	 * either is replaced or changed, until their folders go away. Checks it once first, for upgrades while nothing was
+	 * watching, and stops if that fails, e.g. with no way to ask for a password.
+	 *
+	 * @param arguments {@link Arguments}
+	 * @throws IOException          when the theme can't be watched or written
+	 * @throws InterruptedException if interrupted
+	 */
+	private void watch(Arguments arguments) throws IOException, InterruptedException {
+		Path file = arguments.getChoice();
+		LoginChoice choice = LoginChoice.load(file);
+		if (choice == null) {
+			throw new IllegalStateException("No login screen background remembered in " + file
+					+ ", nothing to put back. As root, name the user's with --choice.");
+		}
+		Path cssPath = choice.getCssPath();
+		try (FileWatcher watcher = new FileWatcher(cssPath, watchQuietMillis, () -> reapply(file))) {
+			watcher.start();
+			out.println("Watching " + cssPath);
+			restore(file);
+			while (watcher.isRunning()) {
+				Thread.sleep(watchQuietMillis);
+			}
+		}
+		throw new IllegalStateException("Stopped watching, the folders of " + cssPath + " went away.");
+	}
+
+}
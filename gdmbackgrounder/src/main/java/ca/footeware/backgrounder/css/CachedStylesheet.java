@@ -0,0 +1,86 @@
+package ca.footeware.backgrounder.css;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.css.sac.InputSource;
+
+import com.steadystate.css.dom.CSSStyleSheetImpl;
+import com.steadystate.css.parser.CSSOMParser;
+import com.steadystate.css.parser.SACParserCSS3;
+
+import ca.footeware.backgrounder.io.FileIdentity;
+
+/**
+ * The contents of a stylesheet as of a given {@link FileIdentity}, along with
+ * the rule locations and parsed object model worked out from them so far.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class CachedStylesheet {
+
+	private final byte[] bytes;
+	private final FileIdentity identity;
+	private final Map<String, RuleSpan> spans = new HashMap<>();
+	private CSSStyleSheetImpl stylesheet;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param identity {@link FileIdentity} of the file the bytes came from
+	 * @param bytes    byte array
+	 */
+	public CachedStylesheet(FileIdentity identity, byte[] bytes) {
+		this.identity = identity;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Finds the top-level rule with the provided selector, remembering the answer.
+	 * 
+	 * @param selector {@link String}
+	 * @return {@link RuleSpan}, null if there's no such rule
+	 */
+	public synchronized RuleSpan findRule(String selector) {
+		if (!spans.containsKey(selector)) {
+			spans.put(selector, RuleLocator.find(bytes, selector));
+		}
+		return spans.get(selector);
+	}
+
+	/**
+	 * @return byte array, not to be modified
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return {@link FileIdentity}
+	 */
+	public FileIdentity getIdentity() {
+		return identity;
+	}
+
+	/**
+	 * Gets the parsed stylesheet, parsing it the first time.
+	 * 
+	 * @return {@link CSSStyleSheetImpl}
+	 */
+	public synchronized CSSStyleSheetImpl getStylesheet() {
+		if (stylesheet == null) {
+			CSSOMParser parser = new CSSOMParser(new SACParserCSS3());
+			try (Reader reader = StylesheetReader.open(ByteBuffer.wrap(bytes))) {
+				stylesheet = (CSSStyleSheetImpl) parser.parseStyleSheet(new InputSource(reader), null, null);
+			} catch (IOException e1) {
+				throw new IllegalStateException("An error occurred parsing the stylesheet.", e1);
+			}
+		}
+		return stylesheet;
+	}
+
+}
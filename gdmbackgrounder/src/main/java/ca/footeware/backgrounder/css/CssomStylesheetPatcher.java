@@ -0,0 +1,98 @@
+package ca.footeware.backgrounder.css;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.w3c.css.sac.InputSource;
+import org.w3c.dom.css.CSSRule;
+import org.w3c.dom.css.CSSRuleList;
+
+import com.steadystate.css.dom.CSSStyleSheetImpl;
+import com.steadystate.css.format.CSSFormat;
+import com.steadystate.css.parser.CSSOMParser;
+import com.steadystate.css.parser.SACParserCSS3;
+
+/**
+ * Patches a rule by parsing the whole stylesheet, replacing the rule in the
+ * object model and serializing it all back out. Slow and it reformats the
+ * stylesheet, but it copes with selectors {@link RuleLocator} doesn't, such as
+ * selector lists.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class CssomStylesheetPatcher implements StylesheetPatcher {
+
+	/**
+	 * Get the first rule whose text starts with the provided selector.
+	 * 
+	 * @param stylesheet {@link CSSStyleSheetImpl}
+	 * @param selector   {@link String}
+	 * @return {@link CSSRule}, null if not found
+	 */
+	public CSSRule getRule(CSSStyleSheetImpl stylesheet, String selector) {
+		CSSRuleList cssRules = stylesheet.getCssRules();
+		for (int i = 0; i < cssRules.getLength(); i++) {
+			CSSRule rule = cssRules.item(i);
+			if (rule.getCssText().startsWith(selector)) {
+				return rule;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parse the provided file into a CSS stylesheet.
+	 * 
+	 * @param file {@link Path}
+	 * @return {@link CSSStyleSheetImpl}
+	 */
+	public CSSStyleSheetImpl getStylesheet(Path file) {
+		CSSOMParser parser = new CSSOMParser(new SACParserCSS3());
+		try (Reader reader = StylesheetReader.open(file)) {
+			return (CSSStyleSheetImpl) parser.parseStyleSheet(new InputSource(reader), null, null);
+		} catch (IOException e1) {
+			throw new IllegalStateException("An error occurred parsing the stylesheet.", e1);
+		}
+	}
+
+	@Override
+	public byte[] patch(CachedStylesheet cached, String selector, Map<String, String> declarations) {
+		CSSStyleSheetImpl stylesheet = cached.getStylesheet();
+		synchronized (stylesheet) {
+			CSSRule rule = getRule(stylesheet, selector);
+			if (rule == null) {
+				return null;
+			}
+			return setCSSRule(rule, stylesheet, selector, declarations);
+		}
+	}
+
+	/**
+	 * Set the provided rule in the provided stylesheet and serialize the lot.
+	 * 
+	 * @param rule         {@link CSSRule}
+	 * @param stylesheet   {@link CSSStyleSheetImpl}
+	 * @param selector     {@link String}
+	 * @param declarations {@link Map}
+	 * @return byte array of the whole stylesheet
+	 */
+	public byte[] setCSSRule(CSSRule rule, CSSStyleSheetImpl stylesheet, String selector,
+			Map<String, String> declarations) {
+		StringBuilder css = new StringBuilder(selector).append(" {");
+		String separator = "";
+		for (Entry<String, String> entry : declarations.entrySet()) {
+			css.append(separator).append(entry.getKey()).append(": ").append(entry.getValue());
+			separator = "; ";
+		}
+		rule.setCssText(css.append('}').toString());
+		CSSFormat format = new CSSFormat();
+		format.setRgbAsHex(true);
+		return (stylesheet.getCssText(format) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+	}
+
+}
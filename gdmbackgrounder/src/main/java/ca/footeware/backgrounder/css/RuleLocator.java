@@ -0,0 +1,185 @@
+package ca.footeware.backgrounder.css;
+
+/**
+ * Finds a top-level rule in a UTF-8 stylesheet without parsing it. Skips
+ * comments and strings and tracks brace depth, which is all it takes to find
+ * where a rule starts and ends.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public final class RuleLocator {
+
+	private RuleLocator() {
+		// static only
+	}
+
+	/**
+	 * Finds the first top-level rule whose selector is exactly the provided one,
+	 * ignoring whitespace and comments.
+	 * 
+	 * @param css      byte array of UTF-8 CSS
+	 * @param selector {@link String} e.g. #lockDialogGroup
+	 * @return {@link RuleSpan}, null if there is no such rule
+	 */
+	public static RuleSpan find(byte[] css, String selector) {
+		int depth = 0;
+		int preludeStart = 0;
+		int i = 0;
+		while (i < css.length) {
+			byte b = css[i];
+			if (b == '/' && i + 1 < css.length && css[i + 1] == '*') {
+				i = skipComment(css, i);
+			} else if (b == '"' || b == '\'') {
+				i = skipString(css, i);
+			} else if (b == '{') {
+				if (depth == 0 && selectorMatches(css, preludeStart, i, selector)) {
+					int end = findClosingBrace(css, i);
+					if (end < 0) {
+						return null;
+					}
+					return new RuleSpan(skipWhitespaceAndComments(css, preludeStart, i), i, end);
+				}
+				depth++;
+				preludeStart = ++i;
+			} else if (b == '}') {
+				depth = Math.max(0, depth - 1);
+				preludeStart = ++i;
+			} else if (b == ';') {
+				preludeStart = ++i;
+			} else {
+				i++;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the brace closing the block opened at the provided offset.
+	 * 
+	 * @param css  byte array
+	 * @param open int offset of the opening brace
+	 * @return int offset just past the closing brace, -1 if unbalanced
+	 */
+	private static int findClosingBrace(byte[] css, int open) {
+		int depth = 0;
+		int i = open;
+		while (i < css.length) {
+			byte b = css[i];
+			if (b == '/' && i + 1 < css.length && css[i + 1] == '*') {
+				i = skipComment(css, i);
+			} else if (b == '"' || b == '\'') {
+				i = skipString(css, i);
+			} else {
+				if (b == '{') {
+					depth++;
+				} else if (b == '}' && --depth == 0) {
+					return i + 1;
+				}
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param b byte
+	 * @return true if the byte is CSS whitespace
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+	}
+
+	/**
+	 * Compares the prelude between the provided offsets with the selector,
+	 * dropping comments and collapsing whitespace.
+	 * 
+	 * @param css      byte array
+	 * @param from     int offset, inclusive
+	 * @param to       int offset, exclusive
+	 * @param selector {@link String}
+	 * @return true if they match
+	 */
+	private static boolean selectorMatches(byte[] css, int from, int to, String selector) {
+		StringBuilder prelude = new StringBuilder(to - from);
+		int i = from;
+		boolean pendingSpace = false;
+		while (i < to) {
+			byte b = css[i];
+			if (b == '/' && i + 1 < to && css[i + 1] == '*') {
+				i = skipComment(css, i);
+				pendingSpace = true;
+			} else if (isWhitespace(b)) {
+				pendingSpace = true;
+				i++;
+			} else {
+				if (pendingSpace && prelude.length() > 0) {
+					prelude.append(' ');
+				}
+				pendingSpace = false;
+				prelude.append((char) (b & 0xff));
+				if (prelude.length() > selector.length()) {
+					return false;
+				}
+				i++;
+			}
+		}
+		return prelude.toString().equals(selector);
+	}
+
+	/**
+	 * @param css   byte array
+	 * @param start int offset of the comment's slash
+	 * @return int offset just past the comment
+	 */
+	private static int skipComment(byte[] css, int start) {
+		for (int i = start + 2; i + 1 < css.length; i++) {
+			if (css[i] == '*' && css[i + 1] == '/') {
+				return i + 2;
+			}
+		}
+		return css.length;
+	}
+
+	/**
+	 * @param css   byte array
+	 * @param start int offset of the opening quote
+	 * @return int offset just past the closing quote
+	 */
+	private static int skipString(byte[] css, int start) {
+		byte quote = css[start];
+		int i = start + 1;
+		while (i < css.length) {
+			byte b = css[i];
+			if (b == '\\') {
+				i += 2;
+			} else if (b == quote || b == '\n') {
+				return i + 1;
+			} else {
+				i++;
+			}
+		}
+		return css.length;
+	}
+
+	/**
+	 * @param css  byte array
+	 * @param from int offset
+	 * @param to   int limit
+	 * @return int offset of the first byte that isn't whitespace or comment
+	 */
+	private static int skipWhitespaceAndComments(byte[] css, int from, int to) {
+		int i = from;
+		while (i < to) {
+			if (isWhitespace(css[i])) {
+				i++;
+			} else if (css[i] == '/' && i + 1 < to && css[i + 1] == '*') {
+				i = skipComment(css, i);
+			} else {
+				break;
+			}
+		}
+		return i;
+	}
+
+}
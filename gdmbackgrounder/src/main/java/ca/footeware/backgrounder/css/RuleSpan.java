@@ -0,0 +1,50 @@
+package ca.footeware.backgrounder.css;
+
+/**
+ * Where a rule sits in a stylesheet, as byte offsets from the start of the
+ * file.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class RuleSpan {
+
+	private final int blockStart;
+	private final int end;
+	private final int start;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param start      int offset of the first byte of the selector
+	 * @param blockStart int offset of the opening brace
+	 * @param end        int offset just past the closing brace
+	 */
+	public RuleSpan(int start, int blockStart, int end) {
+		this.start = start;
+		this.blockStart = blockStart;
+		this.end = end;
+	}
+
+	/**
+	 * @return int offset of the opening brace
+	 */
+	public int getBlockStart() {
+		return blockStart;
+	}
+
+	/**
+	 * @return int offset just past the closing brace
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return int offset of the first byte of the selector
+	 */
+	public int getStart() {
+		return start;
+	}
+
+}
@@ -0,0 +1,47 @@
+package ca.footeware.backgrounder.css;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Patches a rule by locating its bytes with {@link RuleLocator} and splicing
+ * in a new rule, leaving the rest of the stylesheet byte-for-byte untouched.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class SplicingStylesheetPatcher implements StylesheetPatcher {
+
+	/**
+	 * Formats the provided rule the way gnome-shell's own stylesheets are laid
+	 * out.
+	 * 
+	 * @param selector     {@link String}
+	 * @param declarations {@link Map}
+	 * @return {@link String}
+	 */
+	public static String format(String selector, Map<String, String> declarations) {
+		StringBuilder builder = new StringBuilder(selector).append(" {");
+		for (Entry<String, String> entry : declarations.entrySet()) {
+			builder.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue()).append(';');
+		}
+		return builder.append(" }").toString();
+	}
+
+	@Override
+	public byte[] patch(CachedStylesheet stylesheet, String selector, Map<String, String> declarations) {
+		RuleSpan span = stylesheet.findRule(selector);
+		if (span == null) {
+			return null;
+		}
+		byte[] css = stylesheet.getBytes();
+		byte[] rule = format(selector, declarations).getBytes(StandardCharsets.UTF_8);
+		byte[] patched = new byte[span.getStart() + rule.length + css.length - span.getEnd()];
+		System.arraycopy(css, 0, patched, 0, span.getStart());
+		System.arraycopy(rule, 0, patched, span.getStart(), rule.length);
+		System.arraycopy(css, span.getEnd(), patched, span.getStart() + rule.length, css.length - span.getEnd());
+		return patched;
+	}
+
+}
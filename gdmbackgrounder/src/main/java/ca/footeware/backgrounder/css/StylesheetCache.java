@@ -0,0 +1,133 @@
+package ca.footeware.backgrounder.css;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ca.footeware.backgrounder.io.FileIdentity;
+import ca.footeware.backgrounder.watch.FileWatcher;
+
+/**
+ * Remembers stylesheets by path so they're only read and parsed again once the
+ * file on disk changes, as told by its {@link FileIdentity}. That's of the file
+ * any links end at, so a theme managed by update-alternatives is read again
+ * when either it or the link changes. Paths being {@link #watch(Path) watched}
+ * are dropped as soon as they change, so the memory goes too.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class StylesheetCache {
+
+	private static final StylesheetCache DEFAULT = new StylesheetCache();
+	private final Map<Path, CachedStylesheet> entries = new ConcurrentHashMap<>();
+	private final Map<Path, FileWatcher> watchers = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the cache shared by the painters.
+	 * 
+	 * @return {@link StylesheetCache}
+	 */
+	public static StylesheetCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param path {@link Path}
+	 * @return {@link Path} the entry is stored under
+	 */
+	private static Path key(Path path) {
+		return path.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Gets the stylesheet at the provided path, reading it only if it's not cached
+	 * or the file has changed since.
+	 * 
+	 * @param path {@link Path}
+	 * @return {@link CachedStylesheet}
+	 * @throws IOException when the file can't be read
+	 */
+	public CachedStylesheet get(Path path) throws IOException {
+		Path key = key(path);
+		CachedStylesheet cached = entries.get(key);
+		// checked even when watched, a stat costs next to nothing and a watch can't
+		// see everything a link's target might go through
+		FileIdentity identity = FileIdentity.of(key);
+		if (cached != null && cached.getIdentity().equals(identity)) {
+			return cached;
+		}
+		byte[] bytes = Files.readAllBytes(key);
+		cached = new CachedStylesheet(identity, bytes);
+		entries.put(key, cached);
+		if (!identity.equals(FileIdentity.of(key))) {
+			// don't remember something that changed while we read it, checked after
+			// it's remembered so a watch can't miss it either
+			entries.remove(key, cached);
+		}
+		return cached;
+	}
+
+	/**
+	 * Forgets the stylesheet at the provided path.
+	 * 
+	 * @param path {@link Path}
+	 */
+	public void invalidate(Path path) {
+		entries.remove(key(path));
+	}
+
+	/**
+	 * Drops the entry for the provided path if the file's no longer what it
+	 * holds.
+	 * 
+	 * @param key {@link Path}
+	 */
+	private void refresh(Path key) {
+		CachedStylesheet cached = entries.get(key);
+		try {
+			if (cached != null && !cached.getIdentity().equals(FileIdentity.of(key))) {
+				entries.remove(key, cached);
+			}
+		} catch (IOException e) {
+			// gone or unreadable
+			entries.remove(key, cached);
+		}
+	}
+
+	/**
+	 * Remembers content just written to the provided path, so the next read
+	 * doesn't have to go back to disk.
+	 * 
+	 * @param path  {@link Path}
+	 * @param bytes byte array now in the file
+	 * @throws IOException when the file can't be stat'd
+	 */
+	public void update(Path path, byte[] bytes) throws IOException {
+		Path key = key(path);
+		entries.put(key, new CachedStylesheet(FileIdentity.of(key), bytes));
+	}
+
+	/**
+	 * Watches the file at the provided path, and the file any links end at, so
+	 * its entry is dropped as soon as it changes, for long-running callers.
+	 * 
+	 * @param path {@link Path}
+	 * @throws IOException when it can't be watched
+	 */
+	public void watch(Path path) throws IOException {
+		Path key = key(path);
+		FileWatcher watcher = watchers.get(key);
+		if (watcher != null && watcher.isRunning()) {
+			return;
+		}
+		watcher = new FileWatcher(key, 0, () -> refresh(key));
+		// watch first, so nothing's missed between reading and watching
+		watcher.start();
+		watchers.put(key, watcher);
+		refresh(key);
+	}
+
+}
@@ -0,0 +1,23 @@
+package ca.footeware.backgrounder.css;
+
+import java.util.Map;
+
+/**
+ * Works out a stylesheet's new contents with one rule's declarations replaced.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public interface StylesheetPatcher {
+
+	/**
+	 * Replaces the rule with the provided selector in the provided stylesheet.
+	 * 
+	 * @param stylesheet   {@link CachedStylesheet}
+	 * @param selector     {@link String}
+	 * @param declarations {@link Map} of property to value, in order
+	 * @return byte array of the patched stylesheet, null if there's no such rule
+	 */
+	byte[] patch(CachedStylesheet stylesheet, String selector, Map<String, String> declarations);
+
+}
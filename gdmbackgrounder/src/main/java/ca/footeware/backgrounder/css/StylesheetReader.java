@@ -0,0 +1,100 @@
+package ca.footeware.backgrounder.css;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opens stylesheets for reading straight from disk, decoding UTF-8 as the
+ * parser pulls characters rather than loading the whole file into a
+ * {@link String} first.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public final class StylesheetReader {
+
+	/**
+	 * Decodes a {@link ByteBuffer} a chunk at a time.
+	 */
+	private static final class ByteBufferReader extends Reader {
+		private final ByteBuffer bytes;
+		private final CharsetDecoder decoder = newDecoder();
+		private boolean done;
+
+		private ByteBufferReader(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public void close() {
+			// nothing to release
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (done) {
+				return -1;
+			}
+			CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+			CoderResult result = decoder.decode(bytes, out, true);
+			if (result.isError()) {
+				result.throwException();
+			}
+			if (result.isUnderflow()) {
+				// all input consumed
+				done = decoder.flush(out).isUnderflow();
+			}
+			int read = out.position() - off;
+			return read == 0 && done ? -1 : read;
+		}
+	}
+
+	private StylesheetReader() {
+		// static only
+	}
+
+	/**
+	 * Creates a UTF-8 decoder that replaces rather than rejects bad input.
+	 * 
+	 * @return {@link CharsetDecoder}
+	 */
+	private static CharsetDecoder newDecoder() {
+		return StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Opens a reader over stylesheet bytes already in memory.
+	 * 
+	 * @param bytes {@link ByteBuffer} of UTF-8
+	 * @return {@link Reader}
+	 */
+	public static Reader open(ByteBuffer bytes) {
+		return new ByteBufferReader(bytes);
+	}
+
+	/**
+	 * Opens the stylesheet at the provided path, streamed through the channel.
+	 * 
+	 * @param path {@link Path}
+	 * @return {@link Reader} the caller must close
+	 * @throws IOException when the file can't be opened
+	 */
+	public static Reader open(Path path) throws IOException {
+		return Channels.newReader(FileChannel.open(path, StandardOpenOption.READ), newDecoder(), -1);
+	}
+
+}
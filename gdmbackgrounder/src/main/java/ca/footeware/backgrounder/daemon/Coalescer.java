@@ -0,0 +1,231 @@
+package ca.footeware.backgrounder.daemon;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import ca.footeware.backgrounder.css.StylesheetCache;
+import ca.footeware.backgrounder.images.BackgroundRenderer;
+import ca.footeware.backgrounder.painters.LockscreenBackgroundPainter;
+import ca.footeware.backgrounder.painters.LoginBackgroundPainter;
+import ca.footeware.backgrounder.painters.WallpaperPainter;
+import ca.footeware.backgrounder.settings.SettingsBackend;
+
+/**
+ * Collects apply requests and carries them out once they stop coming. The last
+ * request for each {@link Target} wins, so a burst of them ends in one
+ * settings write for the wallpaper and lock screen together and one rewrite of
+ * the login theme, however many there were.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class Coalescer {
+
+	/**
+	 * The latest request for a target, and everyone waiting on it or on
+	 * requests it replaced.
+	 */
+	private static final class Pending {
+		private Path image;
+		private String option;
+		private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+	}
+
+	private final SettingsBackend backend;
+	private final StylesheetCache cache;
+	private final LongSupplier clock;
+	private final Path cssPath;
+	private ScheduledFuture<?> flush;
+	private final long maxDelayMillis;
+	private Map<Target, Pending> pending = new EnumMap<>(Target.class);
+	private long pendingSince;
+	private final long quietMillis;
+	private final BackgroundRenderer renderer;
+	private final ScheduledExecutorService scheduler;
+	private final Dimension screen;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param backend        {@link SettingsBackend} for the wallpaper and lock
+	 *                       screen
+	 * @param cssPath        {@link Path} of the login theme stylesheet
+	 * @param cache          {@link StylesheetCache} kept warm between requests
+	 * @param screen         {@link Dimension} to render images to first, null to
+	 *                       use them as they are
+	 * @param renderer       {@link BackgroundRenderer}
+	 * @param quietMillis    long how long requests have to stop for before
+	 *                       they're applied
+	 * @param maxDelayMillis long longest a request waits, however busy it gets
+	 */
+	public Coalescer(SettingsBackend backend, Path cssPath, StylesheetCache cache, Dimension screen,
+			BackgroundRenderer renderer, long quietMillis, long maxDelayMillis) {
+		this(backend, cssPath, cache, screen, renderer, quietMillis, maxDelayMillis,
+				Executors.newSingleThreadScheduledExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "coalescer");
+					thread.setDaemon(true);
+					return thread;
+				}), System::currentTimeMillis);
+	}
+
+	/**
+	 * Constructor for tests, on their own time.
+	 *
+	 * @param backend        {@link SettingsBackend} for the wallpaper and lock
+	 *                       screen
+	 * @param cssPath        {@link Path} of the login theme stylesheet
+	 * @param cache          {@link StylesheetCache} kept warm between requests
+	 * @param screen         {@link Dimension} to render images to first, null to
+	 *                       use them as they are
+	 * @param renderer       {@link BackgroundRenderer}
+	 * @param quietMillis    long how long requests have to stop for before
+	 *                       they're applied
+	 * @param maxDelayMillis long longest a request waits, however busy it gets
+	 * @param scheduler      {@link ScheduledExecutorService} requests are applied
+	 *                       on, one thread
+	 * @param clock          {@link LongSupplier} of the time in milliseconds, the
+	 *                       scheduler's
+	 */
+	Coalescer(SettingsBackend backend, Path cssPath, StylesheetCache cache, Dimension screen,
+			BackgroundRenderer renderer, long quietMillis, long maxDelayMillis, ScheduledExecutorService scheduler,
+			LongSupplier clock) {
+		this.backend = backend;
+		this.cssPath = cssPath;
+		this.cache = cache;
+		this.screen = screen;
+		this.renderer = renderer;
+		this.quietMillis = quietMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.scheduler = scheduler;
+		this.clock = clock;
+	}
+
+	/**
+	 * @param batch   {@link Map} of what was applied
+	 * @param error   {@link Throwable}, null if they worked
+	 * @param targets {@link Target}s to settle
+	 */
+	private static void complete(Map<Target, Pending> batch, Throwable error, Target... targets) {
+		for (Target target : targets) {
+			Pending request = batch.get(target);
+			if (request != null) {
+				for (CompletableFuture<Void> waiter : request.waiters) {
+					if (error == null) {
+						waiter.complete(null);
+					} else {
+						waiter.completeExceptionally(error);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies whatever's been collected. Runs on the scheduler's thread.
+	 */
+	private void flush() {
+		Map<Target, Pending> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = new EnumMap<>(Target.class);
+			flush = null;
+		}
+		Pending wallpaper = batch.get(Target.WALLPAPER);
+		Pending lock = batch.get(Target.LOCK);
+		Pending login = batch.get(Target.LOGIN);
+		if (wallpaper != null || lock != null) {
+			try {
+				if (wallpaper != null) {
+					new WallpaperPainter(prepare(wallpaper), wallpaper.option, backend).stage();
+				}
+				if (lock != null) {
+					new LockscreenBackgroundPainter(prepare(lock), lock.option, backend).stage();
+				}
+				backend.apply();
+				complete(batch, null, Target.WALLPAPER, Target.LOCK);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				complete(batch, e, Target.values());
+				return;
+			} catch (Exception e) {
+				complete(batch, e, Target.WALLPAPER, Target.LOCK);
+			}
+		}
+		if (login != null) {
+			try {
+				new LoginBackgroundPainter(cssPath, prepare(login), login.option, cache).paint();
+				complete(batch, null, Target.LOGIN);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				complete(batch, e, Target.LOGIN);
+			} catch (Exception e) {
+				complete(batch, e, Target.LOGIN);
+			}
+		}
+	}
+
+	/**
+	 * @param request {@link Pending}
+	 * @return {@link Path} of the image to set
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException if shut down
+	 */
+	private Path prepare(Pending request) throws IOException, InterruptedException {
+		if (screen == null) {
+			return request.image;
+		}
+		return renderer.render(request.image, screen.width, screen.height, request.option);
+	}
+
+	/**
+	 * Stops applying, failing anything not yet applied.
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+		synchronized (this) {
+			complete(pending, new IllegalStateException("Shutting down."), Target.values());
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Queues a request, replacing any earlier one for the same target that
+	 * hasn't been applied yet.
+	 *
+	 * @param target {@link Target}
+	 * @param image  {@link Path}
+	 * @param option {@link String} picture option or, for the login screen, CSS
+	 *               background-size
+	 * @return {@link CompletableFuture} done once the request, or one that
+	 *         replaced it, has been applied
+	 */
+	public synchronized CompletableFuture<Void> submit(Target target, Path image, String option) {
+		CompletableFuture<Void> waiter = new CompletableFuture<>();
+		long now = clock.getAsLong();
+		if (pending.isEmpty()) {
+			pendingSince = now;
+		}
+		Pending request = pending.computeIfAbsent(target, t -> new Pending());
+		request.image = image;
+		request.option = option;
+		request.waiters.add(waiter);
+		// wait for a lull, but not forever
+		long delay = Math.max(0, Math.min(quietMillis, pendingSince + maxDelayMillis - now));
+		if (flush == null || flush.cancel(false)) {
+			flush = scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+		}
+		return waiter;
+	}
+
+}
@@ -0,0 +1,212 @@
+package ca.footeware.backgrounder.daemon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.footeware.backgrounder.images.ImageProbe;
+
+/**
+ * Listens on a Unix domain socket for requests to set backgrounds, so scripts
+ * that switch them often don't pay for a JVM each time. Requests are lines of
+ * UTF-8 text:
+ *
+ * <pre>
+ * wallpaper|lock|login OPTION IMAGE
+ * ping
+ * quit
+ * </pre>
+ *
+ * Each gets a line back once it's been dealt with: <code>OK</code>,
+ * <code>ERROR</code> and a reason, or <code>PONG</code>. A connection may send
+ * any number of requests without waiting for replies, and they're all handed
+ * to one {@link Coalescer}.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class DaemonServer {
+
+	private final Coalescer coalescer;
+	private final ExecutorService connections;
+	private ServerSocketChannel server;
+	private final Path socketPath;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param socketPath {@link Path} of the socket to create
+	 * @param coalescer  {@link Coalescer} to hand requests to
+	 */
+	public DaemonServer(Path socketPath, Coalescer coalescer) {
+		this.socketPath = socketPath;
+		this.coalescer = coalescer;
+		AtomicInteger count = new AtomicInteger();
+		this.connections = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "connection-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @return {@link Path} of <code>$XDG_RUNTIME_DIR/backgrounder.sock</code>,
+	 *         or one in the temp directory named for the user if there's no
+	 *         runtime directory
+	 */
+	public static Path getDefaultSocketPath() {
+		String runtime = System.getenv("XDG_RUNTIME_DIR");
+		if (runtime == null || runtime.isEmpty()) {
+			return Paths.get(System.getProperty("java.io.tmpdir"),
+					"backgrounder-" + System.getProperty("user.name") + ".sock");
+		}
+		return Paths.get(runtime, "backgrounder.sock");
+	}
+
+	/**
+	 * Reads requests from a connection until it closes, then waits for the
+	 * replies to be sent.
+	 *
+	 * @param channel {@link SocketChannel}
+	 */
+	private void handle(SocketChannel channel) {
+		List<CompletableFuture<Void>> replies = new ArrayList<>();
+		try (channel;
+				BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+				Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.strip();
+				if (line.isEmpty()) {
+					continue;
+				}
+				if ("quit".equals(line)) {
+					reply(writer, "OK");
+					stop();
+					break;
+				}
+				if ("ping".equals(line)) {
+					reply(writer, "PONG");
+					continue;
+				}
+				replies.add(submit(line).handle((result, e) -> {
+					Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+					reply(writer, cause == null ? "OK" : "ERROR " + cause.getMessage());
+					return null;
+				}));
+			}
+			CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).join();
+		} catch (IOException e) {
+			// the client went away, nothing to tell it
+		}
+	}
+
+	/**
+	 * Writes a reply line. Replies can come from the coalescer's thread, so
+	 * they're written one at a time.
+	 *
+	 * @param writer {@link Writer}
+	 * @param reply  {@link String}
+	 */
+	private static void reply(Writer writer, String reply) {
+		synchronized (writer) {
+			try {
+				writer.write(reply + "\n");
+				writer.flush();
+			} catch (IOException e) {
+				// the client went away, nothing to tell it
+			}
+		}
+	}
+
+	/**
+	 * Accepts connections until {@link #stop()} is called or a client asks to
+	 * quit. Replaces a socket left behind by a daemon that died, and makes the
+	 * new one usable by this user only.
+	 *
+	 * @throws IOException when the socket can't be created
+	 */
+	public void run() throws IOException {
+		Files.deleteIfExists(socketPath);
+		synchronized (this) {
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(socketPath));
+		}
+		Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+		try {
+			while (true) {
+				SocketChannel channel = server.accept();
+				connections.execute(() -> handle(channel));
+			}
+		} catch (ClosedChannelException e) {
+			// stopped
+		} finally {
+			coalescer.shutdown();
+			connections.shutdownNow();
+			Files.deleteIfExists(socketPath);
+		}
+	}
+
+	/**
+	 * Stops accepting connections and applying requests.
+	 */
+	public synchronized void stop() {
+		if (server != null) {
+			try {
+				server.close();
+			} catch (IOException e) {
+				// closing anyway
+			}
+		}
+	}
+
+	/**
+	 * @param line {@link String} request
+	 * @return {@link CompletableFuture} done once it's been applied
+	 */
+	private CompletableFuture<Void> submit(String line) {
+		String[] parts = line.split(" ", 3);
+		Target target = Target.of(parts[0]);
+		if (target == null || parts.length < 3) {
+			return CompletableFuture.failedFuture(
+					new IllegalStateException("Expected wallpaper, lock or login, an option and an image."));
+		}
+		if (!target.getOptions().contains(parts[1])) {
+			return CompletableFuture.failedFuture(new IllegalStateException(
+					"Option for " + parts[0] + " must be one of " + String.join(", ", target.getOptions()) + "."));
+		}
+		Path image = Paths.get(parts[2]);
+		if (!image.isAbsolute()) {
+			// the daemon's folder means nothing to whoever sent it
+			return CompletableFuture.failedFuture(new IllegalStateException("Image path must be absolute: " + image));
+		}
+		if (!Files.isRegularFile(image)) {
+			return CompletableFuture.failedFuture(new IllegalStateException("No such image: " + image));
+		}
+		try {
+			ImageProbe.probe(image);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(new IllegalStateException("Not a usable image: " + e.getMessage()));
+		}
+		return coalescer.submit(target, image, parts[1]);
+	}
+
+}
@@ -0,0 +1,60 @@
+package ca.footeware.backgrounder.daemon;
+
+import java.util.List;
+import java.util.Locale;
+
+import ca.footeware.backgrounder.painters.GSettingsPainter;
+import ca.footeware.backgrounder.painters.LoginBackgroundPainter;
+
+/**
+ * What a daemon request sets.
+ *
+ * @author Footeware.ca
+ *
+ */
+public enum Target {
+	/**
+	 * The lock screen background.
+	 */
+	LOCK(GSettingsPainter.PICTURE_OPTIONS),
+	/**
+	 * The login screen background.
+	 */
+	LOGIN(LoginBackgroundPainter.BACKGROUND_SIZES),
+	/**
+	 * The desktop wallpaper.
+	 */
+	WALLPAPER(GSettingsPainter.PICTURE_OPTIONS);
+
+	private final List<String> options;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param options {@link List} of the options it takes
+	 */
+	Target(List<String> options) {
+		this.options = options;
+	}
+
+	/**
+	 * @return {@link List} of the options it takes, picture options or, for the
+	 *         login screen, CSS background-size
+	 */
+	public List<String> getOptions() {
+		return options;
+	}
+
+	/**
+	 * @param name {@link String} as sent over the socket, any case
+	 * @return {@link Target}, null if there's no such thing
+	 */
+	public static Target of(String name) {
+		for (Target target : values()) {
+			if (target.name().equals(name.toUpperCase(Locale.ROOT))) {
+				return target;
+			}
+		}
+		return null;
+	}
+}
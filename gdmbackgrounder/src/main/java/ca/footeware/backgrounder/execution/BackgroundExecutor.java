@@ -0,0 +1,188 @@
+package ca.footeware.backgrounder.execution;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.eclipse.swt.widgets.Display;
+
+import ca.footeware.backgrounder.painters.Painter;
+
+/**
+ * Runs work such as painters off the SWT UI thread and hands results and
+ * errors back to the UI thread via {@link Display#asyncExec(Runnable)}.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class BackgroundExecutor {
+
+	/**
+	 * Notified on the UI thread whenever the number of queued or running tasks
+	 * changes.
+	 */
+	public interface ProgressListener {
+
+		/**
+		 * @param pending     number of tasks not yet finished
+		 * @param description {@link String} of the most recently started task,
+		 *                    null when idle
+		 */
+		void progressChanged(int pending, String description);
+	}
+
+	private final Display display;
+	private final ExecutorService executor;
+	private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+	private final List<Future<?>> pending = new CopyOnWriteArrayList<>();
+	private String description;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param display    {@link Display} to report back to
+	 * @param threadName {@link String} prefix for worker thread names
+	 * @param threads    int number of workers
+	 */
+	public BackgroundExecutor(Display display, String threadName, int threads) {
+		this.display = display;
+		AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, threadName + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @param listener {@link ProgressListener}
+	 */
+	public void addProgressListener(ProgressListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Cancels every queued or running task, interrupting the running ones.
+	 */
+	public void cancelAll() {
+		for (Future<?> future : pending) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Runs the provided painter in the background.
+	 *
+	 * @param description {@link String} shown while it runs
+	 * @param painter     {@link Painter}
+	 * @param onError     {@link Consumer} called on the UI thread if the painter
+	 *                    fails
+	 * @return {@link Future}
+	 */
+	public Future<Void> paint(String description, Painter painter, Consumer<Throwable> onError) {
+		return submit(description, () -> {
+			painter.paint();
+			return null;
+		}, result -> {
+			// nothing to report
+		}, onError);
+	}
+
+	/**
+	 * Stops accepting work and interrupts whatever is running.
+	 */
+	public void shutdown() {
+		cancelAll();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Runs the provided task in the background. Exactly one of the callbacks is
+	 * invoked on the UI thread when it completes, unless it was cancelled.
+	 *
+	 * @param <T>         result type
+	 * @param description {@link String} shown while it runs
+	 * @param task        {@link Callable}
+	 * @param onSuccess   {@link Consumer} of the result
+	 * @param onError     {@link Consumer} of the failure
+	 * @return {@link Future}
+	 */
+	public <T> Future<T> submit(String description, Callable<T> task, Consumer<T> onSuccess,
+			Consumer<Throwable> onError) {
+		FutureTask<T> future = new FutureTask<>(task) {
+			@Override
+			protected void done() {
+				pending.remove(this);
+				T result = null;
+				Throwable error = null;
+				boolean cancelled = isCancelled();
+				if (!cancelled) {
+					try {
+						result = get();
+					} catch (CancellationException e) {
+						cancelled = true;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						cancelled = true;
+					} catch (Exception e) {
+						error = e.getCause() != null ? e.getCause() : e;
+					}
+				}
+				final T finalResult = result;
+				final Throwable finalError = error;
+				final boolean finalCancelled = cancelled;
+				onDisplay(() -> {
+					if (finalError != null) {
+						onError.accept(finalError);
+					} else if (!finalCancelled) {
+						onSuccess.accept(finalResult);
+					}
+					fireProgress(null);
+				});
+			}
+		};
+		pending.add(future);
+		fireProgress(description);
+		executor.execute(future);
+		return future;
+	}
+
+	/**
+	 * Tells listeners about the current number of pending tasks. Must be called
+	 * on the UI thread.
+	 *
+	 * @param started {@link String} description of a newly started task, null if
+	 *                none
+	 */
+	private void fireProgress(String started) {
+		if (started != null) {
+			description = started;
+		}
+		int count = pending.size();
+		for (ProgressListener listener : listeners) {
+			listener.progressChanged(count, count == 0 ? null : description);
+		}
+	}
+
+	/**
+	 * Runs the provided runnable on the UI thread unless the display is gone.
+	 *
+	 * @param runnable {@link Runnable}
+	 */
+	private void onDisplay(Runnable runnable) {
+		if (!display.isDisposed()) {
+			display.asyncExec(() -> {
+				if (!display.isDisposed()) {
+					runnable.run();
+				}
+			});
+		}
+	}
+}
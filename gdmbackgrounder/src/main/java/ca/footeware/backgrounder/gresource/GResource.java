@@ -0,0 +1,207 @@
+package ca.footeware.backgrounder.gresource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import ca.footeware.backgrounder.gvdb.GvdbReader;
+import ca.footeware.backgrounder.gvdb.GvdbWriter;
+
+/**
+ * A GResource bundle like <code>gnome-shell-theme.gresource</code>, where
+ * current GNOME keeps the login theme instead of a loose gdm3.css. One file
+ * can be pulled out of a bundle on disk without reading the rest, or a bundle
+ * can be read whole, files replaced or added, and written out again with the
+ * others left exactly as they were, compressed or not. No GLib tools needed.
+ * <p>
+ * Each file is stored as a GVariant <code>(uuay)</code>: its size, flags (1 if
+ * zlib compressed) and contents, which glib-compile-resources ends with a nul
+ * when they aren't compressed.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class GResource {
+
+	private static final int FLAG_COMPRESSED = 1;
+	/**
+	 * Most deflate can shrink anything by, so a bigger size is damage rather than
+	 * something to allocate.
+	 */
+	private static final long MAX_RATIO = 1032;
+	private static final String TYPE = "(uuay)";
+	private final Map<String, byte[]> entries = new TreeMap<>();
+
+	private GResource() {
+		// see parse
+	}
+
+	/**
+	 * Unpacks a file's contents from its stored value.
+	 *
+	 * @param value {@link ByteBuffer} of a serialized GVariant of type 'v'
+	 * @param path  {@link String} of the file, for errors
+	 * @return byte array, uncompressed
+	 * @throws IOException when the value isn't a file or is damaged
+	 */
+	private static byte[] decode(ByteBuffer value, String path) throws IOException {
+		value = value.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		// a variant is its child, a nul, then the child's type
+		int nul = value.limit() - 1;
+		while (nul >= 0 && value.get(nul) != 0) {
+			nul--;
+		}
+		byte[] type = new byte[value.limit() - nul - 1];
+		value.get(nul + 1, type);
+		if (nul < 8 || !TYPE.equals(new String(type, StandardCharsets.US_ASCII))) {
+			throw new IOException(path + " in the GResource bundle isn't a file.");
+		}
+		int size = value.getInt(0);
+		int flags = value.getInt(4);
+		byte[] data = new byte[nul - 8];
+		value.get(8, data);
+		if ((flags & FLAG_COMPRESSED) == 0) {
+			if (size < 0 || size > data.length) {
+				throw new IOException(path + " in the GResource bundle is cut short.");
+			}
+			return size == data.length ? data : Arrays.copyOf(data, size);
+		}
+		if (size < 0 || size > data.length * MAX_RATIO) {
+			throw new IOException(path + " in the GResource bundle is damaged.");
+		}
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			byte[] inflated = new byte[size];
+			int length = 0;
+			while (length < size && !inflater.finished()) {
+				int read = inflater.inflate(inflated, length, size - length);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += read;
+			}
+			if (length != size) {
+				throw new IOException(path + " in the GResource bundle is cut short.");
+			}
+			return inflated;
+		} catch (DataFormatException e) {
+			throw new IOException(path + " in the GResource bundle is damaged.", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Packs contents as an uncompressed file value.
+	 *
+	 * @param data byte array
+	 * @return byte array, a serialized GVariant of type 'v'
+	 */
+	private static byte[] encode(byte[] data) {
+		byte[] type = TYPE.getBytes(StandardCharsets.US_ASCII);
+		// size, flags, contents and their nul, the variant's nul and type
+		ByteBuffer value = ByteBuffer.allocate(8 + data.length + 2 + type.length).order(ByteOrder.LITTLE_ENDIAN);
+		value.putInt(data.length).putInt(0).put(data).put((byte) 0).put((byte) 0).put(type);
+		return value.array();
+	}
+
+	/**
+	 * Pulls one file out of a bundle on disk, mapping it rather than reading it.
+	 *
+	 * @param file {@link Path} of the bundle
+	 * @param path {@link String} of the file in it, e.g.
+	 *             /org/gnome/shell/theme/gdm.css
+	 * @return byte array of its contents, null if there's no such file
+	 * @throws IOException when the bundle can't be read or is damaged
+	 */
+	public static byte[] extract(Path file, String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			GvdbReader reader = GvdbReader.read(mapped);
+			int item = reader.find(path);
+			return item < 0 || reader.getType(item) != 'v' ? null : decode(reader.getValue(item), path);
+		}
+	}
+
+	/**
+	 * Reads a whole bundle. The files are copied out, so the bytes can be
+	 * replaced afterwards.
+	 *
+	 * @param bundle byte array
+	 * @return {@link GResource}
+	 * @throws IOException when it isn't a bundle or is damaged
+	 */
+	public static GResource parse(byte[] bundle) throws IOException {
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(bundle));
+		GResource resource = new GResource();
+		for (int item : reader.listValues()) {
+			ByteBuffer value = reader.getValue(item);
+			byte[] copy = new byte[value.remaining()];
+			value.get(copy);
+			resource.entries.put(reader.getKey(item), copy);
+		}
+		return resource;
+	}
+
+	/**
+	 * @param path {@link String} of a file
+	 * @return byte array of its contents, null if there's no such file
+	 * @throws IOException when it's damaged
+	 */
+	public byte[] get(String path) throws IOException {
+		byte[] value = entries.get(path);
+		return value == null ? null : decode(ByteBuffer.wrap(value), path);
+	}
+
+	/**
+	 * @return {@link Set} of the path of every file, sorted
+	 */
+	public Set<String> getPaths() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	/**
+	 * Replaces or adds a file, uncompressed.
+	 *
+	 * @param path {@link String} starting with a slash, not ending with one
+	 * @param data byte array of its contents
+	 */
+	public void put(String path, byte[] data) {
+		if (!path.startsWith("/") || path.endsWith("/")) {
+			throw new IllegalArgumentException("Not a file path in a GResource bundle: " + path);
+		}
+		entries.put(path, encode(data));
+	}
+
+	/**
+	 * @param path {@link String} of a file to take out, if it's there
+	 */
+	public void remove(String path) {
+		entries.remove(path);
+	}
+
+	/**
+	 * @return byte array of the whole bundle
+	 */
+	public byte[] toBytes() {
+		GvdbWriter writer = new GvdbWriter();
+		for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+			writer.put(entry.getKey(), entry.getValue());
+		}
+		return writer.toBytes();
+	}
+
+}
@@ -0,0 +1,273 @@
+package ca.footeware.backgrounder.gvdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a GVDB file, the hash table format GResource bundles and dconf
+ * databases are made of, straight out of a buffer, usually a mapped file,
+ * without copying it. Only little-endian files are understood, which is all
+ * glib-compile-resources and dconf write on the machines GDM runs on.
+ * <p>
+ * A file is a 24 byte header pointing at the root table. A table is a bloom
+ * filter, an array of buckets and an array of 24 byte items. Each item holds
+ * its hash, its parent item, its part of the key, a type and a pointer to its
+ * value. An item's full key is its parents' parts then its own.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class GvdbReader {
+
+	/**
+	 * Bytes in the file header.
+	 */
+	public static final int HEADER_SIZE = 24;
+	/**
+	 * Bytes in each item.
+	 */
+	public static final int ITEM_SIZE = 24;
+	/**
+	 * "GVar", the first half of the signature as a little-endian int.
+	 */
+	public static final int SIGNATURE_0 = 0x72615647;
+	/**
+	 * "iant", the second half.
+	 */
+	public static final int SIGNATURE_1 = 0x746e6169;
+	/**
+	 * Parent of an item at the top.
+	 */
+	public static final int NO_PARENT = 0xffffffff;
+
+	private final ByteBuffer buffer;
+	private final int buckets;
+	private final int bucketCount;
+	private final int itemCount;
+	private final int items;
+
+	/**
+	 * Constructor for any table.
+	 *
+	 * @param buffer {@link ByteBuffer} holding the whole file, little endian
+	 * @param start  int offset of the table
+	 * @param end    int offset just past it
+	 * @throws IOException when the table's out of bounds
+	 */
+	private GvdbReader(ByteBuffer buffer, int start, int end) throws IOException {
+		this.buffer = buffer;
+		if (start < HEADER_SIZE || end > buffer.limit() || end - start < 8 || (start & 3) != 0) {
+			throw new IOException("GVDB table is out of bounds.");
+		}
+		// the top 5 bits are the bloom filter's shift
+		long bloomCount = buffer.getInt(start) & ((1 << 27) - 1);
+		long count = Integer.toUnsignedLong(buffer.getInt(start + 4));
+		if (start + 8 + 4 * (bloomCount + count) > end) {
+			throw new IOException("GVDB table is out of bounds.");
+		}
+		bucketCount = (int) count;
+		buckets = start + 8 + 4 * (int) bloomCount;
+		items = buckets + 4 * bucketCount;
+		itemCount = (end - items) / ITEM_SIZE;
+	}
+
+	/**
+	 * Reads the root table, checking the header and table fit the buffer.
+	 *
+	 * @param buffer {@link ByteBuffer} holding the whole file
+	 * @return {@link GvdbReader}
+	 * @throws IOException when it isn't a GVDB file
+	 */
+	public static GvdbReader read(ByteBuffer buffer) throws IOException {
+		buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < HEADER_SIZE) {
+			throw new IOException("Not a GVDB file, it's too short.");
+		}
+		if (buffer.getInt(0) != SIGNATURE_0 || buffer.getInt(4) != SIGNATURE_1) {
+			if (Integer.reverseBytes(buffer.getInt(0)) == SIGNATURE_0) {
+				throw new IOException("Big-endian GVDB files aren't supported.");
+			}
+			throw new IOException("Not a GVDB file.");
+		}
+		return new GvdbReader(buffer, buffer.getInt(16), buffer.getInt(20));
+	}
+
+	/**
+	 * The hash GVDB files use, djb2 over signed bytes.
+	 *
+	 * @param key byte array, UTF-8
+	 * @return int hash
+	 */
+	public static int hash(byte[] key) {
+		int hash = 5381;
+		for (byte b : key) {
+			hash = hash * 33 + b;
+		}
+		return hash;
+	}
+
+	/**
+	 * Finds the item with the provided key.
+	 *
+	 * @param key {@link String}
+	 * @return int item index, -1 if there's none
+	 * @throws IOException when the file is damaged
+	 */
+	public int find(String key) throws IOException {
+		if (bucketCount == 0) {
+			return -1;
+		}
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(bytes);
+		int bucket = Integer.remainderUnsigned(hash, bucketCount);
+		int first = buffer.getInt(buckets + 4 * bucket);
+		int last = bucket + 1 < bucketCount ? buffer.getInt(buckets + 4 * (bucket + 1)) : itemCount;
+		if (first < 0) {
+			throw new IOException("GVDB hash table is damaged.");
+		}
+		for (int item = first; item < last && item < itemCount; item++) {
+			if (buffer.getInt(item(item)) == hash && isKey(item, bytes, bytes.length)) {
+				return item;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param item int index
+	 * @return {@link String} full key of the provided item
+	 * @throws IOException when the file is damaged
+	 */
+	public String getKey(int item) throws IOException {
+		StringBuilder key = new StringBuilder();
+		// parents come first, a loop means damage
+		for (int depth = 0; item != NO_PARENT; depth++) {
+			if (item < 0 || item >= itemCount || depth > itemCount) {
+				throw new IOException("GVDB keys are damaged.");
+			}
+			key.insert(0, new String(getKeyPart(item), StandardCharsets.UTF_8));
+			item = buffer.getInt(item(item) + 4);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return int number of items
+	 */
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * @param item int index
+	 * @return byte array of the item's own part of its key
+	 * @throws IOException when it's out of bounds
+	 */
+	private byte[] getKeyPart(int item) throws IOException {
+		int start = buffer.getInt(item(item) + 8);
+		int size = buffer.getShort(item(item) + 12) & 0xffff;
+		byte[] part = new byte[size];
+		slice(start, start + size).get(part);
+		return part;
+	}
+
+	/**
+	 * @param item int index of an 'H' item
+	 * @return {@link GvdbReader} of the table it holds
+	 * @throws IOException when it's out of bounds
+	 */
+	public GvdbReader getTable(int item) throws IOException {
+		return new GvdbReader(buffer, buffer.getInt(item(item) + 16), buffer.getInt(item(item) + 20));
+	}
+
+	/**
+	 * @param item int index
+	 * @return char the item's type: 'v' for a value, 'L' for a list of children,
+	 *         'H' for a nested table
+	 */
+	public char getType(int item) {
+		return (char) buffer.get(item(item) + 14);
+	}
+
+	/**
+	 * @param item int index
+	 * @return {@link ByteBuffer} of the item's value, a serialized GVariant of
+	 *         type 'v' for 'v' items
+	 * @throws IOException when it's out of bounds
+	 */
+	public ByteBuffer getValue(int item) throws IOException {
+		return slice(buffer.getInt(item(item) + 16), buffer.getInt(item(item) + 20));
+	}
+
+	/**
+	 * Checks the provided item's full key is the first <code>length</code> bytes
+	 * of the provided key, comparing its own part then its parent's.
+	 *
+	 * @param item   int index
+	 * @param key    byte array
+	 * @param length int bytes of it to match
+	 * @return boolean true if it is
+	 * @throws IOException when the file is damaged
+	 */
+	private boolean isKey(int item, byte[] key, int length) throws IOException {
+		for (int depth = 0; depth <= itemCount; depth++) {
+			byte[] part = getKeyPart(item);
+			if (part.length > length) {
+				return false;
+			}
+			for (int i = 0; i < part.length; i++) {
+				if (part[i] != key[length - part.length + i]) {
+					return false;
+				}
+			}
+			length -= part.length;
+			item = buffer.getInt(item(item) + 4);
+			if (item == NO_PARENT) {
+				return length == 0;
+			}
+			if (item < 0 || item >= itemCount) {
+				return false;
+			}
+		}
+		throw new IOException("GVDB keys are damaged.");
+	}
+
+	/**
+	 * @param index int
+	 * @return int offset of the item with the provided index
+	 */
+	private int item(int index) {
+		return items + ITEM_SIZE * index;
+	}
+
+	/**
+	 * @return {@link List} of the index of every 'v' item, i.e. every file
+	 */
+	public List<Integer> listValues() {
+		List<Integer> values = new ArrayList<>();
+		for (int item = 0; item < itemCount; item++) {
+			if (getType(item) == 'v') {
+				values.add(item);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @param start int offset
+	 * @param end   int offset
+	 * @return {@link ByteBuffer} of the bytes between, little endian
+	 * @throws IOException when they're out of bounds
+	 */
+	private ByteBuffer slice(int start, int end) throws IOException {
+		if (start < 0 || end < start || end > buffer.limit()) {
+			throw new IOException("GVDB file points outside itself.");
+		}
+		return buffer.slice(start, end - start).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+}
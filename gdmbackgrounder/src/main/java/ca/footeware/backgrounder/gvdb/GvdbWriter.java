@@ -0,0 +1,208 @@
+package ca.footeware.backgrounder.gvdb;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Writes a GVDB file laid out like glib-compile-resources and dconf do: a
+ * table holding every value under its full path and, for paths, every folder
+ * above it, each folder listing its children, keys split at the slashes so
+ * each item stores only its own name. Tables can hold other tables, as dconf's
+ * <code>.locks</code> does.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class GvdbWriter {
+
+	/**
+	 * The file being laid out, chunk by chunk.
+	 */
+	private static final class Output {
+		private ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+		private int size = GvdbReader.HEADER_SIZE;
+
+		/**
+		 * @param alignment int, a power of two
+		 * @param length    int bytes
+		 * @return int offset of a new chunk, zeroed
+		 */
+		private int allocate(int alignment, int length) {
+			int start = (size + alignment - 1) & -alignment;
+			size = start + length;
+			if (size > buffer.capacity()) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2))
+						.order(ByteOrder.LITTLE_ENDIAN);
+				grown.put(0, buffer, 0, buffer.capacity());
+				buffer = grown;
+			}
+			return start;
+		}
+	}
+
+	private final boolean folders;
+	private final SortedMap<String, Object> values = new TreeMap<>();
+
+	/**
+	 * Constructor for a table whose paths get folders.
+	 */
+	public GvdbWriter() {
+		this(true);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param folders boolean true to add an item for every folder above each path
+	 *                starting with a slash, false to store keys as they are
+	 */
+	public GvdbWriter(boolean folders) {
+		this.folders = folders;
+	}
+
+	/**
+	 * @param key {@link String} a file or folder path
+	 * @return {@link String} its folder, with a trailing slash, null for "/" or
+	 *         anything not starting with a slash
+	 */
+	private static String getParent(String key) {
+		if (!key.startsWith("/")) {
+			return null;
+		}
+		int slash = key.lastIndexOf('/', key.endsWith("/") ? key.length() - 2 : key.length() - 1);
+		return slash < 0 ? null : key.substring(0, slash + 1);
+	}
+
+	/**
+	 * Adds a value, replacing anything with the same key.
+	 *
+	 * @param key   {@link String}
+	 * @param value byte array, a serialized GVariant of type 'v'
+	 */
+	public void put(String key, byte[] value) {
+		values.put(key, value);
+	}
+
+	/**
+	 * Adds a nested table, replacing anything with the same key.
+	 *
+	 * @param key   {@link String}
+	 * @param table {@link GvdbWriter}
+	 */
+	public void putTable(String key, GvdbWriter table) {
+		values.put(key, table);
+	}
+
+	/**
+	 * Lays out and writes the whole file.
+	 *
+	 * @return byte array
+	 */
+	public byte[] toBytes() {
+		Output output = new Output();
+		int[] root = write(output);
+		output.buffer.putInt(0, GvdbReader.SIGNATURE_0).putInt(4, GvdbReader.SIGNATURE_1);
+		// version and options stay 0
+		output.buffer.putInt(16, root[0]).putInt(20, root[1]);
+		byte[] bytes = new byte[output.size];
+		output.buffer.get(0, bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes this table, then each item's name and value.
+	 *
+	 * @param output {@link Output}
+	 * @return int array of the table's start and end
+	 */
+	private int[] write(Output output) {
+		TreeSet<String> keys = new TreeSet<>(values.keySet());
+		if (folders) {
+			for (String key : values.keySet()) {
+				for (String parent = getParent(key); parent != null; parent = getParent(parent)) {
+					keys.add(parent);
+				}
+			}
+		}
+		int count = keys.size();
+		Map<String, Integer> hashes = new HashMap<>();
+		for (String key : keys) {
+			hashes.put(key, GvdbReader.hash(key.getBytes(StandardCharsets.UTF_8)));
+		}
+		// items are found by bucket, so they're stored in bucket order
+		List<String> items = new ArrayList<>(keys);
+		items.sort(Comparator.comparingInt(key -> Integer.remainderUnsigned(hashes.get(key), count)));
+		Map<String, Integer> indexes = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			indexes.put(items.get(i), i);
+		}
+		Map<String, List<Integer>> children = new HashMap<>();
+		if (folders) {
+			for (String item : items) {
+				String parent = getParent(item);
+				if (parent != null) {
+					children.computeIfAbsent(parent, k -> new ArrayList<>()).add(indexes.get(item));
+				}
+			}
+		}
+
+		int table = output.allocate(4, 8 + count * (4 + GvdbReader.ITEM_SIZE));
+		// no bloom filter
+		output.buffer.putInt(table, 0).putInt(table + 4, count);
+		for (int bucket = 0, i = 0; bucket < count; bucket++) {
+			while (i < count && Integer.remainderUnsigned(hashes.get(items.get(i)), count) < bucket) {
+				i++;
+			}
+			output.buffer.putInt(table + 8 + 4 * bucket, i);
+		}
+		for (int i = 0; i < count; i++) {
+			String key = items.get(i);
+			String parent = folders ? getParent(key) : null;
+			byte[] part = key.substring(parent == null ? 0 : parent.length()).getBytes(StandardCharsets.UTF_8);
+			int keyStart = output.allocate(1, part.length);
+			output.buffer.put(keyStart, part);
+			Object value = values.get(key);
+			char type;
+			int start;
+			int end;
+			if (value instanceof GvdbWriter) {
+				type = 'H';
+				int[] nested = ((GvdbWriter) value).write(output);
+				start = nested[0];
+				end = nested[1];
+			} else if (value != null) {
+				type = 'v';
+				byte[] bytes = (byte[]) value;
+				start = output.allocate(8, bytes.length);
+				end = start + bytes.length;
+				output.buffer.put(start, bytes);
+			} else {
+				type = 'L';
+				List<Integer> list = children.getOrDefault(key, List.of());
+				start = output.allocate(4, 4 * list.size());
+				end = start + 4 * list.size();
+				for (int j = 0; j < list.size(); j++) {
+					output.buffer.putInt(start + 4 * j, list.get(j));
+				}
+			}
+			int item = table + 8 + 4 * count + GvdbReader.ITEM_SIZE * i;
+			output.buffer.putInt(item, hashes.get(key));
+			output.buffer.putInt(item + 4, parent == null ? GvdbReader.NO_PARENT : indexes.get(parent));
+			output.buffer.putInt(item + 8, keyStart);
+			output.buffer.putShort(item + 12, (short) part.length);
+			output.buffer.put(item + 14, (byte) type);
+			output.buffer.putInt(item + 16, start).putInt(item + 20, end);
+		}
+		return new int[] { table, table + 8 + count * (4 + GvdbReader.ITEM_SIZE) };
+	}
+
+}
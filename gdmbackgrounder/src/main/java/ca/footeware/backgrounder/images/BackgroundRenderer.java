@@ -0,0 +1,461 @@
+package ca.footeware.backgrounder.images;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import ca.footeware.backgrounder.instrumentation.Stage;
+import ca.footeware.backgrounder.io.AtomicFiles;
+import ca.footeware.backgrounder.io.FileIdentity;
+import ca.footeware.backgrounder.painters.CurrentBackgrounds;
+
+/**
+ * Renders an image to a screen's size for a given picture option so GNOME and
+ * GDM can show it as is, rather than decoding and rescaling a huge original on
+ * every login, unlock and resume. Blurred and darkened variants are made the
+ * same way, so the shell needn't do it on every unlock. Renders are kept on
+ * disk, named by the source's content hash, the size and the mode or effects,
+ * so each is only made once. They're set as backgrounds in place, so they're
+ * kept with the user's data rather than in a cache that may be cleared, and a
+ * render that's set right now is never pruned.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class BackgroundRenderer {
+
+	/**
+	 * How an image is fitted to the screen.
+	 */
+	public enum Mode {
+		/**
+		 * Shown at its own size in the middle, cropped or bordered.
+		 */
+		CENTERED,
+		/**
+		 * Scaled to fit inside, bordered along two sides.
+		 */
+		CONTAIN,
+		/**
+		 * Scaled to fill, cropped along two sides.
+		 */
+		COVER,
+		/**
+		 * Scaled to fill, aspect ratio be damned.
+		 */
+		STRETCHED;
+
+		/**
+		 * @param option {@link String} GSettings picture-options value or CSS
+		 *               background-size
+		 * @return {@link Mode}, null if there's nothing to gain rendering for it
+		 *         (tiled, spanned across monitors or not shown at all)
+		 */
+		public static Mode of(String option) {
+			switch (option) {
+			case "centered":
+				return CENTERED;
+			case "scaled":
+			case "contain":
+				return CONTAIN;
+			case "zoom":
+			case "cover":
+				return COVER;
+			case "stretched":
+				return STRETCHED;
+			default:
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Finds the files the backgrounds are set to right now.
+	 */
+	@FunctionalInterface
+	public interface InUse {
+
+		/**
+		 * @return {@link Set} of absolute {@link Path}s
+		 * @throws IOException          when they can't be found out
+		 * @throws InterruptedException if interrupted finding out
+		 */
+		Set<Path> get() throws IOException, InterruptedException;
+	}
+
+	/**
+	 * A content hash as of a given {@link FileIdentity}.
+	 */
+	private static final class Hash {
+		private final FileIdentity identity;
+		private final String value;
+
+		private Hash(FileIdentity identity, String value) {
+			this.identity = identity;
+			this.value = value;
+		}
+	}
+
+	private static final String COMPONENT = "render";
+	private static final BackgroundRenderer DEFAULT = new BackgroundRenderer(getDefaultDirectory(), 32,
+			CurrentBackgrounds::get);
+	/**
+	 * Largest width and height to apply effects at, bigger images are scaled
+	 * down first as the blur hides the detail anyway.
+	 */
+	private static final int EFFECTS_MAX_SIZE = 3840;
+	private static final float QUALITY = 0.95f;
+	private final Path directory;
+	private final Map<Path, Hash> hashes = new ConcurrentHashMap<>();
+	private final InUse inUse;
+	private final int maxRenders;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory  {@link Path} to keep renders in
+	 * @param maxRenders int number of renders to keep, least recently used ones
+	 *                   go first
+	 * @param inUse      {@link InUse} renders that are never pruned
+	 */
+	public BackgroundRenderer(Path directory, int maxRenders, InUse inUse) {
+		this.directory = directory;
+		this.maxRenders = maxRenders;
+		this.inUse = inUse;
+	}
+
+	/**
+	 * Blurs and darkens the image at the provided path, or finds an earlier
+	 * variant of it made the same way.
+	 *
+	 * @param source  {@link Path}
+	 * @param effects {@link Effects}
+	 * @return {@link Path} of the variant, or the source if there are no effects
+	 * @throws IOException          when the image can't be read or the variant
+	 *                              written
+	 * @throws InterruptedException if cancelled
+	 */
+	public Path applyEffects(Path source, Effects effects) throws IOException, InterruptedException {
+		if (effects.isNone()) {
+			return source;
+		}
+		String hash;
+		try (Stage stage = Stage.start(COMPONENT, "hash")) {
+			stage.setBytes(Files.size(source));
+			hash = getHash(source);
+		}
+		Path target = directory.resolve(hash + "-" + effects.getName() + ".jpg");
+		if (Files.isRegularFile(target)) {
+			// mark it used so pruning keeps it
+			Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+			return target;
+		}
+		BufferedImage decoded;
+		try (Stage stage = Stage.start(COMPONENT, "decode")) {
+			stage.setBytes(Files.size(source));
+			decoded = ImageDecoder.decode(source, EFFECTS_MAX_SIZE, EFFECTS_MAX_SIZE);
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		BufferedImage image;
+		Stage filtering = Stage.start(COMPONENT, "effects");
+		try (filtering) {
+			image = EffectsFilter.apply(decoded, effects);
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		save(target, image);
+		return target;
+	}
+
+	/**
+	 * @return {@link BackgroundRenderer} keeping renders in
+	 *         <code>$XDG_DATA_HOME/backgrounder/rendered</code>
+	 */
+	public static BackgroundRenderer getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return {@link Path}
+	 */
+	private static Path getDefaultDirectory() {
+		String data = System.getenv("XDG_DATA_HOME");
+		Path base = data == null || data.isEmpty() ? Paths.get(System.getProperty("user.home"), ".local", "share")
+				: Paths.get(data);
+		return base.resolve("backgrounder").resolve("rendered");
+	}
+
+	/**
+	 * Draws the provided image onto an opaque canvas filled with its dominant
+	 * color, the same one set behind it as <code>primary-color</code> or the
+	 * login theme's background-color, so a centered or contained render doesn't
+	 * get black bars the rest of the screen doesn't have.
+	 *
+	 * @param image  {@link BufferedImage}
+	 * @param width  int canvas width
+	 * @param height int canvas height
+	 * @param x      int where the image's left edge goes
+	 * @param y      int where the image's top edge goes
+	 * @return {@link BufferedImage}
+	 */
+	private static BufferedImage flatten(BufferedImage image, int width, int height, int x, int y) {
+		if (image.getType() == BufferedImage.TYPE_INT_RGB && image.getWidth() == width
+				&& image.getHeight() == height) {
+			return image;
+		}
+		ColorAnalyzer.Colors colors = ColorAnalyzer.analyze(image);
+		BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = canvas.createGraphics();
+		try {
+			// black only when there's not a pixel to go on
+			graphics.setColor(colors == null ? Color.BLACK : new Color(colors.getDominant()));
+			graphics.fillRect(0, 0, width, height);
+			graphics.drawImage(image, x, y, null);
+		} finally {
+			graphics.dispose();
+		}
+		return canvas;
+	}
+
+	/**
+	 * @param image {@link BufferedImage}, opaque
+	 * @return byte[] of the image as a JPEG
+	 * @throws IOException when shit goes south
+	 */
+	private static byte[] toJpeg(BufferedImage image) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(QUALITY);
+			writer.setOutput(out);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param path {@link Path}
+	 * @return {@link String} hex SHA-256 of the file's contents, remembered for
+	 *         as long as the file doesn't change
+	 * @throws IOException when the file can't be read
+	 */
+	private String getHash(Path path) throws IOException {
+		FileIdentity identity = FileIdentity.of(path);
+		Hash hash = hashes.get(path);
+		if (hash != null && hash.identity.equals(identity)) {
+			return hash.value;
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = Files.newInputStream(path)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder builder = new StringBuilder();
+		for (byte b : digest.digest()) {
+			builder.append(String.format("%02x", b & 0xFF));
+		}
+		hashes.put(path, new Hash(identity, builder.toString()));
+		return builder.toString();
+	}
+
+	/**
+	 * Deletes the least recently used renders beyond the limit, other than any
+	 * the backgrounds are set to. If what they're set to can't be found out,
+	 * nothing's deleted.
+	 *
+	 * @throws IOException          when the directory can't be listed
+	 * @throws InterruptedException if interrupted finding out what's in use
+	 */
+	private void prune() throws IOException, InterruptedException {
+		Set<Path> used;
+		try {
+			used = inUse.get();
+		} catch (IOException e) {
+			// better too many than a background pointing at nothing
+			return;
+		}
+		List<Path> renders;
+		try (Stream<Path> list = Files.list(directory)) {
+			renders = list.filter(Files::isRegularFile).sorted(Comparator.comparing((Path path) -> {
+				try {
+					return Files.getLastModifiedTime(path);
+				} catch (IOException e) {
+					return FileTime.fromMillis(0);
+				}
+			}).reversed()).collect(Collectors.toList());
+		}
+		for (Path render : renders.subList(Math.min(maxRenders, renders.size()), renders.size())) {
+			if (!used.contains(render.toAbsolutePath())) {
+				Files.deleteIfExists(render);
+			}
+		}
+	}
+
+	/**
+	 * Renders the image at the provided path to the provided size for the
+	 * provided picture option, or finds an earlier render of it.
+	 *
+	 * @param source {@link Path}
+	 * @param width  int screen width
+	 * @param height int screen height
+	 * @param option {@link String} GSettings picture-options value or CSS
+	 *               background-size
+	 * @return {@link Path} of the render, or the source if the option doesn't
+	 *         benefit from one
+	 * @throws IOException          when the image can't be read or the render
+	 *                              written
+	 * @throws InterruptedException if cancelled
+	 */
+	public Path render(Path source, int width, int height, String option) throws IOException, InterruptedException {
+		Mode mode = Mode.of(option);
+		if (mode == null) {
+			return source;
+		}
+		String hash;
+		try (Stage stage = Stage.start(COMPONENT, "hash")) {
+			stage.setBytes(Files.size(source));
+			hash = getHash(source);
+		}
+		Path target = directory.resolve(
+				hash + "-" + width + "x" + height + "-" + mode.name().toLowerCase(Locale.ROOT) + ".jpg");
+		if (Files.isRegularFile(target)) {
+			// mark it used so pruning keeps it
+			Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+			return target;
+		}
+		BufferedImage image = render(source, width, height, mode);
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		save(target, image);
+		return target;
+	}
+
+	/**
+	 * Writes a render as a JPEG everyone can read, then prunes old ones.
+	 *
+	 * @param target {@link Path}
+	 * @param image  {@link BufferedImage}, opaque
+	 * @throws IOException          when it can't be written
+	 * @throws InterruptedException if interrupted while pruning
+	 */
+	private void save(Path target, BufferedImage image) throws IOException, InterruptedException {
+		Files.createDirectories(directory);
+		try {
+			// readable by the gdm user, who has to load it for the login screen
+			Files.createFile(target,
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-r--r--")));
+		} catch (FileAlreadyExistsException e) {
+			// someone beat us to it, we'll replace theirs
+		}
+		byte[] jpeg;
+		try (Stage stage = Stage.start(COMPONENT, "encode")) {
+			jpeg = toJpeg(image);
+			stage.setBytes(jpeg.length);
+		}
+		AtomicFiles.write(target, jpeg);
+		prune();
+	}
+
+	/**
+	 * Renders the image at the provided path to the provided size.
+	 *
+	 * @param source {@link Path}
+	 * @param width  int
+	 * @param height int
+	 * @param mode   {@link Mode}
+	 * @return {@link BufferedImage}, opaque
+	 * @throws IOException          when the image can't be read
+	 * @throws InterruptedException if cancelled
+	 */
+	public BufferedImage render(Path source, int width, int height, Mode mode)
+			throws IOException, InterruptedException {
+		Dimension size = ImageDecoder.getSize(source);
+		if (mode == Mode.CENTERED) {
+			// no scaling, just decode the part that's on screen
+			int x = (size.width - width) / 2;
+			int y = (size.height - height) / 2;
+			BufferedImage image;
+			try (Stage stage = Stage.start(COMPONENT, "decode")) {
+				stage.setBytes(Files.size(source));
+				image = ImageDecoder.decodeRegion(source, new Rectangle(Math.max(0, x), Math.max(0, y), width, height));
+			}
+			return flatten(image, width, height, Math.max(0, -x), Math.max(0, -y));
+		}
+		double scaleX = (double) width / size.width;
+		double scaleY = (double) height / size.height;
+		double scale = mode == Mode.COVER ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY);
+		int scaledWidth = mode == Mode.STRETCHED ? width : Math.max(1, (int) Math.round(size.width * scale));
+		int scaledHeight = mode == Mode.STRETCHED ? height : Math.max(1, (int) Math.round(size.height * scale));
+		BufferedImage decoded;
+		try (Stage stage = Stage.start(COMPONENT, "decode")) {
+			stage.setBytes(Files.size(source));
+			decoded = ImageDecoder.decodeAtLeast(source, scaledWidth, scaledHeight);
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		Rectangle region = new Rectangle(decoded.getWidth(), decoded.getHeight());
+		int targetWidth = scaledWidth;
+		int targetHeight = scaledHeight;
+		if (mode == Mode.COVER) {
+			// crop the decoded image to the screen's aspect ratio, centered
+			double factor = (double) decoded.getWidth() / scaledWidth;
+			region.width = Math.min(decoded.getWidth(), Math.max(1, (int) Math.round(width * factor)));
+			region.height = Math.min(decoded.getHeight(), Math.max(1, (int) Math.round(height * factor)));
+			region.x = (decoded.getWidth() - region.width) / 2;
+			region.y = (decoded.getHeight() - region.height) / 2;
+			targetWidth = width;
+			targetHeight = height;
+		}
+		BufferedImage resampled;
+		Stage resampling = Stage.start(COMPONENT, "resample");
+		try (resampling) {
+			resampled = Resampler.resample(decoded, region, targetWidth, targetHeight);
+		}
+		return flatten(resampled, width, height, (width - targetWidth) / 2, (height - targetHeight) / 2);
+	}
+
+}
@@ -0,0 +1,246 @@
+package ca.footeware.backgrounder.images;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ca.footeware.backgrounder.io.FileIdentity;
+
+/**
+ * Works out an image's average and dominant color, to fill the screen with
+ * while the image itself loads. The image is decoded skipping rows and columns,
+ * then its rows are split between the common fork-join pool's workers, each
+ * sorting its pixels into coarse buckets of similar color, and the buckets
+ * merged. The dominant color is the average of the fullest bucket, so it's a
+ * color actually in the image rather than a bucket's corner.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class ColorAnalyzer {
+
+	/**
+	 * An image's colors, each 0xRRGGBB.
+	 */
+	public static final class Colors {
+		private final int average;
+		private final int dominant;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param average  int 0xRRGGBB
+		 * @param dominant int 0xRRGGBB
+		 */
+		public Colors(int average, int dominant) {
+			this.average = average;
+			this.dominant = dominant;
+		}
+
+		/**
+		 * @return int 0xRRGGBB, the mean of every opaque pixel
+		 */
+		public int getAverage() {
+			return average;
+		}
+
+		/**
+		 * @return int 0xRRGGBB, the mean of the most common kind of color
+		 */
+		public int getDominant() {
+			return dominant;
+		}
+
+		@Override
+		public String toString() {
+			return "average " + toHex(average) + ", dominant " + toHex(dominant);
+		}
+	}
+
+	/**
+	 * Counts and channel sums per bucket for a stretch of rows.
+	 */
+	private static final class Tally {
+		private final int[] counts = new int[BUCKETS];
+		private final long[] sums = new long[BUCKETS * 3];
+
+		/**
+		 * Adds another stretch's buckets to these.
+		 *
+		 * @param other {@link Tally}
+		 */
+		private void add(Tally other) {
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] += other.counts[i];
+			}
+			for (int i = 0; i < sums.length; i++) {
+				sums[i] += other.sums[i];
+			}
+		}
+	}
+
+	/**
+	 * Tallies a stretch of rows, splitting it in two until it's small enough.
+	 */
+	private static final class TallyTask extends RecursiveTask<Tally> {
+		private static final long serialVersionUID = 1L;
+		private final int firstRow;
+		private final transient BufferedImage image;
+		private final int lastRow;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param image    {@link BufferedImage}
+		 * @param firstRow int inclusive
+		 * @param lastRow  int exclusive
+		 */
+		private TallyTask(BufferedImage image, int firstRow, int lastRow) {
+			this.image = image;
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+		}
+
+		@Override
+		protected Tally compute() {
+			if (lastRow - firstRow > BAND_ROWS) {
+				int middle = (firstRow + lastRow) >>> 1;
+				TallyTask top = new TallyTask(image, firstRow, middle);
+				top.fork();
+				Tally tally = new TallyTask(image, middle, lastRow).compute();
+				tally.add(top.join());
+				return tally;
+			}
+			Tally tally = new Tally();
+			int width = image.getWidth();
+			int[] pixels = image.getRGB(0, firstRow, width, lastRow - firstRow, null, 0, width);
+			for (int pixel : pixels) {
+				// mostly see-through pixels aren't what's seen
+				if (pixel >>> 24 < 0x80) {
+					continue;
+				}
+				int r = (pixel >> 16) & 0xFF;
+				int g = (pixel >> 8) & 0xFF;
+				int b = pixel & 0xFF;
+				int bucket = (r >> (8 - BUCKET_BITS) << (2 * BUCKET_BITS)) | (g >> (8 - BUCKET_BITS) << BUCKET_BITS)
+						| (b >> (8 - BUCKET_BITS));
+				tally.counts[bucket]++;
+				tally.sums[bucket * 3] += r;
+				tally.sums[bucket * 3 + 1] += g;
+				tally.sums[bucket * 3 + 2] += b;
+			}
+			return tally;
+		}
+	}
+
+	/**
+	 * Rows per unit of work.
+	 */
+	private static final int BAND_ROWS = 32;
+	/**
+	 * Bits kept of each channel when bucketing, coarse enough that a sky's
+	 * shades of blue end up together.
+	 */
+	private static final int BUCKET_BITS = 3;
+	private static final int BUCKETS = 1 << (3 * BUCKET_BITS);
+	/**
+	 * How many pixels across and down to decode at least, plenty for a color.
+	 */
+	private static final int SAMPLE_SIZE = 512;
+	/**
+	 * The last image's color, as the wallpaper and lock screen are usually set to
+	 * the same one.
+	 */
+	private static String lastColor;
+	private static FileIdentity lastIdentity;
+	private static Path lastPath;
+
+	private ColorAnalyzer() {
+		// static only
+	}
+
+	/**
+	 * Analyzes the provided image, on the common fork-join pool.
+	 *
+	 * @param image {@link BufferedImage}
+	 * @return {@link Colors}, null if there isn't an opaque pixel in it
+	 */
+	public static Colors analyze(BufferedImage image) {
+		Tally tally = ForkJoinPool.commonPool().invoke(new TallyTask(image, 0, image.getHeight()));
+		long count = 0;
+		long[] totals = new long[3];
+		int fullest = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += tally.counts[i];
+			for (int channel = 0; channel < 3; channel++) {
+				totals[channel] += tally.sums[i * 3 + channel];
+			}
+			if (tally.counts[i] > tally.counts[fullest]) {
+				fullest = i;
+			}
+		}
+		if (count == 0) {
+			return null;
+		}
+		int average = toRGB(totals[0] / (double) count, totals[1] / (double) count, totals[2] / (double) count);
+		int size = tally.counts[fullest];
+		int dominant = toRGB(tally.sums[fullest * 3] / (double) size, tally.sums[fullest * 3 + 1] / (double) size,
+				tally.sums[fullest * 3 + 2] / (double) size);
+		return new Colors(average, dominant);
+	}
+
+	/**
+	 * Decodes a reduced copy of the image at the provided path and analyzes it.
+	 *
+	 * @param path {@link Path}
+	 * @return {@link Colors}, null if there isn't an opaque pixel in it
+	 * @throws IOException when the file can't be read or isn't an image
+	 */
+	public static Colors analyze(Path path) throws IOException {
+		return analyze(ImageDecoder.decodeAtLeast(path, SAMPLE_SIZE, SAMPLE_SIZE));
+	}
+
+	/**
+	 * Gets the color to fill the screen with behind the image at the provided
+	 * path, its dominant one.
+	 *
+	 * @param path {@link Path}
+	 * @return {@link String} like #1a2b3c, null if there's nothing to go on,
+	 *         e.g. a WebP that GNOME shows but Java can't decode
+	 */
+	public static synchronized String getBackgroundColor(Path path) {
+		try {
+			FileIdentity identity = FileIdentity.of(path);
+			if (!path.equals(lastPath) || !identity.equals(lastIdentity)) {
+				Colors colors = analyze(path);
+				lastColor = colors == null ? null : toHex(colors.getDominant());
+				lastIdentity = identity;
+				lastPath = path;
+			}
+			return lastColor;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param rgb int 0xRRGGBB
+	 * @return {@link String} like #1a2b3c
+	 */
+	public static String toHex(int rgb) {
+		return String.format("#%06x", Integer.valueOf(rgb & 0xFFFFFF));
+	}
+
+	/**
+	 * @param r double
+	 * @param g double
+	 * @param b double
+	 * @return int 0xRRGGBB, each channel rounded
+	 */
+	private static int toRGB(double r, double g, double b) {
+		return ((int) Math.round(r) << 16) | ((int) Math.round(g) << 8) | (int) Math.round(b);
+	}
+
+}
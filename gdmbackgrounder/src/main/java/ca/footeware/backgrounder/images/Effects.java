@@ -0,0 +1,92 @@
+package ca.footeware.backgrounder.images;
+
+/**
+ * How much to blur and darken an image, for the lock and login screens' frosted
+ * look without the shell doing it on every unlock.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class Effects {
+
+	/**
+	 * Largest blur radius, past which everything's one color anyway.
+	 */
+	public static final int MAX_BLUR = 256;
+	/**
+	 * Neither blurred nor darkened.
+	 */
+	public static final Effects NONE = new Effects(0, 0);
+	private final int blur;
+	private final int dim;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param blur int radius in pixels, 0 for none
+	 * @param dim  int percent to darken by, 0 for none
+	 * @throws IllegalArgumentException when either's out of range
+	 */
+	public Effects(int blur, int dim) {
+		if (blur < 0 || blur > MAX_BLUR) {
+			throw new IllegalArgumentException("Blur has to be from 0 to " + MAX_BLUR + " pixels.");
+		}
+		if (dim < 0 || dim > 100) {
+			throw new IllegalArgumentException("Dim has to be from 0 to 100 percent.");
+		}
+		this.blur = blur;
+		this.dim = dim;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Effects)) {
+			return false;
+		}
+		Effects other = (Effects) obj;
+		return blur == other.blur && dim == other.dim;
+	}
+
+	/**
+	 * @return int radius in pixels, 0 for none
+	 */
+	public int getBlur() {
+		return blur;
+	}
+
+	/**
+	 * @return int percent to darken by, 0 for none
+	 */
+	public int getDim() {
+		return dim;
+	}
+
+	/**
+	 * @return {@link String} for naming files made with these effects, e.g.
+	 *         blur24-dim30
+	 */
+	public String getName() {
+		return "blur" + blur + "-dim" + dim;
+	}
+
+	@Override
+	public int hashCode() {
+		return blur * 101 + dim;
+	}
+
+	/**
+	 * @return boolean true if these leave an image as it is
+	 */
+	public boolean isNone() {
+		return blur == 0 && dim == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "blur " + blur + " px, dim " + dim + "%";
+	}
+
+}
@@ -0,0 +1,183 @@
+package ca.footeware.backgrounder.images;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.stream.IntStream;
+
+/**
+ * Blurs and darkens images in parallel. The blur is three box blurs across then
+ * three down, which comes out within a few percent of a Gaussian blur with a
+ * standard deviation of about the radius, at a cost that doesn't grow with the
+ * radius: each pass keeps a running sum as it slides along. Passes across are
+ * split into bands of rows and passes down into strips of columns, each worked
+ * on by one of the common fork-join pool's workers.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class EffectsFilter {
+
+	/**
+	 * Rows per unit of work across.
+	 */
+	private static final int BAND_ROWS = 32;
+	/**
+	 * Box blurs each way.
+	 */
+	private static final int PASSES = 3;
+	/**
+	 * Columns per unit of work down, narrow enough that their running sums and
+	 * a row of them stay in cache.
+	 */
+	private static final int STRIP_COLUMNS = 64;
+
+	private EffectsFilter() {
+		// static only
+	}
+
+	/**
+	 * Applies the provided effects to a copy of the provided image.
+	 *
+	 * @param image   {@link BufferedImage}
+	 * @param effects {@link Effects}
+	 * @return {@link BufferedImage}, opaque, transparent parts on black
+	 */
+	public static BufferedImage apply(BufferedImage image, Effects effects) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = result.createGraphics();
+		try {
+			graphics.drawImage(image, 0, 0, null);
+		} finally {
+			graphics.dispose();
+		}
+		int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+		int radius = effects.getBlur();
+		if (radius > 0) {
+			int[] scratch = new int[pixels.length];
+			int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+			int strips = (width + STRIP_COLUMNS - 1) / STRIP_COLUMNS;
+			// an even number of passes, so it ends up back in pixels
+			for (int pass = 0; pass < PASSES; pass++) {
+				int[] from = pass % 2 == 0 ? pixels : scratch;
+				int[] to = pass % 2 == 0 ? scratch : pixels;
+				IntStream.range(0, bands).parallel().forEach(band -> blurAcross(from, to, width, band * BAND_ROWS,
+						Math.min(height, (band + 1) * BAND_ROWS), radius));
+			}
+			for (int pass = PASSES; pass < 2 * PASSES; pass++) {
+				int[] from = pass % 2 == 0 ? pixels : scratch;
+				int[] to = pass % 2 == 0 ? scratch : pixels;
+				IntStream.range(0, strips).parallel().forEach(strip -> blurDown(from, to, width, height,
+						strip * STRIP_COLUMNS, Math.min(width, (strip + 1) * STRIP_COLUMNS), radius));
+			}
+		}
+		int dim = effects.getDim();
+		if (dim > 0) {
+			int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+			IntStream.range(0, bands).parallel().forEach(band -> dim(pixels, band * BAND_ROWS * width,
+					Math.min(height, (band + 1) * BAND_ROWS) * width, 100 - dim));
+		}
+		return result;
+	}
+
+	/**
+	 * Box blurs a band of rows across, edge pixels standing in for those beyond
+	 * the edges.
+	 *
+	 * @param from     int[] pixels
+	 * @param to       int[] pixels
+	 * @param width    int
+	 * @param firstRow int inclusive
+	 * @param lastRow  int exclusive
+	 * @param radius   int
+	 */
+	private static void blurAcross(int[] from, int[] to, int width, int firstRow, int lastRow, int radius) {
+		int size = 2 * radius + 1;
+		int half = size / 2;
+		for (int y = firstRow; y < lastRow; y++) {
+			int row = y * width;
+			int r = 0;
+			int g = 0;
+			int b = 0;
+			for (int i = -radius; i <= radius; i++) {
+				int pixel = from[row + Math.max(0, Math.min(width - 1, i))];
+				r += (pixel >> 16) & 0xFF;
+				g += (pixel >> 8) & 0xFF;
+				b += pixel & 0xFF;
+			}
+			for (int x = 0; x < width; x++) {
+				to[row + x] = ((r + half) / size << 16) | ((g + half) / size << 8) | (b + half) / size;
+				int in = from[row + Math.min(width - 1, x + radius + 1)];
+				int out = from[row + Math.max(0, x - radius)];
+				r += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+				g += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+				b += (in & 0xFF) - (out & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * Box blurs a strip of columns down, edge pixels standing in for those
+	 * beyond the edges. Goes a row at a time, keeping every column's sums.
+	 *
+	 * @param from        int[] pixels
+	 * @param to          int[] pixels
+	 * @param width       int
+	 * @param height      int
+	 * @param firstColumn int inclusive
+	 * @param lastColumn  int exclusive
+	 * @param radius      int
+	 */
+	private static void blurDown(int[] from, int[] to, int width, int height, int firstColumn, int lastColumn,
+			int radius) {
+		int size = 2 * radius + 1;
+		int half = size / 2;
+		int columns = lastColumn - firstColumn;
+		int[] r = new int[columns];
+		int[] g = new int[columns];
+		int[] b = new int[columns];
+		for (int i = -radius; i <= radius; i++) {
+			int row = Math.max(0, Math.min(height - 1, i)) * width + firstColumn;
+			for (int c = 0; c < columns; c++) {
+				int pixel = from[row + c];
+				r[c] += (pixel >> 16) & 0xFF;
+				g[c] += (pixel >> 8) & 0xFF;
+				b[c] += pixel & 0xFF;
+			}
+		}
+		for (int y = 0; y < height; y++) {
+			int row = y * width + firstColumn;
+			int in = Math.min(height - 1, y + radius + 1) * width + firstColumn;
+			int out = Math.max(0, y - radius) * width + firstColumn;
+			for (int c = 0; c < columns; c++) {
+				to[row + c] = ((r[c] + half) / size << 16) | ((g[c] + half) / size << 8) | (b[c] + half) / size;
+				int entering = from[in + c];
+				int leaving = from[out + c];
+				r[c] += ((entering >> 16) & 0xFF) - ((leaving >> 16) & 0xFF);
+				g[c] += ((entering >> 8) & 0xFF) - ((leaving >> 8) & 0xFF);
+				b[c] += (entering & 0xFF) - (leaving & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * Darkens a run of pixels.
+	 *
+	 * @param pixels  int[]
+	 * @param start   int inclusive
+	 * @param end     int exclusive
+	 * @param percent int of their brightness to keep
+	 */
+	private static void dim(int[] pixels, int start, int end, int percent) {
+		for (int i = start; i < end; i++) {
+			int pixel = pixels[i];
+			int r = (((pixel >> 16) & 0xFF) * percent + 50) / 100;
+			int g = (((pixel >> 8) & 0xFF) * percent + 50) / 100;
+			int b = ((pixel & 0xFF) * percent + 50) / 100;
+			pixels[i] = (r << 16) | (g << 8) | b;
+		}
+	}
+
+}
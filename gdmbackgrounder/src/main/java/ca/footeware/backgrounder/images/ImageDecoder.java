@@ -0,0 +1,307 @@
+package ca.footeware.backgrounder.images;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes images straight to a reduced size. JPEGs, PNGs and most TIFFs are
+ * scaled down row by row as they decode by {@link StreamingDownscaler}, so a
+ * 50 MP photo never exists in memory at full resolution when all we want is
+ * something window-sized. Other formats are read skipping rows and columns.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public final class ImageDecoder {
+
+	/**
+	 * Below which a fraction of a pixel is rounding error.
+	 */
+	private static final double EPSILON = 1e-9;
+
+	private ImageDecoder() {
+		// static only
+	}
+
+	/**
+	 * Works out how to read an image once its dimensions are known.
+	 */
+	@FunctionalInterface
+	private interface ParamFactory {
+
+		/**
+		 * @param reader {@link ImageReader}
+		 * @param width  int full width of the image
+		 * @param height int full height of the image
+		 * @return {@link ImageReadParam}
+		 */
+		ImageReadParam create(ImageReader reader, int width, int height);
+	}
+
+	/**
+	 * Works out what size to scale an image to once its dimensions are known.
+	 */
+	@FunctionalInterface
+	private interface Sizer {
+
+		/**
+		 * @param width  int full width of the image
+		 * @param height int full height of the image
+		 * @return {@link Dimension} no bigger than the image
+		 */
+		Dimension getSize(int width, int height);
+	}
+
+	/**
+	 * Decodes the image at the provided path to fit within the provided bounds,
+	 * keeping its aspect ratio. Never scales up.
+	 * 
+	 * @param path      {@link Path}
+	 * @param maxWidth  int
+	 * @param maxHeight int
+	 * @return {@link BufferedImage}
+	 * @throws IOException when the file can't be read or isn't an image
+	 */
+	public static BufferedImage decode(Path path, int maxWidth, int maxHeight) throws IOException {
+		Dimension target = new Dimension();
+		BufferedImage image = stream(path, (width, height) -> {
+			double scale = Math.min(1, Math.min((double) maxWidth / width, (double) maxHeight / height));
+			target.setSize(Math.max(1, (int) Math.round(width * scale)),
+					Math.max(1, (int) Math.round(height * scale)));
+			return target;
+		});
+		if (image == null) {
+			image = read(path, (reader, width, height) -> subsampled(reader, width, height, target.width,
+					target.height));
+		}
+		return resize(image, target.width, target.height);
+	}
+
+	/**
+	 * Decodes the image at the provided path scaled down as far as possible while
+	 * staying at least the provided size, or at full size if it's smaller than
+	 * that. Formats that can't be scaled while decoding are only reduced by
+	 * skipping rows and columns, so may come back bigger. Leaves the final
+	 * resampling to the caller.
+	 * 
+	 * @param path      {@link Path}
+	 * @param minWidth  int
+	 * @param minHeight int
+	 * @return {@link BufferedImage}
+	 * @throws IOException when the file can't be read or isn't an image
+	 */
+	public static BufferedImage decodeAtLeast(Path path, int minWidth, int minHeight) throws IOException {
+		BufferedImage image = stream(path, (width, height) -> {
+			double scale = Math.min(1, Math.max((double) minWidth / width, (double) minHeight / height));
+			return new Dimension(Math.min(width, (int) Math.ceil(width * scale - EPSILON)),
+					Math.min(height, (int) Math.ceil(height * scale - EPSILON)));
+		});
+		if (image == null) {
+			image = read(path, (reader, width, height) -> subsampled(reader, width, height,
+					Math.min(width, minWidth), Math.min(height, minHeight)));
+		}
+		return image;
+	}
+
+	/**
+	 * Decodes just the provided region of the image at the provided path, at full
+	 * resolution.
+	 * 
+	 * @param path   {@link Path}
+	 * @param region {@link Rectangle}, clipped to the image
+	 * @return {@link BufferedImage}
+	 * @throws IOException when the file can't be read or isn't an image
+	 */
+	public static BufferedImage decodeRegion(Path path, Rectangle region) throws IOException {
+		return decodeRegion(path, region, region.width, region.height);
+	}
+
+	/**
+	 * Decodes just the provided region of the image at the provided path, skipping
+	 * rows and columns as long as it stays at least the provided size. Leaves the
+	 * final resampling to the caller.
+	 * 
+	 * @param path      {@link Path}
+	 * @param region    {@link Rectangle}, clipped to the image
+	 * @param minWidth  int
+	 * @param minHeight int
+	 * @return {@link BufferedImage}
+	 * @throws IOException when the file can't be read or isn't an image
+	 */
+	public static BufferedImage decodeRegion(Path path, Rectangle region, int minWidth, int minHeight)
+			throws IOException {
+		return read(path, (reader, width, height) -> {
+			Rectangle clipped = region.intersection(new Rectangle(width, height));
+			ImageReadParam param = subsampled(reader, clipped.width, clipped.height,
+					Math.min(clipped.width, minWidth), Math.min(clipped.height, minHeight));
+			param.setSourceRegion(clipped);
+			return param;
+		});
+	}
+
+	/**
+	 * Scales the provided image down to fit within the provided bounds, keeping
+	 * its aspect ratio. Never scales up.
+	 * 
+	 * @param image     {@link BufferedImage}
+	 * @param maxWidth  int
+	 * @param maxHeight int
+	 * @return {@link BufferedImage}, the provided one if it already fits
+	 */
+	public static BufferedImage fit(BufferedImage image, int maxWidth, int maxHeight) {
+		double scale = Math.min(1,
+				Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight()));
+		return resize(image, Math.max(1, (int) Math.round(image.getWidth() * scale)),
+				Math.max(1, (int) Math.round(image.getHeight() * scale)));
+	}
+
+	/**
+	 * @param in   {@link ImageInputStream}
+	 * @param path {@link Path} for error messages
+	 * @return {@link ImageReader} for the stream's format
+	 * @throws IOException when there's no reader for it
+	 */
+	private static ImageReader getReader(ImageInputStream in, Path path) throws IOException {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+		if (!readers.hasNext()) {
+			throw new IOException("Unsupported image format: " + path);
+		}
+		return readers.next();
+	}
+
+	/**
+	 * Reads the dimensions of the image at the provided path without decoding it.
+	 * 
+	 * @param path {@link Path}
+	 * @return {@link Dimension}
+	 * @throws IOException when the file can't be read or isn't an image
+	 */
+	public static Dimension getSize(Path path) throws IOException {
+		Dimension size = new Dimension();
+		try (ImageInputStream in = open(path)) {
+			ImageReader reader = getReader(in, path);
+			try {
+				reader.setInput(in, true, true);
+				size.setSize(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @param path {@link Path}
+	 * @return {@link ImageInputStream}
+	 * @throws IOException when the file can't be opened
+	 */
+	private static ImageInputStream open(Path path) throws IOException {
+		ImageInputStream in = ImageIO.createImageInputStream(path.toFile());
+		if (in == null) {
+			throw new IOException("Can't open " + path);
+		}
+		return in;
+	}
+
+	/**
+	 * Decodes the first image at the provided path.
+	 * 
+	 * @param path    {@link Path}
+	 * @param factory {@link ParamFactory}
+	 * @return {@link BufferedImage}
+	 * @throws IOException when the file can't be read or isn't an image
+	 */
+	private static BufferedImage read(Path path, ParamFactory factory) throws IOException {
+		try (ImageInputStream in = open(path)) {
+			ImageReader reader = getReader(in, path);
+			try {
+				reader.setInput(in, true, true);
+				return reader.read(0, factory.create(reader, reader.getWidth(0), reader.getHeight(0)));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Resizes the provided image with bilinear filtering.
+	 * 
+	 * @param image  {@link BufferedImage}
+	 * @param width  int
+	 * @param height int
+	 * @return {@link BufferedImage}, the provided one if it's already that size
+	 */
+	public static BufferedImage resize(BufferedImage image, int width, int height) {
+		if (image.getWidth() == width && image.getHeight() == height) {
+			return image;
+		}
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage resized = new BufferedImage(width, height, type);
+		Graphics2D graphics = resized.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+		return resized;
+	}
+
+	/**
+	 * Scales the image at the provided path down while decoding it.
+	 * 
+	 * @param path  {@link Path}
+	 * @param sizer {@link Sizer}
+	 * @return {@link BufferedImage}, or null if it doesn't need scaling or its
+	 *         format can't be scaled while decoding
+	 * @throws IOException when the file can't be read or isn't an image
+	 */
+	private static BufferedImage stream(Path path, Sizer sizer) throws IOException {
+		try (ImageInputStream in = open(path)) {
+			ImageReader reader = getReader(in, path);
+			try {
+				// bands of a TIFF are read in any order
+				reader.setInput(in, false, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				Dimension size = sizer.getSize(width, height);
+				if (size.width >= width && size.height >= height) {
+					return null;
+				}
+				return StreamingDownscaler.scale(reader, size.width, size.height);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * @param reader       {@link ImageReader}
+	 * @param width        int full width
+	 * @param height       int full height
+	 * @param targetWidth  int
+	 * @param targetHeight int
+	 * @return {@link ImageReadParam} skipping whole pixels while decoding, but
+	 *         never below the target size
+	 */
+	private static ImageReadParam subsampled(ImageReader reader, int width, int height, int targetWidth,
+			int targetHeight) {
+		int subsampling = Math.max(1, Math.min(width / Math.max(1, targetWidth), height / Math.max(1, targetHeight)));
+		ImageReadParam param = reader.getDefaultReadParam();
+		param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+		return param;
+	}
+
+}
@@ -0,0 +1,51 @@
+package ca.footeware.backgrounder.images;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds the images in a folder.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class ImageFiles {
+
+	private static final String[] EXTENSIONS = { ".jpg", ".jpeg", ".png", ".gif", ".bmp", ".tif", ".tiff",
+			".webp" };
+
+	private ImageFiles() {
+		// static only
+	}
+
+	/**
+	 * @param path {@link Path}
+	 * @return true if the file looks like an image we can show
+	 */
+	public static boolean isImage(Path path) {
+		String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+		for (String extension : EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return Files.isRegularFile(path);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param folder {@link Path}
+	 * @return {@link List} of the images directly in the folder, by name
+	 * @throws IOException when the folder can't be listed
+	 */
+	public static List<Path> list(Path folder) throws IOException {
+		try (Stream<Path> list = Files.list(folder)) {
+			return list.filter(ImageFiles::isImage).sorted().collect(Collectors.toList());
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+package ca.footeware.backgrounder.images;
+
+/**
+ * What {@link ImageProbe} found out about an image from its header.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class ImageInfo {
+
+	/**
+	 * The formats {@link ImageProbe} understands.
+	 */
+	public enum Format {
+		/** Windows bitmap */
+		BMP,
+		/** GIF, first frame's canvas */
+		GIF,
+		/** baseline or progressive JPEG */
+		JPEG,
+		/** PNG */
+		PNG,
+		/** TIFF, first image */
+		TIFF,
+		/** lossy, lossless or extended WebP */
+		WEBP
+	}
+
+	/**
+	 * How much of the image zoom may crop off, as a fraction of the aspect ratio,
+	 * before scaled is suggested instead.
+	 */
+	private static final double CROP_TOLERANCE = 0.25;
+
+	private final int bitDepth;
+	private final Format format;
+	private final int height;
+	private final int width;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param format   {@link Format}
+	 * @param width    int pixels
+	 * @param height   int pixels
+	 * @param bitDepth int bits per pixel, across all channels
+	 */
+	public ImageInfo(Format format, int width, int height, int bitDepth) {
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.bitDepth = bitDepth;
+	}
+
+	/**
+	 * @return int bits per pixel, across all channels
+	 */
+	public int getBitDepth() {
+		return bitDepth;
+	}
+
+	/**
+	 * @return {@link Format}
+	 */
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return int pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return int pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Suggests a login screen background size to go with
+	 * {@link #suggestOption(int, int)}.
+	 *
+	 * @param screenWidth  int
+	 * @param screenHeight int
+	 * @return {@link String} cover or contain
+	 */
+	public String suggestLoginOption(int screenWidth, int screenHeight) {
+		return "zoom".equals(suggestOption(screenWidth, screenHeight)) ? "cover" : "contain";
+	}
+
+	/**
+	 * Suggests a picture option for a screen of the provided size: wallpaper to
+	 * tile images small enough to be patterns, zoom when filling the screen crops
+	 * off little, scaled when it would crop off a lot.
+	 *
+	 * @param screenWidth  int
+	 * @param screenHeight int
+	 * @return {@link String} picture option
+	 */
+	public String suggestOption(int screenWidth, int screenHeight) {
+		if (width * 4 <= screenWidth && height * 4 <= screenHeight) {
+			return "wallpaper";
+		}
+		double ratio = ((double) width / height) / ((double) screenWidth / screenHeight);
+		if (ratio >= 1 - CROP_TOLERANCE && ratio <= 1 / (1 - CROP_TOLERANCE)) {
+			return "zoom";
+		}
+		return "scaled";
+	}
+
+	@Override
+	public String toString() {
+		return width + " x " + height + " " + format + ", " + bitDepth + "-bit";
+	}
+
+}
@@ -0,0 +1,319 @@
+package ca.footeware.backgrounder.images;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import ca.footeware.backgrounder.images.ImageInfo.Format;
+
+/**
+ * Reads just enough of an image's header to know its format, size and bit
+ * depth, without decoding any pixels. A few dozen bytes for most formats, a hop
+ * from marker to marker for JPEG and to the first directory for TIFF.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class ImageProbe {
+
+	private static final byte[] GIF = { 'G', 'I', 'F', '8' };
+	private static final int HEADER = 32;
+	private static final byte[] JPEG = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF };
+	/**
+	 * Most directory entries a TIFF's first directory gets read for, more than
+	 * any real one has.
+	 */
+	private static final int MAX_TIFF_ENTRIES = 1024;
+	private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final byte[] TIFF_BIG_ENDIAN = { 'M', 'M', 0, 42 };
+	private static final byte[] TIFF_LITTLE_ENDIAN = { 'I', 'I', 42, 0 };
+
+	private ImageProbe() {
+		// static only
+	}
+
+	/**
+	 * @param header {@link ByteBuffer}
+	 * @return {@link ImageInfo}
+	 */
+	private static ImageInfo bmp(ByteBuffer header) {
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt(14) == 12) {
+			// OS/2 core header, 16 bit sizes
+			return new ImageInfo(Format.BMP, header.getShort(18) & 0xFFFF, header.getShort(20) & 0xFFFF,
+					header.getShort(24) & 0xFFFF);
+		}
+		// negative height means rows run top down
+		return new ImageInfo(Format.BMP, header.getInt(18), Math.abs(header.getInt(22)),
+				header.getShort(28) & 0xFFFF);
+	}
+
+	/**
+	 * @param header {@link ByteBuffer}
+	 * @return {@link ImageInfo}
+	 */
+	private static ImageInfo gif(ByteBuffer header) {
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		int packed = header.get(10) & 0xFF;
+		// the global color table's size if there is one, else the color resolution
+		int depth = (packed & 0x80) != 0 ? (packed & 0x07) + 1 : ((packed >> 4) & 0x07) + 1;
+		return new ImageInfo(Format.GIF, header.getShort(6) & 0xFFFF, header.getShort(8) & 0xFFFF, depth);
+	}
+
+	/**
+	 * @param type int JPEG marker
+	 * @return boolean true for the start of frame markers, which hold the size
+	 */
+	private static boolean isStartOfFrame(int type) {
+		return type >= 0xC0 && type <= 0xCF && type != 0xC4 && type != 0xC8 && type != 0xCC;
+	}
+
+	/**
+	 * Hops from segment to segment until the frame header, skipping EXIF and
+	 * friends without reading them.
+	 *
+	 * @param channel {@link FileChannel}
+	 * @return {@link ImageInfo}
+	 * @throws IOException when there's no frame header before the image data
+	 */
+	private static ImageInfo jpeg(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long position = 2;
+		while (position < size) {
+			ByteBuffer segment = read(channel, position, 10);
+			if ((segment.get(0) & 0xFF) != 0xFF) {
+				throw new IOException("JPEG segment without a marker at byte " + position + ".");
+			}
+			int type = segment.get(1) & 0xFF;
+			if (type == 0xFF) {
+				// fill byte
+				position++;
+			} else if (type == 0x01 || (type >= 0xD0 && type <= 0xD7)) {
+				// no length
+				position += 2;
+			} else if (type == 0xD9 || type == 0xDA) {
+				break;
+			} else if (isStartOfFrame(type)) {
+				int precision = segment.get(4) & 0xFF;
+				int components = segment.get(9) & 0xFF;
+				return new ImageInfo(Format.JPEG, segment.getShort(7) & 0xFFFF, segment.getShort(5) & 0xFFFF,
+						precision * components);
+			} else {
+				position += 2 + (segment.getShort(2) & 0xFFFF);
+			}
+		}
+		throw new IOException("JPEG has no frame header.");
+	}
+
+	/**
+	 * @param header {@link ByteBuffer}
+	 * @return {@link ImageInfo}
+	 */
+	private static ImageInfo png(ByteBuffer header) {
+		int bitDepth = header.get(24) & 0xFF;
+		int channels;
+		switch (header.get(25)) {
+		case 2:
+			// truecolor
+			channels = 3;
+			break;
+		case 4:
+			// greyscale and alpha
+			channels = 2;
+			break;
+		case 6:
+			// truecolor and alpha
+			channels = 4;
+			break;
+		default:
+			// greyscale or palette
+			channels = 1;
+		}
+		return new ImageInfo(Format.PNG, header.getInt(16), header.getInt(20), bitDepth * channels);
+	}
+
+	/**
+	 * Reads the header of the image at the provided path.
+	 *
+	 * @param path {@link Path}
+	 * @return {@link ImageInfo}
+	 * @throws IOException when the file can't be read, isn't an image in a format
+	 *                     we know, or is cut short or corrupt
+	 */
+	public static ImageInfo probe(Path path) throws IOException {
+		ImageInfo info;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = read(channel, 0, HEADER);
+			if (startsWith(header, PNG)) {
+				info = png(header);
+			} else if (startsWith(header, JPEG)) {
+				info = jpeg(channel);
+			} else if (startsWith(header, GIF)) {
+				info = gif(header);
+			} else if (header.limit() >= 2 && header.get(0) == 'B' && header.get(1) == 'M') {
+				info = bmp(header);
+			} else if (startsWith(header, TIFF_LITTLE_ENDIAN) || startsWith(header, TIFF_BIG_ENDIAN)) {
+				info = tiff(channel, header);
+			} else if (header.limit() >= 12 && header.getInt(0) == 0x52494646 && header.getInt(8) == 0x57454250) {
+				// RIFF....WEBP
+				info = webp(header);
+			} else {
+				throw new IOException(path.getFileName() + " isn't a PNG, JPEG, GIF, BMP, TIFF or WebP image.");
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException(path.getFileName() + " is cut short.", e);
+		}
+		if (info.getWidth() <= 0 || info.getHeight() <= 0) {
+			throw new IOException(path.getFileName() + " says it's " + info.getWidth() + " x " + info.getHeight()
+					+ " pixels.");
+		}
+		return info;
+	}
+
+	/**
+	 * Reads up to the provided number of bytes, fewer at the end of the file.
+	 *
+	 * @param channel  {@link FileChannel}
+	 * @param position long
+	 * @param length   int
+	 * @return {@link ByteBuffer}, big-endian, limited to what was read
+	 * @throws IOException when the file can't be read
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Probes the provided image for something about to be set, so a bad file is
+	 * turned away before anything changes.
+	 *
+	 * @param path {@link Path}
+	 * @return {@link ImageInfo}
+	 * @throws IllegalStateException when it isn't an image we know
+	 */
+	public static ImageInfo require(Path path) {
+		try {
+			return probe(path);
+		} catch (IOException e) {
+			throw new IllegalStateException("Not a usable image: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @param buffer {@link ByteBuffer}
+	 * @param prefix byte array
+	 * @return boolean true if the buffer starts with the prefix
+	 */
+	private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+		if (buffer.limit() < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the size and bits per sample from the first image file directory.
+	 *
+	 * @param channel {@link FileChannel}
+	 * @param header  {@link ByteBuffer}
+	 * @return {@link ImageInfo}
+	 * @throws IOException when the directory can't be read
+	 */
+	private static ImageInfo tiff(FileChannel channel, ByteBuffer header) throws IOException {
+		ByteOrder order = header.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		header.order(order);
+		long directory = header.getInt(4) & 0xFFFFFFFFL;
+		int count = Math.min(MAX_TIFF_ENTRIES, read(channel, directory, 2).order(order).getShort(0) & 0xFFFF);
+		ByteBuffer entries = read(channel, directory + 2, count * 12).order(order);
+		int width = 0;
+		int height = 0;
+		int samples = 1;
+		int bitsPerSample = 1;
+		int bitsTotal = 0;
+		for (int offset = 0; offset < count * 12; offset += 12) {
+			int tag = entries.getShort(offset) & 0xFFFF;
+			switch (tag) {
+			case 256:
+				width = (int) tiffValue(entries, offset);
+				break;
+			case 257:
+				height = (int) tiffValue(entries, offset);
+				break;
+			case 258:
+				int n = entries.getInt(offset + 4);
+				if (n <= 2) {
+					// inline, one or two shorts
+					bitsPerSample = entries.getShort(offset + 8) & 0xFFFF;
+					bitsTotal = n == 2 ? bitsPerSample + (entries.getShort(offset + 10) & 0xFFFF) : 0;
+				} else {
+					ByteBuffer bits = read(channel, entries.getInt(offset + 8) & 0xFFFFFFFFL, Math.min(n, 16) * 2)
+							.order(order);
+					bitsTotal = 0;
+					for (int i = 0; i < bits.limit(); i += 2) {
+						bitsTotal += bits.getShort(i) & 0xFFFF;
+					}
+				}
+				break;
+			case 277:
+				samples = (int) tiffValue(entries, offset);
+				break;
+			default:
+				break;
+			}
+		}
+		return new ImageInfo(Format.TIFF, width, height, bitsTotal > 0 ? bitsTotal : bitsPerSample * samples);
+	}
+
+	/**
+	 * @param entries {@link ByteBuffer} of directory entries
+	 * @param offset  int of the entry
+	 * @return long the entry's single SHORT or LONG value
+	 */
+	private static long tiffValue(ByteBuffer entries, int offset) {
+		int type = entries.getShort(offset + 2) & 0xFFFF;
+		return type == 3 ? entries.getShort(offset + 8) & 0xFFFF : entries.getInt(offset + 8) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * @param header {@link ByteBuffer}
+	 * @return {@link ImageInfo}
+	 * @throws IOException when the first chunk isn't one that holds the size
+	 */
+	private static ImageInfo webp(ByteBuffer header) throws IOException {
+		int chunk = header.getInt(12);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		switch (chunk) {
+		case 0x56503820:
+			// "VP8 ", lossy, size after the frame tag and start code
+			return new ImageInfo(Format.WEBP, header.getShort(26) & 0x3FFF, header.getShort(28) & 0x3FFF, 24);
+		case 0x5650384C:
+			// "VP8L", lossless, 14 bits each less one then an alpha hint
+			int bits = header.getInt(21);
+			return new ImageInfo(Format.WEBP, (bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1,
+					(bits & (1 << 28)) != 0 ? 32 : 24);
+		case 0x56503858:
+			// "VP8X", extended, 24 bit canvas size less one
+			int width = (header.getShort(24) & 0xFFFF | (header.get(26) & 0xFF) << 16) + 1;
+			int height = (header.getShort(27) & 0xFFFF | (header.get(29) & 0xFF) << 16) + 1;
+			return new ImageInfo(Format.WEBP, width, height, (header.get(20) & 0x10) != 0 ? 32 : 24);
+		default:
+			throw new IOException("WebP without a VP8, VP8L or VP8X chunk first.");
+		}
+	}
+
+}
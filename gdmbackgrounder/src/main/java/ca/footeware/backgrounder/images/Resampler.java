@@ -0,0 +1,188 @@
+package ca.footeware.backgrounder.images;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.stream.IntStream;
+
+/**
+ * Resamples images in parallel. Each output pixel averages the source pixels
+ * it covers when shrinking and blends its nearest four when enlarging. The
+ * work is split into bands of output rows, each worker pulling in just the
+ * source rows its band needs, so the whole source never has to be unpacked at
+ * once.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class Resampler {
+
+	/**
+	 * Which source pixels, and how much of each, make up every output pixel
+	 * along one axis.
+	 */
+	private static final class Weights {
+		private final int[] counts;
+		private final int[] firsts;
+		private final int stride;
+		private final float[] weights;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param sourceLength int number of source pixels
+		 * @param targetLength int number of output pixels
+		 */
+		private Weights(int sourceLength, int targetLength) {
+			double ratio = (double) sourceLength / targetLength;
+			stride = ratio > 1 ? (int) Math.ceil(ratio) + 1 : 2;
+			counts = new int[targetLength];
+			firsts = new int[targetLength];
+			weights = new float[targetLength * stride];
+			for (int i = 0; i < targetLength; i++) {
+				if (ratio > 1) {
+					// box: the stretch of source this pixel covers, partial ones at the ends
+					double start = i * ratio;
+					double end = Math.min(sourceLength, start + ratio);
+					int first = (int) start;
+					int count = 0;
+					for (int j = first; j < end && count < stride; j++, count++) {
+						double overlap = Math.min(end, j + 1) - Math.max(start, j);
+						weights[i * stride + count] = (float) (overlap / (end - start));
+					}
+					firsts[i] = first;
+					counts[i] = count;
+				} else {
+					// tent: the two source pixels either side of this one's centre
+					double centre = Math.max(0, (i + 0.5) * ratio - 0.5);
+					int first = Math.min((int) centre, sourceLength - 1);
+					float fraction = (float) (centre - first);
+					firsts[i] = first;
+					if (first + 1 < sourceLength && fraction > 0) {
+						weights[i * stride] = 1 - fraction;
+						weights[i * stride + 1] = fraction;
+						counts[i] = 2;
+					} else {
+						weights[i * stride] = 1;
+						counts[i] = 1;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Output rows per unit of work.
+	 */
+	private static final int BAND_ROWS = 32;
+
+	private Resampler() {
+		// static only
+	}
+
+	/**
+	 * @param value float
+	 * @return int clamped to a channel's range
+	 */
+	private static int clamp(float value) {
+		return Math.max(0, Math.min(255, Math.round(value)));
+	}
+
+	/**
+	 * Resamples the provided region of an image to the provided size, on the
+	 * common fork-join pool.
+	 *
+	 * @param image  {@link BufferedImage}
+	 * @param region {@link Rectangle} of the image to use
+	 * @param width  int
+	 * @param height int
+	 * @return {@link BufferedImage} with alpha only if the source had it
+	 */
+	public static BufferedImage resample(BufferedImage image, Rectangle region, int width, int height) {
+		boolean alpha = image.getColorModel().hasAlpha();
+		BufferedImage resampled = new BufferedImage(width, height,
+				alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] target = ((DataBufferInt) resampled.getRaster().getDataBuffer()).getData();
+		Weights columns = new Weights(region.width, width);
+		Weights rows = new Weights(region.height, height);
+		int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+		IntStream.range(0, bands).parallel().forEach(band -> resampleBand(image, region, columns, rows,
+				band * BAND_ROWS, Math.min(height, (band + 1) * BAND_ROWS), width, alpha, target));
+		return resampled;
+	}
+
+	/**
+	 * Fills in one band of output rows: the source rows it needs are resampled
+	 * across into a scratch buffer, then down into the output.
+	 *
+	 * @param image    {@link BufferedImage}
+	 * @param region   {@link Rectangle}
+	 * @param columns  {@link Weights} across
+	 * @param rows     {@link Weights} down
+	 * @param firstRow int first output row, inclusive
+	 * @param lastRow  int last output row, exclusive
+	 * @param width    int output width
+	 * @param alpha    boolean whether to keep alpha
+	 * @param target   int[] output pixels
+	 */
+	private static void resampleBand(BufferedImage image, Rectangle region, Weights columns, Weights rows,
+			int firstRow, int lastRow, int width, boolean alpha, int[] target) {
+		int sourceFirst = rows.firsts[firstRow];
+		int sourceLast = sourceFirst;
+		for (int y = firstRow; y < lastRow; y++) {
+			sourceLast = Math.max(sourceLast, rows.firsts[y] + rows.counts[y]);
+		}
+		int sourceRows = sourceLast - sourceFirst;
+		int[] source = image.getRGB(region.x, region.y + sourceFirst, region.width, sourceRows, null, 0,
+				region.width);
+
+		// across: four channels per output column for every source row in the band
+		float[] across = new float[sourceRows * width * 4];
+		for (int row = 0; row < sourceRows; row++) {
+			int in = row * region.width;
+			int out = row * width * 4;
+			for (int x = 0; x < width; x++, out += 4) {
+				float a = 0;
+				float r = 0;
+				float g = 0;
+				float b = 0;
+				int offset = x * columns.stride;
+				for (int k = 0; k < columns.counts[x]; k++) {
+					int pixel = source[in + columns.firsts[x] + k];
+					float weight = columns.weights[offset + k];
+					a += (pixel >>> 24) * weight;
+					r += ((pixel >> 16) & 0xFF) * weight;
+					g += ((pixel >> 8) & 0xFF) * weight;
+					b += (pixel & 0xFF) * weight;
+				}
+				across[out] = a;
+				across[out + 1] = r;
+				across[out + 2] = g;
+				across[out + 3] = b;
+			}
+		}
+
+		// down: blend those rows into each output row
+		for (int y = firstRow; y < lastRow; y++) {
+			int offset = y * rows.stride;
+			int first = rows.firsts[y] - sourceFirst;
+			for (int x = 0; x < width; x++) {
+				float a = 0;
+				float r = 0;
+				float g = 0;
+				float b = 0;
+				for (int k = 0; k < rows.counts[y]; k++) {
+					int in = ((first + k) * width + x) * 4;
+					float weight = rows.weights[offset + k];
+					a += across[in] * weight;
+					r += across[in + 1] * weight;
+					g += across[in + 2] * weight;
+					b += across[in + 3] * weight;
+				}
+				int argb = (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+				target[y * width + x] = alpha ? (clamp(a) << 24) | argb : argb;
+			}
+		}
+	}
+
+}
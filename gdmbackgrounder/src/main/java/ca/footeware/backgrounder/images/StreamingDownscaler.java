@@ -0,0 +1,556 @@
+package ca.footeware.backgrounder.images;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+
+/**
+ * Scales images down as they're decoded, averaging each row into the output as
+ * soon as the reader's done with it. The full image never exists in memory,
+ * only the output, a few rows of source and whatever the reader keeps for
+ * itself, so a 100 MP scan or a 40000 pixel panorama costs about what the
+ * output does. JPEGs and PNGs are decoded start to end into a buffer that only
+ * holds the row being decoded. TIFFs in strips or tiles, or uncompressed, are
+ * read a band of rows at a time, each band decoded on its own. Anything else,
+ * and interlaced PNGs, which fill in every row several times over, can't be
+ * streamed and get null back, for the caller to decode some other way.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class StreamingDownscaler {
+
+	/**
+	 * Adds source rows into output rows, each source pixel spread over the output
+	 * pixels it overlaps in proportion, the same box filter {@link Resampler}
+	 * uses to shrink.
+	 */
+	private static final class Accumulator {
+		private final float[] across;
+		private final boolean alpha;
+		private final int channels;
+		private final float[] columnRests;
+		private final int[] columnTargets;
+		private final float[] columnWeights;
+		private final int height;
+		private int next;
+		private final int[] pixels;
+		private final BufferedImage result;
+		private final float[][] rows;
+		private final double rowScale;
+		private int sourceRow;
+		private final int width;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param sourceWidth  int
+		 * @param sourceHeight int
+		 * @param width        int of the output, no more than the source's
+		 * @param height       int of the output, no more than the source's
+		 * @param alpha        boolean whether to keep alpha
+		 */
+		private Accumulator(int sourceWidth, int sourceHeight, int width, int height, boolean alpha) {
+			this.width = width;
+			this.height = height;
+			this.alpha = alpha;
+			channels = alpha ? 4 : 3;
+			result = new BufferedImage(width, height,
+					alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+			across = new float[width * channels];
+			rows = new float[2][width * channels];
+			rowScale = (double) height / sourceHeight;
+			double columnScale = (double) width / sourceWidth;
+			columnTargets = new int[sourceWidth];
+			columnWeights = new float[sourceWidth];
+			columnRests = new float[sourceWidth];
+			for (int x = 0; x < sourceWidth; x++) {
+				// the share of this column falling in its first output column, the rest in the next
+				double left = x * columnScale;
+				int target = (int) left;
+				double weight = Math.min(left + columnScale, target + 1) - left;
+				columnTargets[x] = target * channels;
+				columnWeights[x] = (float) weight;
+				double rest = columnScale - weight;
+				columnRests[x] = rest > EPSILON && target + 1 < width ? (float) rest : 0;
+			}
+		}
+
+		/**
+		 * Adds the next source row.
+		 *
+		 * @param argb int[] the row's pixels
+		 */
+		private void add(int[] argb) {
+			Arrays.fill(across, 0);
+			for (int x = 0; x < columnTargets.length; x++) {
+				int pixel = argb[x];
+				int i = columnTargets[x];
+				float weight = columnWeights[x];
+				float rest = columnRests[x];
+				float r = (pixel >> 16) & 0xFF;
+				float g = (pixel >> 8) & 0xFF;
+				float b = pixel & 0xFF;
+				across[i] += weight * r;
+				across[i + 1] += weight * g;
+				across[i + 2] += weight * b;
+				if (alpha) {
+					float a = pixel >>> 24;
+					across[i + 3] += weight * a;
+					if (rest > 0) {
+						across[i + 7] += rest * a;
+					}
+				}
+				if (rest > 0) {
+					across[i + channels] += rest * r;
+					across[i + channels + 1] += rest * g;
+					across[i + channels + 2] += rest * b;
+				}
+			}
+			double top = sourceRow * rowScale;
+			int target = (int) top;
+			float weight = (float) (Math.min(top + rowScale, target + 1) - top);
+			float rest = (float) rowScale - weight;
+			float[] row = rows[target & 1];
+			for (int i = 0; i < across.length; i++) {
+				row[i] += weight * across[i];
+			}
+			if (rest > EPSILON && target + 1 < height) {
+				row = rows[(target + 1) & 1];
+				for (int i = 0; i < across.length; i++) {
+					row[i] += rest * across[i];
+				}
+			}
+			sourceRow++;
+			// the output rows this one finished
+			while (next < height && next + 1 <= sourceRow * rowScale + EPSILON) {
+				finish(next++);
+			}
+		}
+
+		/**
+		 * Writes out an output row and clears its sums for reuse.
+		 *
+		 * @param y int output row
+		 */
+		private void finish(int y) {
+			float[] row = rows[y & 1];
+			for (int x = 0, i = 0; x < width; x++, i += channels) {
+				int rgb = (clamp(row[i]) << 16) | (clamp(row[i + 1]) << 8) | clamp(row[i + 2]);
+				pixels[y * width + x] = alpha ? (clamp(row[i + 3]) << 24) | rgb : rgb;
+			}
+			Arrays.fill(row, 0);
+		}
+
+		/**
+		 * @return {@link BufferedImage} once every source row's been added, rows
+		 *         short of the end, say from a truncated file, left black
+		 */
+		private BufferedImage getResult() {
+			while (next < height) {
+				finish(next++);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Thrown by a {@link Window} when the reader goes back to a row it's already
+	 * been handed on, as an interlaced PNG does.
+	 */
+	private static final class NotSequentialException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructor.
+		 */
+		private NotSequentialException() {
+			super("Rows weren't decoded in order.", null, false, false);
+		}
+	}
+
+	/**
+	 * Backs a destination image the full size of the decode with room for only
+	 * the row being written. A row is handed on as soon as the reader starts on
+	 * the next, then its room is reused. Stores every element as an int whatever
+	 * the data type, masked the way the standard buffers would.
+	 */
+	private static final class Window extends DataBuffer {
+		private final int[][] banks;
+		private final IntConsumer done;
+		private int furthest = -1;
+		private final int mask;
+		private int rowStart;
+		private final boolean signed;
+		private final int stride;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param dataType int one of {@link DataBuffer}'s types
+		 * @param banks    int
+		 * @param stride   int elements per row
+		 * @param done     {@link IntConsumer} given each row, in order, once it's
+		 *                 complete
+		 */
+		private Window(int dataType, int banks, int stride, IntConsumer done) {
+			super(dataType, stride, banks);
+			this.stride = stride;
+			this.done = done;
+			this.banks = new int[banks][stride];
+			rowStart = furthest * stride;
+			signed = dataType == TYPE_SHORT;
+			mask = dataType == TYPE_BYTE ? 0xFF : dataType == TYPE_USHORT ? 0xFFFF : -1;
+		}
+
+		/**
+		 * Moves on to the provided row, handing on the rows before it. Rows skipped
+		 * over, say in a truncated file, are handed on empty.
+		 *
+		 * @param row int
+		 */
+		private void advance(int row) {
+			for (int y = furthest; y < row; y++) {
+				if (y >= 0) {
+					done.accept(y);
+				}
+				for (int[] bank : banks) {
+					Arrays.fill(bank, 0);
+				}
+			}
+			furthest = row;
+			rowStart = row * stride;
+		}
+
+		/**
+		 * Hands on the last row, once the reader's finished.
+		 *
+		 * @param height int rows in the image
+		 */
+		private void finish(int height) {
+			advance(height);
+		}
+
+		@Override
+		public int getElem(int bank, int i) {
+			return banks[bank][i % stride];
+		}
+
+		/**
+		 * Unpacks the row being handed on, for 8 bit sRGB samples stored a pixel at
+		 * a time.
+		 *
+		 * @param argb        int[] to fill
+		 * @param pixelStride int elements per pixel
+		 * @param offsets     int[] of red, green, blue and maybe alpha within a
+		 *                    pixel
+		 */
+		private void getPixels(int[] argb, int pixelStride, int[] offsets) {
+			int[] data = banks[0];
+			int alpha = offsets.length > 3 ? offsets[3] : -1;
+			for (int x = 0, i = 0; x < argb.length; x++, i += pixelStride) {
+				int a = alpha < 0 ? 0xFF : data[i + alpha];
+				argb[x] = (a << 24) | (data[i + offsets[0]] << 16) | (data[i + offsets[1]] << 8) | data[i + offsets[2]];
+			}
+		}
+
+		/**
+		 * @param row int about to be written
+		 * @return int[] the first bank's room for it
+		 * @throws NotSequentialException if it's already been handed on
+		 */
+		private int[] getRow(int row) {
+			if (row != furthest) {
+				if (row < furthest) {
+					throw new NotSequentialException();
+				}
+				advance(row);
+			}
+			return banks[0];
+		}
+
+		@Override
+		public void setElem(int bank, int i, int value) {
+			int offset = i - rowStart;
+			if (offset < 0 || offset >= stride) {
+				getRow(i / stride);
+				offset = i - rowStart;
+			}
+			banks[bank][offset] = signed ? (short) value : value & mask;
+		}
+	}
+
+	/**
+	 * Raster over a {@link Window} of 8 bit samples stored a pixel at a time,
+	 * taking pixels and rows of samples as JPEG and PNG readers hand them over
+	 * instead of an element at a time through the sample model.
+	 */
+	private static final class WindowRaster extends WritableRaster {
+		private final int[] offsets;
+		private final int pixelStride;
+		private final Window window;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param model  {@link PixelInterleavedSampleModel} of bytes
+		 * @param window {@link Window}
+		 */
+		private WindowRaster(PixelInterleavedSampleModel model, Window window) {
+			super(model, window, new Point());
+			this.window = window;
+			pixelStride = model.getPixelStride();
+			offsets = model.getBandOffsets();
+		}
+
+		@Override
+		public void setPixel(int x, int y, int[] samples) {
+			if (x < minX || y < minY || x >= minX + width || y >= minY + height) {
+				throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+			}
+			int[] data = window.getRow(y);
+			int i = x * pixelStride;
+			for (int band = 0; band < offsets.length; band++) {
+				data[i + offsets[band]] = samples[band] & 0xFF;
+			}
+		}
+
+		@Override
+		public void setPixels(int x, int y, int w, int h, int[] samples) {
+			if (x < minX || y < minY || x + w > minX + width || y + h > minY + height) {
+				throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+			}
+			int bands = offsets.length;
+			int from = 0;
+			for (int row = y; row < y + h; row++) {
+				int[] data = window.getRow(row);
+				for (int i = x * pixelStride, end = (x + w) * pixelStride; i < end; i += pixelStride) {
+					for (int band = 0; band < bands; band++) {
+						data[i + offsets[band]] = samples[from++] & 0xFF;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Source rows per band when reading a band at a time, before rows skipped
+	 * while decoding are taken into account and rounded up to whole strips or
+	 * tiles.
+	 */
+	private static final int BAND_ROWS = 64;
+	/**
+	 * Below which a leftover share of a pixel is rounding error.
+	 */
+	private static final float EPSILON = 1e-4f;
+	/**
+	 * Source pixels each way decoded for every output pixel, the reader skipping
+	 * whole rows and columns beyond that. Two by two averages away most of the
+	 * moire skipping alone leaves, at a quarter of the work of every pixel.
+	 */
+	private static final int OVERSAMPLE = 2;
+
+	private StreamingDownscaler() {
+		// static only
+	}
+
+	/**
+	 * @param value float
+	 * @return int rounded and clamped to 0-255
+	 */
+	private static int clamp(float value) {
+		return Math.max(0, Math.min(255, (int) (value + 0.5f)));
+	}
+
+	/**
+	 * @param model {@link SampleModel}
+	 * @return int elements from one row to the next, or 0 if the model's not one
+	 *         of the standard layouts
+	 */
+	private static int getScanlineStride(SampleModel model) {
+		if (model instanceof ComponentSampleModel) {
+			return ((ComponentSampleModel) model).getScanlineStride();
+		}
+		if (model instanceof SinglePixelPackedSampleModel) {
+			return ((SinglePixelPackedSampleModel) model).getScanlineStride();
+		}
+		if (model instanceof MultiPixelPackedSampleModel) {
+			return ((MultiPixelPackedSampleModel) model).getScanlineStride();
+		}
+		return 0;
+	}
+
+	/**
+	 * Decodes a band of rows at a time, for formats where a band can be decoded
+	 * without those before it.
+	 *
+	 * @param reader      {@link ImageReader}
+	 * @param param       {@link ImageReadParam} with the subsampling set
+	 * @param accumulator {@link Accumulator}
+	 * @throws IOException when the file can't be read
+	 */
+	private static void readBands(ImageReader reader, ImageReadParam param, Accumulator accumulator)
+			throws IOException {
+		int width = reader.getWidth(0);
+		int height = reader.getHeight(0);
+		int periodX = param.getSourceXSubsampling();
+		int periodY = param.getSourceYSubsampling();
+		int bandRows = BAND_ROWS * periodY;
+		if (!reader.isRandomAccessEasy(0)) {
+			// compressed, so whole strips or tiles at a time
+			int tileHeight = reader.getTileHeight(0);
+			bandRows = (bandRows + tileHeight - 1) / tileHeight * tileHeight;
+		}
+		int[] argb = null;
+		for (int top = 0; top < height; top += bandRows) {
+			int rows = Math.min(bandRows, height - top);
+			// keep to the rows a single read of the whole image would pick
+			int offset = (periodY - top % periodY) % periodY;
+			if (offset >= rows) {
+				continue;
+			}
+			param.setSourceRegion(new Rectangle(0, top, width, rows));
+			param.setSourceSubsampling(periodX, periodY, 0, offset);
+			BufferedImage band = reader.read(0, param);
+			int bandWidth = band.getWidth();
+			if (argb == null) {
+				argb = new int[bandWidth];
+			}
+			for (int y = 0; y < band.getHeight(); y++) {
+				band.getRGB(0, y, bandWidth, 1, argb, 0, bandWidth);
+				accumulator.add(argb);
+			}
+		}
+	}
+
+	/**
+	 * Decodes the image start to end into a {@link Window}.
+	 *
+	 * @param reader      {@link ImageReader}
+	 * @param param       {@link ImageReadParam} with the subsampling set
+	 * @param type        {@link ImageTypeSpecifier} to decode to
+	 * @param width       int of the decode, after skipping
+	 * @param height      int of the decode, after skipping
+	 * @param accumulator {@link Accumulator}
+	 * @return boolean false if the image's layout or row order doesn't allow it
+	 * @throws IOException when the file can't be read
+	 */
+	private static boolean readSequentially(ImageReader reader, ImageReadParam param, ImageTypeSpecifier type,
+			int width, int height, Accumulator accumulator) throws IOException {
+		SampleModel model = type.getSampleModel(width, height);
+		int stride = getScanlineStride(model);
+		if (stride == 0) {
+			return false;
+		}
+		int banks = 1;
+		if (model instanceof ComponentSampleModel) {
+			for (int bank : ((ComponentSampleModel) model).getBankIndices()) {
+				banks = Math.max(banks, bank + 1);
+			}
+		}
+		ColorModel colorModel = type.getColorModel();
+		// most JPEGs and PNGs, unpacked here rather than a sample at a time through the color model
+		boolean direct = model instanceof PixelInterleavedSampleModel && model.getDataType() == DataBuffer.TYPE_BYTE
+				&& colorModel instanceof ComponentColorModel && colorModel.getColorSpace().isCS_sRGB()
+				&& !colorModel.isAlphaPremultiplied() && model.getNumBands() >= 3;
+		BufferedImage[] destination = new BufferedImage[1];
+		Window[] windows = new Window[1];
+		int[] argb = new int[width];
+		windows[0] = new Window(model.getDataType(), banks, stride, row -> {
+			if (direct) {
+				PixelInterleavedSampleModel interleaved = (PixelInterleavedSampleModel) model;
+				windows[0].getPixels(argb, interleaved.getPixelStride(), interleaved.getBandOffsets());
+			} else {
+				destination[0].getRGB(0, row, width, 1, argb, 0, width);
+			}
+			accumulator.add(argb);
+		});
+		Window window = windows[0];
+		WritableRaster raster = direct ? new WindowRaster((PixelInterleavedSampleModel) model, window)
+				: Raster.createWritableRaster(model, window, null);
+		destination[0] = new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+		param.setDestination(destination[0]);
+		try {
+			reader.read(0, param);
+		} catch (NotSequentialException e) {
+			return false;
+		} catch (IIOException e) {
+			// the PNG reader wraps anything thrown while it decodes
+			if (e.getCause() instanceof NotSequentialException) {
+				return false;
+			}
+			throw e;
+		}
+		window.finish(height);
+		return true;
+	}
+
+	/**
+	 * Decodes the image the provided reader's set up to read, scaled down to the
+	 * provided size.
+	 *
+	 * @param reader {@link ImageReader} with its input set, seeking backwards
+	 *               allowed
+	 * @param width  int no more than the image's
+	 * @param height int no more than the image's
+	 * @return {@link BufferedImage} of exactly that size, or null if the image
+	 *         can't be streamed, in which case the reader's input may have been
+	 *         read from
+	 * @throws IOException when the file can't be read
+	 */
+	public static BufferedImage scale(ImageReader reader, int width, int height) throws IOException {
+		int sourceWidth = reader.getWidth(0);
+		int sourceHeight = reader.getHeight(0);
+		if (width > sourceWidth || height > sourceHeight) {
+			throw new IllegalArgumentException("Can only scale down.");
+		}
+		Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+		if (!types.hasNext()) {
+			return null;
+		}
+		ImageTypeSpecifier type = types.next();
+		int periodX = Math.max(1, sourceWidth / (width * OVERSAMPLE));
+		int periodY = Math.max(1, sourceHeight / (height * OVERSAMPLE));
+		int decodedWidth = (sourceWidth + periodX - 1) / periodX;
+		int decodedHeight = (sourceHeight + periodY - 1) / periodY;
+		Accumulator accumulator = new Accumulator(decodedWidth, decodedHeight, width, height,
+				type.getColorModel().hasAlpha());
+		ImageReadParam param = reader.getDefaultReadParam();
+		param.setSourceSubsampling(periodX, periodY, 0, 0);
+		String format = reader.getFormatName().toLowerCase();
+		if ("jpeg".equals(format)) {
+			// a progressive JPEG is otherwise written out again after every scan
+			param.setSourceProgressivePasses(Integer.MAX_VALUE, 1);
+		}
+		if (reader.isRandomAccessEasy(0) || reader.getTileHeight(0) < sourceHeight) {
+			readBands(reader, param, accumulator);
+		} else if (!("jpeg".equals(format) || "png".equals(format))
+				|| !readSequentially(reader, param, type, decodedWidth, decodedHeight, accumulator)) {
+			// other readers don't promise to write a row at a time through the raster
+			return null;
+		}
+		return accumulator.getResult();
+	}
+
+}
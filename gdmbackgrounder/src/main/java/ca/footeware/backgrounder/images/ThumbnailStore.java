@@ -0,0 +1,390 @@
+package ca.footeware.backgrounder.images;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import ca.footeware.backgrounder.io.AtomicFiles;
+
+/**
+ * Reads and writes thumbnails in the shared freedesktop.org thumbnail cache,
+ * <code>~/.cache/thumbnails</code>, so they survive restarts and are shared
+ * with file managers. Thumbnails are PNGs named after the MD5 of the file's
+ * URI and are only trusted while their <code>Thumb::MTime</code> matches the
+ * file. Ours say so in their <code>Software</code> text, and only those count
+ * towards the size limit or are ever pruned, as the rest belong to whoever made
+ * them.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class ThumbnailStore {
+
+	/**
+	 * The thumbnail sizes of the spec we use.
+	 */
+	public enum Size {
+		/** 256 pixels */
+		LARGE(256, "large"),
+		/** 128 pixels */
+		NORMAL(128, "normal");
+
+		private final String folder;
+		private final int pixels;
+
+		Size(int pixels, String folder) {
+			this.pixels = pixels;
+			this.folder = folder;
+		}
+
+		/**
+		 * @return int maximum edge length
+		 */
+		public int getPixels() {
+			return pixels;
+		}
+	}
+
+	private static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+	private static final ThumbnailStore DEFAULT = new ThumbnailStore(getDefaultRoot(), DEFAULT_MAX_BYTES);
+	private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+	/**
+	 * Writes between checks of the cache size.
+	 */
+	private static final int PRUNE_INTERVAL = 100;
+	private static final String KEY_MTIME = "Thumb::MTime";
+	private static final String KEY_SOFTWARE = "Software";
+	private static final String KEY_URI = "Thumb::URI";
+	private static final String SOFTWARE = "Backgrounder";
+	private final long maxBytes;
+	private final Path root;
+	private final AtomicInteger writes = new AtomicInteger();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param root     {@link Path} of the thumbnails folder
+	 * @param maxBytes long size our thumbnails are pruned back to
+	 */
+	public ThumbnailStore(Path root, long maxBytes) {
+		this.root = root;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Gets the store in the user's cache folder.
+	 *
+	 * @return {@link ThumbnailStore}
+	 */
+	public static ThumbnailStore getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return {@link Path} of <code>$XDG_CACHE_HOME/thumbnails</code>
+	 */
+	private static Path getDefaultRoot() {
+		String cache = System.getenv("XDG_CACHE_HOME");
+		if (cache == null || cache.isEmpty()) {
+			return Paths.get(System.getProperty("user.home"), ".cache", "thumbnails");
+		}
+		return Paths.get(cache, "thumbnails");
+	}
+
+	/**
+	 * Gets the canonical URI of the provided file, as thumbnails are keyed.
+	 *
+	 * @param source {@link Path}
+	 * @return {@link String}
+	 */
+	static String getUri(Path source) {
+		return source.toAbsolutePath().normalize().toUri().toASCIIString();
+	}
+
+	/**
+	 * @param text {@link String}
+	 * @return {@link String} lower-case hex MD5 of the text's UTF-8
+	 */
+	static String md5(String text) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(32);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("No MD5? Really?", e);
+		}
+	}
+
+	/**
+	 * Reads the tEXt chunks of a PNG, stopping at the image data.
+	 *
+	 * @param png {@link Path}
+	 * @return {@link Map} of keyword to text
+	 * @throws IOException when the file isn't a PNG
+	 */
+	static Map<String, String> readText(Path png) throws IOException {
+		Map<String, String> text = new HashMap<>();
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(png))) {
+			byte[] signature = new byte[PNG_SIGNATURE.length];
+			in.readFully(signature);
+			for (int i = 0; i < signature.length; i++) {
+				if (signature[i] != PNG_SIGNATURE[i]) {
+					throw new IOException("Not a PNG: " + png);
+				}
+			}
+			while (true) {
+				int length = in.readInt();
+				byte[] type = new byte[4];
+				in.readFully(type);
+				String name = new String(type, StandardCharsets.ISO_8859_1);
+				if ("IDAT".equals(name) || "IEND".equals(name)) {
+					return text;
+				}
+				if ("tEXt".equals(name)) {
+					byte[] data = new byte[length];
+					in.readFully(data);
+					int separator = 0;
+					while (separator < data.length && data[separator] != 0) {
+						separator++;
+					}
+					String keyword = new String(data, 0, separator, StandardCharsets.ISO_8859_1);
+					int start = Math.min(data.length, separator + 1);
+					text.put(keyword, new String(data, start, data.length - start, StandardCharsets.ISO_8859_1));
+				} else {
+					skipFully(in, length);
+				}
+				// CRC
+				skipFully(in, 4);
+			}
+		} catch (EOFException e) {
+			throw new IOException("Truncated PNG: " + png, e);
+		}
+	}
+
+	/**
+	 * @param in    {@link InputStream}
+	 * @param count long bytes to skip
+	 * @throws IOException when the stream ends first
+	 */
+	private static void skipFully(InputStream in, long count) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					throw new EOFException();
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+
+	/**
+	 * Encodes the provided thumbnail as a PNG carrying the provided text chunks.
+	 *
+	 * @param image {@link BufferedImage}
+	 * @param text  {@link Map} of keyword to text
+	 * @return byte array
+	 * @throws IOException when encoding fails
+	 */
+	private static byte[] toPng(BufferedImage image, Map<String, String> text) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+		try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image),
+					param);
+			String format = "javax_imageio_png_1.0";
+			IIOMetadataNode entries = new IIOMetadataNode("tEXt");
+			for (Entry<String, String> entry : text.entrySet()) {
+				IIOMetadataNode node = new IIOMetadataNode("tEXtEntry");
+				node.setAttribute("keyword", entry.getKey());
+				node.setAttribute("value", entry.getValue());
+				entries.appendChild(node);
+			}
+			IIOMetadataNode tree = new IIOMetadataNode(format);
+			tree.appendChild(entries);
+			metadata.mergeTree(format, tree);
+			writer.setOutput(out);
+			writer.write(null, new IIOImage(image, null, metadata), param);
+			out.flush();
+			return bytes.toByteArray();
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	/**
+	 * Gets the thumbnail of the provided file, making and storing one if there's
+	 * no valid one.
+	 *
+	 * @param source {@link Path}
+	 * @param size   {@link Size}
+	 * @return {@link BufferedImage} no bigger than the size
+	 * @throws IOException when the file can't be decoded
+	 */
+	public BufferedImage getOrCreate(Path source, Size size) throws IOException {
+		BufferedImage thumbnail = load(source, size);
+		if (thumbnail == null) {
+			thumbnail = ImageDecoder.decode(source, size.pixels, size.pixels);
+			save(source, size, thumbnail);
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Gets where the thumbnail of the provided file goes.
+	 *
+	 * @param source {@link Path}
+	 * @param size   {@link Size}
+	 * @return {@link Path}
+	 */
+	public Path getThumbnailPath(Path source, Size size) {
+		return root.resolve(size.folder).resolve(md5(getUri(source)) + ".png");
+	}
+
+	/**
+	 * Loads the stored thumbnail of the provided file if it's still valid.
+	 *
+	 * @param source {@link Path}
+	 * @param size   {@link Size}
+	 * @return {@link BufferedImage}, null if missing, stale or unreadable
+	 */
+	public BufferedImage load(Path source, Size size) {
+		Path thumbnail = getThumbnailPath(source, size);
+		try {
+			Map<String, String> text = readText(thumbnail);
+			String mtime = Long.toString(Files.getLastModifiedTime(source).to(TimeUnit.SECONDS));
+			if (!mtime.equals(text.get(KEY_MTIME)) || !getUri(source).equals(text.get(KEY_URI))) {
+				return null;
+			}
+			return ImageIO.read(thumbnail.toFile());
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			// broken thumbnail, it'll be replaced
+			return null;
+		}
+	}
+
+	/**
+	 * Deletes our oldest thumbnails until ours fit the size limit. Everyone
+	 * else's are left alone, including ours that something else has since
+	 * replaced.
+	 */
+	public void prune() {
+		List<Path> thumbnails = new ArrayList<>();
+		for (Size size : Size.values()) {
+			Path folder = root.resolve(size.folder);
+			if (Files.isDirectory(folder)) {
+				try (Stream<Path> list = Files.list(folder)) {
+					thumbnails.addAll(list.collect(Collectors.toList()));
+				} catch (IOException e) {
+					// try again next time
+				}
+			}
+		}
+		Map<Path, long[]> stats = new HashMap<>();
+		long total = 0;
+		for (Path thumbnail : thumbnails) {
+			try {
+				if (!SOFTWARE.equals(readText(thumbnail).get(KEY_SOFTWARE))) {
+					continue;
+				}
+				long[] stat = { Files.getLastModifiedTime(thumbnail).toMillis(), Files.size(thumbnail) };
+				stats.put(thumbnail, stat);
+				total += stat[1];
+			} catch (IOException e) {
+				// gone already, or not a PNG and so not ours
+			}
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		List<Path> oldestFirst = new ArrayList<>(stats.keySet());
+		oldestFirst.sort(Comparator.comparingLong(path -> stats.get(path)[0]));
+		for (Path thumbnail : oldestFirst) {
+			if (total <= maxBytes) {
+				break;
+			}
+			try {
+				Files.deleteIfExists(thumbnail);
+				total -= stats.get(thumbnail)[1];
+			} catch (IOException e) {
+				// someone else's problem
+			}
+		}
+	}
+
+	/**
+	 * Stores a thumbnail of the provided file, scaling the provided image down to
+	 * the size if it's bigger. Failures are ignored.
+	 *
+	 * @param source {@link Path}
+	 * @param size   {@link Size}
+	 * @param image  {@link BufferedImage} of the file
+	 */
+	public void save(Path source, Size size, BufferedImage image) {
+		if (source.toAbsolutePath().startsWith(root)) {
+			// the spec says never to thumbnail thumbnails
+			return;
+		}
+		BufferedImage thumbnail = ImageDecoder.fit(image, size.pixels, size.pixels);
+		try {
+			Map<String, String> text = new HashMap<>();
+			text.put(KEY_URI, getUri(source));
+			text.put(KEY_MTIME, Long.toString(Files.getLastModifiedTime(source).to(TimeUnit.SECONDS)));
+			text.put("Thumb::Size", Long.toString(Files.size(source)));
+			text.put(KEY_SOFTWARE, SOFTWARE);
+			Path path = getThumbnailPath(source, size);
+			Files.createDirectories(path.getParent(),
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			if (!Files.exists(path)) {
+				// the replacement takes this file's permissions, the spec wants them private
+				Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+			}
+			AtomicFiles.write(path, toPng(thumbnail, text));
+		} catch (IOException e) {
+			// it's only a cache
+			return;
+		}
+		if (writes.incrementAndGet() % PRUNE_INTERVAL == 0) {
+			prune();
+		}
+	}
+
+}
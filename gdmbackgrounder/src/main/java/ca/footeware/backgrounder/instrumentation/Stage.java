@@ -0,0 +1,83 @@
+package ca.footeware.backgrounder.instrumentation;
+
+/**
+ * Times one stage of some work, for JFR and, if it's been turned on,
+ * {@link StageStats}. Use with try-with-resources:
+ *
+ * <pre>
+ * try (Stage stage = Stage.start("login", "read")) {
+ * 	byte[] bytes = read();
+ * 	stage.setBytes(bytes.length);
+ * }
+ * </pre>
+ *
+ * A stage with nothing to count is started ahead of the try, so there's no
+ * resource left unused in it:
+ *
+ * <pre>
+ * Stage resampling = Stage.start("render", "resample");
+ * try (resampling) {
+ * 	image = resample();
+ * }
+ * </pre>
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class Stage implements AutoCloseable {
+
+	private long bytes;
+	private final String component;
+	private final StageEvent event;
+	private final String name;
+	private final long started;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param component {@link String}
+	 * @param name      {@link String}
+	 */
+	private Stage(String component, String name) {
+		this.component = component;
+		this.name = name;
+		this.event = new StageEvent();
+		event.begin();
+		started = System.nanoTime();
+	}
+
+	/**
+	 * Starts timing a stage.
+	 *
+	 * @param component {@link String} doing the work, e.g. login or preview
+	 * @param name      {@link String} of the stage, e.g. read or commit
+	 * @return {@link Stage} to close when it's done
+	 */
+	public static Stage start(String component, String name) {
+		return new Stage(component, name);
+	}
+
+	/**
+	 * Stops timing and records the stage, whether the work succeeded or not.
+	 */
+	@Override
+	public void close() {
+		long elapsed = System.nanoTime() - started;
+		event.end();
+		if (event.shouldCommit()) {
+			event.component = component;
+			event.stage = name;
+			event.bytes = bytes;
+			event.commit();
+		}
+		StageStats.record(component, name, elapsed, bytes);
+	}
+
+	/**
+	 * @param bytes long how much data the stage dealt with
+	 */
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+
+}
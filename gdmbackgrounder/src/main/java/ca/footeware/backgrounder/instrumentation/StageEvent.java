@@ -0,0 +1,37 @@
+package ca.footeware.backgrounder.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for one stage of setting a background or loading an image.
+ * Costs next to nothing unless a recording is running, e.g. one started with
+ * <code>-XX:StartFlightRecording</code> or <code>jcmd PID JFR.start</code>.
+ *
+ * @author Footeware.ca
+ *
+ */
+@Name("ca.footeware.backgrounder.Stage")
+@Label("Backgrounder Stage")
+@Category("Backgrounder")
+@Description("One stage of setting a background or loading an image")
+@StackTrace(false)
+class StageEvent extends Event {
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Label("Component")
+	@Description("Painter or other part doing the work, e.g. login or preview")
+	String component;
+
+	@Label("Stage")
+	String stage;
+
+}
@@ -0,0 +1,112 @@
+package ca.footeware.backgrounder.instrumentation;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts and percentiles of every {@link Stage}'s duration, for a summary at
+ * exit without attaching a profiler. Off unless {@link #enable(PrintStream)}
+ * is called, as <code>--stats</code> does.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class StageStats {
+
+	/**
+	 * Durations and byte counts for one stage.
+	 */
+	private static final class Samples {
+		private long bytes;
+		private int count;
+		private long[] durations = new long[16];
+
+		private synchronized void add(long duration, long bytes) {
+			if (count == durations.length) {
+				durations = Arrays.copyOf(durations, count * 2);
+			}
+			durations[count++] = duration;
+			this.bytes += bytes;
+		}
+	}
+
+	private static volatile boolean enabled;
+	private static final Map<String, Samples> SAMPLES = new ConcurrentHashMap<>();
+
+	private StageStats() {
+		// static only
+	}
+
+	/**
+	 * Starts collecting, and prints a summary to the provided stream when the
+	 * JVM exits.
+	 *
+	 * @param out {@link PrintStream}
+	 */
+	public static synchronized void enable(PrintStream out) {
+		if (!enabled) {
+			enabled = true;
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> out.print(report()), "stats"));
+		}
+	}
+
+	/**
+	 * @param nanos long
+	 * @return {@link String} in milliseconds
+	 */
+	private static String millis(long nanos) {
+		return String.format("%.1f", nanos / 1e6);
+	}
+
+	/**
+	 * @param sorted     long array, sorted
+	 * @param percentile int
+	 * @return long the nearest-rank percentile
+	 */
+	private static long percentile(long[] sorted, int percentile) {
+		int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Records a finished stage, if collecting.
+	 *
+	 * @param component {@link String}
+	 * @param stage     {@link String}
+	 * @param nanos     long it took
+	 * @param bytes     long it dealt with
+	 */
+	static void record(String component, String stage, long nanos, long bytes) {
+		if (enabled) {
+			SAMPLES.computeIfAbsent(component + "/" + stage, key -> new Samples()).add(nanos, bytes);
+		}
+	}
+
+	/**
+	 * @return {@link String} table of each stage's count, percentiles in
+	 *         milliseconds and total bytes
+	 */
+	public static String report() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%-28s %6s %9s %9s %9s %9s %12s%n", "stage", "count", "p50 ms", "p90 ms",
+				"p99 ms", "max ms", "bytes"));
+		for (Map.Entry<String, Samples> entry : new TreeMap<>(SAMPLES).entrySet()) {
+			Samples samples = entry.getValue();
+			long[] sorted;
+			long bytes;
+			synchronized (samples) {
+				sorted = Arrays.copyOf(samples.durations, samples.count);
+				bytes = samples.bytes;
+			}
+			Arrays.sort(sorted);
+			builder.append(String.format("%-28s %6d %9s %9s %9s %9s %12d%n", entry.getKey(), sorted.length,
+					millis(percentile(sorted, 50)), millis(percentile(sorted, 90)), millis(percentile(sorted, 99)),
+					millis(sorted[sorted.length - 1]), bytes));
+		}
+		return builder.toString();
+	}
+
+}
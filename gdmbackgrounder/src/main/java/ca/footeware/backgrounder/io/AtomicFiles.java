@@ -0,0 +1,141 @@
+package ca.footeware.backgrounder.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces files so that readers see either the old or the new content, never
+ * a half-written file.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public final class AtomicFiles {
+
+	/**
+	 * Links followed before giving up, as many as Linux will.
+	 */
+	private static final int MAX_LINKS = 40;
+
+	private AtomicFiles() {
+		// static only
+	}
+
+	/**
+	 * Follows the provided path's symbolic links, if any, to the file they end at,
+	 * whether or not it exists yet.
+	 * 
+	 * @param target {@link Path}
+	 * @return {@link Path} absolute, not a link
+	 * @throws IOException when a link can't be read or they go round in circles
+	 */
+	private static Path resolve(Path target) throws IOException {
+		List<Path> links = links(target);
+		return links.get(links.size() - 1);
+	}
+
+	/**
+	 * Lists the provided path and every symbolic link it goes through, ending at
+	 * the file they point at, whether or not it exists yet. A theme managed by
+	 * update-alternatives goes through /etc/alternatives, and changing any of
+	 * them changes what's read.
+	 * 
+	 * @param target {@link Path}
+	 * @return {@link List} of {@link Path}, absolute, the target
+	 *         first and the file it ends at last
+	 * @throws IOException when a link can't be read or they go round in circles
+	 */
+	public static List<Path> links(Path target) throws IOException {
+		List<Path> links = new ArrayList<>();
+		Path path = target.toAbsolutePath();
+		links.add(path);
+		while (Files.isSymbolicLink(path)) {
+			if (links.size() > MAX_LINKS) {
+				throw new IOException("Too many levels of symbolic links: " + target);
+			}
+			path = path.resolveSibling(Files.readSymbolicLink(path));
+			links.add(path);
+		}
+		return links;
+	}
+
+	/**
+	 * Writes the provided bytes to a temporary file beside the target then renames
+	 * it over the target, keeping the target's permissions. If the directory isn't
+	 * writable the target is overwritten in place instead. A target that's a
+	 * symbolic link, like a theme managed by update-alternatives, stays one: the
+	 * file it points at is replaced instead.
+	 * 
+	 * @param target {@link Path}
+	 * @param bytes  byte array
+	 * @throws IOException when the file can't be written
+	 */
+	public static void write(Path target, byte[] bytes) throws IOException {
+		write(target, ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Writes the provided buffers, in order, to a temporary file beside the target
+	 * then renames it over the target, keeping the target's permissions. If the
+	 * directory isn't writable the target is overwritten in place instead. Links
+	 * are followed, so the file a linked target points at is replaced, in its own
+	 * folder, and the link is left alone.
+	 * 
+	 * @param link    {@link Path} of the target, or a link to it
+	 * @param buffers {@link ByteBuffer} array
+	 * @throws IOException when the file can't be written
+	 */
+	public static void write(Path link, ByteBuffer... buffers) throws IOException {
+		Path target = resolve(link);
+		Path dir = target.getParent();
+		if (!Files.isWritable(dir)) {
+			try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				writeFully(channel, buffers);
+			}
+			return;
+		}
+		Path temp = Files.createTempFile(dir, "." + target.getFileName(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				writeFully(channel, buffers);
+				channel.force(true);
+			}
+			if (Files.exists(target)) {
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+			}
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes every remaining byte of the provided buffers.
+	 * 
+	 * @param channel {@link FileChannel}
+	 * @param buffers {@link ByteBuffer} array
+	 * @throws IOException when the write fails
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer... buffers) throws IOException {
+		for (ByteBuffer buffer : buffers) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+}
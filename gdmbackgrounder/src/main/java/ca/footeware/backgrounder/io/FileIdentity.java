@@ -0,0 +1,70 @@
+package ca.footeware.backgrounder.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/**
+ * What a file looked like on disk: its modification time, size and file key
+ * (device and inode on Linux). If any of them changes, so has the file.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public final class FileIdentity {
+
+	private final Object fileKey;
+	private final FileTime modified;
+	private final long size;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param modified {@link FileTime}
+	 * @param size     long
+	 * @param fileKey  {@link Object}, may be null
+	 */
+	public FileIdentity(FileTime modified, long size, Object fileKey) {
+		this.modified = modified;
+		this.size = size;
+		this.fileKey = fileKey;
+	}
+
+	/**
+	 * Reads the identity of the file at the provided path.
+	 * 
+	 * @param path {@link Path}
+	 * @return {@link FileIdentity}
+	 * @throws IOException when the file can't be stat'd
+	 */
+	public static FileIdentity of(Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		return new FileIdentity(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof FileIdentity)) {
+			return false;
+		}
+		FileIdentity other = (FileIdentity) obj;
+		return size == other.size && modified.equals(other.modified) && Objects.equals(fileKey, other.fileKey);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(modified, Long.valueOf(size), fileKey);
+	}
+
+	@Override
+	public String toString() {
+		return "FileIdentity [modified=" + modified + ", size=" + size + ", fileKey=" + fileKey + "]";
+	}
+
+}
@@ -1,42 +1,159 @@
 package ca.footeware.backgrounder.listeners;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.SWTException;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Text;
 
 import ca.footeware.backgrounder.dialogs.ErrorDialog;
+import ca.footeware.backgrounder.execution.BackgroundExecutor;
+import ca.footeware.backgrounder.images.ImageDecoder;
+import ca.footeware.backgrounder.images.ImageInfo;
+import ca.footeware.backgrounder.images.ImageProbe;
+import ca.footeware.backgrounder.images.ThumbnailStore;
+import ca.footeware.backgrounder.instrumentation.Stage;
+import ca.footeware.backgrounder.preview.MipPyramid;
+import ca.footeware.backgrounder.preview.ZoomCanvas;
 
 /**
  * Responds to Browse button clicks by opening a file chooser dialog then, once
  * an image is chosen, adds the file path to the text box and displays the image
  * in the image panel.
- * 
+ *
  * @author Footeware.ca
  *
  */
 public class BrowseButtonListener extends SelectionAdapter {
-	private final Canvas canvas;
-	private Image image;
+	private static final String COMPONENT = "preview";
+	private final BackgroundExecutor executor;
+	private Future<MipPyramid> loading;
+	private final ZoomCanvas preview;
+	private int loads;
+	private Consumer<ImageInfo> probeListener = info -> {
+		// nobody listening yet
+	};
 	private final Shell shell;
 	private final Text text;
 
 	/**
 	 * Constructor.
-	 * 
-	 * @param shell  {@link Shell}
-	 * @param text   {@link Text}
-	 * @param canvas {@link Canvas}
+	 *
+	 * @param shell    {@link Shell}
+	 * @param text     {@link Text}
+	 * @param preview  {@link ZoomCanvas}
+	 * @param executor {@link BackgroundExecutor} to decode images on
 	 */
-	public BrowseButtonListener(Shell shell, Text text, Canvas canvas) {
+	public BrowseButtonListener(Shell shell, Text text, ZoomCanvas preview, BackgroundExecutor executor) {
 		this.shell = shell;
 		this.text = text;
-		this.canvas = canvas;
+		this.preview = preview;
+		this.executor = executor;
+	}
+
+	/**
+	 * Builds the levels the preview draws from, timing it.
+	 *
+	 * @param image {@link BufferedImage}
+	 * @param info  {@link ImageInfo} of the original
+	 * @return {@link MipPyramid}
+	 */
+	private static MipPyramid mipmap(BufferedImage image, ImageInfo info) {
+		try (Stage stage = Stage.start(COMPONENT, "mipmap")) {
+			MipPyramid pyramid = MipPyramid.build(image, info.getWidth(), info.getHeight());
+			stage.setBytes(pyramid.getBytes());
+			return pyramid;
+		}
+	}
+
+	/**
+	 * Decodes the image at the provided path in the background, scaled down to fit
+	 * the preview, builds its {@link MipPyramid} and shows it once it's ready.
+	 * Zooming in past that has the preview decode just the part showing. A stored
+	 * large thumbnail, if there is one, is shown as is in the meantime. Its header
+	 * is read first, so files that aren't images are turned away before any
+	 * decoding.
+	 *
+	 * @param filepath {@link String}
+	 */
+	public void load(String filepath) {
+		Path path = Paths.get(filepath);
+		// big enough for the thumbnail saved from it too
+		Point view = preview.getViewSize();
+		int maxWidth = Math.max(view.x, ThumbnailStore.Size.LARGE.getPixels());
+		int maxHeight = Math.max(view.y, ThumbnailStore.Size.LARGE.getPixels());
+		ImageInfo info;
+		Stage probing = Stage.start(COMPONENT, "probe");
+		try (probing) {
+			info = ImageProbe.probe(path);
+		} catch (IOException e) {
+			new ErrorDialog(shell, "That doesn't look like an image we can use. " + e.getMessage()).open();
+			return;
+		}
+		if (loading != null) {
+			loading.cancel(true);
+		}
+		int generation = ++loads;
+		probeListener.accept(info);
+		ThumbnailStore store = ThumbnailStore.getDefault();
+		loading = executor.submit("Loading " + filepath, () -> {
+			BufferedImage thumbnail;
+			Stage fetching = Stage.start(COMPONENT, "thumbnail");
+			try (fetching) {
+				thumbnail = store.load(path, ThumbnailStore.Size.LARGE);
+			}
+			if (thumbnail != null) {
+				MipPyramid placeholder = MipPyramid.of(thumbnail, info.getWidth(), info.getHeight());
+				shell.getDisplay().asyncExec(() -> show(filepath, placeholder, generation));
+			}
+			BufferedImage image;
+			try (Stage stage = Stage.start(COMPONENT, "decode")) {
+				stage.setBytes(Files.size(path));
+				image = ImageDecoder.decode(path, maxWidth, maxHeight);
+			}
+			if (thumbnail == null) {
+				Stage saving = Stage.start(COMPONENT, "save-thumbnail");
+				try (saving) {
+					store.save(path, ThumbnailStore.Size.LARGE, image);
+				}
+			}
+			return mipmap(image, info);
+		}, pyramid -> show(filepath, pyramid, generation),
+				e -> new ErrorDialog(shell, "An error occurred creating the image: " + e.getMessage()).open());
+	}
+
+	/**
+	 * @param probeListener {@link Consumer} told what a chosen image's header
+	 *                      says, as soon as it's chosen
+	 */
+	public void setProbeListener(Consumer<ImageInfo> probeListener) {
+		this.probeListener = probeListener;
+	}
+
+	/**
+	 * Shows the provided decoded image unless a later one has been asked for
+	 * since. Called on the UI thread.
+	 *
+	 * @param filepath   {@link String}
+	 * @param pyramid    {@link MipPyramid}
+	 * @param generation int the load it came from
+	 */
+	private void show(String filepath, MipPyramid pyramid, int generation) {
+		if (preview.getControl().isDisposed() || generation != loads) {
+			return;
+		}
+		preview.setImage(Paths.get(filepath), pyramid);
+		text.setText(filepath);
 	}
 
 	@Override
@@ -52,23 +169,7 @@ public class BrowseButtonListener extends SelectionAdapter {
 		String filepath = dialog.open();
 		// null if canceled
 		if (filepath != null) {
-			// out with the old
-			if (image != null && !image.isDisposed()) {
-				image.dispose();
-			}
-			// in with the new
-			try {
-				image = new Image(shell.getDisplay(), filepath);
-				// draw on canvas
-				canvas.addPaintListener(e1 -> {
-					canvas.setSize(image.getImageData().width, image.getImageData().height);
-					e1.gc.drawImage(image, 0, 0);
-				});
-				canvas.pack(true);
-				text.setText(filepath);
-			} catch (SWTException | NegativeArraySizeException e2) {
-				new ErrorDialog(shell, "An error occurred creating the image: " + e2.getMessage()).open();
-			}
+			load(filepath);
 		}
 	}
-}
\ No newline at end of file
+}
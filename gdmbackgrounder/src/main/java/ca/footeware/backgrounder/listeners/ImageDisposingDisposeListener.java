@@ -25,6 +25,18 @@ public class ImageDisposingDisposeListener implements DisposeListener {
 		this.images = imagesToDispose;
 	}
 
+	/**
+	 * Disposes of the provided image now, rather than when the widget goes.
+	 * 
+	 * @param image {@link Image}
+	 */
+	public void dispose(Image image) {
+		images.remove(image);
+		if (image != null && !image.isDisposed()) {
+			image.dispose();
+		}
+	}
+
 	@Override
 	public void widgetDisposed(DisposeEvent e) {
 		for (Image image : images) {
@@ -0,0 +1,73 @@
+package ca.footeware.backgrounder.painters;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ca.footeware.backgrounder.settings.DconfMonitor;
+import ca.footeware.backgrounder.settings.DconfSettingsBackend;
+
+/**
+ * Finds the image files the backgrounds are set to right now, so nothing
+ * deletes one out from under them.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class CurrentBackgrounds {
+
+	/**
+	 * dconf keys holding the wallpaper's and lock screen's URIs.
+	 */
+	private static final String[] KEYS = { "/org/gnome/desktop/background/picture-uri",
+			"/org/gnome/desktop/background/picture-uri-dark", "/org/gnome/desktop/screensaver/picture-uri" };
+	private static final String SCHEME = "file://";
+
+	private CurrentBackgrounds() {
+		// static only
+	}
+
+	/**
+	 * @param uri {@link String} file URI, escaped or, as older versions wrote
+	 *            them, not
+	 * @return {@link Path} absolute
+	 */
+	private static Path toPath(String uri) {
+		try {
+			return Paths.get(new URI(uri)).toAbsolutePath();
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return Paths.get(uri.substring(SCHEME.length())).toAbsolutePath();
+		}
+	}
+
+	/**
+	 * Gets the wallpaper, lock screen and remembered login screen images.
+	 *
+	 * @return {@link Set} of absolute {@link Path}s
+	 * @throws IOException          when dconf or the remembered login choice
+	 *                              can't be read, in which case nobody knows
+	 *                              what's in use
+	 * @throws InterruptedException when interrupted waiting for dconf
+	 */
+	public static Set<Path> get() throws IOException, InterruptedException {
+		Set<Path> paths = new HashSet<>();
+		Map<String, String> values = DconfMonitor.getDefault().snapshot();
+		for (String key : KEYS) {
+			String uri = DconfSettingsBackend.unquote(values.get(key));
+			if (uri != null && uri.startsWith(SCHEME)) {
+				paths.add(toPath(uri));
+			}
+		}
+		LoginChoice login = LoginChoice.load(LoginChoice.getDefaultFile());
+		if (login != null) {
+			paths.add(login.getImagePath().toAbsolutePath());
+		}
+		return paths;
+	}
+
+}
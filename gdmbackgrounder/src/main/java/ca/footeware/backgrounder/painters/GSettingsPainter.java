@@ -0,0 +1,112 @@
+package ca.footeware.backgrounder.painters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ca.footeware.backgrounder.images.ColorAnalyzer;
+import ca.footeware.backgrounder.images.ImageProbe;
+import ca.footeware.backgrounder.instrumentation.Stage;
+import ca.footeware.backgrounder.settings.SettingsBackend;
+
+/**
+ * Writes the image at the provided path to a schema with GNOME's
+ * <code>picture-uri</code>, <code>picture-options</code> and
+ * <code>primary-color</code> keys, i.e. the wallpaper or the lock screen.
+ *
+ * @author Footeware.ca
+ *
+ */
+public abstract class GSettingsPainter implements Painter {
+
+	/**
+	 * What <code>picture-options</code> can be set to.
+	 */
+	public static final List<String> PICTURE_OPTIONS = Collections.unmodifiableList(
+			Arrays.asList("none", "wallpaper", "centered", "scaled", "stretched", "zoom", "spanned"));
+	private final SettingsBackend backend;
+	private final String component;
+	private final String option;
+	private final Path path;
+	private final String schema;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param component {@link String} name its {@link Stage}s are recorded under
+	 * @param schema    {@link String} the keys are in
+	 * @param path      {@link Path}
+	 * @param option    {@link String}
+	 * @param backend   {@link SettingsBackend}
+	 */
+	protected GSettingsPainter(String component, String schema, Path path, String option,
+			SettingsBackend backend) {
+		this.component = component;
+		this.schema = schema;
+		this.path = path;
+		this.option = option;
+		this.backend = backend;
+	}
+
+	/**
+	 * Set the background to the image found at the provided {@link Path}.
+	 *
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException when more shit goes south
+	 *
+	 */
+	@Override
+	public void paint() throws IOException, InterruptedException {
+		stage();
+		Stage applying = Stage.start(component, "apply");
+		try (applying) {
+			backend.apply();
+		}
+	}
+
+	/**
+	 * Queues the keys in the backend without applying them, so they can be
+	 * applied together with other painters' keys. The image's dominant color goes
+	 * in too, as the color behind it. Queues nothing if the backend says the image
+	 * and option are already set, along with a color unless none can be worked
+	 * out for the image.
+	 *
+	 * @throws IllegalStateException when the path isn't an image or slideshow
+	 */
+	public void stage() {
+		// escaped, and absolute whatever the path was
+		String uri = path.toUri().toASCIIString();
+		// slideshows are XML, anything else has to be an image
+		boolean slideshow = path.toString().endsWith(".xml");
+		// a rewritten slideshow has to be set again to be read again
+		boolean showing = !slideshow && uri.equals(backend.get(schema, "picture-uri"))
+				&& option.equals(backend.get(schema, "picture-options"));
+		if (showing && backend.get(schema, "primary-color") != null) {
+			return;
+		}
+		String color = null;
+		if (!slideshow) {
+			ImageProbe.require(path);
+			Stage analyzing = Stage.start(component, "color");
+			try (analyzing) {
+				color = ColorAnalyzer.getBackgroundColor(path);
+			}
+		}
+		if (showing && color == null) {
+			// can't be decoded for a color, so there's never one to add
+			return;
+		}
+		Stage staging = Stage.start(component, "stage");
+		try (staging) {
+			backend.set(schema, "picture-uri", uri);
+			backend.set(schema, "picture-options", option);
+			if (color != null) {
+				// shown until the image has loaded, and around it if it doesn't fill the screen
+				backend.set(schema, "primary-color", color);
+			}
+		}
+	}
+
+}
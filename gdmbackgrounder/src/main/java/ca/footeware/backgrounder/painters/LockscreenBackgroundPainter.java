@@ -3,48 +3,41 @@
  */
 package ca.footeware.backgrounder.painters;
 
-import java.io.IOException;
 import java.nio.file.Path;
 
+import ca.footeware.backgrounder.settings.DconfSettingsBackend;
+import ca.footeware.backgrounder.settings.SettingsBackend;
+
 /**
  * Writes the image at the provided path to the desktop wallpaper.
  * 
  * @author Footeware.ca
  *
  */
-public class LockscreenBackgroundPainter {
+public class LockscreenBackgroundPainter extends GSettingsPainter {
 
-	private Path path;
-	private String option;
+	private static final String COMPONENT = "lockscreen";
+	private static final String SCHEMA = "org.gnome.desktop.screensaver";
 
 	/**
 	 * Constructor.
 	 * 
-	 * @param path {@link Path}
+	 * @param path   {@link Path}
 	 * @param option {@link String}
 	 */
 	public LockscreenBackgroundPainter(Path path, String option) {
-		this.path = path;
-		this.option = option;
+		this(path, option, new DconfSettingsBackend());
 	}
 
 	/**
-	 * Set the background to the image found at the provided {@link Path}.
-	 * 
-	 * @throws IOException          when shit goes south
-	 * @throws InterruptedException when more shit goes south
+	 * Constructor.
 	 * 
+	 * @param path    {@link Path}
+	 * @param option  {@link String}
+	 * @param backend {@link SettingsBackend}
 	 */
-	public void paint() throws IOException, InterruptedException {
-		String cmd = "gsettings set org.gnome.desktop.screensaver picture-uri 'file://" + path + "'";
-		Runtime run = Runtime.getRuntime();
-		Process pr = run.exec(cmd);
-		pr.waitFor();
-		
-		cmd = "gsettings set org.gnome.desktop.background picture-options '" + option + "'";
-		run = Runtime.getRuntime();
-		pr = run.exec(cmd);
-		pr.waitFor();
+	public LockscreenBackgroundPainter(Path path, String option, SettingsBackend backend) {
+		super(COMPONENT, SCHEMA, path, option, backend);
 	}
 
 }
@@ -1,31 +1,38 @@
 package ca.footeware.backgrounder.painters;
 
-import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.UserPrincipal;
-import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.w3c.css.sac.InputSource;
-import org.w3c.dom.css.CSSRule;
-import org.w3c.dom.css.CSSRuleList;
-
-import com.steadystate.css.dom.CSSStyleSheetImpl;
-import com.steadystate.css.format.CSSFormat;
-import com.steadystate.css.parser.CSSOMParser;
-import com.steadystate.css.parser.SACParserCSS3;
+import ca.footeware.backgrounder.backup.BackupStore;
+import ca.footeware.backgrounder.css.CachedStylesheet;
+import ca.footeware.backgrounder.css.CssomStylesheetPatcher;
+import ca.footeware.backgrounder.css.RuleSpan;
+import ca.footeware.backgrounder.css.SplicingStylesheetPatcher;
+import ca.footeware.backgrounder.css.StylesheetCache;
+import ca.footeware.backgrounder.gresource.GResource;
+import ca.footeware.backgrounder.images.ColorAnalyzer;
+import ca.footeware.backgrounder.images.ImageProbe;
+import ca.footeware.backgrounder.instrumentation.Stage;
+import ca.footeware.backgrounder.io.FileIdentity;
+import ca.footeware.backgrounder.privileged.PrivilegedSession;
 
 /**
  * Responds to clicking of Set Image button by writing the selected image path
@@ -34,10 +41,47 @@ import com.steadystate.css.parser.SACParserCSS3;
  * @author Footeware.ca
  *
  */
-public class LoginBackgroundPainter {
+public class LoginBackgroundPainter implements Painter {
+	/**
+	 * Where login stylesheets are found in GResource bundles, most likely first.
+	 */
+	/**
+	 * What the background-size can be set to.
+	 */
+	public static final List<String> BACKGROUND_SIZES = Collections
+			.unmodifiableList(Arrays.asList("contain", "cover"));
+	private static final String[] BUNDLE_STYLESHEETS = { "/org/gnome/shell/theme/gdm.css",
+			"/org/gnome/shell/theme/gdm3.css", "/org/gnome/shell/theme/gnome-shell.css" };
+	/**
+	 * Where images are embedded in GResource bundles.
+	 */
+	private static final String BUNDLE_IMAGES = "/org/gnome/shell/theme/backgrounder/";
+	/**
+	 * A background-color declaration.
+	 */
+	private static final Pattern COLOR = Pattern.compile("background-color\\s*:\\s*([^;}\\s]+)");
+	private static final String COMPONENT = "login";
+	/**
+	 * Folder beside a loose stylesheet that images are copied into, as the gdm
+	 * user often can't read people's home folders.
+	 */
+	private static final String COPIES = "backgrounder";
+	/**
+	 * rw-r--r--, so the gdm user can read the copies.
+	 */
+	private static final int COPY_MODE = 0644;
+	/**
+	 * Copies kept, the newest, so rolling the theme back a few versions still
+	 * finds its image.
+	 */
+	private static final int KEPT_COPIES = 10;
+	private static final String SELECTOR = "#lockDialogGroup";
+	private StylesheetCache cache;
+	private Path choiceFile;
 	private Path cssPath;
 	private Path imagePath;
 	private String option;
+	private BackupStore store;
 
 	/**
 	 * Constructor.
@@ -47,213 +91,360 @@ public class LoginBackgroundPainter {
 	 * @param option    {@link String}
 	 */
 	public LoginBackgroundPainter(Path cssPath, Path imagePath, String option) {
+		this(cssPath, imagePath, option, StylesheetCache.getDefault());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param cssPath   {@link Path}
+	 * @param imagePath {@link Path}
+	 * @param option    {@link String}
+	 * @param cache     {@link StylesheetCache}
+	 */
+	public LoginBackgroundPainter(Path cssPath, Path imagePath, String option, StylesheetCache cache) {
+		this(cssPath, imagePath, option, cache, BackupStore.getDefault());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param cssPath   {@link Path}
+	 * @param imagePath {@link Path}
+	 * @param option    {@link String}
+	 * @param cache     {@link StylesheetCache}
+	 * @param store     {@link BackupStore} to keep the replaced theme in
+	 */
+	public LoginBackgroundPainter(Path cssPath, Path imagePath, String option, StylesheetCache cache,
+			BackupStore store) {
+		this(cssPath, imagePath, option, cache, store, LoginChoice.getDefaultFile());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param cssPath    {@link Path}
+	 * @param imagePath  {@link Path}
+	 * @param option     {@link String}
+	 * @param cache      {@link StylesheetCache}
+	 * @param store      {@link BackupStore} to keep the replaced theme in
+	 * @param choiceFile {@link Path} to remember the {@link LoginChoice} in once
+	 *                   painted, null to not
+	 */
+	public LoginBackgroundPainter(Path cssPath, Path imagePath, String option, StylesheetCache cache,
+			BackupStore store, Path choiceFile) {
 		this.cssPath = cssPath;
 		this.imagePath = imagePath;
 		this.option = option;
+		this.cache = cache;
+		this.store = store;
+		this.choiceFile = choiceFile;
 	}
 
 	/**
-	 * Writes a copy of the file at the provided path in the user's home folder.
+	 * Gets the color to show behind the image, and while it loads, in a stage of
+	 * its own.
 	 * 
-	 * @param path {@link Path}
+	 * @return {@link String} like #1a2b3c, null if there's none
 	 */
-	private void backupFile(Path path) {
-		try {
-			File backup = new File(
-					"/home/" + System.getProperty("user.name") + File.separator + path.getFileName() + ".bak");
-			if (backup.exists()) {
-				boolean deleted = false;
-				deleted = Files.deleteIfExists(backup.toPath());
-				if (!deleted) {
-					throw new IllegalStateException("Error deleting previous backup file.");
-				}
-			}
-			Files.copy(path, Paths.get(backup.toURI()), StandardCopyOption.COPY_ATTRIBUTES);
-		} catch (IOException e3) {
-			throw new IllegalStateException("Error creating backup file.", e3);
+	private String analyze() {
+		Stage analyzing = Stage.start(COMPONENT, "color");
+		try (analyzing) {
+			return ColorAnalyzer.getBackgroundColor(imagePath);
 		}
 	}
 
 	/**
-	 * Reads the provided text file.
-	 * 
-	 * @param file {@link File}
-	 * @return {@link String}
+	 * @param stylesheet {@link CachedStylesheet}
+	 * @return {@link String} the GDM background rule's background-color, null if
+	 *         it hasn't one
 	 */
-	private String getFileContents(File file) {
-		Process process = null;
-		try {
-			process = Runtime.getRuntime().exec("cat " + file.getAbsolutePath());
-		} catch (IOException e1) {
-			throw new IllegalStateException("Error occurred reading CSS file at " + file.getAbsolutePath(), e1);
-		}
-
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-			return reader.lines().collect(Collectors.joining("\n"));
-		} catch (Exception e2) {
-			throw new IllegalStateException("An error occurred reading the stylesheet.", e2);
+	private static String getColor(CachedStylesheet stylesheet) {
+		RuleSpan span = stylesheet.findRule(SELECTOR);
+		if (span == null) {
+			return null;
 		}
+		String rule = new String(stylesheet.getBytes(), span.getStart(), span.getEnd() - span.getStart(),
+				StandardCharsets.UTF_8);
+		Matcher matcher = COLOR.matcher(rule);
+		return matcher.find() ? matcher.group(1) : null;
 	}
 
 	/**
-	 * Gets the owner of the file at the provided path.
+	 * Gets the declarations for the GDM background rule.
 	 * 
-	 * @param path {@link Path}
-	 * @return {@link UserPrincipal}
+	 * @param url   {@link String} of the image
+	 * @param color {@link String} to show behind it, null for none
+	 * @return {@link Map} of property to value
 	 */
-	private UserPrincipal getOwner(Path path) {
-		try {
-			return Files.getOwner(path);
-		} catch (IOException e3) {
-			throw new IllegalStateException("Unable to get file owner.", e3);
+	private Map<String, String> getDeclarations(String url, String color) {
+		Map<String, String> declarations = new LinkedHashMap<>();
+		declarations.put("background", "url('" + url + "')");
+		if (color != null) {
+			// after the shorthand, which resets it
+			declarations.put("background-color", color);
 		}
+		declarations.put("background-repeat", "no-repeat");
+		declarations.put("background-size", option);
+		declarations.put("background-position", "center");
+		return declarations;
 	}
 
 	/**
-	 * Get the CSS rule governing GDM background.
+	 * Works out the GDM background rule's new declarations. The image is only
+	 * analyzed for its color if the rule isn't showing it with a color already.
 	 * 
-	 * @param stylesheet {@link CSSStyleSheetImpl}.
-	 * 
-	 * @return {@link CSSRule}
+	 * @param stylesheet {@link CachedStylesheet}
+	 * @param url        {@link String} of the image
+	 * @return {@link Map} of property to value, null if the rule's already what
+	 *         we'd write
 	 */
-	private CSSRule getRule(CSSStyleSheetImpl stylesheet) {
-		CSSRuleList cssRules = stylesheet.getCssRules();
-		CSSRule rule = null;
-		for (int i = 0; i < cssRules.getLength(); i++) {
-			rule = cssRules.item(i);
-			if (rule.getCssText().startsWith("#lockDialogGroup")) {
-				break;
-			}
+	private Map<String, String> getNewDeclarations(CachedStylesheet stylesheet, String url) {
+		String color = getColor(stylesheet);
+		if (color != null && isCurrent(stylesheet, getDeclarations(url, color))) {
+			return null;
 		}
-		if (rule == null) {
-			throw new IllegalStateException("Could not find CSS rule for GDM background.");
-		}
-		return rule;
+		// a broken image leaves the login screen blank, don't write one in
+		ImageProbe.require(imagePath);
+		Map<String, String> declarations = getDeclarations(url, analyze());
+		return isCurrent(stylesheet, declarations) ? null : declarations;
 	}
 
 	/**
-	 * Parse the provided file into a CSS stylesheet.
-	 * 
-	 * @param file {@link File}
-	 * @return {@link CSSStyleSheetImpl}
+	 * @param image byte array of the image
+	 * @return {@link String} path to embed it at in a bundle, named for its
+	 *         contents so a different image never looks current
+	 */
+	private String getEmbeddedPath(byte[] image) {
+		return BUNDLE_IMAGES + getName(image);
+	}
+
+	/**
+	 * @param image byte array of the image
+	 * @return {@link String} file name for a copy of it, named for its contents
+	 *         so a different image never looks current
 	 */
-	private CSSStyleSheetImpl getStylesheet(File file) {
-		String contents = getFileContents(file);
-		InputSource inputSource = new InputSource(new StringReader(contents));
-		CSSOMParser parser = new CSSOMParser(new SACParserCSS3());
+	private String getName(byte[] image) {
+		String name = imagePath.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		String extension = dot < 0 ? "" : name.substring(dot).toLowerCase(Locale.ROOT);
 		try {
-			return (CSSStyleSheetImpl) parser.parseStyleSheet(inputSource, null, null);
-		} catch (IOException e1) {
-			throw new IllegalStateException("An error occurred parsing the stylesheet.", e1);
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(image);
+			return HexFormat.of().formatHex(digest, 0, 6) + extension;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
 		}
 	}
 
 	/**
-	 * Gets the logged-in user.
+	 * @param stylesheet   {@link CachedStylesheet}
+	 * @param declarations {@link Map} of property to value
+	 * @return boolean true if the GDM background rule is already exactly what
+	 *         we'd write
+	 */
+	private static boolean isCurrent(CachedStylesheet stylesheet, Map<String, String> declarations) {
+		RuleSpan span = stylesheet.findRule(SELECTOR);
+		byte[] rule = SplicingStylesheetPatcher.format(SELECTOR, declarations).getBytes(StandardCharsets.UTF_8);
+		return span != null && Arrays.equals(stylesheet.getBytes(), span.getStart(), span.getEnd(), rule, 0,
+				rule.length);
+	}
+
+	/**
+	 * Write the image to CSS file, with its dominant color behind it so the login
+	 * screen isn't grey while it loads, unless it's already there. The theme as it
+	 * was is kept in the {@link BackupStore} first, then writing and putting back
+	 * the file's owner and mode all happen under one elevation. Either way the
+	 * choice is remembered, for putting back after the theme's replaced.
+	 * <p>
+	 * The CSS file can also be a GResource bundle like
+	 * <code>gnome-shell-theme.gresource</code>, where current GNOME keeps it.
 	 * 
-	 * @return {@link UserPrincipal}
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException when cancelled while waiting on pkexec
 	 */
-	private UserPrincipal getUser() {
-		UserPrincipalLookupService lookupService = FileSystems.getDefault().getUserPrincipalLookupService();
-		try {
-			return lookupService.lookupPrincipalByName(System.getProperty("user.name"));
-		} catch (IOException e) {
-			throw new IllegalStateException("Unable to get user.", e);
+	@Override
+	public void paint() throws IOException, InterruptedException {
+		if (!Files.exists(cssPath)) {
+			throw new IllegalStateException("CSS file doesn't seem to exist. Black hole?");
 		}
+		if (cssPath.getFileName().toString().endsWith(".gresource")) {
+			paintBundle();
+		} else {
+			paintStylesheet();
+		}
+		remember();
 	}
 
 	/**
-	 * Makes the provided file writable by provided user.
+	 * Writes the image into the login stylesheet inside a GResource bundle,
+	 * embedding the image too, as the gdm user often can't read people's home
+	 * folders. Only the stylesheet is pulled out to check whether it's current,
+	 * the bundle's rebuilt with every other file left as it was.
 	 * 
-	 * @param user         {@link UserPrincipal}
-	 * @param owner        {@link UserPrincipal}
-	 * @param file         {@link File}
-	 * @param fileLocation {@link String}
-	 * @throws InterruptedException when shit goes south
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException when cancelled while waiting on pkexec
 	 */
-	private void makeWritable(UserPrincipal user, UserPrincipal owner, File file) throws InterruptedException {
-		try {
-			if (!file.exists()) {
-				throw new IllegalStateException("CSS file doesn't seem to exist. Black hole?");
+	private void paintBundle() throws IOException, InterruptedException {
+		String entry = null;
+		byte[] css = null;
+		try (Stage stage = Stage.start(COMPONENT, "read")) {
+			for (int i = 0; css == null && i < BUNDLE_STYLESHEETS.length; i++) {
+				entry = BUNDLE_STYLESHEETS[i];
+				css = GResource.extract(cssPath, entry);
 			}
-			if (!file.canWrite()) {
-				Process process = Runtime.getRuntime().exec("pkexec chmod +w " + file.getAbsolutePath());
-				int retVal = process.waitFor();
-				if (retVal != 0) {
-					throw new IllegalStateException("Couldn't chmod the file to writable.");
-				}
-				process = Runtime.getRuntime().exec("pkexec chown " + user + " " + file.getAbsolutePath());
-				retVal = process.waitFor();
-				if (retVal != 0) {
-					throw new IllegalStateException("Couldn't chown the file temporarily to write to it.");
-				}
-				if (Files.getOwner(file.toPath()).getName().equals(owner.getName())) {
-					throw new IllegalStateException("Chown of file did not work.");
+			if (css == null) {
+				throw new IllegalStateException("Could not find the login stylesheet in " + cssPath + ".");
+			}
+			stage.setBytes(css.length);
+		}
+		CachedStylesheet stylesheet = new CachedStylesheet(FileIdentity.of(cssPath), css);
+		byte[] image = Files.readAllBytes(imagePath);
+		String embedded = getEmbeddedPath(image);
+		Map<String, String> declarations = getNewDeclarations(stylesheet, "resource://" + embedded);
+		if (declarations == null) {
+			// already showing, no need to ask for a password
+			return;
+		}
+		byte[] patched = patch(stylesheet, declarations);
+		byte[] original;
+		byte[] rebuilt;
+		try (Stage stage = Stage.start(COMPONENT, "bundle")) {
+			original = Files.readAllBytes(cssPath);
+			GResource bundle = GResource.parse(original);
+			// only ever one of ours in there
+			for (String path : new ArrayList<>(bundle.getPaths())) {
+				if (path.startsWith(BUNDLE_IMAGES)) {
+					bundle.remove(path);
 				}
 			}
-		} catch (IOException e2) {
-			throw new IllegalStateException(e2);
-		} catch (InterruptedException e2) {
-			throw e2;
+			bundle.put(embedded, image);
+			bundle.put(entry, patched);
+			rebuilt = bundle.toBytes();
+			stage.setBytes(rebuilt.length);
 		}
+		replace(new PrivilegedSession(), original, rebuilt);
+	}
 
-		if (!file.canWrite()) {
-			throw new IllegalStateException("Can't write to file.");
+	/**
+	 * Writes the image into a loose login stylesheet. The image is copied into a
+	 * folder beside the stylesheet, readable by the gdm user, and the stylesheet
+	 * points at the copy, so the login screen doesn't depend on anything in a
+	 * home folder. Only the {@value #KEPT_COPIES} newest copies are kept.
+	 * 
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException when cancelled while waiting on pkexec
+	 */
+	private void paintStylesheet() throws IOException, InterruptedException {
+		CachedStylesheet stylesheet;
+		try (Stage stage = Stage.start(COMPONENT, "read")) {
+			stylesheet = cache.get(cssPath);
+			stage.setBytes(stylesheet.getBytes().length);
+		}
+		byte[] image = Files.readAllBytes(imagePath);
+		Path copies = cssPath.toAbsolutePath().getParent().resolve(COPIES);
+		Path copy = copies.resolve(getName(image));
+		String uri = copy.toUri().toASCIIString();
+		Map<String, String> declarations = getNewDeclarations(stylesheet, uri);
+		if (declarations == null && Files.isRegularFile(copy)) {
+			// already showing, no need to ask for a password
+			return;
+		}
+		if (declarations == null) {
+			// pointing at the copy, but it's gone
+			declarations = getDeclarations(uri, getColor(stylesheet));
+		}
+		byte[] patched = patch(stylesheet, declarations);
+		PrivilegedSession session = new PrivilegedSession();
+		session.directory(copies);
+		if (Files.isDirectory(copies)) {
+			List<Path> old;
+			try (Stream<Path> list = Files.list(copies)) {
+				old = list.filter(path -> !path.equals(copy)).sorted(Comparator.comparing((Path path) -> {
+					try {
+						return Files.getLastModifiedTime(path);
+					} catch (IOException e) {
+						return FileTime.fromMillis(0);
+					}
+				}).reversed()).collect(Collectors.toList());
+			}
+			for (Path path : old.subList(Math.min(KEPT_COPIES - 1, old.size()), old.size())) {
+				session.delete(path);
+			}
 		}
+		session.write(copy, image);
+		session.mode(copy, COPY_MODE);
+		try {
+			// the cache checked these are what's on disk
+			replace(session, stylesheet.getBytes(), patched);
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			// who knows what's on disk now
+			cache.invalidate(cssPath);
+			throw e;
+		}
+		cache.update(cssPath, patched);
 	}
 
 	/**
-	 * Write the image to CSS file
+	 * @param stylesheet   {@link CachedStylesheet}
+	 * @param declarations {@link Map} of property to value
+	 * @return byte array of the stylesheet with the GDM background rule set
 	 */
-	public void paint() {
-		backupFile(cssPath);
-		File cssFile = new File(cssPath.toString());
-		UserPrincipal owner = getOwner(cssPath);
-		UserPrincipal user = getUser();
-		try {
-			makeWritable(user, owner, cssFile);
-		} catch (InterruptedException e1) {
-			Thread.currentThread().interrupt();
-			throw new IllegalStateException(e1);
+	private static byte[] patch(CachedStylesheet stylesheet, Map<String, String> declarations) {
+		byte[] patched;
+		try (Stage stage = Stage.start(COMPONENT, "splice")) {
+			stage.setBytes(stylesheet.getBytes().length);
+			patched = new SplicingStylesheetPatcher().patch(stylesheet, SELECTOR, declarations);
 		}
-		CSSStyleSheetImpl stylesheet = getStylesheet(cssFile);
-		CSSRule rule = getRule(stylesheet);
-		setCSSRule(cssFile, rule, stylesheet);
-		setOwner(cssFile, owner);
+		if (patched == null) {
+			try (Stage stage = Stage.start(COMPONENT, "cssom")) {
+				stage.setBytes(stylesheet.getBytes().length);
+				patched = new CssomStylesheetPatcher().patch(stylesheet, SELECTOR, declarations);
+			}
+		}
+		if (patched == null) {
+			throw new IllegalStateException("Could not find CSS rule for GDM background.");
+		}
+		return patched;
 	}
 
 	/**
-	 * Set the provided rule in the provided stylesheet in the provided file.
+	 * Remembers what was painted as the {@link LoginChoice}, if asked to.
 	 * 
-	 * @param file       {@link File}
-	 * @param rule       {@link CSSRule}
-	 * @param stylesheet {@link CSSStyleSheetImpl}
+	 * @throws IOException when it can't be written
 	 */
-	private void setCSSRule(File file, CSSRule rule, CSSStyleSheetImpl stylesheet) {
-		String css = "#lockDialogGroup {background: url('file://" + imagePath
-				+ "'); background-repeat: no-repeat; background-size: " + option + "; background-position: center}";
-		rule.setCssText(css);
-		CSSFormat format = new CSSFormat();
-		format.setRgbAsHex(true);
-		List<String> formatList = Arrays.asList(stylesheet.getCssText(format));
-		try {
-			Files.write(file.toPath(), formatList, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
-		} catch (IOException ioe) {
-			throw new IllegalStateException("An error occurred writing new stylesheet to file.", ioe);
+	private void remember() throws IOException {
+		if (choiceFile != null) {
+			new LoginChoice(cssPath, imagePath, option).save(choiceFile);
 		}
 	}
 
 	/**
-	 * Sets the provided principal as owner of the provided file.
+	 * Backs up the CSS file then replaces it, keeping its owner and mode, under
+	 * one elevation along with whatever else is queued in the session.
 	 * 
-	 * @param file      {@link File}
-	 * @param principal {@link UserPrincipal}
+	 * @param session  {@link PrivilegedSession}
+	 * @param original byte array the file holds now
+	 * @param content  byte array to replace it with
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException when cancelled while waiting on pkexec
 	 */
-	private void setOwner(File file, UserPrincipal principal) {
-		try {
-			Files.setOwner(file.toPath(), principal);
-		} catch (IOException e1) {
-			throw new IllegalStateException("Can't chown file back to " + principal.getName() + ".", e1);
+	private void replace(PrivilegedSession session, byte[] original, byte[] content)
+			throws IOException, InterruptedException {
+		Map<String, Object> attributes;
+		Stage reading = Stage.start(COMPONENT, "attributes");
+		try (reading) {
+			attributes = Files.readAttributes(cssPath, "unix:uid,gid,mode");
+		}
+		try (Stage stage = Stage.start(COMPONENT, "backup")) {
+			stage.setBytes(original.length);
+			store.save(cssPath, original);
+		}
+		session.write(cssPath, content);
+		session.owner(cssPath, (Integer) attributes.get("uid"), (Integer) attributes.get("gid"));
+		session.mode(cssPath, (Integer) attributes.get("mode"));
+		try (Stage stage = Stage.start(COMPONENT, "commit")) {
+			stage.setBytes(content.length);
+			session.commit();
 		}
 	}
 
@@ -0,0 +1,114 @@
+package ca.footeware.backgrounder.painters;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import ca.footeware.backgrounder.io.AtomicFiles;
+
+/**
+ * The login screen background last written, remembered in
+ * <code>$XDG_CONFIG_HOME/backgrounder/login.properties</code> so it can be put
+ * back after a gnome-shell upgrade replaces the theme.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class LoginChoice {
+
+	private final Path cssPath;
+	private final Path imagePath;
+	private final String option;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cssPath   {@link Path} of the theme written to
+	 * @param imagePath {@link Path} of the image written into it
+	 * @param option    {@link String} background-size
+	 */
+	public LoginChoice(Path cssPath, Path imagePath, String option) {
+		this.cssPath = cssPath;
+		this.imagePath = imagePath;
+		this.option = option;
+	}
+
+	/**
+	 * @return {@link Path} of <code>$XDG_CONFIG_HOME/backgrounder/login.properties</code>
+	 */
+	public static Path getDefaultFile() {
+		String config = System.getenv("XDG_CONFIG_HOME");
+		Path base = config == null || config.isEmpty() ? Paths.get(System.getProperty("user.home"), ".config")
+				: Paths.get(config);
+		return base.resolve("backgrounder").resolve("login.properties");
+	}
+
+	/**
+	 * Reads the choice remembered in the provided file.
+	 *
+	 * @param file {@link Path}
+	 * @return {@link LoginChoice}, null if none has been made or the file is
+	 *         missing some of it
+	 * @throws IOException when the file can't be read
+	 */
+	public static LoginChoice load(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		String css = properties.getProperty("css");
+		String image = properties.getProperty("image");
+		String option = properties.getProperty("option");
+		if (css == null || image == null || option == null) {
+			return null;
+		}
+		return new LoginChoice(Paths.get(css), Paths.get(image), option);
+	}
+
+	/**
+	 * @return {@link Path} of the theme written to
+	 */
+	public Path getCssPath() {
+		return cssPath;
+	}
+
+	/**
+	 * @return {@link Path} of the image written into it
+	 */
+	public Path getImagePath() {
+		return imagePath;
+	}
+
+	/**
+	 * @return {@link String} background-size
+	 */
+	public String getOption() {
+		return option;
+	}
+
+	/**
+	 * Remembers this choice in the provided file, replacing any other.
+	 *
+	 * @param file {@link Path}
+	 * @throws IOException when the file can't be written
+	 */
+	public void save(Path file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("css", cssPath.toAbsolutePath().toString());
+		properties.setProperty("image", imagePath.toAbsolutePath().toString());
+		properties.setProperty("option", option);
+		StringWriter writer = new StringWriter();
+		properties.store(writer, "Last login screen background set");
+		Files.createDirectories(file.getParent());
+		AtomicFiles.write(file, writer.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,24 @@
+/**
+ * 
+ */
+package ca.footeware.backgrounder.painters;
+
+import java.io.IOException;
+
+/**
+ * Something that sets a background somewhere.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public interface Painter {
+
+	/**
+	 * Set the background.
+	 * 
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException when more shit goes south
+	 */
+	void paint() throws IOException, InterruptedException;
+
+}
@@ -0,0 +1,50 @@
+package ca.footeware.backgrounder.preview;
+
+import java.awt.image.BufferedImage;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+/**
+ * Turns AWT images into SWT image data.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public final class ImageDataConverter {
+
+	private ImageDataConverter() {
+		// static only
+	}
+
+	/**
+	 * Copies the provided image into 24-bit direct-palette image data, keeping
+	 * any alpha.
+	 * 
+	 * @param image {@link BufferedImage}
+	 * @return {@link ImageData}
+	 */
+	public static ImageData toImageData(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		ImageData data = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0x00FF00, 0x0000FF));
+		boolean hasAlpha = image.getColorModel().hasAlpha();
+		int[] row = new int[width];
+		byte[] alphas = hasAlpha ? new byte[width] : null;
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			if (hasAlpha) {
+				for (int x = 0; x < width; x++) {
+					alphas[x] = (byte) (row[x] >>> 24);
+				}
+				data.setAlphas(0, y, width, alphas, 0);
+			}
+			for (int x = 0; x < width; x++) {
+				row[x] &= 0xFFFFFF;
+			}
+			data.setPixels(0, y, width, row, 0);
+		}
+		return data;
+	}
+
+}
@@ -0,0 +1,121 @@
+package ca.footeware.backgrounder.preview;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.swt.graphics.ImageData;
+
+import ca.footeware.backgrounder.images.Resampler;
+
+/**
+ * An image at successively halved sizes, each level averaged down from the one
+ * before, so it can be drawn at any zoom from a level no more than twice the
+ * size needed. Built off the UI thread; {@link ZoomCanvas} turns the levels into
+ * images.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class MipPyramid {
+
+	/**
+	 * Levels stop once the longer edge would be shorter than this.
+	 */
+	private static final int SMALLEST = 32;
+	private final List<ImageData> levels;
+	private final boolean placeholder;
+	private final int sourceHeight;
+	private final int sourceWidth;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param levels       {@link List} of {@link ImageData}, largest first
+	 * @param sourceWidth  int width of the image the levels were made from
+	 * @param sourceHeight int height of the image the levels were made from
+	 * @param placeholder  boolean true if it stands in for one still coming
+	 */
+	private MipPyramid(List<ImageData> levels, int sourceWidth, int sourceHeight, boolean placeholder) {
+		this.levels = Collections.unmodifiableList(levels);
+		this.placeholder = placeholder;
+		this.sourceWidth = sourceWidth;
+		this.sourceHeight = sourceHeight;
+	}
+
+	/**
+	 * Builds the levels from the provided, possibly already scaled down, image.
+	 *
+	 * @param image        {@link BufferedImage} becoming the largest level
+	 * @param sourceWidth  int width of the original image
+	 * @param sourceHeight int height of the original image
+	 * @return {@link MipPyramid}
+	 */
+	public static MipPyramid build(BufferedImage image, int sourceWidth, int sourceHeight) {
+		List<ImageData> levels = new ArrayList<>();
+		BufferedImage level = image;
+		levels.add(ImageDataConverter.toImageData(level));
+		while (Math.max(level.getWidth(), level.getHeight()) >= 2 * SMALLEST) {
+			int width = Math.max(1, (level.getWidth() + 1) / 2);
+			int height = Math.max(1, (level.getHeight() + 1) / 2);
+			level = Resampler.resample(level, new Rectangle(level.getWidth(), level.getHeight()), width, height);
+			levels.add(ImageDataConverter.toImageData(level));
+		}
+		return new MipPyramid(levels, sourceWidth, sourceHeight, false);
+	}
+
+	/**
+	 * Makes the provided image the only level, for a placeholder like a thumbnail
+	 * shown until the image has been decoded.
+	 *
+	 * @param image        {@link BufferedImage} becoming the level
+	 * @param sourceWidth  int width of the original image
+	 * @param sourceHeight int height of the original image
+	 * @return {@link MipPyramid}
+	 */
+	public static MipPyramid of(BufferedImage image, int sourceWidth, int sourceHeight) {
+		return new MipPyramid(List.of(ImageDataConverter.toImageData(image)), sourceWidth, sourceHeight, true);
+	}
+
+	/**
+	 * @return long bytes of pixels across every level
+	 */
+	public long getBytes() {
+		long bytes = 0;
+		for (ImageData level : levels) {
+			bytes += level.data.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return {@link List} of {@link ImageData}, largest first
+	 */
+	public List<ImageData> getLevels() {
+		return levels;
+	}
+
+	/**
+	 * @return int height of the original image
+	 */
+	public int getSourceHeight() {
+		return sourceHeight;
+	}
+
+	/**
+	 * @return int width of the original image
+	 */
+	public int getSourceWidth() {
+		return sourceWidth;
+	}
+
+	/**
+	 * @return true if it stands in for one still being decoded
+	 */
+	public boolean isPlaceholder() {
+		return placeholder;
+	}
+
+}
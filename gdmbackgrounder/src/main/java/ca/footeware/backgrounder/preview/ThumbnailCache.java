@@ -0,0 +1,138 @@
+package ca.footeware.backgrounder.preview;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Widget;
+
+import ca.footeware.backgrounder.listeners.ImageDisposingDisposeListener;
+
+/**
+ * Least-recently-used cache of thumbnail images, bounded by the bytes their
+ * pixels take rather than by how many there are. Evicted images are disposed
+ * straight away, the rest when the owning widget is. UI thread only.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class ThumbnailCache {
+
+	private final long budget;
+	private final ImageDisposingDisposeListener disposer;
+	private final Map<Path, Image> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Consumer<Path> evictionListener;
+	private final List<Image> images = new ArrayList<>();
+	private long used;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param owner            {@link Widget} whose disposal disposes every cached
+	 *                         image
+	 * @param budget           long maximum total pixel bytes
+	 * @param evictionListener {@link Consumer} told about each evicted path
+	 *                         before its image is disposed
+	 */
+	public ThumbnailCache(Widget owner, long budget, Consumer<Path> evictionListener) {
+		this.budget = budget;
+		this.evictionListener = evictionListener;
+		this.disposer = new ImageDisposingDisposeListener(images);
+		owner.addDisposeListener(disposer);
+	}
+
+	/**
+	 * @param image {@link Image}
+	 * @return long bytes of pixels in the image
+	 */
+	private static long bytes(Image image) {
+		Rectangle bounds = image.getBounds();
+		return 4L * bounds.width * bounds.height;
+	}
+
+	/**
+	 * Evicts and disposes every entry.
+	 */
+	public void clear() {
+		evictIf(path -> true);
+	}
+
+	/**
+	 * Evicts and disposes the entries whose paths match.
+	 * 
+	 * @param predicate {@link Predicate}
+	 */
+	public void evictIf(Predicate<Path> predicate) {
+		Iterator<Entry<Path, Image>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<Path, Image> entry = iterator.next();
+			if (predicate.test(entry.getKey())) {
+				iterator.remove();
+				evicted(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Lets go of an image that's no longer in the map.
+	 * 
+	 * @param path  {@link Path}
+	 * @param image {@link Image}
+	 */
+	private void evicted(Path path, Image image) {
+		used -= bytes(image);
+		evictionListener.accept(path);
+		disposer.dispose(image);
+	}
+
+	/**
+	 * Gets the thumbnail of the provided file, marking it recently used.
+	 * 
+	 * @param path {@link Path}
+	 * @return {@link Image}, null if not cached
+	 */
+	public Image get(Path path) {
+		return entries.get(path);
+	}
+
+	/**
+	 * @return long pixel bytes currently held
+	 */
+	public long getUsed() {
+		return used;
+	}
+
+	/**
+	 * Caches the provided thumbnail, evicting the least recently used ones until
+	 * it fits the budget.
+	 * 
+	 * @param path  {@link Path}
+	 * @param image {@link Image}
+	 */
+	public void put(Path path, Image image) {
+		Image previous = entries.remove(path);
+		if (previous != null) {
+			evicted(path, previous);
+		}
+		images.add(image);
+		entries.put(path, image);
+		used += bytes(image);
+		Iterator<Entry<Path, Image>> iterator = entries.entrySet().iterator();
+		while (used > budget && iterator.hasNext()) {
+			Entry<Path, Image> eldest = iterator.next();
+			if (eldest.getValue() != image) {
+				iterator.remove();
+				evicted(eldest.getKey(), eldest.getValue());
+			}
+		}
+	}
+
+}
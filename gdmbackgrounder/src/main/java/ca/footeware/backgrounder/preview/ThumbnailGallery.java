@@ -0,0 +1,250 @@
+package ca.footeware.backgrounder.preview;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.DirectoryDialog;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+
+import ca.footeware.backgrounder.execution.BackgroundExecutor;
+import ca.footeware.backgrounder.images.ImageFiles;
+import ca.footeware.backgrounder.images.ThumbnailStore;
+
+/**
+ * Lists a folder's images as thumbnails. Rows are virtual, thumbnails are
+ * loaded from disk or decoded by a small pool of workers only when their row is
+ * shown, and they're kept in a {@link ThumbnailCache} that drops rows far
+ * off-screen.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class ThumbnailGallery {
+
+	/**
+	 * Edge length of the square thumbnails.
+	 */
+	public static final int SIZE = ThumbnailStore.Size.NORMAL.getPixels();
+	private static final long BUDGET = 48L * 1024 * 1024;
+	/**
+	 * Rows kept either side of the visible ones, in screens.
+	 */
+	private static final int MARGIN_SCREENS = 3;
+	private final ThumbnailCache cache;
+	private final Composite composite;
+	private final BackgroundExecutor executor;
+	private List<Path> files = Collections.emptyList();
+	private Path folder;
+	private final Map<Path, Integer> indices = new HashMap<>();
+	private final Map<Path, Future<ImageData>> pending = new HashMap<>();
+	private Consumer<Path> selectionListener = path -> {
+		// nobody listening yet
+	};
+	private final Table table;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parent {@link Composite}
+	 */
+	public ThumbnailGallery(Composite parent) {
+		composite = new Composite(parent, SWT.NONE);
+		composite.setLayout(new GridLayout(1, false));
+
+		Button folderButton = new Button(composite, SWT.PUSH);
+		folderButton.setText("Choose folder");
+		folderButton.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		folderButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				DirectoryDialog dialog = new DirectoryDialog(composite.getShell(), SWT.OPEN);
+				dialog.setMessage("Select a folder of images");
+				dialog.setFilterPath(folder == null ? "/" : folder.toString());
+				String chosen = dialog.open();
+				if (chosen != null) {
+					setFolder(Path.of(chosen));
+				}
+			}
+		});
+
+		table = new Table(composite, SWT.VIRTUAL | SWT.SINGLE | SWT.FULL_SELECTION | SWT.BORDER);
+		table.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+		table.addListener(SWT.SetData, this::handleSetData);
+		table.getVerticalBar().addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				trim();
+			}
+		});
+		table.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				TableItem[] selection = table.getSelection();
+				if (selection.length > 0) {
+					selectionListener.accept(files.get(table.indexOf(selection[0])));
+				}
+			}
+		});
+
+		cache = new ThumbnailCache(table, BUDGET, path -> {
+			Integer index = indices.get(path);
+			if (index != null && !table.isDisposed()) {
+				table.clear(index);
+			}
+		});
+		executor = new BackgroundExecutor(composite.getDisplay(), "thumbnail",
+				Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+		composite.addDisposeListener(e -> executor.shutdown());
+	}
+
+	/**
+	 * Gets a thumbnail from the shared thumbnail cache, decoding and storing it
+	 * there if need be, centered on a transparent square.
+	 *
+	 * @param path {@link Path}
+	 * @return {@link ImageData}
+	 * @throws IOException when the file can't be decoded
+	 */
+	private static ImageData decode(Path path) throws IOException {
+		BufferedImage image = ThumbnailStore.getDefault().getOrCreate(path, ThumbnailStore.Size.NORMAL);
+		BufferedImage square = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = square.createGraphics();
+		try {
+			graphics.drawImage(image, (SIZE - image.getWidth()) / 2, (SIZE - image.getHeight()) / 2, null);
+		} finally {
+			graphics.dispose();
+		}
+		return ImageDataConverter.toImageData(square);
+	}
+
+	/**
+	 * @return {@link Control} to lay out
+	 */
+	public Control getControl() {
+		return composite;
+	}
+
+	/**
+	 * @return {@link Path} of the folder shown, null if none
+	 */
+	public Path getFolder() {
+		return folder;
+	}
+
+	/**
+	 * Fills in a row as it's about to be shown.
+	 *
+	 * @param event {@link Event}
+	 */
+	private void handleSetData(Event event) {
+		TableItem item = (TableItem) event.item;
+		int index = event.index;
+		if (index >= files.size()) {
+			return;
+		}
+		Path path = files.get(index);
+		item.setText(path.getFileName().toString());
+		Image image = cache.get(path);
+		if (image != null) {
+			item.setImage(image);
+		} else {
+			request(path);
+		}
+	}
+
+	/**
+	 * Queues the decoding of a thumbnail unless it's already on its way.
+	 *
+	 * @param path {@link Path}
+	 */
+	private void request(Path path) {
+		if (pending.containsKey(path)) {
+			return;
+		}
+		pending.put(path, executor.submit("Thumbnail " + path, () -> decode(path), data -> {
+			pending.remove(path);
+			Integer index = indices.get(path);
+			if (index != null && !table.isDisposed()) {
+				cache.put(path, new Image(table.getDisplay(), data));
+				table.clear(index);
+			}
+		}, e -> pending.remove(path)));
+	}
+
+	/**
+	 * Shows the images in the provided folder.
+	 *
+	 * @param folder {@link Path}
+	 */
+	public void setFolder(Path folder) {
+		this.folder = folder;
+		for (Future<ImageData> future : pending.values()) {
+			future.cancel(true);
+		}
+		pending.clear();
+		indices.clear();
+		cache.clear();
+		try {
+			files = ImageFiles.list(folder);
+		} catch (IOException e) {
+			files = new ArrayList<>();
+		}
+		for (int i = 0; i < files.size(); i++) {
+			indices.put(files.get(i), i);
+		}
+		table.removeAll();
+		table.setItemCount(files.size());
+	}
+
+	/**
+	 * @param selectionListener {@link Consumer} told which image was picked
+	 */
+	public void setSelectionListener(Consumer<Path> selectionListener) {
+		this.selectionListener = selectionListener;
+	}
+
+	/**
+	 * Drops thumbnails, and stops decoding them, for rows well away from the
+	 * visible ones.
+	 */
+	private void trim() {
+		int itemHeight = Math.max(1, table.getItemHeight());
+		int visible = Math.max(1, table.getClientArea().height / itemHeight);
+		int first = table.getTopIndex() - MARGIN_SCREENS * visible;
+		int last = table.getTopIndex() + (MARGIN_SCREENS + 1) * visible;
+		pending.entrySet().removeIf(entry -> {
+			int index = indices.get(entry.getKey());
+			boolean far = index < first || index > last;
+			if (far) {
+				entry.getValue().cancel(true);
+			}
+			return far;
+		});
+		cache.evictIf(path -> {
+			int index = indices.get(path);
+			return index < first || index > last;
+		});
+	}
+
+}
@@ -0,0 +1,528 @@
+package ca.footeware.backgrounder.preview;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.ScrollBar;
+
+import ca.footeware.backgrounder.execution.BackgroundExecutor;
+import ca.footeware.backgrounder.images.ImageDecoder;
+import ca.footeware.backgrounder.images.Resampler;
+import ca.footeware.backgrounder.instrumentation.Stage;
+import ca.footeware.backgrounder.listeners.ImageDisposingDisposeListener;
+
+/**
+ * Shows an image that can be fitted to the window, shown 1:1 or zoomed with the
+ * mouse wheel, and dragged or scrolled around. Each paint draws only the part
+ * that needs it, from the {@link MipPyramid} level closest to the zoom, and
+ * scrolling moves what's already drawn and paints just the strip uncovered.
+ * Zoomed in past the largest level, the part showing is decoded from the file
+ * once the view settles, at the size it's shown up to full resolution, and
+ * drawn over it. UI thread only.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class ZoomCanvas {
+
+	private static final String COMPONENT = "preview";
+	/**
+	 * Milliseconds the view has to stay put before the part showing is decoded.
+	 */
+	private static final int DETAIL_DELAY = 200;
+	/**
+	 * Largest part of the file decoded, in pixels as it's shown, as much as a 4K
+	 * screen's worth.
+	 */
+	private static final long DETAIL_PIXELS = 8L * 1024 * 1024;
+	/**
+	 * Pixels moved per click of a scroll bar's arrows.
+	 */
+	private static final int INCREMENT = 32;
+	private static final double MAX_ZOOM = 8;
+	/**
+	 * Zoom factor per notch of the mouse wheel.
+	 */
+	private static final double ZOOM_STEP = 1.25;
+	private final Canvas canvas;
+	private final Composite composite;
+	private Image detail;
+	private Future<ImageData> detailLoading;
+	private Rectangle detailRegion;
+	private final Runnable detailRequest = this::loadDetail;
+	private final ImageDisposingDisposeListener disposer;
+	private boolean dragging;
+	private int dragX;
+	private int dragY;
+	private final BackgroundExecutor executor;
+	private boolean fitting = true;
+	private int generation;
+	private final List<Image> images = new ArrayList<>();
+	private final List<Image> levels = new ArrayList<>();
+	private int originX;
+	private int originY;
+	private Path path;
+	private boolean placeholder;
+	private int sourceHeight;
+	private int sourceWidth;
+	private double zoom = 1;
+	private final Label zoomLabel;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parent   {@link Composite}
+	 * @param executor {@link BackgroundExecutor} to decode zoomed in parts on
+	 */
+	public ZoomCanvas(Composite parent, BackgroundExecutor executor) {
+		this.executor = executor;
+		composite = new Composite(parent, SWT.NONE);
+		composite.setLayout(new GridLayout(3, false));
+
+		Button fitButton = new Button(composite, SWT.PUSH);
+		fitButton.setText("Fit");
+		fitButton.setToolTipText("Fit the image to the window");
+		fitButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				fit();
+			}
+		});
+
+		Button actualButton = new Button(composite, SWT.PUSH);
+		actualButton.setText("1:1");
+		actualButton.setToolTipText("Show the image's own pixels, one to one");
+		actualButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				Rectangle client = canvas.getClientArea();
+				zoomTo(1, client.width / 2, client.height / 2);
+			}
+		});
+
+		zoomLabel = new Label(composite, SWT.RIGHT);
+		zoomLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		canvas = new Canvas(composite, SWT.NO_BACKGROUND | SWT.DOUBLE_BUFFERED | SWT.H_SCROLL | SWT.V_SCROLL);
+		canvas.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 3, 1));
+		canvas.setToolTipText("Scroll to zoom, drag to move, double-click to switch between fit and 1:1");
+		canvas.addListener(SWT.Paint, this::paint);
+		canvas.addListener(SWT.Resize, e -> {
+			updateView();
+			canvas.redraw();
+			requestDetail();
+		});
+		canvas.addListener(SWT.MouseVerticalWheel, e -> {
+			// zoom rather than scroll
+			e.doit = false;
+			if (e.count != 0) {
+				zoomTo(zoom * Math.pow(ZOOM_STEP, Math.signum(e.count)), e.x, e.y);
+			}
+		});
+		canvas.addListener(SWT.MouseDown, e -> {
+			if (e.button == 1) {
+				dragging = true;
+				dragX = e.x;
+				dragY = e.y;
+			}
+		});
+		canvas.addListener(SWT.MouseUp, e -> dragging = false);
+		canvas.addListener(SWT.MouseMove, e -> {
+			if (dragging) {
+				scrollTo(originX - (e.x - dragX), originY - (e.y - dragY));
+				dragX = e.x;
+				dragY = e.y;
+			}
+		});
+		canvas.addListener(SWT.MouseDoubleClick, e -> {
+			if (fitting) {
+				zoomTo(1, e.x, e.y);
+			} else {
+				fit();
+			}
+		});
+		ScrollBar horizontal = canvas.getHorizontalBar();
+		horizontal.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				scrollTo(horizontal.getSelection(), originY);
+			}
+		});
+		ScrollBar vertical = canvas.getVerticalBar();
+		vertical.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				scrollTo(originX, vertical.getSelection());
+			}
+		});
+
+		disposer = new ImageDisposingDisposeListener(images);
+		composite.addDisposeListener(disposer);
+		composite.addDisposeListener(e -> {
+			if (detailLoading != null) {
+				detailLoading.cancel(true);
+			}
+		});
+		updateView();
+	}
+
+	/**
+	 * Draws the part of the provided image within the clipping area.
+	 *
+	 * @param gc    {@link GC}
+	 * @param image {@link Image}
+	 * @param clip  {@link Rectangle} needing paint
+	 * @param x     double where the image's left edge goes
+	 * @param y     double where the image's top edge goes
+	 * @param scale double screen pixels per image pixel
+	 */
+	private static void drawClipped(GC gc, Image image, Rectangle clip, double x, double y, double scale) {
+		Rectangle bounds = image.getBounds();
+		int left = clamp((int) Math.floor((clip.x - x) / scale), 0, bounds.width);
+		int right = clamp((int) Math.ceil((clip.x + clip.width - x) / scale), 0, bounds.width);
+		int top = clamp((int) Math.floor((clip.y - y) / scale), 0, bounds.height);
+		int bottom = clamp((int) Math.ceil((clip.y + clip.height - y) / scale), 0, bounds.height);
+		if (left >= right || top >= bottom) {
+			return;
+		}
+		// from the whole image's edges, so neighboring paints line up
+		int destLeft = (int) Math.round(x + left * scale);
+		int destTop = (int) Math.round(y + top * scale);
+		int destRight = (int) Math.round(x + right * scale);
+		int destBottom = (int) Math.round(y + bottom * scale);
+		gc.drawImage(image, left, top, right - left, bottom - top, destLeft, destTop, destRight - destLeft,
+				destBottom - destTop);
+	}
+
+	/**
+	 * @param value int
+	 * @param min   int
+	 * @param max   int
+	 * @return int within min and max
+	 */
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * Disposes of the decoded part, if any.
+	 */
+	private void disposeDetail() {
+		if (detail != null) {
+			disposer.dispose(detail);
+		}
+		detail = null;
+		detailRegion = null;
+	}
+
+	/**
+	 * Fits the image to the window, and keeps it fitted as the window's resized.
+	 */
+	public void fit() {
+		fitting = true;
+		updateView();
+		canvas.redraw();
+		requestDetail();
+	}
+
+	/**
+	 * @return {@link Control} to lay out
+	 */
+	public Control getControl() {
+		return composite;
+	}
+
+	/**
+	 * @return double zoom at which the image fits the window, never above 1
+	 */
+	private double getFitZoom() {
+		if (sourceWidth == 0) {
+			return 1;
+		}
+		Rectangle client = canvas.getClientArea();
+		return Math.min(1, Math.min((double) Math.max(1, client.width) / sourceWidth,
+				(double) Math.max(1, client.height) / sourceHeight));
+	}
+
+	/**
+	 * @return {@link Rectangle} the whole image takes up at the current zoom and
+	 *         scroll position, centered when it's smaller than the window
+	 */
+	private Rectangle getImageBounds() {
+		Rectangle client = canvas.getClientArea();
+		int width = Math.max(1, (int) Math.round(sourceWidth * zoom));
+		int height = Math.max(1, (int) Math.round(sourceHeight * zoom));
+		int x = width < client.width ? (client.width - width) / 2 : -originX;
+		int y = height < client.height ? (client.height - height) / 2 : -originY;
+		return new Rectangle(x, y, width, height);
+	}
+
+	/**
+	 * @return {@link Image} the smallest level at least as big as the image is
+	 *         shown, or the largest if none are
+	 */
+	private Image getLevel() {
+		Image best = levels.get(0);
+		for (Image level : levels) {
+			if (level.getBounds().width < sourceWidth * zoom - 0.5) {
+				break;
+			}
+			best = level;
+		}
+		return best;
+	}
+
+	/**
+	 * @return {@link Point} size of the window the image is shown in, or of the
+	 *         screen if it hasn't been laid out yet
+	 */
+	public Point getViewSize() {
+		Rectangle client = canvas.getClientArea();
+		if (client.width <= 1 || client.height <= 1) {
+			client = canvas.getMonitor().getClientArea();
+		}
+		return new Point(client.width, client.height);
+	}
+
+	/**
+	 * Decodes the part of the image showing at the size it's shown, up to full
+	 * resolution, when the largest level isn't enough for the zoom, e.g. when
+	 * zoomed in or the window's grown.
+	 */
+	private void loadDetail() {
+		if (canvas.isDisposed() || levels.isEmpty() || placeholder) {
+			// the decoded image is on its way
+			return;
+		}
+		if (levels.get(0).getBounds().width >= sourceWidth * zoom - 0.5) {
+			disposeDetail();
+			return;
+		}
+		Rectangle client = canvas.getClientArea();
+		Rectangle image = getImageBounds();
+		int left = clamp((int) Math.floor(-image.x / zoom), 0, sourceWidth);
+		int top = clamp((int) Math.floor(-image.y / zoom), 0, sourceHeight);
+		int right = clamp((int) Math.ceil((client.width - image.x) / zoom), 0, sourceWidth);
+		int bottom = clamp((int) Math.ceil((client.height - image.y) / zoom), 0, sourceHeight);
+		Rectangle region = new Rectangle(left, top, right - left, bottom - top);
+		double scale = Math.min(1, zoom);
+		int width = Math.max(1, (int) Math.round(region.width * scale));
+		int height = Math.max(1, (int) Math.round(region.height * scale));
+		if (region.isEmpty() || (long) width * height > DETAIL_PIXELS) {
+			return;
+		}
+		if (detail != null && detailRegion.contains(left, top) && detailRegion.contains(right - 1, bottom - 1)
+				&& detail.getBounds().width >= detailRegion.width * scale - 0.5) {
+			// already have it
+			return;
+		}
+		if (detailLoading != null) {
+			detailLoading.cancel(true);
+		}
+		Path file = path;
+		int loaded = generation;
+		detailLoading = executor.submit("Loading detail of " + file, () -> {
+			try (Stage stage = Stage.start(COMPONENT, "detail")) {
+				BufferedImage decoded = ImageDecoder.decodeRegion(file,
+						new java.awt.Rectangle(region.x, region.y, region.width, region.height), width, height);
+				if (decoded.getWidth() != width || decoded.getHeight() != height) {
+					decoded = Resampler.resample(decoded,
+							new java.awt.Rectangle(decoded.getWidth(), decoded.getHeight()), width, height);
+				}
+				ImageData data = ImageDataConverter.toImageData(decoded);
+				stage.setBytes(data.data.length);
+				return data;
+			}
+		}, data -> showDetail(data, region, loaded), e -> {
+			// the level's still showing, just softer
+		});
+	}
+
+	/**
+	 * Paints the clipping area, from the best level and the decoded part over
+	 * it.
+	 *
+	 * @param event {@link Event}
+	 */
+	private void paint(Event event) {
+		GC gc = event.gc;
+		Rectangle clip = new Rectangle(event.x, event.y, event.width, event.height);
+		gc.setBackground(canvas.getBackground());
+		gc.fillRectangle(clip);
+		if (levels.isEmpty()) {
+			return;
+		}
+		Rectangle image = getImageBounds();
+		Image level = getLevel();
+		double scale = zoom * sourceWidth / level.getBounds().width;
+		gc.setInterpolation(scale < 1 ? SWT.HIGH : SWT.LOW);
+		drawClipped(gc, level, clip, image.x, image.y, scale);
+		if (detail != null) {
+			// sharp pixels from 1:1 up
+			gc.setInterpolation(zoom >= 1 ? SWT.NONE : SWT.HIGH);
+			drawClipped(gc, detail, clip, image.x + detailRegion.x * zoom, image.y + detailRegion.y * zoom,
+					zoom * detailRegion.width / detail.getBounds().width);
+		}
+	}
+
+	/**
+	 * Asks for the part showing to be decoded once the view stops changing.
+	 */
+	private void requestDetail() {
+		canvas.getDisplay().timerExec(DETAIL_DELAY, detailRequest);
+	}
+
+	/**
+	 * Moves the view, shifting what's already drawn and painting only what's
+	 * uncovered.
+	 *
+	 * @param x int of the zoomed image at the window's left edge
+	 * @param y int of the zoomed image at the window's top edge
+	 */
+	private void scrollTo(int x, int y) {
+		Rectangle client = canvas.getClientArea();
+		Rectangle image = getImageBounds();
+		int newX = clamp(x, 0, Math.max(0, image.width - client.width));
+		int newY = clamp(y, 0, Math.max(0, image.height - client.height));
+		int dx = originX - newX;
+		int dy = originY - newY;
+		if (dx == 0 && dy == 0) {
+			return;
+		}
+		originX = newX;
+		originY = newY;
+		canvas.getHorizontalBar().setSelection(originX);
+		canvas.getVerticalBar().setSelection(originY);
+		canvas.scroll(dx, dy, 0, 0, client.width, client.height, false);
+		requestDetail();
+	}
+
+	/**
+	 * Shows an image, replacing any shown before. A new image starts fitted to
+	 * the window; the same one again, e.g. decoded properly after a thumbnail,
+	 * keeps the zoom and position.
+	 *
+	 * @param path    {@link Path} of the file it came from
+	 * @param pyramid {@link MipPyramid}
+	 */
+	public void setImage(Path path, MipPyramid pyramid) {
+		if (!path.equals(this.path)) {
+			fitting = true;
+			originX = 0;
+			originY = 0;
+		}
+		this.path = path;
+		generation++;
+		if (detailLoading != null) {
+			detailLoading.cancel(true);
+		}
+		disposeDetail();
+		for (Image level : levels) {
+			disposer.dispose(level);
+		}
+		levels.clear();
+		for (ImageData data : pyramid.getLevels()) {
+			Image level = new Image(canvas.getDisplay(), data);
+			levels.add(level);
+			images.add(level);
+		}
+		sourceWidth = pyramid.getSourceWidth();
+		sourceHeight = pyramid.getSourceHeight();
+		placeholder = pyramid.isPlaceholder();
+		updateView();
+		canvas.redraw();
+		requestDetail();
+	}
+
+	/**
+	 * Shows a decoded part of the image unless the image or view has moved on
+	 * since it was asked for.
+	 *
+	 * @param data   {@link ImageData}
+	 * @param region {@link Rectangle} of the image it shows
+	 * @param loaded int the image it came from
+	 */
+	private void showDetail(ImageData data, Rectangle region, int loaded) {
+		if (canvas.isDisposed() || loaded != generation) {
+			return;
+		}
+		disposeDetail();
+		detail = new Image(canvas.getDisplay(), data);
+		images.add(detail);
+		detailRegion = region;
+		// repaint just where it goes
+		Rectangle image = getImageBounds();
+		int x = (int) Math.floor(image.x + region.x * zoom);
+		int y = (int) Math.floor(image.y + region.y * zoom);
+		canvas.redraw(x, y, (int) Math.ceil(region.width * zoom) + 1, (int) Math.ceil(region.height * zoom) + 1,
+				false);
+	}
+
+	/**
+	 * Works out the zoom when fitting, keeps the scroll position within the
+	 * image, and updates the scroll bars and zoom shown.
+	 */
+	private void updateView() {
+		if (fitting) {
+			zoom = getFitZoom();
+		}
+		Rectangle client = canvas.getClientArea();
+		Rectangle image = getImageBounds();
+		originX = clamp(originX, 0, Math.max(0, image.width - client.width));
+		originY = clamp(originY, 0, Math.max(0, image.height - client.height));
+		ScrollBar horizontal = canvas.getHorizontalBar();
+		horizontal.setValues(originX, 0, Math.max(image.width, client.width), Math.max(1, client.width), INCREMENT,
+				Math.max(1, client.width));
+		horizontal.setEnabled(image.width > client.width);
+		ScrollBar vertical = canvas.getVerticalBar();
+		vertical.setValues(originY, 0, Math.max(image.height, client.height), Math.max(1, client.height),
+				INCREMENT, Math.max(1, client.height));
+		vertical.setEnabled(image.height > client.height);
+		zoomLabel.setText(levels.isEmpty() ? "" : Math.round(zoom * 100) + "%");
+	}
+
+	/**
+	 * Zooms keeping the point under the provided position where it is. Zooming
+	 * out as far as the window's fit goes back to fitting.
+	 *
+	 * @param newZoom double screen pixels per image pixel
+	 * @param x       int in the window
+	 * @param y       int in the window
+	 */
+	private void zoomTo(double newZoom, int x, int y) {
+		if (levels.isEmpty()) {
+			return;
+		}
+		Rectangle before = getImageBounds();
+		double imageX = (x - before.x) / zoom;
+		double imageY = (y - before.y) / zoom;
+		double fit = getFitZoom();
+		zoom = Math.max(fit, Math.min(MAX_ZOOM, newZoom));
+		fitting = zoom <= fit;
+		originX = (int) Math.round(imageX * zoom - x);
+		originY = (int) Math.round(imageY * zoom - y);
+		updateView();
+		canvas.redraw();
+		requestDetail();
+	}
+
+}
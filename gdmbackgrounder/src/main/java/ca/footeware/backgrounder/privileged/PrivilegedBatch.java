@@ -0,0 +1,287 @@
+package ca.footeware.backgrounder.privileged;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import ca.footeware.backgrounder.instrumentation.Stage;
+import ca.footeware.backgrounder.io.AtomicFiles;
+
+/**
+ * A list of file operations that may need root, carried to the
+ * {@link PrivilegedHelper} over a pipe and run there in order.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class PrivilegedBatch {
+
+	/**
+	 * The kinds of operation a batch can hold.
+	 */
+	enum Type {
+		/** delete a file if it's there */
+		DELETE,
+		/** create a folder and any missing above it */
+		DIRECTORY,
+		/** zero a file's header in place, telling whoever has it mapped it's stale */
+		INVALIDATE,
+		/** set permission bits */
+		MODE,
+		/** set owning uid and gid */
+		OWNER,
+		/** replace a file's contents atomically */
+		WRITE
+	}
+
+	/**
+	 * One queued operation.
+	 */
+	private static final class Operation {
+		private final String[] args;
+		private final byte[] data;
+		private final Type type;
+
+		private Operation(Type type, byte[] data, String... args) {
+			this.type = type;
+			this.data = data;
+			this.args = args;
+		}
+	}
+
+	private static final String END = "END";
+	private static final PosixFilePermission[] PERMISSIONS = { PosixFilePermission.OTHERS_EXECUTE,
+			PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ, PosixFilePermission.GROUP_EXECUTE,
+			PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ, PosixFilePermission.OWNER_EXECUTE,
+			PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ };
+	private final List<Operation> operations = new ArrayList<>();
+
+	/**
+	 * Reads a batch written by {@link #writeTo(DataOutputStream)}.
+	 * 
+	 * @param in {@link DataInputStream}
+	 * @return {@link PrivilegedBatch}
+	 * @throws IOException when the stream ends early or holds garbage
+	 */
+	public static PrivilegedBatch readFrom(DataInputStream in) throws IOException {
+		PrivilegedBatch batch = new PrivilegedBatch();
+		while (true) {
+			String name = in.readUTF();
+			if (END.equals(name)) {
+				return batch;
+			}
+			Type type;
+			try {
+				type = Type.valueOf(name);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unknown operation " + name, e);
+			}
+			String[] args = new String[in.readInt()];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = in.readUTF();
+			}
+			byte[] data = null;
+			int length = in.readInt();
+			if (length >= 0) {
+				data = new byte[length];
+				try {
+					in.readFully(data);
+				} catch (EOFException e) {
+					throw new IOException("Batch ended in the middle of " + name, e);
+				}
+			}
+			batch.operations.add(new Operation(type, data, args));
+		}
+	}
+
+	/**
+	 * Converts the low nine bits of a mode to permissions.
+	 * 
+	 * @param mode int
+	 * @return {@link Set} of {@link PosixFilePermission}
+	 */
+	static Set<PosixFilePermission> toPermissions(int mode) {
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+		for (int i = 0; i < PERMISSIONS.length; i++) {
+			if ((mode & (1 << i)) != 0) {
+				permissions.add(PERMISSIONS[i]);
+			}
+		}
+		return permissions;
+	}
+
+	/**
+	 * Runs every operation in order, stopping at the first failure.
+	 * 
+	 * @throws IOException when an operation fails
+	 */
+	public void execute() throws IOException {
+		for (Operation operation : operations) {
+			Path path = Paths.get(operation.args[0]);
+			try (Stage stage = Stage.start("privileged", operation.type.name().toLowerCase(Locale.ROOT))) {
+				if (operation.data != null) {
+					stage.setBytes(operation.data.length);
+				}
+				switch (operation.type) {
+				case DELETE:
+					Files.deleteIfExists(path);
+					break;
+				case DIRECTORY:
+					Files.createDirectories(path);
+					break;
+				case INVALIDATE:
+					zeroHeader(path);
+					break;
+				case MODE:
+					Files.setPosixFilePermissions(path, toPermissions(Integer.parseInt(operation.args[1], 8)));
+					break;
+				case OWNER:
+					Files.setAttribute(path, "unix:uid", Integer.valueOf(operation.args[1]));
+					Files.setAttribute(path, "unix:gid", Integer.valueOf(operation.args[2]));
+					break;
+				case WRITE:
+					AtomicFiles.write(path, operation.data);
+					break;
+				default:
+					throw new IOException("Unknown operation " + operation.type);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues deleting the provided file, if it's there.
+	 * 
+	 * @param path {@link Path}
+	 */
+	public void delete(Path path) {
+		operations.add(new Operation(Type.DELETE, null, path.toString()));
+	}
+
+	/**
+	 * Queues creating the provided folder and any missing above it.
+	 * 
+	 * @param path {@link Path}
+	 */
+	public void directory(Path path) {
+		operations.add(new Operation(Type.DIRECTORY, null, path.toString()));
+	}
+
+	/**
+	 * @return long total bytes the batch carries, i.e. what it writes
+	 */
+	long getDataLength() {
+		long length = 0;
+		for (Operation operation : operations) {
+			if (operation.data != null) {
+				length += operation.data.length;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Queues zeroing the provided file's first bytes, if it's there, so readers
+	 * that have it mapped, like dconf's with its databases, see it's been
+	 * replaced and read it again.
+	 * 
+	 * @param path {@link Path}
+	 */
+	public void invalidate(Path path) {
+		operations.add(new Operation(Type.INVALIDATE, null, path.toString()));
+	}
+
+	/**
+	 * Zeroes the provided file's first 8 bytes in place, if it's there.
+	 * 
+	 * @param path {@link Path}
+	 * @throws IOException when it can't be written
+	 */
+	private static void zeroHeader(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			ByteBuffer zeroes = ByteBuffer.allocate((int) Math.min(8, channel.size()));
+			while (zeroes.hasRemaining()) {
+				channel.write(zeroes, zeroes.position());
+			}
+		}
+	}
+
+	/**
+	 * @return boolean true if there's nothing to do
+	 */
+	public boolean isEmpty() {
+		return operations.isEmpty();
+	}
+
+	/**
+	 * Queues setting the provided file's permission bits.
+	 * 
+	 * @param path {@link Path}
+	 * @param mode int e.g. 0644
+	 */
+	public void mode(Path path, int mode) {
+		operations.add(new Operation(Type.MODE, null, path.toString(), Integer.toOctalString(mode & 0777)));
+	}
+
+	/**
+	 * Queues setting the provided file's owner.
+	 * 
+	 * @param path {@link Path}
+	 * @param uid  int
+	 * @param gid  int
+	 */
+	public void owner(Path path, int uid, int gid) {
+		operations.add(new Operation(Type.OWNER, null, path.toString(), Integer.toString(uid), Integer.toString(gid)));
+	}
+
+	/**
+	 * Queues replacing the provided file's contents.
+	 * 
+	 * @param path  {@link Path}
+	 * @param bytes byte array
+	 */
+	public void write(Path path, byte[] bytes) {
+		operations.add(new Operation(Type.WRITE, bytes, path.toString()));
+	}
+
+	/**
+	 * Writes the batch for {@link #readFrom(DataInputStream)}.
+	 * 
+	 * @param out {@link DataOutputStream}
+	 * @throws IOException when the stream can't be written
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		for (Operation operation : operations) {
+			out.writeUTF(operation.type.name());
+			out.writeInt(operation.args.length);
+			for (String arg : operation.args) {
+				out.writeUTF(arg);
+			}
+			if (operation.data == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(operation.data.length);
+				out.write(operation.data);
+			}
+		}
+		out.writeUTF(END);
+		out.flush();
+	}
+
+}
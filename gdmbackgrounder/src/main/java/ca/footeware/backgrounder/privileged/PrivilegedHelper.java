@@ -0,0 +1,32 @@
+package ca.footeware.backgrounder.privileged;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Entry point run by pkexec. Reads one {@link PrivilegedBatch} from stdin, runs
+ * it and reports <code>OK</code> or <code>ERROR message</code> on stdout.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class PrivilegedHelper {
+
+	/**
+	 * Entry point.
+	 * 
+	 * @param args {@link String} array, ignored
+	 */
+	public static void main(String[] args) {
+		try {
+			PrivilegedBatch batch = PrivilegedBatch.readFrom(new DataInputStream(new BufferedInputStream(System.in)));
+			batch.execute();
+			System.out.println(PrivilegedSession.OK);
+		} catch (IOException | RuntimeException e) {
+			System.out.println(PrivilegedSession.ERROR + " " + e);
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,245 @@
+package ca.footeware.backgrounder.privileged;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import ca.footeware.backgrounder.instrumentation.Stage;
+
+/**
+ * Collects file operations and runs them all under a single elevation: one
+ * pkexec prompt per {@link #commit()} however many operations there are. When
+ * every file involved is already ours and writable, or we're root already, e.g.
+ * run from a systemd unit, no elevation is needed and the batch runs
+ * in-process.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class PrivilegedSession {
+
+	static final String ERROR = "ERROR";
+	/**
+	 * How long pkexec gets to go quietly once cancelled before it's killed.
+	 */
+	private static final long KILL_MILLIS = 1000;
+	/**
+	 * pkexec's exit status when it couldn't authenticate, e.g. with no agent.
+	 */
+	private static final int NO_AGENT = 127;
+	static final String OK = "OK";
+	private final boolean alwaysElevate;
+	private final PrivilegedBatch batch = new PrivilegedBatch();
+	private boolean needsElevation;
+	private final String pkexec;
+
+	/**
+	 * Constructor. The <code>backgrounder.pkexec</code> system property names the
+	 * pkexec to use, a stub for instance, and <code>backgrounder.elevate</code>
+	 * forces it to be used even when it isn't needed.
+	 */
+	public PrivilegedSession() {
+		this(System.getProperty("backgrounder.pkexec", "pkexec"), Boolean.getBoolean("backgrounder.elevate"));
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param pkexec        {@link String} pkexec executable
+	 * @param alwaysElevate boolean true to elevate even when it isn't needed
+	 */
+	public PrivilegedSession(String pkexec, boolean alwaysElevate) {
+		this.pkexec = pkexec;
+		this.alwaysElevate = alwaysElevate;
+	}
+
+	/**
+	 * Notes whether we could do what's asked to the provided file ourselves.
+	 * Writing replaces the file, so it has to be ours already or its owner would
+	 * change. A file that isn't there yet will be ours if we can create it, i.e.
+	 * if the nearest folder above it that is there is writable.
+	 * 
+	 * @param path {@link Path}
+	 */
+	private void check(Path path) {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			Path parent = path.toAbsolutePath().getParent();
+			while (parent != null && !Files.exists(parent)) {
+				parent = parent.getParent();
+			}
+			if (parent == null || !Files.isWritable(parent)) {
+				needsElevation = true;
+			}
+			return;
+		}
+		try {
+			boolean ours = Files.getOwner(path).getName().equals(System.getProperty("user.name"));
+			if (!ours || !Files.isWritable(path)) {
+				needsElevation = true;
+			}
+		} catch (IOException e) {
+			needsElevation = true;
+		}
+	}
+
+	/**
+	 * Runs everything queued, elevating once if needed.
+	 * 
+	 * @throws IOException          when an operation fails
+	 * @throws InterruptedException when cancelled while waiting for pkexec
+	 */
+	public void commit() throws IOException, InterruptedException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		if (needsElevation && !isRoot() || alwaysElevate) {
+			try (Stage stage = Stage.start("privileged", "elevated")) {
+				stage.setBytes(batch.getDataLength());
+				runElevated();
+			}
+		} else {
+			batch.execute();
+		}
+	}
+
+	/**
+	 * @return true if we're running as root
+	 */
+	private static boolean isRoot() {
+		try {
+			return Integer.valueOf(0).equals(Files.getAttribute(Paths.get("/proc/self"), "unix:uid"));
+		} catch (IOException | UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Queues deleting the provided file, if it's there.
+	 * 
+	 * @param path {@link Path}
+	 */
+	public void delete(Path path) {
+		check(path);
+		batch.delete(path);
+	}
+
+	/**
+	 * Queues creating the provided folder and any missing above it.
+	 * 
+	 * @param path {@link Path}
+	 */
+	public void directory(Path path) {
+		check(path);
+		batch.directory(path);
+	}
+
+	/**
+	 * Queues zeroing the provided file's header in place, so whoever has it
+	 * mapped reads it again.
+	 * 
+	 * @param path {@link Path}
+	 */
+	public void invalidate(Path path) {
+		check(path);
+		batch.invalidate(path);
+	}
+
+	/**
+	 * Queues setting the provided file's permission bits.
+	 * 
+	 * @param path {@link Path}
+	 * @param mode int
+	 */
+	public void mode(Path path, int mode) {
+		check(path);
+		batch.mode(path, mode);
+	}
+
+	/**
+	 * Queues setting the provided file's owner.
+	 * 
+	 * @param path {@link Path}
+	 * @param uid  int
+	 * @param gid  int
+	 */
+	public void owner(Path path, int uid, int gid) {
+		check(path);
+		batch.owner(path, uid, gid);
+	}
+
+	/**
+	 * Pipes the batch to a {@link PrivilegedHelper} started through pkexec. The
+	 * batch is written and the output read on threads of their own, so this
+	 * thread only ever waits for pkexec to exit and cancelling it kills pkexec,
+	 * prompt and all, whatever stage it's at.
+	 * 
+	 * @throws IOException          when the helper fails, or there's no polkit
+	 *                              agent to ask for the password
+	 * @throws InterruptedException when cancelled
+	 */
+	private void runElevated() throws IOException, InterruptedException {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		Process process = new ProcessBuilder(pkexec, java, "-cp", System.getProperty("java.class.path"),
+				PrivilegedHelper.class.getName()).redirectErrorStream(true).start();
+		Thread writer = new Thread(() -> {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()))) {
+				batch.writeTo(out);
+			} catch (IOException e) {
+				// helper never started or died early, its output says why
+			}
+		}, "pkexec input");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Thread reader = new Thread(() -> {
+			try (InputStream in = process.getInputStream()) {
+				in.transferTo(bytes);
+			} catch (IOException e) {
+				// killed, or gone, what was read says why
+			}
+		}, "pkexec output");
+		writer.setDaemon(true);
+		reader.setDaemon(true);
+		writer.start();
+		reader.start();
+		int retVal;
+		try {
+			retVal = process.waitFor();
+			reader.join();
+		} catch (InterruptedException e) {
+			// cancelled, don't leave pkexec prompting
+			process.destroy();
+			if (!process.waitFor(KILL_MILLIS, TimeUnit.MILLISECONDS)) {
+				process.destroyForcibly();
+			}
+			throw e;
+		}
+		String output = new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim();
+		if (retVal == NO_AGENT && output.contains("authentication agent")) {
+			// e.g. over SSH or from a service, where nothing can show a prompt
+			throw new IOException("No polkit authentication agent is running to ask for a password. "
+					+ "Run it in a desktop session, or as root.");
+		}
+		if (retVal != 0 || !output.endsWith(OK)) {
+			throw new IOException("Privileged helper failed (" + retVal + "): " + output);
+		}
+	}
+
+	/**
+	 * Queues replacing the provided file's contents.
+	 * 
+	 * @param path  {@link Path}
+	 * @param bytes byte array
+	 */
+	public void write(Path path, byte[] bytes) {
+		check(path);
+		batch.write(path, bytes);
+	}
+
+}
@@ -0,0 +1,97 @@
+package ca.footeware.backgrounder.rotation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import ca.footeware.backgrounder.images.ImageFiles;
+import ca.footeware.backgrounder.images.ImageProbe;
+
+/**
+ * The images to rotate through, in order or shuffled afresh on every pass.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class Playlist {
+
+	private final List<Path> images;
+	private int position;
+	private final Random random = new Random();
+	private final boolean shuffle;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param images  {@link List} of image {@link Path}s
+	 * @param shuffle boolean true to play them in random order
+	 */
+	public Playlist(List<Path> images, boolean shuffle) {
+		if (images.isEmpty()) {
+			throw new IllegalStateException("A playlist needs at least one image.");
+		}
+		this.images = new ArrayList<>(images);
+		this.shuffle = shuffle;
+		if (shuffle) {
+			Collections.shuffle(this.images, random);
+		}
+	}
+
+	/**
+	 * @param image {@link Path}
+	 * @return boolean true if its header reads as an image
+	 */
+	private static boolean isUsable(Path image) {
+		try {
+			ImageProbe.probe(image);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param folder  {@link Path}
+	 * @param shuffle boolean true to play them in random order
+	 * @return {@link Playlist} of the images in the provided folder
+	 * @throws IOException when the folder can't be listed
+	 */
+	public static Playlist of(Path folder, boolean shuffle) throws IOException {
+		List<Path> images = new ArrayList<>(ImageFiles.list(folder));
+		// one broken file shouldn't stop the rotation every pass
+		images.removeIf(image -> !isUsable(image));
+		if (images.isEmpty()) {
+			throw new IllegalStateException("There are no images in " + folder + ".");
+		}
+		return new Playlist(images, shuffle);
+	}
+
+	/**
+	 * @return {@link List} of the images, in the order of the current pass
+	 */
+	public synchronized List<Path> getImages() {
+		return new ArrayList<>(images);
+	}
+
+	/**
+	 * @return {@link Path} of the next image, starting over after the last
+	 */
+	public synchronized Path next() {
+		if (position == images.size()) {
+			position = 0;
+			if (shuffle) {
+				Path last = images.get(images.size() - 1);
+				Collections.shuffle(images, random);
+				// don't show the same one twice running
+				if (images.size() > 1 && images.get(0).equals(last)) {
+					Collections.swap(images, 0, images.size() - 1);
+				}
+			}
+		}
+		return images.get(position++);
+	}
+
+}
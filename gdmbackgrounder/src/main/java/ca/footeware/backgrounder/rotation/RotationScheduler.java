@@ -0,0 +1,177 @@
+package ca.footeware.backgrounder.rotation;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import ca.footeware.backgrounder.images.BackgroundRenderer;
+import ca.footeware.backgrounder.painters.LockscreenBackgroundPainter;
+import ca.footeware.backgrounder.painters.WallpaperPainter;
+import ca.footeware.backgrounder.settings.SettingsBackend;
+
+/**
+ * Rotates the desktop wallpaper, and optionally the lock screen background,
+ * through a {@link Playlist} on a schedule. The image after the one being set
+ * is rendered to the screen's size straight after each switch, so the switch
+ * itself is just a settings write.
+ * <p>
+ * The login screen isn't rotated, since every change to it needs the user's
+ * password.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class RotationScheduler {
+
+	/**
+	 * An image from the playlist along with the file to actually set.
+	 */
+	private static final class Prepared {
+		private final Path render;
+		private final Path source;
+
+		private Prepared(Path source, Path render) {
+			this.source = source;
+			this.render = render;
+		}
+	}
+
+	private final SettingsBackend backend;
+	private final boolean lockScreen;
+	private Prepared next;
+	private Consumer<Throwable> onError = e -> {
+		// nobody listening
+	};
+	private Consumer<Path> onRotate = path -> {
+		// nobody listening
+	};
+	private final String option;
+	private final Playlist playlist;
+	private final BackgroundRenderer renderer;
+	private final ScheduledExecutorService scheduler;
+	private final Dimension screen;
+	private ScheduledFuture<?> task;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param playlist   {@link Playlist}
+	 * @param option     {@link String} picture option
+	 * @param lockScreen boolean true to set the lock screen background too
+	 * @param screen     {@link Dimension} to render to, null to set the images
+	 *                   as they are
+	 * @param renderer   {@link BackgroundRenderer}
+	 * @param backend    {@link SettingsBackend} to write through
+	 */
+	public RotationScheduler(Playlist playlist, String option, boolean lockScreen, Dimension screen,
+			BackgroundRenderer renderer, SettingsBackend backend) {
+		this.playlist = playlist;
+		this.option = option;
+		this.lockScreen = lockScreen;
+		this.screen = screen;
+		this.renderer = renderer;
+		this.backend = backend;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "rotation");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @return true if rotating
+	 */
+	public synchronized boolean isRunning() {
+		return task != null;
+	}
+
+	/**
+	 * Renders the provided image to the screen's size, if there is one.
+	 *
+	 * @param source {@link Path}
+	 * @return {@link Prepared}
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException if stopped
+	 */
+	private Prepared prepare(Path source) throws IOException, InterruptedException {
+		Path render = screen == null ? source : renderer.render(source, screen.width, screen.height, option);
+		return new Prepared(source, render);
+	}
+
+	/**
+	 * Sets the image prepared last time, or prepares one now if that didn't
+	 * work out, then prepares the one after it. Runs on the scheduler's thread.
+	 */
+	private void rotate() {
+		try {
+			Prepared current = next != null ? next : prepare(playlist.next());
+			next = null;
+			new WallpaperPainter(current.render, option, backend).stage();
+			if (lockScreen) {
+				new LockscreenBackgroundPainter(current.render, option, backend).stage();
+			}
+			backend.apply();
+			onRotate.accept(current.source);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Exception e) {
+			onError.accept(e);
+		}
+		// look ahead
+		try {
+			next = prepare(playlist.next());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			// try another one when it's time
+			onError.accept(e);
+		}
+	}
+
+	/**
+	 * @param onError {@link Consumer} told about failures, on the scheduler's
+	 *                thread
+	 */
+	public void setErrorListener(Consumer<Throwable> onError) {
+		this.onError = onError;
+	}
+
+	/**
+	 * @param onRotate {@link Consumer} told about each image set, on the
+	 *                 scheduler's thread
+	 */
+	public void setRotationListener(Consumer<Path> onRotate) {
+		this.onRotate = onRotate;
+	}
+
+	/**
+	 * Sets the first image now and the rest at the provided interval.
+	 *
+	 * @param interval {@link Duration} between switches
+	 */
+	public synchronized void start(Duration interval) {
+		if (task != null) {
+			throw new IllegalStateException("Already rotating.");
+		}
+		task = scheduler.scheduleAtFixedRate(this::rotate, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops rotating for good, interrupting a switch in progress.
+	 */
+	public synchronized void stop() {
+		if (task != null) {
+			task.cancel(true);
+			task = null;
+		}
+		scheduler.shutdownNow();
+	}
+
+}
@@ -0,0 +1,129 @@
+package ca.footeware.backgrounder.rotation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import ca.footeware.backgrounder.io.AtomicFiles;
+
+/**
+ * Writes a GNOME slideshow, the XML that <code>picture-uri</code> can point at
+ * to have gnome-shell rotate through images itself, crossfading between them,
+ * without us running.
+ *
+ * @author Footeware.ca
+ *
+ */
+public final class SlideshowWriter {
+
+	private SlideshowWriter() {
+		// static only
+	}
+
+	/**
+	 * @param value {@link String}
+	 * @return {@link String} safe to put in XML text
+	 */
+	private static String escape(String value) {
+		StringBuilder builder = new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			switch (c) {
+			case '&':
+				builder.append("&amp;");
+				break;
+			case '<':
+				builder.append("&lt;");
+				break;
+			case '>':
+				builder.append("&gt;");
+				break;
+			default:
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @return {@link Path} of <code>$XDG_DATA_HOME/backgrounder/slideshow.xml</code>
+	 */
+	public static Path getDefaultPath() {
+		String data = System.getenv("XDG_DATA_HOME");
+		Path base = data == null || data.isEmpty() ? Paths.get(System.getProperty("user.home"), ".local", "share")
+				: Paths.get(data);
+		return base.resolve("backgrounder").resolve("slideshow.xml");
+	}
+
+	/**
+	 * @param duration {@link Duration}
+	 * @return {@link String} of the duration in seconds, as GNOME likes it
+	 */
+	private static String seconds(Duration duration) {
+		return String.format("%d.0", duration.getSeconds());
+	}
+
+	/**
+	 * Builds a slideshow showing each image in turn for the provided duration,
+	 * fading into the next over the provided transition, then starting over.
+	 *
+	 * @param images     {@link List} of image {@link Path}s
+	 * @param duration   {@link Duration} each image is shown for
+	 * @param transition {@link Duration} of each crossfade
+	 * @param start      {@link LocalDateTime} the first image is shown from
+	 * @return {@link String} XML
+	 */
+	public static String toXml(List<Path> images, Duration duration, Duration transition, LocalDateTime start) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<background>\n");
+		builder.append("  <starttime>\n");
+		builder.append("    <year>").append(start.getYear()).append("</year>\n");
+		builder.append("    <month>").append(String.format("%02d", start.getMonthValue())).append("</month>\n");
+		builder.append("    <day>").append(String.format("%02d", start.getDayOfMonth())).append("</day>\n");
+		builder.append("    <hour>").append(String.format("%02d", start.getHour())).append("</hour>\n");
+		builder.append("    <minute>").append(String.format("%02d", start.getMinute())).append("</minute>\n");
+		builder.append("    <second>").append(String.format("%02d", start.getSecond())).append("</second>\n");
+		builder.append("  </starttime>\n");
+		for (int i = 0; i < images.size(); i++) {
+			String file = escape(images.get(i).toAbsolutePath().toString());
+			builder.append("  <static>\n");
+			builder.append("    <duration>").append(seconds(duration)).append("</duration>\n");
+			builder.append("    <file>").append(file).append("</file>\n");
+			builder.append("  </static>\n");
+			if (images.size() > 1 && !transition.isZero()) {
+				String next = escape(images.get((i + 1) % images.size()).toAbsolutePath().toString());
+				builder.append("  <transition type=\"overlay\">\n");
+				builder.append("    <duration>").append(seconds(transition)).append("</duration>\n");
+				builder.append("    <from>").append(file).append("</from>\n");
+				builder.append("    <to>").append(next).append("</to>\n");
+				builder.append("  </transition>\n");
+			}
+		}
+		builder.append("</background>\n");
+		return builder.toString();
+	}
+
+	/**
+	 * Writes a slideshow starting now, replacing any already at the provided
+	 * path.
+	 *
+	 * @param target     {@link Path} to write to
+	 * @param images     {@link List} of image {@link Path}s
+	 * @param duration   {@link Duration} each image is shown for
+	 * @param transition {@link Duration} of each crossfade
+	 * @return {@link Path} written to
+	 * @throws IOException when the file can't be written
+	 */
+	public static Path write(Path target, List<Path> images, Duration duration, Duration transition)
+			throws IOException {
+		Files.createDirectories(target.toAbsolutePath().getParent());
+		String xml = toXml(images, duration, transition, LocalDateTime.now().withNano(0));
+		AtomicFiles.write(target, xml.getBytes(StandardCharsets.UTF_8));
+		return target;
+	}
+
+}
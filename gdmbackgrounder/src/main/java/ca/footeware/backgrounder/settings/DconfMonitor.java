@@ -0,0 +1,221 @@
+package ca.footeware.backgrounder.settings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A snapshot of the keys under a dconf directory, read once with
+ * <code>dconf dump</code> and kept up to date by a <code>dconf watch</code>
+ * left running, so checking a key's current value costs no process at all.
+ * Knows nothing until {@link #start()}ed, and again if the watch dies, so
+ * callers treat every value as unknown rather than trust a stale one.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class DconfMonitor {
+
+	private static final DconfMonitor DEFAULT = new DconfMonitor("dconf", "/org/gnome/desktop/");
+	private final String command;
+	private final String directory;
+	private volatile boolean running;
+	private final Map<String, String> values = new ConcurrentHashMap<>();
+	private Process watch;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param command   {@link String} dconf executable
+	 * @param directory {@link String} dconf directory to follow, with a trailing
+	 *                  slash
+	 */
+	public DconfMonitor(String command, String directory) {
+		this.command = command;
+		this.directory = directory;
+	}
+
+	/**
+	 * Gets the monitor of the GNOME desktop keys shared by the painters.
+	 *
+	 * @return {@link DconfMonitor}
+	 */
+	public static DconfMonitor getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Reads every key under the directory afresh.
+	 *
+	 * @throws IOException          when dconf can't be run
+	 * @throws InterruptedException when interrupted waiting for it
+	 */
+	private void dump() throws IOException, InterruptedException {
+		Map<String, String> dumped = read();
+		values.clear();
+		values.putAll(dumped);
+	}
+
+	/**
+	 * Runs <code>dconf dump</code> on the directory.
+	 *
+	 * @return {@link Map} of key path to GVariant text
+	 * @throws IOException          when dconf can't be run
+	 * @throws InterruptedException when interrupted waiting for it
+	 */
+	private Map<String, String> read() throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(command, "dump", directory).start();
+		Map<String, String> dumped = new ConcurrentHashMap<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String group = directory;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("[") && line.endsWith("]")) {
+					String name = line.substring(1, line.length() - 1);
+					group = "/".equals(name) ? directory : directory + name + "/";
+				} else if (line.indexOf('=') > 0) {
+					int equals = line.indexOf('=');
+					dumped.put(group + line.substring(0, equals), line.substring(equals + 1));
+				}
+			}
+		} finally {
+			if (process.waitFor() != 0) {
+				throw new IOException("dconf dump " + directory + " failed.");
+			}
+		}
+		return dumped;
+	}
+
+	/**
+	 * Gets the current value of the provided key.
+	 *
+	 * @param path {@link String} e.g. /org/gnome/desktop/background/picture-uri
+	 * @return {@link String} GVariant text, null if unknown or unset
+	 */
+	public String get(String path) {
+		return running ? values.get(path) : null;
+	}
+
+	/**
+	 * Gets the current value of every key under the directory: what's being
+	 * followed while running, otherwise read once, without starting to follow.
+	 *
+	 * @return {@link Map} of key path to GVariant text
+	 * @throws IOException          when dconf can't be run
+	 * @throws InterruptedException when interrupted waiting for it
+	 */
+	public Map<String, String> snapshot() throws IOException, InterruptedException {
+		return running ? new HashMap<>(values) : read();
+	}
+
+	/**
+	 * @return boolean true while values are being followed
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Notes a value just written, rather than wait for the watch to report it.
+	 *
+	 * @param path  {@link String}
+	 * @param value {@link String} GVariant text
+	 */
+	void put(String path, String value) {
+		if (running) {
+			values.put(path, value);
+		}
+	}
+
+	/**
+	 * Follows the watch's output: each change is a key's path, then usually its
+	 * value indented, then a blank line. Keys reported without a value, and whole
+	 * directories, are read again with a dump once the batch ends.
+	 *
+	 * @param process {@link Process} of <code>dconf watch</code>
+	 */
+	private void readWatch(Process process) {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			// the last path reported, until its value comes
+			String path = null;
+			boolean stale = false;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("  ") && path != null) {
+					values.put(path, line.trim());
+					path = null;
+					continue;
+				}
+				stale |= path != null;
+				path = null;
+				if (line.isEmpty()) {
+					if (stale) {
+						stale = false;
+						dump();
+					}
+				} else {
+					String changed = line.trim();
+					// unknown until told
+					values.keySet().removeIf(
+							key -> key.equals(changed) || changed.endsWith("/") && key.startsWith(changed));
+					path = changed;
+				}
+			}
+		} catch (IOException | InterruptedException e) {
+			// can't keep up any more, fall through to forgetting
+		} finally {
+			synchronized (this) {
+				if (watch == process) {
+					running = false;
+					values.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts watching then reads every key, so nothing changed in between is
+	 * missed.
+	 *
+	 * @throws IOException          when dconf can't be run
+	 * @throws InterruptedException when interrupted waiting for it
+	 */
+	public synchronized void start() throws IOException, InterruptedException {
+		if (running) {
+			return;
+		}
+		watch = new ProcessBuilder(command, "watch", directory).redirectError(ProcessBuilder.Redirect.DISCARD)
+				.start();
+		Process started = watch;
+		Thread reader = new Thread(() -> readWatch(started), "dconf watch");
+		reader.setDaemon(true);
+		try {
+			dump();
+		} catch (IOException | InterruptedException e) {
+			started.destroy();
+			throw e;
+		}
+		running = true;
+		reader.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(started::destroy, "dconf watch stop"));
+	}
+
+	/**
+	 * Stops watching and forgets everything.
+	 */
+	public synchronized void stop() {
+		running = false;
+		values.clear();
+		if (watch != null) {
+			watch.destroy();
+			watch = null;
+		}
+	}
+
+}
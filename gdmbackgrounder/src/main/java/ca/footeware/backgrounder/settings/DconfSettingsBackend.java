@@ -0,0 +1,183 @@
+package ca.footeware.backgrounder.settings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import ca.footeware.backgrounder.instrumentation.Stage;
+
+/**
+ * Applies all queued keys with a single <code>dconf load</code>, rather than
+ * one <code>gsettings set</code> process per key. Current values come from a
+ * {@link DconfMonitor}, when it's running.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class DconfSettingsBackend implements SettingsBackend {
+
+	private final String command;
+	private final DconfMonitor monitor;
+	private final Map<String, Map<String, String>> pending = new LinkedHashMap<>();
+
+	/**
+	 * Constructor using the dconf on the PATH.
+	 */
+	public DconfSettingsBackend() {
+		this("dconf");
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param command {@link String} dconf executable
+	 */
+	public DconfSettingsBackend(String command) {
+		this(command, DconfMonitor.getDefault());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param command {@link String} dconf executable
+	 * @param monitor {@link DconfMonitor} of current values
+	 */
+	public DconfSettingsBackend(String command, DconfMonitor monitor) {
+		this.command = command;
+		this.monitor = monitor;
+	}
+
+	@Override
+	public synchronized void apply() throws IOException, InterruptedException {
+		if (pending.isEmpty()) {
+			return;
+		}
+		byte[] keyfile = toKeyfile(pending).getBytes(StandardCharsets.UTF_8);
+		try (Stage stage = Stage.start("dconf", "load")) {
+			stage.setBytes(keyfile.length);
+			Process process = new ProcessBuilder(command, "load", "/").redirectErrorStream(true).start();
+			try {
+				try (OutputStream out = process.getOutputStream()) {
+					out.write(keyfile);
+				} catch (IOException e) {
+					// dconf gave up before reading it all, its output says why
+				}
+				byte[] output;
+				try (InputStream in = process.getInputStream()) {
+					output = in.readAllBytes();
+				}
+				int retVal = process.waitFor();
+				if (retVal != 0) {
+					throw new IllegalStateException(
+							"dconf load failed: " + new String(output, StandardCharsets.UTF_8).trim());
+				}
+			} catch (InterruptedException e) {
+				process.destroy();
+				throw e;
+			}
+		}
+		for (Entry<String, Map<String, String>> schema : pending.entrySet()) {
+			for (Entry<String, String> entry : schema.getValue().entrySet()) {
+				monitor.put(toPath(schema.getKey(), entry.getKey()), quote(entry.getValue()));
+			}
+		}
+		pending.clear();
+	}
+
+	@Override
+	public synchronized String get(String schema, String key) {
+		Map<String, String> queued = pending.get(schema);
+		if (queued != null && queued.containsKey(key)) {
+			return queued.get(key);
+		}
+		return unquote(monitor.get(toPath(schema, key)));
+	}
+
+	@Override
+	public synchronized void set(String schema, String key, String value) {
+		pending.computeIfAbsent(schema, s -> new LinkedHashMap<>()).put(key, value);
+	}
+
+	/**
+	 * Quotes the provided string as a GVariant string literal.
+	 * 
+	 * @param value {@link String}
+	 * @return {@link String}
+	 */
+	static String quote(String value) {
+		StringBuilder builder = new StringBuilder(value.length() + 2);
+		builder.append('\'');
+		for (char c : value.toCharArray()) {
+			if (c == '\'' || c == '\\') {
+				builder.append('\\');
+			}
+			builder.append(c);
+		}
+		return builder.append('\'').toString();
+	}
+
+	/**
+	 * @param schema {@link String} e.g. org.gnome.desktop.background
+	 * @param key    {@link String} e.g. picture-uri
+	 * @return {@link String} dconf path e.g.
+	 *         /org/gnome/desktop/background/picture-uri
+	 */
+	static String toPath(String schema, String key) {
+		return "/" + schema.replace('.', '/') + "/" + key;
+	}
+
+	/**
+	 * Renders the provided keys as a keyfile that <code>dconf load /</code>
+	 * understands, one group per schema.
+	 * 
+	 * @param keys {@link Map} of schema to key/value
+	 * @return {@link String}
+	 */
+	static String toKeyfile(Map<String, Map<String, String>> keys) {
+		StringBuilder builder = new StringBuilder();
+		for (Entry<String, Map<String, String>> schema : keys.entrySet()) {
+			builder.append('[').append(schema.getKey().replace('.', '/')).append("]\n");
+			for (Entry<String, String> entry : schema.getValue().entrySet()) {
+				builder.append(entry.getKey()).append('=').append(quote(entry.getValue())).append('\n');
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Reads a GVariant string literal, as dconf prints it.
+	 * 
+	 * @param text {@link String} e.g. 'zoom', may be null
+	 * @return {@link String} e.g. zoom, null if it isn't a plain string
+	 */
+	public static String unquote(String text) {
+		if (text == null || text.length() < 2) {
+			return null;
+		}
+		char quote = text.charAt(0);
+		if ((quote != '\'' && quote != '"') || text.charAt(text.length() - 1) != quote) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder(text.length());
+		for (int i = 1; i < text.length() - 1; i++) {
+			char c = text.charAt(i);
+			if (c == '\\') {
+				if (++i == text.length() - 1) {
+					return null;
+				}
+				c = text.charAt(i);
+			} else if (c == quote) {
+				// two strings, or something else entirely
+				return null;
+			}
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+
+}
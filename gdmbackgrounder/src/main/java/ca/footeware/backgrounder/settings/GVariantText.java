@@ -0,0 +1,379 @@
+package ca.footeware.backgrounder.settings;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns GVariant text, as dconf keyfiles hold it, into the serialized form
+ * dconf databases store, the way <code>dconf update</code> would. Understands
+ * strings, booleans, numbers with or without a type like
+ * <code>uint32 7</code>, and arrays of those, <code>@as []</code> included,
+ * which covers what gets written into keyfiles in practice. Anything else,
+ * tuples, dictionaries, maybes and variants, is refused rather than guessed
+ * at.
+ *
+ * @author Footeware.ca
+ *
+ */
+final class GVariantText {
+
+	/**
+	 * A parsed value, serialized.
+	 */
+	private static final class Value {
+		private final byte[] bytes;
+		private final String type;
+
+		private Value(String type, byte[] bytes) {
+			this.type = type;
+			this.bytes = bytes;
+		}
+	}
+
+	private static final Map<String, String> KEYWORDS = Map.of("boolean", "b", "byte", "y", "int16", "n", "uint16",
+			"q", "int32", "i", "uint32", "u", "int64", "x", "uint64", "t", "double", "d", "string", "s");
+	private int position;
+	private final String text;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param text {@link String}
+	 */
+	private GVariantText(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @param type {@link String} e.g. i, s, as
+	 * @return int the alignment its serialized form needs
+	 */
+	private static int getAlignment(String type) {
+		switch (type.charAt(0)) {
+		case 'n':
+		case 'q':
+			return 2;
+		case 'i':
+		case 'u':
+			return 4;
+		case 'x':
+		case 't':
+		case 'd':
+			return 8;
+		case 'a':
+			return getAlignment(type.substring(1));
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * Parses the provided text into a serialized variant, i.e. the value, a nul
+	 * and its type, which is how dconf stores each key.
+	 *
+	 * @param text {@link String} e.g. 'zoom'
+	 * @return byte array
+	 * @throws IllegalStateException when it can't be parsed
+	 */
+	static byte[] toVariant(String text) {
+		GVariantText parser = new GVariantText(text);
+		Value value = parser.parse(null);
+		parser.skipSpace();
+		if (parser.position != text.length()) {
+			throw parser.fail("unexpected " + text.charAt(parser.position));
+		}
+		byte[] type = value.type.getBytes(StandardCharsets.US_ASCII);
+		byte[] variant = new byte[value.bytes.length + 1 + type.length];
+		System.arraycopy(value.bytes, 0, variant, 0, value.bytes.length);
+		System.arraycopy(type, 0, variant, value.bytes.length + 1, type.length);
+		return variant;
+	}
+
+	/**
+	 * @param message {@link String}
+	 * @return {@link IllegalStateException} saying where parsing failed
+	 */
+	private IllegalStateException fail(String message) {
+		return new IllegalStateException("Can't read GVariant " + text + ": " + message + ".");
+	}
+
+	/**
+	 * Parses one value.
+	 *
+	 * @param type {@link String} expected, null to work it out
+	 * @return {@link Value}
+	 */
+	private Value parse(String type) {
+		skipSpace();
+		if (position == text.length()) {
+			throw fail("it ends early");
+		}
+		char c = text.charAt(position);
+		if (c == '@') {
+			position++;
+			int start = position;
+			while (position < text.length() && "abynqiuxtds".indexOf(text.charAt(position)) >= 0) {
+				position++;
+			}
+			return parse(text.substring(start, position));
+		}
+		if (c == '[') {
+			return parseArray(type);
+		}
+		if (c == '\'' || c == '"') {
+			if (type != null && !"s".equals(type)) {
+				throw fail("a string where " + type + " was expected");
+			}
+			return serialize("s", parseString());
+		}
+		if (Character.isLetter(c)) {
+			int start = position;
+			while (position < text.length() && Character.isLetterOrDigit(text.charAt(position))) {
+				position++;
+			}
+			String word = text.substring(start, position);
+			if (KEYWORDS.containsKey(word)) {
+				return parse(KEYWORDS.get(word));
+			}
+			if (("true".equals(word) || "false".equals(word)) && (type == null || "b".equals(type))) {
+				return serialize("b", word);
+			}
+			throw fail(word + " isn't supported");
+		}
+		int start = position;
+		while (position < text.length() && "+-.0123456789abcdefABCDEFxX".indexOf(text.charAt(position)) >= 0) {
+			position++;
+		}
+		String number = text.substring(start, position);
+		if (number.isEmpty()) {
+			throw fail(c + " isn't supported");
+		}
+		if (type != null && "ynqiuxtd".indexOf(type.charAt(0)) < 0) {
+			throw fail("a number where " + type + " was expected");
+		}
+		boolean hex = number.matches("[+-]?0[xX].*");
+		return serialize(type != null ? type : !hex && number.matches(".*[.eE].*") ? "d" : "i", number);
+	}
+
+	/**
+	 * Parses an array, its elements all of the first one's type unless one's
+	 * expected.
+	 *
+	 * @param type {@link String} expected, null to work it out
+	 * @return {@link Value}
+	 */
+	private Value parseArray(String type) {
+		if (type != null && !type.startsWith("a")) {
+			throw fail("an array where " + type + " was expected");
+		}
+		position++;
+		String elementType = type == null ? null : type.substring(1);
+		List<Value> elements = new ArrayList<>();
+		skipSpace();
+		if (position < text.length() && text.charAt(position) == ']') {
+			position++;
+		} else {
+			while (true) {
+				Value element = parse(elementType);
+				elementType = element.type;
+				elements.add(element);
+				skipSpace();
+				if (position < text.length() && text.charAt(position) == ',') {
+					position++;
+				} else if (position < text.length() && text.charAt(position) == ']') {
+					position++;
+					break;
+				} else {
+					throw fail("an array isn't closed");
+				}
+			}
+		}
+		if (elementType == null) {
+			throw fail("an empty array needs a type, like @as []");
+		}
+		return new Value("a" + elementType, serializeArray(elementType, elements));
+	}
+
+	/**
+	 * Parses a quoted string, undoing its escapes.
+	 *
+	 * @return {@link String}
+	 */
+	private String parseString() {
+		char quote = text.charAt(position++);
+		StringBuilder builder = new StringBuilder();
+		while (position < text.length()) {
+			char c = text.charAt(position++);
+			if (c == quote) {
+				return builder.toString();
+			}
+			if (c != '\\') {
+				builder.append(c);
+				continue;
+			}
+			if (position == text.length()) {
+				break;
+			}
+			c = text.charAt(position++);
+			switch (c) {
+			case 'n':
+				builder.append('\n');
+				break;
+			case 't':
+				builder.append('\t');
+				break;
+			case 'r':
+				builder.append('\r');
+				break;
+			case 'b':
+				builder.append('\b');
+				break;
+			case 'f':
+				builder.append('\f');
+				break;
+			case 'u':
+			case 'U':
+				int digits = c == 'u' ? 4 : 8;
+				if (position + digits > text.length()) {
+					throw fail("a \\" + c + " escape is cut short");
+				}
+				try {
+					builder.appendCodePoint(Integer.parseInt(text.substring(position, position + digits), 16));
+				} catch (IllegalArgumentException e) {
+					throw fail("a \\" + c + " escape isn't hex");
+				}
+				position += digits;
+				break;
+			default:
+				builder.append(c);
+			}
+		}
+		throw fail("a string isn't closed");
+	}
+
+	/**
+	 * Serializes a single value.
+	 *
+	 * @param type  {@link String} e.g. u
+	 * @param token {@link String} as written, unquoted for strings
+	 * @return {@link Value}
+	 */
+	private Value serialize(String type, String token) {
+		ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			switch (type) {
+			case "s":
+				byte[] string = token.getBytes(StandardCharsets.UTF_8);
+				byte[] bytes = new byte[string.length + 1];
+				System.arraycopy(string, 0, bytes, 0, string.length);
+				return new Value(type, bytes);
+			case "b":
+				if (!"true".equals(token) && !"false".equals(token)) {
+					throw fail(token + " isn't a boolean");
+				}
+				buffer.put((byte) ("true".equals(token) ? 1 : 0));
+				break;
+			case "d":
+				buffer.putDouble(Double.parseDouble(token));
+				break;
+			case "y":
+				buffer.put((byte) toInteger(token, 0, 0xff));
+				break;
+			case "n":
+				buffer.putShort((short) toInteger(token, Short.MIN_VALUE, Short.MAX_VALUE));
+				break;
+			case "q":
+				buffer.putShort((short) toInteger(token, 0, 0xffff));
+				break;
+			case "i":
+				buffer.putInt((int) toInteger(token, Integer.MIN_VALUE, Integer.MAX_VALUE));
+				break;
+			case "u":
+				buffer.putInt((int) toInteger(token, 0, 0xffffffffL));
+				break;
+			case "x":
+				buffer.putLong(toInteger(token, Long.MIN_VALUE, Long.MAX_VALUE));
+				break;
+			case "t":
+				String digits = token.startsWith("+") ? token.substring(1) : token;
+				buffer.putLong(digits.matches("0[xX].*") ? Long.parseUnsignedLong(digits.substring(2), 16)
+						: Long.parseUnsignedLong(digits));
+				break;
+			default:
+				throw fail(token + " can't be a " + type);
+			}
+		} catch (NumberFormatException e) {
+			throw fail(token + " isn't a " + type);
+		}
+		byte[] bytes = new byte[buffer.position()];
+		buffer.get(0, bytes);
+		return new Value(type, bytes);
+	}
+
+	/**
+	 * Serializes an array: fixed size elements one after the other, anything else
+	 * aligned one after the other then followed by where each one ends, in as few
+	 * bytes per offset as will do.
+	 *
+	 * @param elementType {@link String}
+	 * @param elements    {@link List} of {@link Value}
+	 * @return byte array
+	 */
+	private static byte[] serializeArray(String elementType, List<Value> elements) {
+		boolean fixed = "bynqiuxtd".indexOf(elementType.charAt(0)) >= 0;
+		int alignment = getAlignment(elementType);
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		long[] ends = new long[elements.size()];
+		for (int i = 0; i < elements.size(); i++) {
+			while (body.size() % alignment != 0) {
+				body.write(0);
+			}
+			body.writeBytes(elements.get(i).bytes);
+			ends[i] = body.size();
+		}
+		if (fixed || elements.isEmpty()) {
+			return body.toByteArray();
+		}
+		long size = body.size();
+		int offsetSize = size + ends.length <= 0xffL ? 1
+				: size + 2L * ends.length <= 0xffffL ? 2 : size + 4L * ends.length <= 0xffffffffL ? 4 : 8;
+		for (long end : ends) {
+			for (int i = 0; i < offsetSize; i++) {
+				body.write((int) (end >>> (8 * i)));
+			}
+		}
+		return body.toByteArray();
+	}
+
+	/**
+	 * Moves past any whitespace.
+	 */
+	private void skipSpace() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	/**
+	 * @param token {@link String} decimal or 0x hex, maybe signed
+	 * @param min   long
+	 * @param max   long
+	 * @return long
+	 */
+	private long toInteger(String token, long min, long max) {
+		boolean negative = token.startsWith("-");
+		String digits = token.startsWith("-") || token.startsWith("+") ? token.substring(1) : token;
+		long value = digits.matches("0[xX].*") ? Long.parseLong(digits.substring(2), 16) : Long.parseLong(digits);
+		value = negative ? -value : value;
+		if (value < min || value > max) {
+			throw fail(token + " is out of range");
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,60 @@
+package ca.footeware.backgrounder.settings;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps applied keys in memory instead of writing them anywhere. Useful for
+ * trying out and timing the apply path on machines without GNOME.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public class RecordingSettingsBackend implements SettingsBackend {
+
+	private final Map<String, String> applied = new HashMap<>();
+	private int applyCount;
+	private final Map<String, String> pending = new LinkedHashMap<>();
+
+	@Override
+	public synchronized void apply() {
+		if (!pending.isEmpty()) {
+			applied.putAll(pending);
+			pending.clear();
+			applyCount++;
+		}
+	}
+
+	@Override
+	public synchronized String get(String schema, String key) {
+		String queued = pending.get(schema + " " + key);
+		return queued != null ? queued : applied.get(schema + " " + key);
+	}
+
+	/**
+	 * Gets the most recently applied value of the provided key.
+	 * 
+	 * @param schema {@link String}
+	 * @param key    {@link String}
+	 * @return {@link String}, null if never applied
+	 */
+	public synchronized String getApplied(String schema, String key) {
+		return applied.get(schema + " " + key);
+	}
+
+	/**
+	 * Gets the number of applies that actually wrote something.
+	 * 
+	 * @return int
+	 */
+	public synchronized int getApplyCount() {
+		return applyCount;
+	}
+
+	@Override
+	public synchronized void set(String schema, String key, String value) {
+		pending.put(schema + " " + key, value);
+	}
+
+}
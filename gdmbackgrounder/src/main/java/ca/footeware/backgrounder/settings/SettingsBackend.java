@@ -0,0 +1,41 @@
+package ca.footeware.backgrounder.settings;
+
+import java.io.IOException;
+
+/**
+ * Collects GSettings key writes and applies them together.
+ * 
+ * @author Footeware.ca
+ *
+ */
+public interface SettingsBackend {
+
+	/**
+	 * Writes every key set since the last apply in one go.
+	 * 
+	 * @throws IOException          when shit goes south
+	 * @throws InterruptedException when more shit goes south
+	 */
+	void apply() throws IOException, InterruptedException;
+
+	/**
+	 * Gets what the provided key will hold after the next {@link #apply()}, as far
+	 * as the backend knows without asking anyone, so callers can skip writing
+	 * what's already there.
+	 * 
+	 * @param schema {@link String} e.g. org.gnome.desktop.background
+	 * @param key    {@link String} e.g. picture-uri
+	 * @return {@link String} unquoted, null if unknown
+	 */
+	String get(String schema, String key);
+
+	/**
+	 * Queues a string value to be written on the next {@link #apply()}.
+	 * 
+	 * @param schema {@link String} e.g. org.gnome.desktop.background
+	 * @param key    {@link String} e.g. picture-uri
+	 * @param value  {@link String} unquoted
+	 */
+	void set(String schema, String key, String value);
+
+}
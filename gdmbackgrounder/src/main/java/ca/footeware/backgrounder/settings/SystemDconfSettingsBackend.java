@@ -0,0 +1,333 @@
+package ca.footeware.backgrounder.settings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ca.footeware.backgrounder.gvdb.GvdbReader;
+import ca.footeware.backgrounder.gvdb.GvdbWriter;
+import ca.footeware.backgrounder.instrumentation.Stage;
+import ca.footeware.backgrounder.privileged.PrivilegedSession;
+
+/**
+ * Applies keys as system-wide defaults for every user rather than the current
+ * user's settings, locked so users can't change them if asked. Keys go in a
+ * keyfile and locks file of our own under <code>/etc/dconf/db/NAME.d/</code>,
+ * then every keyfile and locks file there is compiled into the database
+ * <code>/etc/dconf/db/NAME</code> that dconf reads, as
+ * <code>dconf update</code> does but in-process, and one profile in
+ * <code>/etc/dconf/profile/</code>, normally <code>user</code>, is pointed at
+ * it, created if need be. Other profiles, like gdm's, are left alone. All of
+ * that happens under one elevation. Everything's under a
+ * root folder, normally /, so it can be tried out anywhere.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class SystemDconfSettingsBackend implements SettingsBackend {
+
+	/**
+	 * Name of our keyfile and locks file.
+	 */
+	private static final String FILE_NAME = "backgrounder";
+	private final boolean lock;
+	private final String name;
+	private final Map<String, String> pending = new LinkedHashMap<>();
+	private final String profile;
+	private final Path root;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param root    {@link Path} standing in for /
+	 * @param name    {@link String} of the database, e.g. local
+	 * @param profile {@link String} name of the profile to point at it, e.g. user
+	 * @param lock    boolean true to lock every key applied
+	 */
+	public SystemDconfSettingsBackend(Path root, String name, String profile, boolean lock) {
+		this.root = root;
+		this.name = name;
+		this.profile = profile;
+		this.lock = lock;
+	}
+
+	/**
+	 * Compiles keys and locks into a dconf database: a GVDB table of every key by
+	 * path, its folders listing their children, and a nested
+	 * <code>.locks</code> table if anything's locked.
+	 *
+	 * @param values {@link Map} of path to serialized variant
+	 * @param locks  {@link Set} of locked paths
+	 * @return byte array
+	 */
+	static byte[] compile(Map<String, byte[]> values, Set<String> locks) {
+		GvdbWriter database = new GvdbWriter();
+		for (Entry<String, byte[]> entry : values.entrySet()) {
+			database.put(entry.getKey(), entry.getValue());
+		}
+		if (!locks.isEmpty()) {
+			GvdbWriter table = new GvdbWriter(false);
+			byte[] empty = GVariantText.toVariant("''");
+			for (String path : locks) {
+				table.put(path, empty);
+			}
+			database.putTable(".locks", table);
+		}
+		return database.toBytes();
+	}
+
+	/**
+	 * @param folder {@link Path}
+	 * @return {@link Set} of the names of the regular files in it, sorted, as
+	 *         dconf reads them
+	 * @throws IOException when it can't be listed
+	 */
+	private static Set<String> list(Path folder) throws IOException {
+		if (!Files.isDirectory(folder)) {
+			return new TreeSet<>();
+		}
+		try (Stream<Path> files = Files.list(folder)) {
+			return files.filter(Files::isRegularFile).map(file -> file.getFileName().toString())
+					.collect(Collectors.toCollection(TreeSet::new));
+		}
+	}
+
+	/**
+	 * Reads a keyfile's keys.
+	 *
+	 * @param file {@link Path}
+	 * @return {@link Map} of path to GVariant text, empty if there's no file
+	 * @throws IOException when it can't be read
+	 */
+	static Map<String, String> readKeyfile(Path file) throws IOException {
+		Map<String, String> keys = new LinkedHashMap<>();
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return keys;
+		}
+		String group = null;
+		for (String line : lines) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			if (line.startsWith("[") && line.endsWith("]")) {
+				String path = line.substring(1, line.length() - 1).replaceAll("^/+|/+$", "");
+				group = path.isEmpty() ? "/" : "/" + path + "/";
+			} else if (group != null && line.indexOf('=') > 0) {
+				int equals = line.indexOf('=');
+				keys.put(group + line.substring(0, equals).trim(), line.substring(equals + 1).trim());
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Reads a locks file.
+	 *
+	 * @param file {@link Path}
+	 * @return {@link Set} of locked paths, empty if there's no file
+	 * @throws IOException when it can't be read
+	 */
+	static Set<String> readLocks(Path file) throws IOException {
+		Set<String> locks = new TreeSet<>();
+		try {
+			for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				line = line.trim();
+				if (line.startsWith("/")) {
+					locks.add(line);
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// nothing locked
+		}
+		return locks;
+	}
+
+	/**
+	 * Renders keys as a keyfile, one group per folder.
+	 *
+	 * @param keys {@link Map} of path to GVariant text
+	 * @return byte array
+	 */
+	private static byte[] toKeyfile(Map<String, String> keys) {
+		Map<String, Map<String, String>> groups = new TreeMap<>();
+		for (Entry<String, String> key : keys.entrySet()) {
+			int slash = key.getKey().lastIndexOf('/');
+			groups.computeIfAbsent(key.getKey().substring(1, slash), g -> new TreeMap<>())
+					.put(key.getKey().substring(slash + 1), key.getValue());
+		}
+		StringBuilder builder = new StringBuilder("# Written by backgrounder, changes here will be lost.\n");
+		for (Entry<String, Map<String, String>> group : groups.entrySet()) {
+			builder.append('\n').append('[').append(group.getKey()).append("]\n");
+			for (Entry<String, String> key : group.getValue().entrySet()) {
+				builder.append(key.getKey()).append('=').append(key.getValue()).append('\n');
+			}
+		}
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public synchronized void apply() throws IOException, InterruptedException {
+		if (pending.isEmpty()) {
+			return;
+		}
+		Path database = getDatabase();
+		Path keyfiles = database.resolveSibling(name + ".d");
+		Path locksFolder = keyfiles.resolve("locks");
+		Path keyfile = keyfiles.resolve(FILE_NAME);
+		Path locksFile = locksFolder.resolve(FILE_NAME);
+
+		Map<String, String> ours = readKeyfile(keyfile);
+		Set<String> ourLocks = readLocks(locksFile);
+		for (Entry<String, String> entry : pending.entrySet()) {
+			ours.put(entry.getKey(), DconfSettingsBackend.quote(entry.getValue()));
+			if (lock) {
+				ourLocks.add(entry.getKey());
+			}
+		}
+		byte[] compiled;
+		try (Stage stage = Stage.start("dconf", "compile")) {
+			// every keyfile in name order, later ones winning, with ours as it's about to be
+			Map<String, byte[]> values = new TreeMap<>();
+			Set<String> names = list(keyfiles);
+			names.add(FILE_NAME);
+			for (String file : names) {
+				Map<String, String> keys = FILE_NAME.equals(file) ? ours : readKeyfile(keyfiles.resolve(file));
+				for (Entry<String, String> key : keys.entrySet()) {
+					try {
+						values.put(key.getKey(), GVariantText.toVariant(key.getValue()));
+					} catch (IllegalStateException e) {
+						throw new IllegalStateException("Can't compile " + key.getKey() + " in "
+								+ keyfiles.resolve(file) + ", run dconf update instead. " + e.getMessage(), e);
+					}
+				}
+			}
+			Set<String> locks = new TreeSet<>(ourLocks);
+			for (String file : list(locksFolder)) {
+				if (!FILE_NAME.equals(file)) {
+					locks.addAll(readLocks(locksFolder.resolve(file)));
+				}
+			}
+			compiled = compile(values, locks);
+			stage.setBytes(compiled.length);
+		}
+
+		PrivilegedSession session = new PrivilegedSession();
+		session.directory(locksFolder);
+		session.write(keyfile, toKeyfile(ours));
+		session.mode(keyfile, 0644);
+		if (!ourLocks.isEmpty() || Files.exists(locksFile)) {
+			StringBuilder lines = new StringBuilder();
+			for (String path : ourLocks) {
+				lines.append(path).append('\n');
+			}
+			session.write(locksFile, lines.toString().getBytes(StandardCharsets.UTF_8));
+			session.mode(locksFile, 0644);
+		}
+		// whoever has the old one mapped reads the new one
+		session.invalidate(database);
+		session.write(database, compiled);
+		session.mode(database, 0644);
+		addToProfile(session);
+		try (Stage stage = Stage.start("dconf", "system")) {
+			stage.setBytes(compiled.length);
+			session.commit();
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Queues adding the database to the profile if it doesn't use it yet,
+	 * creating the profile if there isn't one.
+	 *
+	 * @param session {@link PrivilegedSession}
+	 * @throws IOException when the profile can't be read
+	 */
+	private void addToProfile(PrivilegedSession session) throws IOException {
+		Path profiles = root.resolve("etc/dconf/profile");
+		Path file = profiles.resolve(profile);
+		String line = "system-db:" + name;
+		if (!Files.isRegularFile(file)) {
+			session.directory(profiles);
+			session.write(file, ("user-db:user\n" + line + "\n").getBytes(StandardCharsets.UTF_8));
+			session.mode(file, 0644);
+			return;
+		}
+		String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		if (!content.lines().map(String::trim).anyMatch(line::equals)) {
+			String separator = content.isEmpty() || content.endsWith("\n") ? "" : "\n";
+			session.write(file, (content + separator + line + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Gets the value the database holds, and if we lock keys, only if it's locked
+	 * too, so a key that isn't locked yet gets written.
+	 */
+	@Override
+	public synchronized String get(String schema, String key) {
+		String path = DconfSettingsBackend.toPath(schema, key);
+		if (pending.containsKey(path)) {
+			return pending.get(path);
+		}
+		try {
+			GvdbReader database = GvdbReader.read(ByteBuffer.wrap(Files.readAllBytes(getDatabase())));
+			int item = database.find(path);
+			if (item < 0 || database.getType(item) != 'v') {
+				return null;
+			}
+			if (lock) {
+				int locks = database.find(".locks");
+				if (locks < 0 || database.getType(locks) != 'H' || database.getTable(locks).find(path) < 0) {
+					return null;
+				}
+			}
+			return toString(database.getValue(item));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return {@link Path} of the compiled database
+	 */
+	private Path getDatabase() {
+		return root.resolve("etc/dconf/db").resolve(name);
+	}
+
+	@Override
+	public synchronized void set(String schema, String key, String value) {
+		pending.put(DconfSettingsBackend.toPath(schema, key), value);
+	}
+
+	/**
+	 * @param variant {@link ByteBuffer} a serialized variant
+	 * @return {@link String} it holds, null if it isn't a string
+	 */
+	private static String toString(ByteBuffer variant) {
+		byte[] bytes = new byte[variant.remaining()];
+		variant.get(bytes);
+		// a string, its nul, the variant's nul and its type
+		int length = bytes.length - 3;
+		if (length < 0 || bytes[bytes.length - 1] != 's' || bytes[length + 1] != 0 || bytes[length] != 0) {
+			return null;
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+}
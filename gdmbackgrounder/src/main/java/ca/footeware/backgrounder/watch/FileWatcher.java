@@ -0,0 +1,187 @@
+package ca.footeware.backgrounder.watch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import ca.footeware.backgrounder.io.AtomicFiles;
+
+/**
+ * Watches one file, through its directory so replacing it by rename is seen as
+ * well as writing to it, and calls back once changes to it have stopped for a
+ * while. Package managers and editors touch a file several times while
+ * replacing it, and that burst ends in a single call. If the file's a symbolic
+ * link, like a theme managed by update-alternatives, every link on the way and
+ * the file they end at are watched too, each in its own directory, and they're
+ * followed again after each change in case one was pointed elsewhere.
+ *
+ * @author Footeware.ca
+ *
+ */
+public class FileWatcher implements Closeable {
+
+	private final Path file;
+	private final Set<WatchKey> keys = new HashSet<>();
+	private final Runnable listener;
+	/**
+	 * File names to look for in each watched directory.
+	 */
+	private Map<Path, Set<Path>> names = new HashMap<>();
+	private final long quietMillis;
+	private volatile boolean running;
+	private WatchService service;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file        {@link Path} to watch
+	 * @param quietMillis long how long changes have to stop for before the
+	 *                    listener is called, 0 to call it for every batch of
+	 *                    events
+	 * @param listener    {@link Runnable} called on the watcher's thread
+	 */
+	public FileWatcher(Path file, long quietMillis, Runnable listener) {
+		this.file = file.toAbsolutePath().normalize();
+		this.quietMillis = quietMillis;
+		this.listener = listener;
+	}
+
+	/**
+	 * Stops watching.
+	 */
+	@Override
+	public synchronized void close() {
+		running = false;
+		if (service != null) {
+			try {
+				service.close();
+			} catch (IOException e) {
+				// closing anyway
+			}
+		}
+	}
+
+	/**
+	 * @return boolean true while changes are being seen, false once closed or if
+	 *         the directories went away
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @param key {@link WatchKey} signalled
+	 * @return boolean true if any of its events are about our file or a link to
+	 *         it, or some were lost
+	 */
+	private boolean isRelevant(WatchKey key) {
+		Set<Path> watched = names.getOrDefault(key.watchable(), Collections.emptySet());
+		boolean relevant = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || watched.contains(event.context())) {
+				relevant = true;
+			}
+		}
+		return relevant;
+	}
+
+	/**
+	 * Follows the file's links and watches the directory of each, and of the file
+	 * they end at. Directories already watched stay watched.
+	 *
+	 * @throws IOException when a link can't be read or a directory watched
+	 */
+	private void register() throws IOException {
+		Map<Path, Set<Path>> found = new HashMap<>();
+		for (Path link : AtomicFiles.links(file)) {
+			Path dir = link.getParent();
+			if (!found.containsKey(dir)) {
+				keys.add(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+				found.put(dir, new HashSet<>());
+			}
+			found.get(dir).add(link.getFileName());
+		}
+		names = found;
+	}
+
+	/**
+	 * Waits for events until closed, calling the listener once each burst has
+	 * settled.
+	 */
+	private void run() {
+		long due = 0;
+		try {
+			while (running) {
+				WatchKey key = due == 0 ? service.take()
+						: service.poll(Math.max(1, due - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				if (key != null) {
+					if (isRelevant(key)) {
+						due = System.currentTimeMillis() + quietMillis;
+					}
+					if (!key.reset()) {
+						keys.remove(key);
+					}
+				}
+				if (due != 0 && System.currentTimeMillis() >= due) {
+					due = 0;
+					try {
+						// a link may point somewhere else now
+						register();
+					} catch (IOException | RuntimeException e) {
+						// keep watching what was, the next change may go better
+					}
+					try {
+						listener.run();
+					} catch (RuntimeException e) {
+						// keep watching, the next change may go better
+					}
+				}
+				if (keys.isEmpty()) {
+					// directories are gone, nothing more will come
+					running = false;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// closed
+		} finally {
+			running = false;
+		}
+	}
+
+	/**
+	 * Starts watching, on a daemon thread.
+	 *
+	 * @throws IOException when a directory can't be watched or a link read
+	 */
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+		service = FileSystems.getDefault().newWatchService();
+		keys.clear();
+		try {
+			register();
+		} catch (IOException | RuntimeException e) {
+			service.close();
+			throw e;
+		}
+		running = true;
+		Thread thread = new Thread(this::run, "watch " + file.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+}
@@ -0,0 +1,49 @@
+package ca.footeware.backgrounder.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+import ca.footeware.backgrounder.painters.GSettingsPainter;
+
+/**
+ * Parses command lines, good and bad.
+ *
+ * @author Footeware.ca
+ *
+ */
+class ArgumentsTest {
+
+	@Test
+	void makesImagesAbsolute() throws Arguments.UsageException {
+		Arguments arguments = Arguments.parse(new String[] { "--image", "my pictures/a.jpg" });
+		assertTrue(arguments.getWallpaper().isAbsolute());
+		assertEquals(Paths.get("my pictures/a.jpg").toAbsolutePath(), arguments.getLogin());
+		assertEquals(Paths.get("b.jpg").toAbsolutePath(),
+				Arguments.parse(new String[] { "--lock=b.jpg" }).getLock());
+	}
+
+	@Test
+	void takesPictureOptions() throws Arguments.UsageException {
+		for (String option : GSettingsPainter.PICTURE_OPTIONS) {
+			assertEquals(option,
+					Arguments.parse(new String[] { "--wallpaper", "a.jpg", "--option", option }).getOption());
+		}
+		assertEquals("zoom", Arguments.parse(new String[] { "--wallpaper", "a.jpg" }).getOption());
+	}
+
+	@Test
+	void rejectsOtherOptions() {
+		for (String option : new String[] { "fill", "Zoom", "cover", "" }) {
+			assertThrows(Arguments.UsageException.class,
+					() -> Arguments.parse(new String[] { "--wallpaper", "a.jpg", "--option", option }));
+		}
+		assertThrows(Arguments.UsageException.class,
+				() -> Arguments.parse(new String[] { "--login", "a.jpg", "--login-option", "zoom" }));
+	}
+
+}
@@ -0,0 +1,101 @@
+package ca.footeware.backgrounder.cli;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.footeware.backgrounder.backup.BackupStore;
+import ca.footeware.backgrounder.images.BackgroundRenderer;
+import ca.footeware.backgrounder.painters.LoginChoice;
+import ca.footeware.backgrounder.settings.RecordingSettingsBackend;
+
+/**
+ * Runs <code>--watch</code> against a theme laid out the way
+ * update-alternatives does it, a link beside where gnome-shell looks for it
+ * pointing at the real file in another folder, and replaces the real file the
+ * way an upgrade would.
+ *
+ * @author Footeware.ca
+ *
+ */
+class HeadlessRunnerTest {
+
+	private static final String PUT_BACK = "Put the login screen background back";
+	private static final String STOCK = "#lockDialogGroup {\n"
+			+ "  background: #2e3436 url(resource:///org/gnome/shell/theme/noise-texture.png);\n"
+			+ "  background-repeat: repeat;\n}\n";
+	/**
+	 * Longest to wait for the watch, several times its quiet period.
+	 */
+	private static final long TIMEOUT_MILLIS = 10_000;
+	@TempDir
+	Path folder;
+
+	/**
+	 * @param text {@link String}
+	 * @return int how many times the background was put back in it
+	 */
+	private static int count(String text) {
+		return text.split(PUT_BACK, -1).length - 1;
+	}
+
+	/**
+	 * Waits for the background to have been put back the provided number of
+	 * times.
+	 *
+	 * @param bytes {@link ByteArrayOutputStream} the runner prints to
+	 * @param times int
+	 * @throws InterruptedException if interrupted
+	 */
+	private static void awaitPutBack(ByteArrayOutputStream bytes, int times) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (count(bytes.toString(StandardCharsets.UTF_8)) < times && System.currentTimeMillis() < end) {
+			Thread.sleep(50);
+		}
+		assertTrue(count(bytes.toString(StandardCharsets.UTF_8)) >= times,
+				"put back fewer than " + times + " times: " + bytes.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void putsBackWhenLinkedThemeIsReplaced() throws IOException, InterruptedException {
+		Path real = Files.createDirectories(folder.resolve("yaru")).resolve("gdm3.css");
+		Files.writeString(real, STOCK);
+		Path link = Files.createDirectories(folder.resolve("theme")).resolve("gdm3.css");
+		Files.createSymbolicLink(link, real);
+		Path image = folder.resolve("dawn.png");
+		ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "png", image.toFile());
+		Path choice = folder.resolve("login.properties");
+		new LoginChoice(link, image, "cover").save(choice);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+		HeadlessRunner runner = new HeadlessRunner(new RecordingSettingsBackend(), BackgroundRenderer.getDefault(),
+				new BackupStore(folder.resolve("backups"), 5), 100, out, out);
+		Thread thread = new Thread(() -> runner.run(new String[] { "--watch", "--choice", choice.toString() }));
+		thread.setDaemon(true);
+		thread.start();
+		// checked once on starting
+		awaitPutBack(bytes, 1);
+		assertTrue(Files.isSymbolicLink(link));
+		assertTrue(Files.readString(real).contains("backgrounder"));
+		// an upgrade puts the stock theme back beside the link's target
+		Path upgraded = real.resolveSibling("gdm3.css.dpkg-new");
+		Files.writeString(upgraded, STOCK);
+		Files.move(upgraded, real, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		awaitPutBack(bytes, 2);
+		assertTrue(Files.isSymbolicLink(link));
+		assertTrue(Files.readString(real).contains("backgrounder"));
+	}
+
+}
@@ -0,0 +1,125 @@
+package ca.footeware.backgrounder.css;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Finds rules in a gdm3.css laid out like Ubuntu's, with the login screen's
+ * selector also turning up in a comment, in strings and inside an
+ * <code>@media</code> block ahead of the real rule, and in small stylesheets
+ * made for one case each.
+ *
+ * @author Footeware.ca
+ *
+ */
+class RuleLocatorTest {
+
+	private static final String SELECTOR = "#lockDialogGroup";
+
+	/**
+	 * @return byte array of the gdm3.css fixture
+	 * @throws IOException when it can't be read
+	 */
+	static byte[] fixture() throws IOException {
+		try (InputStream in = RuleLocatorTest.class.getResourceAsStream("gdm3.css")) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * @param css      {@link String}
+	 * @param selector {@link String}
+	 * @return {@link String} of the rule found, null if none
+	 */
+	private static String find(String css, String selector) {
+		byte[] bytes = css.getBytes(StandardCharsets.UTF_8);
+		RuleSpan span = RuleLocator.find(bytes, selector);
+		return span == null ? null : text(bytes, span);
+	}
+
+	/**
+	 * @param css  byte array
+	 * @param span {@link RuleSpan}
+	 * @return {@link String} of the rule's bytes
+	 */
+	private static String text(byte[] css, RuleSpan span) {
+		return new String(css, span.getStart(), span.getEnd() - span.getStart(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void findsTopLevelRule() throws IOException {
+		byte[] css = fixture();
+		RuleSpan span = RuleLocator.find(css, SELECTOR);
+		assertNotNull(span);
+		assertEquals("#lockDialogGroup /* the login screen */ {\n"
+				+ "  background: #2c001e url(resource:///org/gnome/shell/theme/noise-texture.png);\n"
+				+ "  background-repeat: repeat; }", text(css, span));
+		assertEquals('{', css[span.getBlockStart()]);
+		// past the comment, the strings and the @media block that mention it
+		String before = new String(css, 0, span.getStart(), StandardCharsets.UTF_8);
+		assertTrue(before.endsWith("background: #000000; } }\n\n"), before);
+	}
+
+	@Test
+	void findsOtherRules() throws IOException {
+		byte[] css = fixture();
+		assertEquals("stage {\n  font-family: Ubuntu, Cantarell, Sans-Serif;\n  font-size: 11pt;\n  color: #eeeeec; }",
+				text(css, RuleLocator.find(css, "stage")));
+		assertEquals("#lockDialogGroup .login-dialog {\n  border: none; }",
+				text(css, RuleLocator.find(css, "#lockDialogGroup .login-dialog")));
+		assertEquals(".unlock-dialog-clock {\n  font-feature-settings: \"tnum\"; }",
+				text(css, RuleLocator.find(css, ".unlock-dialog-clock")));
+	}
+
+	@Test
+	void skipsComments() {
+		assertEquals("#a { b: c; }", find("/* #a { x: y; } */\n#a { b: c; }", "#a"));
+		assertEquals("#a { b: c; }", find("/* } { */ #a { b: c; }", "#a"));
+		assertEquals("#a/**/ .b { c: d; }", find("#a/**/ .b { c: d; }", "#a .b"));
+		assertNull(find("/* #a { b: c; }", "#a"));
+	}
+
+	@Test
+	void skipsStrings() {
+		assertEquals("#a { b: c; }", find("p { content: \"}\"; } #a { b: c; }", "#a"));
+		assertEquals("#a { b: c; }", find("p { content: '#a {'; } #a { b: c; }", "#a"));
+		assertEquals("#a { b: c; }", find("p { content: 'it\\'s { here'; } #a { b: c; }", "#a"));
+		assertEquals("#a { b: url(\"x}.png\"); }", find("#a { b: url(\"x}.png\"); } p { }", "#a"));
+	}
+
+	@Test
+	void skipsNestedRules() {
+		assertNull(find("@media (min-resolution: 2dppx) {\n  #a { b: c; } }\n", "#a"));
+		assertEquals("#a { d: e; }", find("@media screen { #a { b: c; } }\n#a { d: e; }", "#a"));
+		assertEquals("@font-face { src: local(x); }",
+				find("@import url(\"a.css\");\n@font-face { src: local(x); }", "@font-face"));
+	}
+
+	@Test
+	void matchesWholeSelectorsOnly() {
+		assertNull(find("#a .b { c: d; }", "#a"));
+		assertNull(find("#a, #b { c: d; }", "#a"));
+		assertNull(find("#ab { c: d; }", "#a"));
+		assertNull(find("x#a { c: d; }", "#a"));
+		assertEquals("#a\n  .b { c: d; }", find("#a\n  .b { c: d; }", "#a .b"));
+	}
+
+	@Test
+	void missesAbsentRules() throws IOException {
+		assertNull(RuleLocator.find(fixture(), "#lockDialog"));
+		assertNull(RuleLocator.find(fixture(), ".login-dialog"));
+		assertNull(find("", "#a"));
+		// cut off before it closes
+		assertNull(find("#a { b: c;", "#a"));
+		assertNull(find("#a { b: c; p { }", "#a"));
+	}
+
+}
@@ -0,0 +1,99 @@
+package ca.footeware.backgrounder.css;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import ca.footeware.backgrounder.io.FileIdentity;
+
+/**
+ * Splices the login screen's rule in the gdm3.css fixture and small
+ * stylesheets, checking everything around it is left byte for byte.
+ *
+ * @author Footeware.ca
+ *
+ */
+class SplicingStylesheetPatcherTest {
+
+	private static final String SELECTOR = "#lockDialogGroup";
+
+	/**
+	 * @param bytes byte array
+	 * @return {@link CachedStylesheet} of them
+	 */
+	private static CachedStylesheet stylesheet(byte[] bytes) {
+		return new CachedStylesheet(new FileIdentity(FileTime.fromMillis(0), bytes.length, null), bytes);
+	}
+
+	/**
+	 * @return {@link Map} of the declarations the login screen gets
+	 */
+	private static Map<String, String> declarations() {
+		Map<String, String> declarations = new LinkedHashMap<>();
+		declarations.put("background", "url('file:///usr/share/backgrounds/it%27s%20here.jpg')");
+		declarations.put("background-color", "#1a2b3c");
+		declarations.put("background-size", "cover");
+		return declarations;
+	}
+
+	@Test
+	void formatsLikeGnomeShell() {
+		assertEquals("#lockDialogGroup {\n"
+				+ "  background: url('file:///usr/share/backgrounds/it%27s%20here.jpg');\n"
+				+ "  background-color: #1a2b3c;\n"
+				+ "  background-size: cover; }", SplicingStylesheetPatcher.format(SELECTOR, declarations()));
+	}
+
+	@Test
+	void replacesOnlyTheRule() throws IOException {
+		byte[] css = RuleLocatorTest.fixture();
+		RuleSpan span = RuleLocator.find(css, SELECTOR);
+		byte[] patched = new SplicingStylesheetPatcher().patch(stylesheet(css), SELECTOR, declarations());
+		byte[] rule = SplicingStylesheetPatcher.format(SELECTOR, declarations()).getBytes(StandardCharsets.UTF_8);
+		// the comments, strings and @media block before it, and the rules after
+		assertArrayEquals(Arrays.copyOf(css, span.getStart()), Arrays.copyOf(patched, span.getStart()));
+		assertArrayEquals(rule, Arrays.copyOfRange(patched, span.getStart(), span.getStart() + rule.length));
+		assertArrayEquals(Arrays.copyOfRange(css, span.getEnd(), css.length),
+				Arrays.copyOfRange(patched, span.getStart() + rule.length, patched.length));
+		// found again in its new form, and patching that changes nothing more
+		RuleSpan again = RuleLocator.find(patched, SELECTOR);
+		assertEquals(span.getStart(), again.getStart());
+		assertEquals(span.getStart() + rule.length, again.getEnd());
+		assertArrayEquals(patched,
+				new SplicingStylesheetPatcher().patch(stylesheet(patched), SELECTOR, declarations()));
+	}
+
+	@Test
+	void leavesNestedRulesAlone() {
+		byte[] css = "@media screen {\n  #lockDialogGroup { background: red; } }\n#lockDialogGroup{background:none}\n"
+				.getBytes(StandardCharsets.UTF_8);
+		Map<String, String> declarations = new LinkedHashMap<>();
+		declarations.put("background-size", "contain");
+		assertEquals("@media screen {\n  #lockDialogGroup { background: red; } }\n"
+				+ "#lockDialogGroup {\n  background-size: contain; }\n",
+				new String(new SplicingStylesheetPatcher().patch(stylesheet(css), SELECTOR, declarations),
+						StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void returnsNullWithoutTheRule() {
+		SplicingStylesheetPatcher patcher = new SplicingStylesheetPatcher();
+		assertNull(patcher.patch(stylesheet("stage { color: #eeeeec; }\n".getBytes(StandardCharsets.UTF_8)),
+				SELECTOR, declarations()));
+		assertNull(patcher.patch(
+				stylesheet("@media screen { #lockDialogGroup { background: red; } }".getBytes(StandardCharsets.UTF_8)),
+				SELECTOR, declarations()));
+		assertNull(patcher.patch(stylesheet("/* #lockDialogGroup { } */".getBytes(StandardCharsets.UTF_8)),
+				SELECTOR, declarations()));
+	}
+
+}
@@ -0,0 +1,220 @@
+package ca.footeware.backgrounder.daemon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.footeware.backgrounder.css.StylesheetCache;
+import ca.footeware.backgrounder.images.BackgroundRenderer;
+import ca.footeware.backgrounder.settings.RecordingSettingsBackend;
+
+/**
+ * Sends bursts of requests on a clock that only moves when told to, so the
+ * 200 ms lull and the 2 s cap are checked to the millisecond.
+ *
+ * @author Footeware.ca
+ *
+ */
+class CoalescerTest {
+
+	/**
+	 * Runs what's scheduled when {@link #advance(long)} moves its clock past it,
+	 * on the calling thread.
+	 */
+	private static final class ManualScheduler extends ScheduledThreadPoolExecutor {
+
+		/**
+		 * Something scheduled on a {@link ManualScheduler}.
+		 */
+		private final class Task implements ScheduledFuture<Object> {
+
+			private boolean cancelled;
+			private final Runnable command;
+			private boolean done;
+			private final long due;
+
+			private Task(Runnable command, long due) {
+				this.command = command;
+				this.due = due;
+			}
+
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				if (done || cancelled) {
+					return false;
+				}
+				cancelled = true;
+				return true;
+			}
+
+			@Override
+			public int compareTo(Delayed other) {
+				return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+			}
+
+			@Override
+			public Object get() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Object get(long timeout, TimeUnit unit) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public long getDelay(TimeUnit unit) {
+				return unit.convert(due - now, TimeUnit.MILLISECONDS);
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return cancelled;
+			}
+
+			@Override
+			public boolean isDone() {
+				return done || cancelled;
+			}
+		}
+
+		private long now;
+		private final List<Task> tasks = new ArrayList<>();
+
+		private ManualScheduler() {
+			super(0);
+		}
+
+		/**
+		 * Moves the clock on, running what falls due on the way, in order.
+		 *
+		 * @param millis long
+		 */
+		private void advance(long millis) {
+			long end = now + millis;
+			while (true) {
+				Task next = tasks.stream().filter(task -> !task.cancelled && task.due <= end)
+						.min(Comparator.comparingLong(task -> task.due)).orElse(null);
+				if (next == null) {
+					break;
+				}
+				tasks.remove(next);
+				now = next.due;
+				next.done = true;
+				next.command.run();
+			}
+			now = end;
+		}
+
+		@Override
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			Task task = new Task(command, now + unit.toMillis(delay));
+			tasks.add(task);
+			return task;
+		}
+	}
+
+	private static final long MAX_DELAY_MILLIS = 2000;
+	private static final long QUIET_MILLIS = 200;
+	private static final String SCHEMA = "org.gnome.desktop.background";
+	private RecordingSettingsBackend backend;
+	private Coalescer coalescer;
+	@TempDir
+	Path folder;
+	private ManualScheduler scheduler;
+
+	@BeforeEach
+	void setUp() {
+		backend = new RecordingSettingsBackend();
+		scheduler = new ManualScheduler();
+		coalescer = new Coalescer(backend, folder.resolve("gdm3.css"), new StylesheetCache(), null,
+				BackgroundRenderer.getDefault(), QUIET_MILLIS, MAX_DELAY_MILLIS, scheduler, () -> scheduler.now);
+	}
+
+	/**
+	 * @param name {@link String} of a small image to write
+	 * @return {@link Path} of it
+	 * @throws IOException when it can't be written
+	 */
+	private Path image(String name) throws IOException {
+		Path image = folder.resolve(name);
+		ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", image.toFile());
+		return image;
+	}
+
+	@Test
+	void waitsForLull() throws IOException {
+		CompletableFuture<Void> first = coalescer.submit(Target.WALLPAPER, image("a.png"), "zoom");
+		scheduler.advance(QUIET_MILLIS - 1);
+		assertEquals(0, backend.getApplyCount());
+		Path last = image("b.png");
+		CompletableFuture<Void> second = coalescer.submit(Target.WALLPAPER, last, "scaled");
+		// the first request's lull has passed, but the second started another
+		scheduler.advance(QUIET_MILLIS - 1);
+		assertEquals(0, backend.getApplyCount());
+		assertFalse(first.isDone());
+		scheduler.advance(1);
+		assertEquals(1, backend.getApplyCount());
+		assertEquals(last.toUri().toASCIIString(), backend.getApplied(SCHEMA, "picture-uri"));
+		assertEquals("scaled", backend.getApplied(SCHEMA, "picture-options"));
+		assertTrue(first.isDone() && !first.isCompletedExceptionally());
+		assertTrue(second.isDone() && !second.isCompletedExceptionally());
+	}
+
+	@Test
+	void appliesBusyStreamsAtMaxDelay() throws IOException {
+		Path[] images = { image("a.png"), image("b.png") };
+		List<CompletableFuture<Void>> waiters = new ArrayList<>();
+		// never a lull, a request every 150 ms, the last at 1950
+		for (long time = 0; time < MAX_DELAY_MILLIS; time += 150) {
+			if (time > 0) {
+				scheduler.advance(150);
+			}
+			assertEquals(0, backend.getApplyCount(), "applied early, at " + time);
+			waiters.add(coalescer.submit(Target.WALLPAPER, images[waiters.size() % 2], "zoom"));
+		}
+		// due at the cap rather than 200 ms after the last
+		scheduler.advance(MAX_DELAY_MILLIS - 1 - scheduler.now);
+		assertEquals(0, backend.getApplyCount());
+		scheduler.advance(1);
+		assertEquals(1, backend.getApplyCount());
+		for (CompletableFuture<Void> waiter : waiters) {
+			assertTrue(waiter.isDone() && !waiter.isCompletedExceptionally());
+		}
+		// the next burst starts its own clock
+		coalescer.submit(Target.WALLPAPER, images[0], "zoom");
+		scheduler.advance(QUIET_MILLIS - 1);
+		assertEquals(1, backend.getApplyCount());
+		scheduler.advance(1);
+		assertEquals(2, backend.getApplyCount());
+	}
+
+	@Test
+	void appliesTargetsTogether() throws IOException {
+		coalescer.submit(Target.WALLPAPER, image("a.png"), "zoom");
+		scheduler.advance(100);
+		coalescer.submit(Target.LOCK, image("b.png"), "centered");
+		scheduler.advance(QUIET_MILLIS);
+		assertEquals(1, backend.getApplyCount());
+		assertEquals("centered", backend.getApplied("org.gnome.desktop.screensaver", "picture-options"));
+	}
+
+}
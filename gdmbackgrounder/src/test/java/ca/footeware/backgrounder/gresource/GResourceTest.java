@@ -0,0 +1,172 @@
+package ca.footeware.backgrounder.gresource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.footeware.backgrounder.gvdb.GvdbReader;
+
+/**
+ * Reads and rebuilds the bundles in the test resources. Both were checked with
+ * GLib's own <code>gresource list</code> and <code>gresource extract</code>:
+ * theme.gresource holds gdm.css and a README uncompressed, compressed.gresource
+ * holds gdm3.css deflated, as <code>compressed="true"</code> stores it.
+ *
+ * @author Footeware.ca
+ *
+ */
+class GResourceTest {
+
+	private static final String COMPRESSED = "/org/gnome/shell/theme/gdm3.css";
+	private static final String CSS = "/org/gnome/shell/theme/gdm.css";
+	private static final String README = "/org/gnome/shell/theme/README";
+	@TempDir
+	Path folder;
+
+	/**
+	 * @param name {@link String} of a bundle in the test resources
+	 * @return byte array of it
+	 * @throws IOException when it can't be read
+	 */
+	private static byte[] fixture(String name) throws IOException {
+		try (InputStream in = GResourceTest.class.getResourceAsStream(name)) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * @param bytes byte array
+	 * @return {@link String} of them, UTF-8
+	 */
+	private static String text(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param bundle byte array of a bundle
+	 * @param path   {@link String} of a file in it
+	 * @return int offset of the file's value, its size first
+	 * @throws IOException when it's damaged
+	 */
+	private static int valueOffset(byte[] bundle, String path) throws IOException {
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(bundle));
+		ByteBuffer value = reader.getValue(reader.find(path));
+		// the slice's offset into the bundle
+		return value.arrayOffset();
+	}
+
+	@Test
+	void readsBundle() throws IOException {
+		GResource bundle = GResource.parse(fixture("theme.gresource"));
+		assertEquals(Arrays.asList(README, CSS), Arrays.asList(bundle.getPaths().toArray()));
+		assertTrue(text(bundle.get(CSS)).startsWith("#lockDialogGroup {"));
+		assertEquals("Stock login theme, for tests.\n", text(bundle.get(README)));
+		assertNull(bundle.get("/org/gnome/shell/theme/gdm3.css"));
+	}
+
+	@Test
+	void extractsFromFile() throws IOException {
+		Path file = folder.resolve("theme.gresource");
+		Files.write(file, fixture("theme.gresource"));
+		assertTrue(text(GResource.extract(file, CSS)).contains("background-repeat: repeat;"));
+		assertNull(GResource.extract(file, "/org/gnome/shell/theme/"));
+		assertNull(GResource.extract(file, "/nope"));
+	}
+
+	@Test
+	void readsCompressedEntry() throws IOException {
+		String css = text(GResource.parse(fixture("compressed.gresource")).get(COMPRESSED));
+		assertTrue(css.startsWith(".panel-button-0 {"));
+		assertTrue(css.contains(".panel-button-39 {"));
+		assertTrue(css.endsWith("background-repeat: repeat;\n}\n"));
+		Path file = folder.resolve("compressed.gresource");
+		Files.write(file, fixture("compressed.gresource"));
+		assertEquals(css, text(GResource.extract(file, COMPRESSED)));
+	}
+
+	@Test
+	void roundTripsPut() throws IOException {
+		GResource bundle = GResource.parse(fixture("theme.gresource"));
+		byte[] css = "#lockDialogGroup { background: url(resource:///org/gnome/shell/theme/bg.jpg); }\n"
+				.getBytes(StandardCharsets.UTF_8);
+		byte[] image = new byte[5000];
+		for (int i = 0; i < image.length; i++) {
+			image[i] = (byte) i;
+		}
+		bundle.put(CSS, css);
+		bundle.put("/org/gnome/shell/theme/bg.jpg", image);
+		bundle.remove(README);
+		GResource rebuilt = GResource.parse(bundle.toBytes());
+		assertEquals(Arrays.asList("/org/gnome/shell/theme/bg.jpg", CSS),
+				Arrays.asList(rebuilt.getPaths().toArray()));
+		assertArrayEquals(css, rebuilt.get(CSS));
+		assertArrayEquals(image, rebuilt.get("/org/gnome/shell/theme/bg.jpg"));
+		assertNull(rebuilt.get(README));
+	}
+
+	@Test
+	void keepsCompressedEntriesAsTheyAre() throws IOException {
+		byte[] original = fixture("compressed.gresource");
+		GResource bundle = GResource.parse(original);
+		bundle.put(CSS, new byte[] { 'a' });
+		GResource rebuilt = GResource.parse(bundle.toBytes());
+		assertArrayEquals(GResource.parse(original).get(COMPRESSED), rebuilt.get(COMPRESSED));
+		assertArrayEquals(new byte[] { 'a' }, rebuilt.get(CSS));
+	}
+
+	@Test
+	void rejectsBadPaths() throws IOException {
+		GResource bundle = GResource.parse(fixture("theme.gresource"));
+		assertThrows(IllegalArgumentException.class, () -> bundle.put("relative/file", new byte[0]));
+		assertThrows(IllegalArgumentException.class, () -> bundle.put("/a/folder/", new byte[0]));
+	}
+
+	@Test
+	void rejectsDamagedBundles() throws IOException {
+		assertThrows(IOException.class, () -> GResource.parse("not a bundle at all".getBytes()));
+		byte[] cut = Arrays.copyOf(fixture("theme.gresource"), 60);
+		assertThrows(IOException.class, () -> GResource.parse(cut));
+		byte[] past = fixture("theme.gresource");
+		ByteBuffer.wrap(past).order(ByteOrder.LITTLE_ENDIAN).putInt(20, Integer.MAX_VALUE);
+		assertThrows(IOException.class, () -> GResource.parse(past));
+		Path file = folder.resolve("past.gresource");
+		Files.write(file, past);
+		assertThrows(IOException.class, () -> GResource.extract(file, CSS));
+	}
+
+	@Test
+	void rejectsSizesOutOfBounds() throws IOException {
+		// bigger than what's stored
+		byte[] longer = fixture("theme.gresource");
+		ByteBuffer.wrap(longer).order(ByteOrder.LITTLE_ENDIAN).putInt(valueOffset(longer, CSS), 1 << 20);
+		assertThrows(IOException.class, () -> GResource.parse(longer).get(CSS));
+		// negative, compressed
+		byte[] negative = fixture("compressed.gresource");
+		ByteBuffer.wrap(negative).order(ByteOrder.LITTLE_ENDIAN).putInt(valueOffset(negative, COMPRESSED), -1);
+		assertThrows(IOException.class, () -> GResource.parse(negative).get(COMPRESSED));
+		// more than deflate could ever have made it
+		byte[] huge = fixture("compressed.gresource");
+		ByteBuffer.wrap(huge).order(ByteOrder.LITTLE_ENDIAN).putInt(valueOffset(huge, COMPRESSED),
+				Integer.MAX_VALUE);
+		assertThrows(IOException.class, () -> GResource.parse(huge).get(COMPRESSED));
+		// compressed flag on data that isn't
+		byte[] flagged = fixture("theme.gresource");
+		ByteBuffer.wrap(flagged).order(ByteOrder.LITTLE_ENDIAN).putInt(valueOffset(flagged, CSS) + 4, 1);
+		assertThrows(IOException.class, () -> GResource.parse(flagged).get(CSS));
+	}
+
+}
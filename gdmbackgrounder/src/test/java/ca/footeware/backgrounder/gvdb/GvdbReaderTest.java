@@ -0,0 +1,150 @@
+package ca.footeware.backgrounder.gvdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reads a small bundle made the way glib-compile-resources lays them out, then
+ * damages it in the ways a truncated or corrupt file would be.
+ *
+ * @author Footeware.ca
+ *
+ */
+class GvdbReaderTest {
+
+	private static final String CSS = "/org/gnome/shell/theme/gdm.css";
+
+	/**
+	 * @return byte array of the theme fixture
+	 * @throws IOException when it can't be read
+	 */
+	private static byte[] fixture() throws IOException {
+		try (InputStream in = GvdbReaderTest.class
+				.getResourceAsStream("/ca/footeware/backgrounder/gresource/theme.gresource")) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * @param bytes byte array of a GVDB file
+	 * @return {@link ByteBuffer} over it, little endian, to damage it with
+	 */
+	private static ByteBuffer wrap(byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @param bytes byte array of a GVDB file
+	 * @return int offset of the root table's first bucket
+	 */
+	private static int buckets(byte[] bytes) {
+		int start = wrap(bytes).getInt(16);
+		return start + 8 + 4 * (wrap(bytes).getInt(start) & ((1 << 27) - 1));
+	}
+
+	/**
+	 * @param bytes byte array of a GVDB file
+	 * @param item  int index
+	 * @return int offset of the provided item in the root table
+	 */
+	private static int item(byte[] bytes, int item) {
+		int start = wrap(bytes).getInt(16);
+		return buckets(bytes) + 4 * wrap(bytes).getInt(start + 4) + GvdbReader.ITEM_SIZE * item;
+	}
+
+	@Test
+	void findsFilesAndFolders() throws IOException {
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(fixture()));
+		int css = reader.find(CSS);
+		assertTrue(css >= 0);
+		assertEquals('v', reader.getType(css));
+		assertEquals(CSS, reader.getKey(css));
+		int folder = reader.find("/org/gnome/shell/theme/");
+		assertTrue(folder >= 0);
+		assertEquals('L', reader.getType(folder));
+		assertEquals(2, reader.listValues().size());
+		assertEquals(-1, reader.find("/org/gnome/shell/theme/gdm3.css"));
+	}
+
+	@Test
+	void readsValues() throws IOException {
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(fixture()));
+		ByteBuffer value = reader.getValue(reader.find(CSS));
+		byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+		String text = new String(bytes, StandardCharsets.UTF_8);
+		assertTrue(text.contains("#lockDialogGroup"));
+		assertTrue(text.endsWith("(uuay)"));
+	}
+
+	@Test
+	void rejectsOtherFiles() throws IOException {
+		assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(new byte[8])));
+		assertThrows(IOException.class,
+				() -> GvdbReader.read(ByteBuffer.wrap("not a GVDB file, just some text".getBytes())));
+		byte[] swapped = fixture();
+		wrap(swapped).putInt(0, Integer.reverseBytes(GvdbReader.SIGNATURE_0));
+		IOException e = assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(swapped)));
+		assertTrue(e.getMessage().contains("Big-endian"));
+	}
+
+	@Test
+	void rejectsRootTableOutOfBounds() throws IOException {
+		byte[] past = fixture();
+		wrap(past).putInt(20, past.length + 4);
+		assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(past)));
+		byte[] header = fixture();
+		wrap(header).putInt(16, 0);
+		assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(header)));
+		// cut off in the middle of the root table
+		byte[] cut = Arrays.copyOf(fixture(), wrap(fixture()).getInt(16) + 8);
+		assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(cut)));
+	}
+
+	@Test
+	void rejectsBucketsOutOfBounds() throws IOException {
+		byte[] bytes = fixture();
+		int count = wrap(bytes).getInt(wrap(bytes).getInt(16) + 4);
+		for (int bucket = 0; bucket < count; bucket++) {
+			wrap(bytes).putInt(buckets(bytes) + 4 * bucket, -1_000_000);
+		}
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(bytes));
+		assertThrows(IOException.class, () -> reader.find(CSS));
+		for (int bucket = 0; bucket < count; bucket++) {
+			wrap(bytes).putInt(buckets(bytes) + 4 * bucket, Integer.MAX_VALUE);
+		}
+		assertEquals(-1, GvdbReader.read(ByteBuffer.wrap(bytes)).find(CSS));
+	}
+
+	@Test
+	void rejectsItemsOutOfBounds() throws IOException {
+		byte[] bytes = fixture();
+		int css = GvdbReader.read(ByteBuffer.wrap(bytes)).find(CSS);
+		// value past the end
+		wrap(bytes).putInt(item(bytes, css) + 20, bytes.length + 1);
+		assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(bytes)).getValue(css));
+		// key before the start
+		wrap(bytes).putInt(item(bytes, css) + 8, -8);
+		assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(bytes)).getKey(css));
+		// its own parent
+		byte[] loop = fixture();
+		wrap(loop).putInt(item(loop, css) + 4, css);
+		assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(loop)).getKey(css));
+		// a nested table past the end
+		byte[] table = fixture();
+		wrap(table).put(item(table, css) + 14, (byte) 'H');
+		wrap(table).putInt(item(table, css) + 20, table.length + 64);
+		assertThrows(IOException.class, () -> GvdbReader.read(ByteBuffer.wrap(table)).getTable(css));
+	}
+
+}
@@ -0,0 +1,89 @@
+package ca.footeware.backgrounder.gvdb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Writes GVDB files and reads them back with {@link GvdbReader}.
+ *
+ * @author Footeware.ca
+ *
+ */
+class GvdbWriterTest {
+
+	/**
+	 * @param reader {@link GvdbReader}
+	 * @param key    {@link String}
+	 * @return byte array of the value stored under the key
+	 * @throws IOException when it's damaged
+	 */
+	private static byte[] get(GvdbReader reader, String key) throws IOException {
+		int item = reader.find(key);
+		assertTrue(item >= 0, key + " is missing");
+		ByteBuffer value = reader.getValue(item);
+		byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+		return bytes;
+	}
+
+	@Test
+	void writesEmptyFile() throws IOException {
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(new GvdbWriter().toBytes()));
+		assertEquals(0, reader.getItemCount());
+		assertEquals(-1, reader.find("/anything"));
+	}
+
+	@Test
+	void roundTripsValuesAndFolders() throws IOException {
+		GvdbWriter writer = new GvdbWriter();
+		for (int i = 0; i < 100; i++) {
+			writer.put("/org/example/file" + i, ("value " + i).getBytes(StandardCharsets.UTF_8));
+		}
+		writer.put("/org/other/deeper/file", new byte[] { 1, 2, 3 });
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(writer.toBytes()));
+		for (int i = 0; i < 100; i++) {
+			assertArrayEquals(("value " + i).getBytes(StandardCharsets.UTF_8), get(reader, "/org/example/file" + i));
+			assertEquals("/org/example/file" + i, reader.getKey(reader.find("/org/example/file" + i)));
+		}
+		assertArrayEquals(new byte[] { 1, 2, 3 }, get(reader, "/org/other/deeper/file"));
+		for (String folder : new String[] { "/", "/org/", "/org/example/", "/org/other/", "/org/other/deeper/" }) {
+			assertEquals('L', reader.getType(reader.find(folder)));
+		}
+		assertEquals(101, reader.listValues().size());
+	}
+
+	@Test
+	void replacesValues() throws IOException {
+		GvdbWriter writer = new GvdbWriter();
+		writer.put("/a/b", new byte[] { 1 });
+		writer.put("/a/b", new byte[] { 2 });
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(writer.toBytes()));
+		assertArrayEquals(new byte[] { 2 }, get(reader, "/a/b"));
+		assertEquals(1, reader.listValues().size());
+	}
+
+	@Test
+	void roundTripsNestedTables() throws IOException {
+		GvdbWriter locks = new GvdbWriter(false);
+		locks.put("/org/gnome/desktop/background/picture-uri", new byte[0]);
+		GvdbWriter writer = new GvdbWriter();
+		writer.put("/org/gnome/desktop/background/picture-uri", new byte[] { 'x' });
+		writer.putTable(".locks", locks);
+		GvdbReader reader = GvdbReader.read(ByteBuffer.wrap(writer.toBytes()));
+		int item = reader.find(".locks");
+		assertEquals('H', reader.getType(item));
+		GvdbReader table = reader.getTable(item);
+		assertEquals(1, table.getItemCount());
+		// stored as it is, no folders
+		assertEquals(-1, table.find("/org/"));
+		assertTrue(table.find("/org/gnome/desktop/background/picture-uri") >= 0);
+	}
+
+}
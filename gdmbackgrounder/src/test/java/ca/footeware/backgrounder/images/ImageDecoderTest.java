@@ -0,0 +1,82 @@
+package ca.footeware.backgrounder.images;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Decodes parts of an image, as the preview does when zoomed in, whole and
+ * skipping rows and columns.
+ *
+ * @author Footeware.ca
+ *
+ */
+class ImageDecoderTest {
+
+	private static final int HEIGHT = 800;
+	private static final int WIDTH = 1200;
+	@TempDir
+	static Path folder;
+	private static Path image;
+
+	@BeforeAll
+	static void write() throws IOException {
+		BufferedImage pattern = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				pattern.setRGB(x, y, rgb(x, y));
+			}
+		}
+		image = folder.resolve("pattern.png");
+		ImageIO.write(pattern, "png", image.toFile());
+	}
+
+	/**
+	 * @param x int
+	 * @param y int
+	 * @return int RGB of the pattern's pixel there
+	 */
+	private static int rgb(int x, int y) {
+		return (x % 256) << 16 | (y % 256) << 8 | (x + y) % 256;
+	}
+
+	@Test
+	void decodesRegion() throws IOException {
+		BufferedImage region = ImageDecoder.decodeRegion(image, new Rectangle(200, 100, 400, 300));
+		assertEquals(400, region.getWidth());
+		assertEquals(300, region.getHeight());
+		assertEquals(rgb(200, 100), region.getRGB(0, 0) & 0xffffff);
+		assertEquals(rgb(599, 399), region.getRGB(399, 299) & 0xffffff);
+		// clipped to the image
+		BufferedImage corner = ImageDecoder.decodeRegion(image, new Rectangle(1100, 700, 400, 300));
+		assertEquals(100, corner.getWidth());
+		assertEquals(100, corner.getHeight());
+	}
+
+	@Test
+	void skipsWhatIsNotShown() throws IOException {
+		// a quarter as big is as small as it can get and still be 100 by 60
+		BufferedImage region = ImageDecoder.decodeRegion(image, new Rectangle(200, 100, 400, 300), 100, 60);
+		assertEquals(100, region.getWidth());
+		assertEquals(75, region.getHeight());
+		assertEquals(rgb(200, 100), region.getRGB(0, 0) & 0xffffff);
+		assertEquals(rgb(204, 104), region.getRGB(1, 1) & 0xffffff);
+		// never below the size asked for, nor above the region's
+		region = ImageDecoder.decodeRegion(image, new Rectangle(200, 100, 400, 300), 150, 150);
+		assertEquals(200, region.getWidth());
+		assertEquals(150, region.getHeight());
+		region = ImageDecoder.decodeRegion(image, new Rectangle(200, 100, 400, 300), 4000, 4000);
+		assertEquals(400, region.getWidth());
+		assertEquals(300, region.getHeight());
+	}
+
+}
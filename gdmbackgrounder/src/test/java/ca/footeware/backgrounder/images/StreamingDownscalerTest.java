@@ -0,0 +1,184 @@
+package ca.footeware.backgrounder.images;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Scales down images far bigger than the heap the tests run in, 64 MB: decoded
+ * whole, each would take 72 MB. They're written from pixels worked out as
+ * they're asked for, so making them doesn't need the memory either, and the
+ * result is compared with {@link Resampler} shrinking those same pixels.
+ *
+ * @author Footeware.ca
+ *
+ */
+class StreamingDownscalerTest {
+
+	/**
+	 * Pixels worked out from their position as they're asked for, never stored.
+	 */
+	private static final class Pattern extends DataBuffer {
+
+		private Pattern() {
+			super(DataBuffer.TYPE_BYTE, WIDTH * HEIGHT * 3);
+		}
+
+		@Override
+		public int getElem(int bank, int i) {
+			int pixel = i / 3;
+			int x = pixel % WIDTH;
+			int y = pixel / WIDTH;
+			switch (i % 3) {
+			case 0:
+				return x * 255 / (WIDTH - 1);
+			case 1:
+				return y * 255 / (HEIGHT - 1);
+			default:
+				// slow enough waves that skipping pixels doesn't alias
+				return (int) Math.round(128 + 100 * Math.sin(x / 300.0 + y / 500.0));
+			}
+		}
+
+		@Override
+		public void setElem(int bank, int i, int value) {
+			throw new UnsupportedOperationException("The pattern is read only.");
+		}
+	}
+
+	private static final int HEIGHT = 4000;
+	private static final int SCALED_HEIGHT = 400;
+	private static final int SCALED_WIDTH = 600;
+	/**
+	 * Output rows compared at a time, so the source rows they need fit the heap.
+	 */
+	private static final int SLICE = 10;
+	private static final int WIDTH = 6000;
+	private static BufferedImage expected;
+	private static BufferedImage source;
+	@TempDir
+	Path folder;
+
+	@BeforeAll
+	static void setUp() {
+		ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+				ColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+		PixelInterleavedSampleModel model = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, WIDTH, HEIGHT, 3,
+				WIDTH * 3, new int[] { 0, 1, 2 });
+		source = new BufferedImage(colorModel, Raster.createWritableRaster(model, new Pattern(), null), false, null);
+		// a slice at a time, each lines up with whole output pixels
+		expected = new BufferedImage(SCALED_WIDTH, SCALED_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		int rows = HEIGHT / SCALED_HEIGHT * SLICE;
+		for (int top = 0; top < SCALED_HEIGHT; top += SLICE) {
+			BufferedImage slice = Resampler.resample(source, new Rectangle(0, top / SLICE * rows, WIDTH, rows),
+					SCALED_WIDTH, SLICE);
+			expected.getRaster().setRect(0, top, slice.getRaster());
+		}
+	}
+
+	/**
+	 * Writes the pattern to a file.
+	 *
+	 * @param format      {@link String} ImageIO format name
+	 * @param compression {@link String} type, null for the writer's default
+	 * @return {@link Path}
+	 * @throws IOException when it can't be written
+	 */
+	private Path write(String format, String compression) throws IOException {
+		Path file = folder.resolve("large." + format);
+		ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+			writer.setOutput(out);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if (compression != null) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionType(compression);
+			}
+			writer.write(null, new IIOImage(source, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		return file;
+	}
+
+	/**
+	 * Scales the file down and checks it against {@link Resampler}'s.
+	 *
+	 * @param file      {@link Path}
+	 * @param tolerance int most any channel may be off by
+	 * @throws IOException when it can't be read
+	 */
+	private static void assertScales(Path file, int tolerance) throws IOException {
+		BufferedImage scaled;
+		try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, false, true);
+				scaled = StreamingDownscaler.scale(reader, SCALED_WIDTH, SCALED_HEIGHT);
+			} finally {
+				reader.dispose();
+			}
+		}
+		assertNotNull(scaled, file + " wasn't streamed");
+		assertEquals(SCALED_WIDTH, scaled.getWidth());
+		assertEquals(SCALED_HEIGHT, scaled.getHeight());
+		int worst = 0;
+		for (int y = 0; y < SCALED_HEIGHT; y++) {
+			for (int x = 0; x < SCALED_WIDTH; x++) {
+				int actual = scaled.getRGB(x, y);
+				int wanted = expected.getRGB(x, y);
+				for (int shift = 0; shift < 24; shift += 8) {
+					worst = Math.max(worst, Math.abs((actual >> shift & 0xFF) - (wanted >> shift & 0xFF)));
+				}
+			}
+		}
+		assertTrue(worst <= tolerance, file + " is off by up to " + worst);
+	}
+
+	@Test
+	void scalesJpeg() throws IOException {
+		// lossy, and skips pixels before averaging
+		assertScales(write("jpeg", null), 8);
+	}
+
+	@Test
+	void scalesPng() throws IOException {
+		assertScales(write("png", null), 3);
+	}
+
+	@Test
+	void scalesTiffStrips() throws IOException {
+		assertScales(write("tiff", "Deflate"), 3);
+	}
+
+	@Test
+	void scalesUncompressedTiff() throws IOException {
+		assertScales(write("tiff", null), 3);
+	}
+
+}
@@ -0,0 +1,95 @@
+package ca.footeware.backgrounder.images;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.footeware.backgrounder.images.ThumbnailStore.Size;
+
+/**
+ * Saves thumbnails into a cache shared with other apps' and prunes it, which
+ * must only ever delete ours.
+ *
+ * @author Footeware.ca
+ *
+ */
+class ThumbnailStoreTest {
+
+	@TempDir
+	Path folder;
+
+	/**
+	 * @param name {@link String} of an image to write
+	 * @return {@link Path} of it
+	 * @throws IOException when it can't be written
+	 */
+	private Path image(String name) throws IOException {
+		Path image = folder.resolve(name);
+		ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB), "png", image.toFile());
+		return image;
+	}
+
+	@Test
+	void savesAndLoads() throws IOException {
+		ThumbnailStore store = new ThumbnailStore(folder.resolve("thumbnails"), Long.MAX_VALUE);
+		Path image = image("it's a lake.png");
+		store.save(image, Size.LARGE, ImageIO.read(image.toFile()));
+		BufferedImage thumbnail = store.load(image, Size.LARGE);
+		assertNotNull(thumbnail);
+		assertEquals(256, thumbnail.getWidth());
+		Path path = store.getThumbnailPath(image, Size.LARGE);
+		assertEquals("Backgrounder", ThumbnailStore.readText(path).get("Software"));
+		// stale once the file changes
+		Files.setLastModifiedTime(image, FileTime.fromMillis(Files.getLastModifiedTime(image).toMillis() + 5000));
+		assertNull(store.load(image, Size.LARGE));
+	}
+
+	@Test
+	void prunesOnlyOurs() throws IOException {
+		Path root = folder.resolve("thumbnails");
+		ThumbnailStore store = new ThumbnailStore(root, 0);
+		// a file manager's, old and big, and a broken one
+		Path theirs = root.resolve("large/0123456789abcdef0123456789abcdef.png");
+		Files.createDirectories(theirs.getParent());
+		ImageIO.write(new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB), "png", theirs.toFile());
+		Files.setLastModifiedTime(theirs, FileTime.fromMillis(0));
+		Path broken = root.resolve("normal/fedcba9876543210fedcba9876543210.png");
+		Files.createDirectories(broken.getParent());
+		Files.writeString(broken, "not a png");
+		Files.setLastModifiedTime(broken, FileTime.fromMillis(0));
+
+		Path[] thumbnails = new Path[3];
+		for (int i = 0; i < thumbnails.length; i++) {
+			Path image = image(i + ".png");
+			store.save(image, Size.NORMAL, ImageIO.read(image.toFile()));
+			thumbnails[i] = store.getThumbnailPath(image, Size.NORMAL);
+			Files.setLastModifiedTime(thumbnails[i], FileTime.fromMillis(1000L * (i + 1)));
+		}
+		long ours = Files.size(thumbnails[1]) + Files.size(thumbnails[2]);
+		new ThumbnailStore(root, ours).prune();
+		assertFalse(Files.exists(thumbnails[0]));
+		assertTrue(Files.exists(thumbnails[1]));
+		assertTrue(Files.exists(thumbnails[2]));
+
+		store.prune();
+		for (Path thumbnail : thumbnails) {
+			assertFalse(Files.exists(thumbnail), thumbnail.toString());
+		}
+		assertTrue(Files.exists(theirs));
+		assertTrue(Files.exists(broken));
+	}
+
+}
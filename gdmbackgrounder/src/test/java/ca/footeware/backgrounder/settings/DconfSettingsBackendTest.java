@@ -0,0 +1,141 @@
+package ca.footeware.backgrounder.settings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.footeware.backgrounder.painters.LockscreenBackgroundPainter;
+import ca.footeware.backgrounder.painters.WallpaperPainter;
+
+/**
+ * Checks the keyfile handed to <code>dconf load</code>, by running a stand-in
+ * for dconf that keeps what it's given, against what the same painters leave
+ * in a {@link RecordingSettingsBackend}.
+ *
+ * @author Footeware.ca
+ *
+ */
+class DconfSettingsBackendTest {
+
+	private static final String LOCK = "org.gnome.desktop.screensaver";
+	private static final String WALLPAPER = "org.gnome.desktop.background";
+	@TempDir
+	Path folder;
+
+	/**
+	 * Writes a stand-in for dconf that saves what <code>load /</code> is given.
+	 *
+	 * @param body {@link String} of the script, after the check for load
+	 * @return {@link String} path to run
+	 * @throws IOException when it can't be written
+	 */
+	private String dconf(String body) throws IOException {
+		Path script = folder.resolve("dconf");
+		Files.writeString(script, "#!/bin/sh\n[ \"$1 $2\" = \"load /\" ] || exit 3\n" + body + "\n");
+		Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwx------"));
+		return script.toString();
+	}
+
+	/**
+	 * @param name {@link String} of a small image to write
+	 * @return {@link Path} of it
+	 * @throws IOException when it can't be written
+	 */
+	private Path image(String name) throws IOException {
+		Path image = folder.resolve(name);
+		ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", image.toFile());
+		return image;
+	}
+
+	@Test
+	void quotesStrings() {
+		assertEquals("'zoom'", DconfSettingsBackend.quote("zoom"));
+		assertEquals("''", DconfSettingsBackend.quote(""));
+		assertEquals("'it\\'s'", DconfSettingsBackend.quote("it's"));
+		assertEquals("'a\\\\b'", DconfSettingsBackend.quote("a\\b"));
+		assertEquals("'\"\u00e9t\u00e9\"'", DconfSettingsBackend.quote("\"\u00e9t\u00e9\""));
+		for (String value : new String[] { "zoom", "", "it's", "a\\b", "\\'", "\"\u00e9t\u00e9\"",
+				"file:///a%20b.jpg" }) {
+			assertEquals(value, DconfSettingsBackend.unquote(DconfSettingsBackend.quote(value)));
+		}
+		assertEquals("zoom", DconfSettingsBackend.unquote("\"zoom\""));
+		assertNull(DconfSettingsBackend.unquote("uint32 7"));
+		assertNull(DconfSettingsBackend.unquote("'a' 'b'"));
+		assertNull(DconfSettingsBackend.unquote("'a\\'"));
+	}
+
+	@Test
+	void writesKeyfile() {
+		Map<String, Map<String, String>> keys = new LinkedHashMap<>();
+		keys.computeIfAbsent(WALLPAPER, s -> new LinkedHashMap<>()).put("picture-uri", "file:///a.jpg");
+		keys.get(WALLPAPER).put("picture-options", "zoom");
+		keys.computeIfAbsent(LOCK, s -> new LinkedHashMap<>()).put("picture-uri", "file:///it's.jpg");
+		assertEquals("[org/gnome/desktop/background]\n" //
+				+ "picture-uri='file:///a.jpg'\n" //
+				+ "picture-options='zoom'\n" //
+				+ "\n" //
+				+ "[org/gnome/desktop/screensaver]\n" //
+				+ "picture-uri='file:///it\\'s.jpg'\n" //
+				+ "\n", DconfSettingsBackend.toKeyfile(keys));
+		assertEquals("/org/gnome/desktop/background/picture-uri",
+				DconfSettingsBackend.toPath(WALLPAPER, "picture-uri"));
+	}
+
+	@Test
+	void loadsWhatPaintersSet() throws IOException, InterruptedException {
+		Path wallpaper = image("it's a lake.png");
+		Path lock = image("dawn.png");
+		Path loaded = folder.resolve("loaded");
+		DconfSettingsBackend backend = new DconfSettingsBackend(dconf("cat > '" + loaded + "'"),
+				new DconfMonitor("false", "/org/gnome/desktop/"));
+		RecordingSettingsBackend recording = new RecordingSettingsBackend();
+		for (SettingsBackend each : new SettingsBackend[] { backend, recording }) {
+			new WallpaperPainter(wallpaper, "zoom", each).stage();
+			new LockscreenBackgroundPainter(lock, "centered", each).stage();
+			each.apply();
+		}
+		assertEquals(1, recording.getApplyCount());
+		String uri = recording.getApplied(WALLPAPER, "picture-uri");
+		assertEquals(wallpaper.toUri().toASCIIString(), uri);
+		assertTrue(uri.contains("it's%20a%20lake.png"), uri);
+		StringBuilder expected = new StringBuilder();
+		for (String schema : new String[] { WALLPAPER, LOCK }) {
+			expected.append('[').append(schema.replace('.', '/')).append("]\n");
+			for (String key : new String[] { "picture-uri", "picture-options", "primary-color" }) {
+				expected.append(key).append('=')
+						.append(DconfSettingsBackend.quote(recording.getApplied(schema, key))).append('\n');
+			}
+			expected.append('\n');
+		}
+		String keyfile = Files.readString(loaded);
+		assertEquals(expected.toString(), keyfile);
+		String escaped = "picture-uri='file://" + folder.toUri().getRawPath() + "it\\'s%20a%20lake.png'";
+		assertTrue(keyfile.contains(escaped), keyfile);
+		assertTrue(keyfile.contains("picture-options='centered'"), keyfile);
+		assertTrue(keyfile.contains("primary-color='#000000'"), keyfile);
+	}
+
+	@Test
+	void reportsFailedLoad() throws IOException {
+		DconfSettingsBackend backend = new DconfSettingsBackend(dconf("echo 'error: no session bus'; exit 1"),
+				new DconfMonitor("false", "/org/gnome/desktop/"));
+		backend.set(WALLPAPER, "picture-options", "zoom");
+		IllegalStateException e = assertThrows(IllegalStateException.class, backend::apply);
+		assertTrue(e.getMessage().contains("no session bus"), e.getMessage());
+	}
+
+}
@@ -0,0 +1,156 @@
+package ca.footeware.backgrounder.settings;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.footeware.backgrounder.gvdb.GvdbReader;
+
+/**
+ * Applies keys under a temporary root we own, so it all happens in-process,
+ * then reads the compiled database back and checks what the profiles say.
+ *
+ * @author Footeware.ca
+ *
+ */
+class SystemDconfSettingsBackendTest {
+
+	private static final String LOCK = "org.gnome.desktop.screensaver";
+	private static final String URI = "file:///usr/share/backgrounds/it's%20here.jpg";
+	private static final String WALLPAPER = "org.gnome.desktop.background";
+	@TempDir
+	Path root;
+
+	/**
+	 * @return {@link GvdbReader} of the compiled database
+	 * @throws IOException when it can't be read
+	 */
+	private GvdbReader database() throws IOException {
+		return GvdbReader.read(ByteBuffer.wrap(Files.readAllBytes(root.resolve("etc/dconf/db/local"))));
+	}
+
+	/**
+	 * @param database {@link GvdbReader}
+	 * @param path     {@link String} of a key
+	 * @return byte array of its serialized variant
+	 * @throws IOException when it isn't there
+	 */
+	private static byte[] value(GvdbReader database, String path) throws IOException {
+		int item = database.find(path);
+		assertTrue(item >= 0, path);
+		assertEquals('v', database.getType(item));
+		ByteBuffer value = database.getValue(item);
+		byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * @param relative {@link String} path under the root
+	 * @param content  {@link String} to write there
+	 * @throws IOException when it can't be written
+	 */
+	private void write(String relative, String content) throws IOException {
+		Path file = root.resolve(relative);
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, content);
+	}
+
+	@Test
+	void compilesWhatsApplied() throws IOException, InterruptedException {
+		// the site's own keyfile and locks, compiled in alongside ours
+		write("etc/dconf/db/local.d/00-site", "[org/gnome/desktop/interface]\nclock-format='24h'\n");
+		write("etc/dconf/db/local.d/locks/00-site", "/org/gnome/desktop/interface/clock-format\n");
+		SystemDconfSettingsBackend backend = new SystemDconfSettingsBackend(root, "local", "user", true);
+		backend.set(WALLPAPER, "picture-uri", URI);
+		backend.set(WALLPAPER, "picture-options", "zoom");
+		backend.set(LOCK, "picture-uri", URI);
+		backend.apply();
+
+		GvdbReader database = database();
+		assertArrayEquals(GVariantText.toVariant(DconfSettingsBackend.quote(URI)),
+				value(database, "/org/gnome/desktop/background/picture-uri"));
+		assertArrayEquals(GVariantText.toVariant("'zoom'"),
+				value(database, "/org/gnome/desktop/background/picture-options"));
+		assertArrayEquals(GVariantText.toVariant("'24h'"),
+				value(database, "/org/gnome/desktop/interface/clock-format"));
+		assertEquals('L', database.getType(database.find("/org/gnome/desktop/")));
+		int item = database.find(".locks");
+		assertEquals('H', database.getType(item));
+		GvdbReader locks = database.getTable(item);
+		for (String path : new String[] { "/org/gnome/desktop/background/picture-uri",
+				"/org/gnome/desktop/background/picture-options", "/org/gnome/desktop/screensaver/picture-uri",
+				"/org/gnome/desktop/interface/clock-format" }) {
+			assertTrue(locks.find(path) >= 0, path);
+		}
+
+		// read back by a backend that didn't write it
+		SystemDconfSettingsBackend fresh = new SystemDconfSettingsBackend(root, "local", "user", true);
+		assertEquals(URI, fresh.get(WALLPAPER, "picture-uri"));
+		assertEquals("zoom", fresh.get(WALLPAPER, "picture-options"));
+		assertNull(fresh.get(LOCK, "picture-options"));
+
+		// a later apply keeps what was applied before
+		fresh.set(LOCK, "picture-options", "centered");
+		fresh.apply();
+		database = database();
+		assertArrayEquals(GVariantText.toVariant("'centered'"),
+				value(database, "/org/gnome/desktop/screensaver/picture-options"));
+		assertArrayEquals(GVariantText.toVariant(DconfSettingsBackend.quote(URI)),
+				value(database, "/org/gnome/desktop/screensaver/picture-uri"));
+		assertEquals("[org/gnome/desktop/interface]\nclock-format='24h'\n",
+				Files.readString(root.resolve("etc/dconf/db/local.d/00-site")));
+	}
+
+	@Test
+	void leavesKeysUnlocked() throws IOException, InterruptedException {
+		SystemDconfSettingsBackend backend = new SystemDconfSettingsBackend(root, "local", "user", false);
+		backend.set(WALLPAPER, "picture-options", "zoom");
+		backend.apply();
+		GvdbReader database = database();
+		assertArrayEquals(GVariantText.toVariant("'zoom'"),
+				value(database, "/org/gnome/desktop/background/picture-options"));
+		assertTrue(database.find(".locks") < 0);
+		assertFalse(Files.exists(root.resolve("etc/dconf/db/local.d/locks/backgrounder")));
+		assertEquals("zoom", backend.get(WALLPAPER, "picture-options"));
+		// a locking backend doesn't take an unlocked key as set
+		assertNull(new SystemDconfSettingsBackend(root, "local", "user", true).get(WALLPAPER, "picture-options"));
+	}
+
+	@Test
+	void appendsToProfile() throws IOException, InterruptedException {
+		String user = "user-db:user\nsystem-db:site\nfile-db:/srv/dconf/shared";
+		String gdm = "user-db:user\nsystem-db:gdm\nfile-db:/usr/share/gdm/greeter-dconf-defaults\n";
+		write("etc/dconf/profile/user", user);
+		write("etc/dconf/profile/gdm", gdm);
+		SystemDconfSettingsBackend backend = new SystemDconfSettingsBackend(root, "local", "user", true);
+		backend.set(WALLPAPER, "picture-options", "zoom");
+		backend.apply();
+		Path profile = root.resolve("etc/dconf/profile/user");
+		assertEquals(user + "\nsystem-db:local\n", Files.readString(profile));
+		assertEquals(gdm, Files.readString(root.resolve("etc/dconf/profile/gdm")));
+		// only once
+		backend.set(WALLPAPER, "picture-options", "scaled");
+		backend.apply();
+		assertEquals(user + "\nsystem-db:local\n", Files.readString(profile));
+	}
+
+	@Test
+	void createsProfile() throws IOException, InterruptedException {
+		SystemDconfSettingsBackend backend = new SystemDconfSettingsBackend(root, "local", "user", true);
+		backend.set(WALLPAPER, "picture-options", "zoom");
+		backend.apply();
+		assertEquals("user-db:user\nsystem-db:local\n", Files.readString(root.resolve("etc/dconf/profile/user")));
+	}
+
+}